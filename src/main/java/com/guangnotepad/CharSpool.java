@@ -0,0 +1,191 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Append-only storage of decoded text that lives on disk instead of the heap.
+ * Characters are written as UTF-16 into a temporary file in segments,
+ * Every full segment is memory-mapped, only the last unfinished segment stays in memory.
+ * Because every character takes two bytes, any offset can be found without an index.
+ *
+ * 仅追加的已解码文本存储，保存在磁盘上而不是堆中。
+ * 字符以UTF-16格式分段写入临时文件，
+ * 每个完整的段都被内存映射，只有最后一个未完成的段保留在内存中。
+ * 因为每个字符占用两个字节，所以无需索引即可找到任何偏移量。
+ */
+
+
+// Char spool class
+// 字符缓冲文件类
+
+public class CharSpool
+{
+    // Characters in one mapped segment
+    // 一个映射段中的字符数
+    private static final int SEGMENT_CHARS = 1 << 20;
+
+    // First size of the tail, it grows up to a segment
+    // 尾部的初始大小，它增长到一个段
+    private static final int FIRST_TAIL_CHARS = 4096;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    // Finished segments mapped from the file and the unfinished tail
+    // 从文件映射的已完成段和未完成的尾部
+    private final List<CharBuffer> segments = new ArrayList<>();
+    private char[] tail = new char[FIRST_TAIL_CHARS];
+    private int tailLength;
+    private int length;
+    private boolean closed;
+
+    // Document and snapshots using the spool, the file is deleted when the last one closes it
+    // 使用缓冲文件的文档和快照，最后一个关闭时删除文件
+    private int users = 1;
+
+    // Constructor, creates the temporary file
+    // 构造函数，创建临时文件
+    public CharSpool() throws IOException
+    {
+        file = File.createTempFile("guangnotepad", ".spool");
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    // Number of characters in the spool
+    // 缓冲文件中的字符数
+    public synchronized int length()
+    {
+        return length;
+    }
+
+    // Appending characters to the end
+    // 在末尾追加字符
+    public synchronized void append(char[] chars, int offset, int count) throws IOException
+    {
+        while (count > 0)
+        {
+            int n = Math.min(count, SEGMENT_CHARS - tailLength);
+            if (tailLength + n > tail.length)
+            {
+                tail = Arrays.copyOf(tail, Math.min(SEGMENT_CHARS, Math.max(tailLength + n, tail.length * 2)));
+            }
+            System.arraycopy(chars, offset, tail, tailLength, n);
+            tailLength += n;
+            length += n;
+            offset += n;
+            count -= n;
+
+            if (tailLength == SEGMENT_CHARS)
+            {
+                flushTail();
+            }
+        }
+    }
+
+    // Writing the full tail into the file and mapping it
+    // 将完整的尾部写入文件并映射
+    private void flushTail() throws IOException
+    {
+        long position = (long) segments.size() * SEGMENT_CHARS * 2;
+        ByteBuffer bytes = ByteBuffer.allocate(SEGMENT_CHARS * 2);
+        bytes.asCharBuffer().put(tail, 0, SEGMENT_CHARS);
+
+        while (bytes.hasRemaining())
+        {
+            channel.write(bytes, position + bytes.position());
+        }
+
+        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, position, SEGMENT_CHARS * 2L).asCharBuffer());
+        tailLength = 0;
+    }
+
+    // Dropping the free space of the tail when no more text comes soon (the end of loading)
+    // 当不会很快有更多文本时（加载结束）丢弃尾部的空闲空间
+    public synchronized void trim()
+    {
+        if (tail.length > tailLength) tail = Arrays.copyOf(tail, tailLength);
+    }
+
+    // Reading one character
+    // 读取一个字符
+    public synchronized char charAt(int index)
+    {
+        int segment = index / SEGMENT_CHARS;
+        if (segment < segments.size())
+        {
+            return segments.get(segment).get(index % SEGMENT_CHARS);
+        }
+        return tail[index % SEGMENT_CHARS];
+    }
+
+    // Copying a range of characters into an array
+    // 将一段字符复制到数组中
+    public synchronized void getChars(int start, int count, char[] dest, int destPos)
+    {
+        if (start < 0 || count < 0 || start + count > length)
+        {
+            throw new IndexOutOfBoundsException("Spool range " + start + "+" + count + " of " + length);
+        }
+
+        while (count > 0)
+        {
+            int segment = start / SEGMENT_CHARS;
+            int inSegment = start % SEGMENT_CHARS;
+            int n = Math.min(count, SEGMENT_CHARS - inSegment);
+
+            if (segment < segments.size())
+            {
+                CharBuffer view = segments.get(segment).duplicate();
+                ((Buffer) view).position(inSegment);
+                view.get(dest, destPos, n);
+            }
+            else
+            {
+                System.arraycopy(tail, inSegment, dest, destPos, n);
+            }
+
+            start += n;
+            destPos += n;
+            count -= n;
+        }
+    }
+
+    // One more user of the spool (a snapshot that is read on another thread)
+    // 缓冲文件的又一个使用者（在另一个线程上读取的快照）
+    public synchronized void retain()
+    {
+        users++;
+    }
+
+    // Closing and deleting the temporary file when no one uses it
+    // 没有人使用时关闭并删除临时文件
+    public synchronized void close()
+    {
+        if (closed || --users > 0) return;
+        closed = true;
+        segments.clear();
+
+        try
+        {
+            channel.close();
+            randomAccessFile.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        file.delete();
+    }
+}
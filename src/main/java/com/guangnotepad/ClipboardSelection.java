@@ -0,0 +1,365 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+
+/*
+ * Selected text on the clipboard, made only when another program asks for it.
+ * Copying takes a snapshot of the document (the pieces, not the text), so Ctrl+A, Ctrl+C on a huge
+ * Document returns at once and later edits don't change what was copied.
+ * Text is given as a String, a Reader or a UTF-8 stream, and as rtf and html with the character
+ * Attributes of the editor. Streams are written by a thread while they are read, so the text is
+ * Never held in memory as a whole (only the String flavor makes it).
+ * Styles of a copy are read from the document when rtf or html is asked for the first time,
+ * After the document was changed only text is offered. A cut keeps the styles of its text at once,
+ * Because the text leaves the document.
+ *
+ * 剪贴板上的选定文本，只有在另一个程序请求时才生成。
+ * 复制会获取文档的快照（片段，而不是文本），因此在巨大的文档上按Ctrl+A、Ctrl+C会立即返回，
+ * 以后的编辑不会改变复制的内容。
+ * 文本以String、Reader或UTF-8流的形式提供，也以带有编辑器字符属性的rtf和html形式提供。
+ * 流在被读取时由一个线程写入，因此文本永远不会作为整体保存在内存中（只有String格式会生成它）。
+ * 复制的样式在第一次请求rtf或html时从文档中读取，文档被更改后只提供文本。
+ * 剪切会立即保留其文本的样式，因为文本离开了文档。
+ */
+
+
+// Clipboard selection class
+// 剪贴板选择类
+
+public class ClipboardSelection implements Transferable, ClipboardOwner
+{
+    private static final int CHUNK = 64 << 10;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final DataFlavor READER_FLAVOR = flavor("text/plain;class=java.io.Reader");
+    static final DataFlavor UTF8_FLAVOR = flavor("text/plain;charset=UTF-8;class=java.io.InputStream");
+    static final DataFlavor RTF_FLAVOR = flavor("text/rtf;class=java.io.InputStream");
+    static final DataFlavor HTML_FLAVOR = flavor("text/html;charset=UTF-8;class=java.io.InputStream");
+
+    private static final DataFlavor[] TEXT_FLAVORS = { DataFlavor.stringFlavor, READER_FLAVOR, UTF8_FLAVOR };
+    private static final DataFlavor[] ALL_FLAVORS = {
+        RTF_FLAVOR, HTML_FLAVOR, DataFlavor.stringFlavor, READER_FLAVOR, UTF8_FLAVOR
+    };
+
+    private final DocumentSnapshot text;
+    private final int start;
+    private final int end;
+
+    // Snapshot with the styles of the selection (null until rtf or html is asked for)
+    // 带有选择样式的快照（在请求rtf或html之前为null）
+    private DocumentSnapshot styled;
+
+    // The clipboard and the readers and streams that are still open, the snapshots are released after the last one
+    // 剪贴板以及仍然打开的读取器和流，快照在最后一个之后释放
+    private int users = 1;
+
+    private ClipboardSelection(DocumentSnapshot text, DocumentSnapshot styled, int start, int end)
+    {
+        this.text = text;
+        this.styled = styled;
+        this.start = start;
+        this.end = end;
+    }
+
+    // Copy of [start, end), its styles are read later
+    // [start, end)的副本，其样式稍后读取
+    public static ClipboardSelection copy(PieceTableDocument document, int start, int end)
+    {
+        return new ClipboardSelection(document.snapshot(false), null, start, end);
+    }
+
+    // Copy of [start, end) that is about to be removed, its styles are kept now
+    // 即将被删除的[start, end)的副本，现在保留其样式
+    public static ClipboardSelection cut(PieceTableDocument document, int start, int end)
+    {
+        DocumentSnapshot snapshot = document.snapshot(start, end);
+        return new ClipboardSelection(snapshot, snapshot, start, end);
+    }
+
+    private static DataFlavor flavor(String mimeType)
+    {
+        try
+        {
+            return new DataFlavor(mimeType);
+        }
+        catch (ClassNotFoundException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getLength()
+    {
+        return end - start;
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors()
+    {
+        return (styled != null || !text.isOutdated() ? ALL_FLAVORS : TEXT_FLAVORS).clone();
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor)
+    {
+        return Arrays.asList(getTransferDataFlavors()).contains(flavor);
+    }
+
+    // Making the data of a flavor, called when another program pastes
+    // 生成某种格式的数据，在另一个程序粘贴时调用
+    @Override
+    public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException
+    {
+        retain();
+        try
+        {
+            if (flavor.equals(DataFlavor.stringFlavor)) return text.getText(start, end - start);
+            if (flavor.equals(READER_FLAVOR)) return new SelectionReader();
+            if (flavor.equals(UTF8_FLAVOR)) return stream(this::writeText);
+            if (flavor.equals(RTF_FLAVOR) && getStyled() != null) return stream(this::writeRtf);
+            if (flavor.equals(HTML_FLAVOR) && getStyled() != null) return stream(this::writeHtml);
+        }
+        catch (BadLocationException e)
+        {
+            throw new IOException(e);
+        }
+        finally
+        {
+            release();
+        }
+        throw new UnsupportedFlavorException(flavor);
+    }
+
+    // The clipboard holds something else now, the snapshots let the spool file go when nothing reads them
+    // 剪贴板现在保存着其他内容，当没有任何东西读取快照时，快照释放缓冲文件
+    @Override
+    public void lostOwnership(Clipboard clipboard, Transferable contents)
+    {
+        release();
+    }
+
+    // One more user of the snapshots, a selection that was already released can't be read
+    // 快照的又一个使用者，已经释放的选择无法读取
+    private synchronized void retain() throws IOException
+    {
+        if (users == 0) throw new IOException("The selection is no longer on the clipboard");
+        users++;
+    }
+
+    private synchronized void release()
+    {
+        if (--users > 0) return;
+        text.release();
+        if (styled != null) styled.release();
+    }
+
+    // Styles of the selection, read from the document if it's still as it was copied.
+    // It's called on the thread of the clipboard: the snapshot is taken under the read lock of the document,
+    // So it can't see a half-done edit, and its count tells if an edit came after the copy.
+    //
+    // 选择的样式，如果文档仍然与复制时相同，则从文档中读取。
+    // 它在剪贴板的线程上调用：快照在文档的读锁下获取，因此不会看到未完成的编辑，
+    // 其计数表明复制之后是否有编辑。
+    private synchronized DocumentSnapshot getStyled()
+    {
+        if (styled != null) return styled;
+        DocumentSnapshot snapshot = text.getDocument().snapshot(start, end);
+        if (snapshot.getModificationCount() != text.getModificationCount())
+        {
+            snapshot.release();
+            return null;
+        }
+        styled = snapshot;
+        return styled;
+    }
+
+    // Writing into a pipe on another thread, the receiver reads while it's written
+    // 在另一个线程上写入管道，接收方在写入时读取
+    private interface Content
+    {
+        void write(OutputStream out) throws IOException, BadLocationException;
+    }
+
+    private InputStream stream(Content content) throws IOException
+    {
+        PipedInputStream in = new PipedInputStream(CHUNK);
+        PipedOutputStream out = new PipedOutputStream(in);
+        retain();
+        Thread writer = new Thread(() ->
+        {
+            try
+            {
+                content.write(out);
+            }
+            catch (IOException | BadLocationException e)
+            {
+                // The receiver stopped reading
+                // 接收方停止了读取
+            }
+            finally
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+                release();
+            }
+        }, "Clipboard writer");
+        writer.setDaemon(true);
+        writer.start();
+        return in;
+    }
+
+    private void writeText(OutputStream out) throws IOException, BadLocationException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8), CHUNK);
+        char[] chars = new char[CHUNK];
+        try (Reader reader = new SelectionReader())
+        {
+            int count;
+            while ((count = reader.read(chars, 0, chars.length)) > 0)
+            {
+                writer.write(chars, 0, count);
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeRtf(OutputStream out) throws IOException, BadLocationException
+    {
+        RtfWriter.write(styled, start, end, out);
+    }
+
+    // Html with one span for every run of the same character attributes, line ends are kept by pre-wrap
+    // 每个相同字符属性的字符段对应一个span的html，行尾由pre-wrap保留
+    private void writeHtml(OutputStream out) throws IOException, BadLocationException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, UTF8), CHUNK);
+        writer.write("<html><head><meta charset=\"UTF-8\"></head><body><div style=\"white-space: pre-wrap\">");
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        int offset = start;
+        for (int i = 0; i < styled.getRunCount() && offset < end; i++)
+        {
+            int runEnd = Math.min(styled.getRunEnd(i), end);
+            if (runEnd <= offset) continue;
+
+            writer.write("<span style=\"");
+            writer.write(css(styled.getRunAttributes(i)));
+            writer.write("\">");
+            while (offset < runEnd)
+            {
+                styled.getText(offset, runEnd - offset, segment);
+                for (int j = segment.offset; j < segment.offset + segment.count; j++)
+                {
+                    char c = segment.array[j];
+                    if (c == '<') writer.write("&lt;");
+                    else if (c == '>') writer.write("&gt;");
+                    else if (c == '&') writer.write("&amp;");
+                    else writer.write(c);
+                }
+                offset += segment.count;
+            }
+            writer.write("</span>");
+        }
+        writer.write("</div></body></html>");
+        writer.flush();
+    }
+
+    // Css of the attributes that can be set in the editor
+    // 可以在编辑器中设置的属性的css
+    private static String css(AttributeSet attributes)
+    {
+        List<String> rules = new ArrayList<>();
+        Object family = attributes.getAttribute(StyleConstants.FontFamily);
+        if (family instanceof String) rules.add("font-family: '" + ((String) family).replace("'", "") + "'");
+        Object size = attributes.getAttribute(StyleConstants.FontSize);
+        if (size instanceof Integer) rules.add("font-size: " + size + "pt");
+        if (StyleConstants.isBold(attributes)) rules.add("font-weight: bold");
+        if (StyleConstants.isItalic(attributes)) rules.add("font-style: italic");
+        if (StyleConstants.isUnderline(attributes) && StyleConstants.isStrikeThrough(attributes))
+        {
+            rules.add("text-decoration: underline line-through");
+        }
+        else if (StyleConstants.isUnderline(attributes)) rules.add("text-decoration: underline");
+        else if (StyleConstants.isStrikeThrough(attributes)) rules.add("text-decoration: line-through");
+        Object foreground = attributes.getAttribute(StyleConstants.Foreground);
+        if (foreground instanceof Color) rules.add("color: " + hex((Color) foreground));
+        Object background = attributes.getAttribute(StyleConstants.Background);
+        if (background instanceof Color) rules.add("background-color: " + hex((Color) background));
+        return String.join("; ", rules);
+    }
+
+    private static String hex(Color color)
+    {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    // Reader of the selected text, chunk by chunk from the snapshot, the snapshot stays until it's closed
+    // 选定文本的读取器，从快照中逐块读取，快照保留到读取器关闭
+    private class SelectionReader extends Reader
+    {
+        private final Segment segment = new Segment();
+        private int offset = start;
+        private boolean closed;
+
+        SelectionReader() throws IOException
+        {
+            retain();
+            segment.setPartialReturn(true);
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) throws IOException
+        {
+            if (offset >= end) return -1;
+            if (len == 0) return 0;
+            try
+            {
+                text.getText(offset, Math.min(len, end - offset), segment);
+            }
+            catch (BadLocationException e)
+            {
+                throw new IOException(e);
+            }
+            System.arraycopy(segment.array, segment.offset, buffer, off, segment.count);
+            offset += segment.count;
+            return segment.count;
+        }
+
+        @Override
+        public void close()
+        {
+            if (closed) return;
+            closed = true;
+            offset = end;
+            release();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.guangnotepad;
+
+import java.util.concurrent.CancellationException;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/*
+ * Text of a document snapshot as a CharSequence, for java.util.regex.
+ * Chars are read through a partial Segment, one piece of the piece table at a time,
+ * So a regular expression runs over the document without copying it into a String.
+ * Reading is guarded: after the deadline or when the thread is interrupted the next read throws
+ * A CancellationException, this stops a regular expression that backtracks forever.
+ *
+ * 文档快照的文本作为CharSequence，用于java.util.regex。
+ * 字符通过部分Segment读取，每次读取片段表的一个片段，
+ * 因此正则表达式在文档上运行而无需将其复制到String中。
+ * 读取受到保护：超过截止时间或线程被中断后，下一次读取会抛出CancellationException，
+ * 这会停止无限回溯的正则表达式。
+ */
+
+
+// Document char sequence class
+// 文档字符序列类
+
+public class DocumentCharSequence implements CharSequence
+{
+    // Longest piece read at once and how often the guard is checked
+    // 一次读取的最长片段以及检查保护的频率
+    private static final int WINDOW = 64 << 10;
+    private static final int CHECK_MASK = (1 << 14) - 1;
+
+    private final DocumentSnapshot snapshot;
+    private final int start;
+    private final int length;
+    private long deadline;
+    private final Segment segment = new Segment();
+
+    // Chars of [windowStart, windowEnd) of the snapshot are in the segment
+    // 快照的[windowStart, windowEnd)的字符在segment中
+    private int windowStart;
+    private int windowEnd;
+    private int reads;
+
+    // Constructor, without a timeout
+    // 构造函数，没有超时
+    public DocumentCharSequence(DocumentSnapshot snapshot)
+    {
+        this(snapshot, 0, snapshot.getLength(), 0);
+    }
+
+    private DocumentCharSequence(DocumentSnapshot snapshot, int start, int length, long deadline)
+    {
+        this.snapshot = snapshot;
+        this.start = start;
+        this.length = length;
+        this.deadline = deadline;
+        segment.setPartialReturn(true);
+    }
+
+    // Reading stops when the timeout passes from now on (0 for no timeout)
+    // 从现在起超时后停止读取（0表示没有超时）
+    public void setTimeout(long timeoutMillis)
+    {
+        deadline = timeoutMillis > 0 ? System.nanoTime() + timeoutMillis * 1000000 : 0;
+    }
+
+    @Override
+    public int length()
+    {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index);
+        if ((++reads & CHECK_MASK) == 0) checkGuard();
+
+        int offset = start + index;
+        if (offset < windowStart || offset >= windowEnd) read(offset);
+        return segment.array[segment.offset + offset - windowStart];
+    }
+
+    // Sub-sequences are views too, only toString copies chars
+    // 子序列也是视图，只有toString复制字符
+    @Override
+    public CharSequence subSequence(int from, int to)
+    {
+        if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException(from + ", " + to);
+        return new DocumentCharSequence(snapshot, start + from, to - from, deadline);
+    }
+
+    @Override
+    public String toString()
+    {
+        try
+        {
+            return snapshot.getText(start, length);
+        }
+        catch (BadLocationException e)
+        {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+    }
+
+    // Reading the piece that contains the offset, matching mostly goes forward
+    // 读取包含偏移量的片段，匹配大多是向前进行的
+    private void read(int offset)
+    {
+        try
+        {
+            snapshot.getText(offset, Math.min(WINDOW, start + length - offset), segment);
+        }
+        catch (BadLocationException e)
+        {
+            throw new IndexOutOfBoundsException(e.getMessage());
+        }
+        windowStart = offset;
+        windowEnd = offset + segment.count;
+    }
+
+    private void checkGuard()
+    {
+        if (Thread.currentThread().isInterrupted())
+        {
+            throw new CancellationException("Search was cancelled");
+        }
+        if (deadline != 0 && System.nanoTime() - deadline > 0)
+        {
+            throw new CancellationException("Search took too long");
+        }
+    }
+}
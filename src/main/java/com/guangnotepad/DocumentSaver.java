@@ -0,0 +1,238 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPOutputStream;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/*
+ * Streaming and atomic saving.
+ * A document snapshot is read piece by piece through a partial Segment and encoded with one CharsetEncoder
+ * Into a direct ByteBuffer, so the whole text is never copied into a String and extra memory does not grow with the file.
+ * Everything is written into a temporary file in the same directory, forced to the disk
+ * And then renamed over the original, so a crash in the middle of saving never leaves a truncated file.
+ *
+ * 流式和原子保存。
+ * 文档快照通过部分Segment逐段读取，并使用一个CharsetEncoder编码到直接ByteBuffer中，
+ * 因此整个文本永远不会复制到String中，额外内存不会随文件增长。
+ * 所有内容都写入同一目录中的临时文件，强制写入磁盘，然后重命名覆盖原始文件，
+ * 因此保存过程中的崩溃永远不会留下被截断的文件。
+ */
+
+
+// Document saver class
+// 文档保存器类
+
+public class DocumentSaver
+{
+    private static final int CHUNK = 64 << 10;
+
+    // Something that writes the new content of the file
+    // 写入文件新内容的东西
+    interface Content
+    {
+        void write(FileChannel channel) throws IOException, BadLocationException;
+    }
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer chars = CharBuffer.allocate(CHUNK);
+    private final ByteBuffer bytes;
+    private final char[] separatorChars = new char[2];
+
+    private DocumentSaver(WritableByteChannel channel, Charset charset)
+    {
+        this.channel = channel;
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocateDirect((int) Math.ceil(CHUNK * (double) encoder.maxBytesPerChar()));
+    }
+
+    // Saving the text of a snapshot, \n is written as the original separator of each line
+    // 保存快照的文本，\n被写为每行的原始分隔符
+    public static void saveText(DocumentSnapshot snapshot, File file, String encoding, LineEndings endings)
+        throws IOException, BadLocationException
+    {
+        Charset charset = Charset.forName(encoding);
+        writeAtomically(file, channel -> new DocumentSaver(channel, charset).writeText(snapshot, endings));
+    }
+
+    // Saving the text of a snapshot gzip-compressed, encoded chunks go straight into the deflater
+    // The stream is finished but not closed, so the file channel can still be forced to the disk
+    //
+    // 以gzip压缩保存快照的文本，编码后的块直接进入压缩器
+    // 流被结束但不关闭，因此文件通道仍然可以强制写入磁盘
+    public static void saveCompressedText(DocumentSnapshot snapshot, File file, String encoding, LineEndings endings)
+        throws IOException, BadLocationException
+    {
+        Charset charset = Charset.forName(encoding);
+        writeAtomically(file, channel ->
+        {
+            GZIPOutputStream out = new GZIPOutputStream(Channels.newOutputStream(channel), CHUNK);
+            new DocumentSaver(Channels.newChannel(out), charset).writeText(snapshot, endings);
+            out.finish();
+        });
+    }
+
+    // Saving a styled snapshot in rtf format
+    // 以rtf格式保存带样式的快照
+    public static void saveRtf(DocumentSnapshot snapshot, File file) throws IOException, BadLocationException
+    {
+        writeAtomically(file, channel -> RtfWriter.write(snapshot, Channels.newOutputStream(channel)));
+    }
+
+    // Saving a styled snapshot in the native format: header and runs, then the text in UTF-8
+    // 以本地格式保存带样式的快照：文件头和字符段，然后是UTF-8文本
+    public static void saveNative(DocumentSnapshot snapshot, File file) throws IOException, BadLocationException
+    {
+        ByteBuffer header = NativeFormat.header(snapshot);
+        writeAtomically(file, channel ->
+        {
+            while (header.hasRemaining()) channel.write(header);
+            new DocumentSaver(channel, Charset.forName("UTF-8")).writeText(snapshot, null);
+        });
+    }
+
+    // Writing a temporary file next to the target and renaming it over the target
+    // 在目标旁边写入临时文件并将其重命名覆盖目标
+    static void writeAtomically(File file, Content content) throws IOException, BadLocationException
+    {
+        File target = file.getAbsoluteFile();
+        File temp = File.createTempFile(target.getName() + "-", ".tmp", target.getParentFile());
+        boolean moved = false;
+        try
+        {
+            try (FileOutputStream out = new FileOutputStream(temp))
+            {
+                FileChannel channel = out.getChannel();
+                content.write(channel);
+                channel.force(true);
+            }
+            copyPermissions(target.toPath(), temp.toPath());
+
+            try
+            {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+        }
+        finally
+        {
+            if (!moved) temp.delete();
+        }
+    }
+
+    // Temporary files are private, the saved file keeps the permissions of the original
+    // 临时文件是私有的，保存的文件保留原始文件的权限
+    private static void copyPermissions(Path from, Path to)
+    {
+        if (!Files.exists(from)) return;
+        try
+        {
+            Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+        }
+        catch (UnsupportedOperationException | IOException e)
+        {
+            // Not a POSIX file system
+            // 不是POSIX文件系统
+        }
+    }
+
+    // Walking the snapshot in chunks and encoding them
+    // 分块遍历快照并编码
+    private void writeText(DocumentSnapshot snapshot, LineEndings endings) throws IOException, BadLocationException
+    {
+        LineEndings.Cursor cursor = endings == null ? null : endings.cursor();
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        int offset = 0;
+        int length = snapshot.getLength();
+        while (offset < length)
+        {
+            snapshot.getText(offset, Math.min(CHUNK, length - offset), segment);
+
+            // Runs without line breaks are copied at once
+            // 没有换行符的部分一次复制
+            int start = segment.offset;
+            int end = segment.offset + segment.count;
+            for (int i = start; i < end; i++)
+            {
+                if (segment.array[i] == '\n')
+                {
+                    put(segment.array, start, i - start);
+                    String separator = cursor == null ? LineEndings.LF : cursor.separatorAt(offset + (i - segment.offset));
+                    separator.getChars(0, separator.length(), separatorChars, 0);
+                    put(separatorChars, 0, separator.length());
+                    start = i + 1;
+                }
+            }
+            put(segment.array, start, end - start);
+            offset += segment.count;
+        }
+
+        encode(true);
+        drain();
+    }
+
+    private void put(char[] array, int offset, int count) throws IOException
+    {
+        while (count > 0)
+        {
+            if (!chars.hasRemaining()) encode(false);
+            int n = Math.min(count, chars.remaining());
+            chars.put(array, offset, n);
+            offset += n;
+            count -= n;
+        }
+    }
+
+    // Encoding buffered characters, a surrogate pair cut by the buffer stays for the next call
+    // 编码缓冲的字符，被缓冲区截断的代理对留到下次调用
+    private void encode(boolean endOfInput) throws IOException
+    {
+        ((Buffer) chars).flip();
+        while (true)
+        {
+            CoderResult result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isOverflow())
+            {
+                drain();
+                continue;
+            }
+            if (!endOfInput) break;
+
+            while (encoder.flush(bytes).isOverflow()) drain();
+            break;
+        }
+        chars.compact();
+    }
+
+    private void drain() throws IOException
+    {
+        ((Buffer) bytes).flip();
+        while (bytes.hasRemaining()) channel.write(bytes);
+        ((Buffer) bytes).clear();
+    }
+}
@@ -0,0 +1,173 @@
+package com.guangnotepad;
+
+import java.util.Arrays;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/*
+ * Immutable copy of a document taken on the Event Dispatch Thread and read on another thread.
+ * The text is shared with the piece table, so taking a snapshot costs almost nothing.
+ * Styled snapshots also keep the attributes of paragraphs and character runs
+ * (attribute sets of a StyleContext are immutable, so only references are copied).
+ * The modification count tells whether the document was edited after the snapshot.
+ *
+ * 在事件调度线程上获取并在另一个线程上读取的文档的不可变副本。
+ * 文本与片段表共享，因此获取快照几乎没有成本。
+ * 带样式的快照还保留段落和字符段的属性
+ * （StyleContext的属性集是不可变的，因此只复制引用）。
+ * 修改计数表明快照之后文档是否被编辑过。
+ */
+
+
+// Document snapshot class
+// 文档快照类
+
+public class DocumentSnapshot
+{
+    private final PieceTableDocument document;
+    private final PieceTableContent.Snapshot text;
+    private final int modificationCount;
+
+    // End offsets and attributes of paragraphs and character runs (styled snapshots only)
+    // 段落和字符段的结束偏移量和属性（仅带样式的快照）
+    private int[] paragraphEnds;
+    private AttributeSet[] paragraphAttributes;
+    private int paragraphCount;
+    private int[] runEnds;
+    private AttributeSet[] runAttributes;
+    private int runCount;
+
+    // Constructor, called under the read lock of the document
+    // 构造函数，在文档的读锁下调用
+    DocumentSnapshot(PieceTableDocument document, PieceTableContent.Snapshot text, int modificationCount, boolean withStyles)
+    {
+        this.document = document;
+        this.text = text;
+        this.modificationCount = modificationCount;
+        if (withStyles) copyStyles(0, document.getDefaultRootElement().getElementCount() - 1);
+    }
+
+    // Constructor of a snapshot with the styles of the paragraphs in [start, end) only, the text is all there
+    // 仅带有[start, end)中段落样式的快照的构造函数，文本是完整的
+    DocumentSnapshot(PieceTableDocument document, PieceTableContent.Snapshot text, int modificationCount, int start, int end)
+    {
+        this.document = document;
+        this.text = text;
+        this.modificationCount = modificationCount;
+        Element root = document.getDefaultRootElement();
+        copyStyles(root.getElementIndex(start), root.getElementIndex(Math.max(start, end - 1)));
+    }
+
+    // Document the snapshot was taken from
+    // 获取快照的文档
+    public PieceTableDocument getDocument()
+    {
+        return document;
+    }
+
+    public int getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    // True if the document was changed after the snapshot
+    // 如果快照之后文档被更改，则为真
+    public boolean isOutdated()
+    {
+        return document.getModificationCount() != modificationCount;
+    }
+
+    public int getLength()
+    {
+        return text.getLength();
+    }
+
+    public void getText(int offset, int length, Segment txt) throws BadLocationException
+    {
+        text.getText(offset, length, txt);
+    }
+
+    public String getText(int offset, int length) throws BadLocationException
+    {
+        return text.getText(offset, length);
+    }
+
+    public PieceTableContent.Snapshot getPieces()
+    {
+        return text;
+    }
+
+    // Paragraphs of a styled snapshot
+    // 带样式快照的段落
+    public int getParagraphCount()
+    {
+        return paragraphCount;
+    }
+
+    public int getParagraphEnd(int index)
+    {
+        return paragraphEnds[index];
+    }
+
+    public AttributeSet getParagraphAttributes(int index)
+    {
+        return paragraphAttributes[index];
+    }
+
+    // Character runs of a styled snapshot
+    // 带样式快照的字符段
+    public int getRunCount()
+    {
+        return runCount;
+    }
+
+    public int getRunEnd(int index)
+    {
+        return runEnds[index];
+    }
+
+    public AttributeSet getRunAttributes(int index)
+    {
+        return runAttributes[index];
+    }
+
+    // Releasing the text when the snapshot is no longer needed
+    // 当快照不再需要时释放文本
+    public void release()
+    {
+        text.release();
+    }
+
+    // Recording paragraphs first to last and their character runs
+    // 记录从first到last的段落及其字符段
+    private void copyStyles(int first, int last)
+    {
+        Element root = document.getDefaultRootElement();
+        int paragraphs = last - first + 1;
+        paragraphEnds = new int[paragraphs];
+        paragraphAttributes = new AttributeSet[paragraphs];
+        runEnds = new int[paragraphs];
+        runAttributes = new AttributeSet[paragraphs];
+
+        for (int i = first; i <= last; i++)
+        {
+            Element paragraph = root.getElement(i);
+            paragraphEnds[paragraphCount] = paragraph.getEndOffset();
+            paragraphAttributes[paragraphCount++] = paragraph.getAttributes().copyAttributes();
+
+            for (int j = 0; j < paragraph.getElementCount(); j++)
+            {
+                Element run = paragraph.getElement(j);
+                if (runCount == runEnds.length)
+                {
+                    runEnds = Arrays.copyOf(runEnds, runCount * 2);
+                    runAttributes = Arrays.copyOf(runAttributes, runCount * 2);
+                }
+                runEnds[runCount] = run.getEndOffset();
+                runAttributes[runCount++] = run.getAttributes().copyAttributes();
+            }
+        }
+    }
+}
@@ -1,5 +1,10 @@
 package com.guangnotepad;
 
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.IOException;
+import javax.swing.JTextPane;
+
 // "Edit" menu class
 // "编辑"菜单类
 
@@ -7,6 +12,10 @@ public class EditFunction
 {
     private GUI gui;
 
+    // Paste that is still inserting text (null if none)
+    // 仍在插入文本的粘贴（没有则为null）
+    private PasteTask pasting;
+
     public EditFunction(GUI gui)
     {
         this.gui = gui;
@@ -16,8 +25,11 @@ public class EditFunction
     // "撤销"功能
     public void undo()
     {
-        // Use UndoManager and display notification
-        // 使用UndoManager并显示通知
+        // Use the undo history and display notification, typed words are undone one at a time
+        // A running paste is stopped first, so its text is undone as one edit
+        // 使用撤销历史并显示通知，输入的单词一次撤销一个
+        // 正在运行的粘贴先被停止，因此其文本作为一个编辑被撤销
+        cancelPaste();
         gui.um.undo();
         gui.currentPopup = new PopupMessage(gui, "Undo");
         gui.currentPopup.setVisible(true);
@@ -27,8 +39,9 @@ public class EditFunction
     // "重做"功能
     public void redo()
     {
-        // Use UndoManager and display notification
-        // 使用UndoManager并显示通知
+        // Use the undo history and display notification
+        // 使用撤销历史并显示通知
+        cancelPaste();
         gui.um.redo();
         gui.currentPopup = new PopupMessage(gui, "Redo");
         gui.currentPopup.setVisible(true);
@@ -39,16 +52,11 @@ public class EditFunction
     // 文本剪切功能
     public void cut()
     {
-        // Get selected text
-        // 获取选定的文本
-        String selectedText = gui.textArea.getSelectedText();
-
-        // If text is selected, copy it and delete
-        // 如果文本被选中，复制并删除
-        if (selectedText != null)
+        // If text is selected, put it on the clipboard and delete it
+        // 如果文本被选中，将其放到剪贴板上并删除
+        if (hasSelection())
         {
-            gui.textArea.copy();
-            gui.textArea.replaceSelection("");
+            if (toClipboard(true)) gui.textArea.replaceSelection("");
         }
 
         // Otherwise, display a message
@@ -64,15 +72,11 @@ public class EditFunction
     // 文本复制功能
     public void copy()
     {
-        // Get selected text
-        // 获取选定的文本
-        String selectedText = gui.textArea.getSelectedText();
-
         // If text is selected, copy it
         // 如果文本被选中，复制它
-        if (selectedText != null)
+        if (hasSelection())
         {
-            gui.textArea.copy();
+            if (!toClipboard(false)) return;
             gui.currentPopup = new PopupMessage(gui, "Copied!");
             gui.currentPopup.setVisible(true);
         }
@@ -86,21 +90,104 @@ public class EditFunction
         }
     }
 
+    // Checking the selection by its ends, the selected text is never made
+    // 通过选择的两端检查选择，从不生成选定的文本
+    private boolean hasSelection()
+    {
+        return gui.textArea.getSelectionStart() != gui.textArea.getSelectionEnd();
+    }
+
+    // Putting the selection on the clipboard, its text is made only when a program pastes it
+    // 将选择放到剪贴板上，只有当程序粘贴时才生成其文本
+    private boolean toClipboard(boolean cut)
+    {
+        if (!(gui.textArea.getDocument() instanceof PieceTableDocument))
+        {
+            gui.textArea.copy();
+            return true;
+        }
+
+        PieceTableDocument document = (PieceTableDocument) gui.textArea.getDocument();
+        int start = gui.textArea.getSelectionStart();
+        int end = gui.textArea.getSelectionEnd();
+        ClipboardSelection selection = cut ? ClipboardSelection.cut(document, start, end)
+            : ClipboardSelection.copy(document, start, end);
+        try
+        {
+            gui.textArea.getToolkit().getSystemClipboard().setContents(selection, selection);
+            return true;
+        }
+        catch (IllegalStateException e)
+        {
+            selection.lostOwnership(null, null);
+            gui.currentPopup = new PopupMessage(gui, "Clipboard is not available");
+            gui.currentPopup.setVisible(true);
+            return false;
+        }
+    }
+
     // Paste function
     // 粘贴功能
     public void paste()
     {
-        // Save the current cursor position
-        // 保存当前光标位置
-        int position = gui.textArea.getCaretPosition(); 
+        paste(gui.textArea, gui.textArea.getToolkit().getSystemClipboard());
+    }
 
-        // Paste text
-        // 粘贴文本
-        gui.textArea.paste();
+    void paste(JTextPane textArea, Clipboard clipboard)
+    {
+        // Nothing is pasted while a paste is still running
+        // 粘贴仍在运行时不粘贴任何内容
+        if (pasting != null) return;
+
+        // Documents other than the piece table are pasted at once
+        // 片段表以外的文档一次性粘贴
+        if (!(textArea.getDocument() instanceof PieceTableDocument))
+        {
+            textArea.paste();
+            return;
+        }
+
+        // Clipboard text is pasted in chunks, the caret goes after it when it's done.
+        // A small paste is finished by start already, pasteFinished then clears pasting.
+        //
+        // 剪贴板文本分块粘贴，完成后光标移到其后。
+        // 小的粘贴在start中就已完成，然后pasteFinished清除pasting。
+        try
+        {
+            PasteTask task = PasteTask.create(textArea, clipboard, this);
+            if (task == null) return;
+            pasting = task;
+            task.start();
+        }
+        catch (IOException | UnsupportedFlavorException | IllegalStateException e)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Exception when pasting!\n" + e.toString());
+            gui.currentPopup.setVisible(true);
+        }
+    }
 
-        // Set the cursor position to the end of the pasted text
-        // 将光标位置设置为粘贴文本的末尾
-        gui.textArea.setCaretPosition(position + gui.textArea.getSelectedText().length());
+    // Stopping a running paste (Escape), the text pasted so far stays
+    // 停止正在运行的粘贴（Escape），已粘贴的文本保留
+    public void cancelPaste()
+    {
+        if (pasting != null) pasting.cancel();
+    }
+
+    // Called by the paste task when all text is pasted, the paste was cancelled or failed
+    // 当所有文本都已粘贴、粘贴被取消或失败时由粘贴任务调用
+    void pasteFinished(PasteTask task, boolean cancelled, Exception error)
+    {
+        if (task == pasting) pasting = null;
+        if (error != null)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Exception when pasting!\n" + error.toString());
+            gui.currentPopup.setVisible(true);
+        }
+        else if (cancelled)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Paste cancelled");
+            gui.currentPopup.setVisible(true);
+        }
     }
 
     // Search function
@@ -0,0 +1,756 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/*
+ * Append-only journal of unsaved edits, used to recover work after a crash.
+ * Every insert, remove and attribute change of the document is encoded into a small binary record.
+ * Records are collected in memory on the Event Dispatch Thread and written to the journal file
+ * Once a second by a background thread, so typing never waits for the disk.
+ * When the journal grows, it is compacted into a checkpoint: the list of pieces of the document
+ * (ranges of the opened file and typed text), so recovery only replays the journal, not the whole file.
+ * Journals are kept in ~/.guangnotepad/journal and deleted when the document is saved.
+ *
+ * 未保存编辑的仅追加日志，用于在崩溃后恢复工作。
+ * 文档的每次插入、删除和属性更改都被编码为一个小的二进制记录。
+ * 记录在事件调度线程上收集在内存中，并由后台线程每秒写入一次日志文件，
+ * 因此输入永远不会等待磁盘。
+ * 当日志增长时，它被压缩为检查点：文档的片段列表
+ * （打开文件的范围和输入的文本），因此恢复只重放日志，而不是整个文件。
+ * 日志保存在~/.guangnotepad/journal中，并在保存文档时删除。
+ */
+
+
+// Edit journal class
+// 编辑日志类
+
+public class EditJournal implements DocumentListener
+{
+    static final File DIRECTORY = new File(new File(System.getProperty("user.home"), ".guangnotepad"), "journal");
+
+    private static final int MAGIC = 0x474E4A31;
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte STYLE = 3;
+    private static final byte CHECKPOINT = 4;
+
+    private static final long FLUSH_MILLIS = 1000;
+    private static final long COMPACT_BYTES = 4 << 20;
+    private static final int TEXT_PIECE = 64 << 10;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // One background thread writes all journals and undo histories
+    // 一个后台线程写入所有日志和撤销历史
+    static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "Edit journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // File the journal is relative to (path is empty for new files)
+    // 日志相对的文件（新文件的路径为空）
+    public static final class Base
+    {
+        static final Base NONE = new Base("", 0, 0, "", false);
+
+        final String path;
+        final long size;
+        final long modified;
+        final String encoding;
+        final boolean rtf;
+
+        Base(String path, long size, long modified, String encoding, boolean rtf)
+        {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.encoding = encoding;
+            this.rtf = rtf;
+        }
+
+        // Base for a file as it is on the disk now
+        // 磁盘上当前文件的基准
+        static Base of(File file, String encoding, boolean rtf)
+        {
+            return new Base(file.getAbsolutePath(), file.length(), file.lastModified(), encoding, rtf);
+        }
+
+        File getFile()
+        {
+            return path.isEmpty() ? null : new File(path);
+        }
+
+        // True if the file was not changed since the journal was started
+        // 如果自日志开始以来文件未更改，则为真
+        boolean isUnchanged()
+        {
+            File file = getFile();
+            return file != null && file.length() == size && file.lastModified() == modified;
+        }
+    }
+
+    // Header of a journal found on the disk
+    // 在磁盘上找到的日志的标题
+    public static final class Header
+    {
+        final File journal;
+        final Base base;
+        final boolean baseRequired;
+
+        Header(File journal, Base base, boolean baseRequired)
+        {
+            this.journal = journal;
+            this.base = base;
+            this.baseRequired = baseRequired;
+        }
+    }
+
+    private final File file;
+    private final PieceTableDocument document;
+    private final ScheduledFuture<?> task;
+
+    // Records waiting for the writer thread, guarded by the lock
+    // 等待写入线程的记录，由锁保护
+    private final Object lock = new Object();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(pending);
+    private DocumentSnapshot pendingCheckpoint;
+    private boolean pendingPieces;
+    private boolean pendingDelete;
+    private Base base;
+
+    // Event Dispatch Thread state
+    // 事件调度线程状态
+    private boolean originalPieces;
+    private long journalBytes;
+    private boolean compactScheduled;
+
+    // Writer thread state
+    // 写入线程状态
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    // Starting a journal for the document, original pieces may be used only if the spool holds the base file
+    // 为文档启动日志，只有当缓冲文件保存基准文件时才可以使用原始片段
+    public EditJournal(PieceTableDocument document, Base base, boolean originalPieces)
+    {
+        this(document, base, originalPieces, DIRECTORY);
+    }
+
+    EditJournal(PieceTableDocument document, Base base, boolean originalPieces, File directory)
+    {
+        this.document = document;
+        this.base = base;
+        this.originalPieces = originalPieces;
+        this.file = new File(directory, (base.path.isEmpty() ? "new" : new File(base.path).getName())
+            + "-" + Long.toHexString(System.nanoTime()) + ".journal");
+
+        document.addDocumentListener(this);
+        task = WRITER.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    // Document listener, records are encoded on the Event Dispatch Thread
+    // 文档监听器，记录在事件调度线程上编码
+
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        try
+        {
+            String text = document.getText(e.getOffset(), e.getLength());
+            synchronized (lock)
+            {
+                out.writeByte(INSERT);
+                out.writeInt(e.getOffset());
+                writeText(out, text);
+            }
+            journalBytes += 9 + e.getLength();
+
+            // Text typed with attributes keeps them
+            // 带属性输入的文本保留它们
+            if (hasAttributes(e.getOffset(), e.getLength()))
+            {
+                recordStyle(e.getOffset(), e.getLength());
+            }
+        }
+        catch (IOException | BadLocationException ex)
+        {
+            ex.printStackTrace();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        try
+        {
+            synchronized (lock)
+            {
+                out.writeByte(REMOVE);
+                out.writeInt(e.getOffset());
+                out.writeInt(e.getLength());
+            }
+            journalBytes += 9;
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        try
+        {
+            recordStyle(e.getOffset(), e.getLength());
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+        compactIfNeeded();
+    }
+
+    private boolean hasAttributes(int offset, int length)
+    {
+        int end = offset + length;
+        while (offset < end)
+        {
+            Element run = document.getCharacterElement(offset);
+            if (run.getAttributes().getAttributeCount() > 0) return true;
+            offset = run.getEndOffset();
+        }
+        return false;
+    }
+
+    // Recording the attributes of all character runs in the range
+    // 记录范围内所有字符段的属性
+    private void recordStyle(int offset, int length) throws IOException
+    {
+        List<int[]> ranges = new ArrayList<>();
+        List<AttributeSet> attributes = new ArrayList<>();
+        int end = Math.min(offset + length, document.getLength());
+        while (offset < end)
+        {
+            Element run = document.getCharacterElement(offset);
+            int runEnd = Math.min(run.getEndOffset(), end);
+            ranges.add(new int[] { offset, runEnd - offset });
+            attributes.add(run.getAttributes());
+            offset = runEnd;
+        }
+
+        synchronized (lock)
+        {
+            for (int i = 0; i < ranges.size(); i++)
+            {
+                out.writeByte(STYLE);
+                out.writeInt(ranges.get(i)[0]);
+                out.writeInt(ranges.get(i)[1]);
+                writeAttributes(out, attributes.get(i));
+            }
+        }
+        journalBytes += 16 * ranges.size();
+    }
+
+    // Compacting is done later, not inside the document event
+    // 压缩稍后完成，不在文档事件内部
+    private void compactIfNeeded()
+    {
+        if (journalBytes < COMPACT_BYTES || compactScheduled) return;
+        compactScheduled = true;
+        SwingUtilities.invokeLater(this::checkpoint);
+    }
+
+    // Replacing the journal with the current state of the document
+    // 用文档的当前状态替换日志
+    public void checkpoint()
+    {
+        compactScheduled = false;
+        journalBytes = 0;
+        DocumentSnapshot snapshot = document.snapshot(true);
+        synchronized (lock)
+        {
+            pending.reset();
+            if (pendingCheckpoint != null) pendingCheckpoint.release();
+            pendingCheckpoint = snapshot;
+            pendingPieces = originalPieces;
+        }
+    }
+
+    // Document was saved: unsaved edits are gone, new edits are relative to the saved file
+    // 文档已保存：未保存的编辑消失，新编辑相对于已保存的文件
+    public void saved(Base savedBase, boolean editedAfterSave)
+    {
+        originalPieces = false;
+        synchronized (lock)
+        {
+            pending.reset();
+            if (pendingCheckpoint != null) pendingCheckpoint.release();
+            pendingCheckpoint = null;
+            pendingDelete = true;
+            base = savedBase;
+        }
+        journalBytes = 0;
+
+        // Edits made while saving are not in the saved file, the whole text is kept
+        // 保存时进行的编辑不在已保存的文件中，保留整个文本
+        if (editedAfterSave) checkpoint();
+    }
+
+    // Stopping the journal, the file is deleted if the edits are not needed anymore
+    // 停止日志，如果不再需要编辑，则删除文件
+    public void close(boolean delete)
+    {
+        document.removeDocumentListener(this);
+        task.cancel(false);
+        if (delete)
+        {
+            synchronized (lock)
+            {
+                pending.reset();
+                if (pendingCheckpoint != null) pendingCheckpoint.release();
+                pendingCheckpoint = null;
+                pendingDelete = true;
+            }
+        }
+        WRITER.execute(() ->
+        {
+            flush();
+            closeChannel();
+        });
+    }
+
+    // Closing on exit, waits until the journal file is written or deleted
+    // 退出时关闭，等待日志文件被写入或删除
+    public void closeAndWait(boolean delete)
+    {
+        close(delete);
+        try
+        {
+            WRITER.submit(() -> { }).get(5, TimeUnit.SECONDS);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // Writer thread
+    // 写入线程
+
+    private void flush()
+    {
+        DocumentSnapshot checkpoint;
+        boolean pieces;
+        byte[] bytes;
+        boolean delete;
+        Base currentBase;
+        synchronized (lock)
+        {
+            checkpoint = pendingCheckpoint;
+            pieces = pendingPieces;
+            bytes = pending.toByteArray();
+            delete = pendingDelete;
+            currentBase = base;
+            pendingCheckpoint = null;
+            pendingDelete = false;
+            pending.reset();
+        }
+
+        try
+        {
+            if (delete)
+            {
+                closeChannel();
+                file.delete();
+            }
+            if (checkpoint != null)
+            {
+                writeCheckpoint(checkpoint, pieces, currentBase);
+            }
+            if (bytes.length > 0)
+            {
+                open(currentBase);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(false);
+            }
+        }
+        catch (IOException | BadLocationException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (checkpoint != null) checkpoint.release();
+        }
+    }
+
+    // Opening the journal for appending, a new file starts with the header
+    // 打开日志以追加，新文件以标题开始
+    private void open(Base currentBase) throws IOException
+    {
+        if (channel != null) return;
+
+        file.getParentFile().mkdirs();
+        boolean isNew = !file.exists() || file.length() == 0;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        // Other editors skip journals that are locked (still in use)
+        // 其他编辑器跳过被锁定（仍在使用）的日志
+        fileLock = channel.tryLock();
+        if (isNew)
+        {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            writeHeader(new DataOutputStream(header), currentBase);
+            channel.write(ByteBuffer.wrap(header.toByteArray()));
+        }
+    }
+
+    private void closeChannel()
+    {
+        if (channel == null) return;
+        try
+        {
+            if (fileLock != null) fileLock.release();
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        channel = null;
+        fileLock = null;
+    }
+
+    // Writing a new journal with the header and one checkpoint record and renaming it over the old one
+    // 写入带有标题和一个检查点记录的新日志，并将其重命名覆盖旧日志
+    private void writeCheckpoint(DocumentSnapshot snapshot, boolean pieces, Base currentBase)
+        throws IOException, BadLocationException
+    {
+        closeChannel();
+        file.getParentFile().mkdirs();
+        DocumentSaver.writeAtomically(file, fileChannel ->
+        {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(fileChannel)));
+            writeHeader(data, currentBase);
+            writeCheckpointRecord(data, snapshot, pieces);
+            data.flush();
+        });
+        open(currentBase);
+    }
+
+    private static void writeHeader(DataOutputStream data, Base base) throws IOException
+    {
+        data.writeInt(MAGIC);
+        data.writeUTF(base.path);
+        data.writeLong(base.size);
+        data.writeLong(base.modified);
+        data.writeUTF(base.encoding);
+        data.writeBoolean(base.rtf);
+    }
+
+    // Checkpoint: pieces of the document and the attributes of styled runs
+    // 检查点：文档的片段和带样式段的属性
+    static void writeCheckpointRecord(DataOutputStream data, DocumentSnapshot snapshot, boolean originalPieces)
+        throws IOException, BadLocationException
+    {
+        List<int[]> pieces = new ArrayList<>();
+        if (originalPieces)
+        {
+            snapshot.getPieces().visitPieces((original, start, length, offset) ->
+                pieces.add(new int[] { original ? 1 : 0, start, length, offset }));
+        }
+        else if (snapshot.getLength() > 0)
+        {
+            pieces.add(new int[] { 0, 0, snapshot.getLength(), 0 });
+        }
+
+        data.writeByte(CHECKPOINT);
+        data.writeBoolean(originalPieces);
+
+        // Long typed pieces are split, so no record is bigger than TEXT_PIECE characters
+        // 长的输入片段被拆分，因此没有记录大于TEXT_PIECE个字符
+        int count = 0;
+        for (int[] piece : pieces)
+        {
+            count += piece[0] == 1 ? 1 : (piece[2] + TEXT_PIECE - 1) / TEXT_PIECE;
+        }
+        data.writeInt(count);
+        for (int[] piece : pieces)
+        {
+            if (piece[0] == 1)
+            {
+                data.writeBoolean(true);
+                data.writeInt(piece[1]);
+                data.writeInt(piece[2]);
+                continue;
+            }
+            for (int done = 0; done < piece[2]; done += TEXT_PIECE)
+            {
+                data.writeBoolean(false);
+                writeText(data, snapshot.getText(piece[3] + done, Math.min(TEXT_PIECE, piece[2] - done)));
+            }
+        }
+
+        int start = 0;
+        for (int i = 0; i < snapshot.getRunCount(); i++)
+        {
+            int end = Math.min(snapshot.getRunEnd(i), snapshot.getLength());
+            AttributeSet attributes = snapshot.getRunAttributes(i);
+            if (end > start && attributes.getAttributeCount() > 0)
+            {
+                data.writeByte(STYLE);
+                data.writeInt(start);
+                data.writeInt(end - start);
+                writeAttributes(data, attributes);
+            }
+            start = snapshot.getRunEnd(i);
+        }
+    }
+
+    // Encoding
+    // 编码
+
+    private static void writeText(DataOutputStream data, String text) throws IOException
+    {
+        byte[] bytes = text.getBytes(UTF8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readText(DataInputStream data) throws IOException
+    {
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // Only attributes that can be set in the editor are kept
+    // 只保留可以在编辑器中设置的属性
+    private static final Object[] KEYS = {
+        StyleConstants.FontFamily, StyleConstants.FontSize, StyleConstants.Bold, StyleConstants.Italic,
+        StyleConstants.Underline, StyleConstants.StrikeThrough, StyleConstants.Foreground, StyleConstants.Background
+    };
+
+    static void writeAttributes(DataOutputStream data, AttributeSet attributes) throws IOException
+    {
+        int count = 0;
+        for (Object key : KEYS)
+        {
+            if (isKept(attributes, key)) count++;
+        }
+        data.writeByte(count);
+
+        for (int i = 0; i < KEYS.length; i++)
+        {
+            if (!isKept(attributes, KEYS[i])) continue;
+
+            Object value = attributes.getAttribute(KEYS[i]);
+            data.writeByte(i);
+            if (value instanceof String) data.writeUTF((String) value);
+            else if (value instanceof Integer) data.writeInt((Integer) value);
+            else if (value instanceof Boolean) data.writeBoolean((Boolean) value);
+            else data.writeInt(((Color) value).getRGB());
+        }
+    }
+
+    private static boolean isKept(AttributeSet attributes, Object key)
+    {
+        if (!attributes.isDefined(key)) return false;
+        Object value = attributes.getAttribute(key);
+        return value instanceof String || value instanceof Integer || value instanceof Boolean || value instanceof Color;
+    }
+
+    static AttributeSet readAttributes(DataInputStream data) throws IOException
+    {
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        int count = data.readByte();
+        for (int i = 0; i < count; i++)
+        {
+            int key = data.readByte();
+            switch (key)
+            {
+                case 0: attributes.addAttribute(KEYS[key], data.readUTF()); break;
+                case 1: attributes.addAttribute(KEYS[key], data.readInt()); break;
+                case 6:
+                case 7: attributes.addAttribute(KEYS[key], new Color(data.readInt(), true)); break;
+                default: attributes.addAttribute(KEYS[key], data.readBoolean()); break;
+            }
+        }
+        return attributes;
+    }
+
+    // Recovery
+    // 恢复
+
+    // Journals left by editors that are not running anymore, newest first
+    // 不再运行的编辑器留下的日志，最新的优先
+    public static List<Header> findJournals()
+    {
+        List<Header> headers = new ArrayList<>();
+        File[] files = DIRECTORY.listFiles((dir, name) -> name.endsWith(".journal"));
+        if (files == null) return headers;
+
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (File journal : files)
+        {
+            if (isLocked(journal)) continue;
+            try
+            {
+                headers.add(readHeader(journal));
+            }
+            catch (IOException e)
+            {
+                // Broken journal (crash before the header was written)
+                // 损坏的日志（写入标题之前崩溃）
+                journal.delete();
+            }
+        }
+        return headers;
+    }
+
+    private static boolean isLocked(File journal)
+    {
+        try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.WRITE))
+        {
+            FileLock fileLock = channel.tryLock();
+            if (fileLock == null) return true;
+            fileLock.release();
+            return false;
+        }
+        catch (OverlappingFileLockException e)
+        {
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    static Header readHeader(File journal) throws IOException
+    {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(journal))))
+        {
+            if (data.readInt() != MAGIC) throw new IOException("Not a journal: " + journal);
+            Base base = new Base(data.readUTF(), data.readLong(), data.readLong(), data.readUTF(), data.readBoolean());
+
+            // A checkpoint with typed text only doesn't need the base file
+            // 只有输入文本的检查点不需要基准文件
+            boolean baseRequired = !base.path.isEmpty();
+            if (data.read() == CHECKPOINT && !data.readBoolean())
+            {
+                baseRequired = false;
+            }
+            return new Header(journal, base, baseRequired);
+        }
+        catch (EOFException e)
+        {
+            throw new IOException("Journal is too short: " + journal, e);
+        }
+    }
+
+    // Applying the journal to a document that holds the base file (or an empty document)
+    // Returns false if the end of the journal was broken and only a part was applied
+    //
+    // 将日志应用于包含基准文件的文档（或空文档）
+    // 如果日志末尾已损坏且仅应用了一部分，则返回false
+    public static boolean replay(File journal, PieceTableDocument document) throws IOException
+    {
+        try (DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), 64 << 10)))
+        {
+            skipHeader(data);
+            int type;
+            while ((type = data.read()) >= 0)
+            {
+                switch (type)
+                {
+                    case INSERT:
+                        document.insertString(data.readInt(), readText(data), null);
+                        break;
+                    case REMOVE:
+                        document.remove(data.readInt(), data.readInt());
+                        break;
+                    case STYLE:
+                        document.setCharacterAttributes(data.readInt(), data.readInt(), readAttributes(data), true);
+                        break;
+                    case CHECKPOINT:
+                        replayCheckpoint(data, document);
+                        break;
+                    default:
+                        return false;
+                }
+            }
+            return true;
+        }
+        catch (EOFException | BadLocationException | RuntimeException e)
+        {
+            // Last records were not written completely
+            // 最后的记录没有完全写入
+            return false;
+        }
+    }
+
+    private static void skipHeader(DataInputStream data) throws IOException
+    {
+        if (data.readInt() != MAGIC) throw new IOException("Not a journal");
+        data.readUTF();
+        data.readLong();
+        data.readLong();
+        data.readUTF();
+        data.readBoolean();
+    }
+
+    private static void replayCheckpoint(DataInputStream data, PieceTableDocument document)
+        throws IOException, BadLocationException
+    {
+        data.readBoolean();
+        document.remove(0, document.getLength());
+
+        int count = data.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            if (data.readBoolean())
+            {
+                document.appendOriginal(data.readInt(), data.readInt());
+            }
+            else
+            {
+                document.insertString(document.getLength(), readText(data), null);
+            }
+        }
+    }
+}
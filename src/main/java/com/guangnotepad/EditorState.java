@@ -0,0 +1,199 @@
+package com.guangnotepad;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+
+/*
+ * State of a tab that is shown around the text: the title (file name, what is happening to the file
+ * And whether it was modified) and the size of the document.
+ * Changes only mark the state as changed, the listeners (tab bar, window title, status bar) are told
+ * At most once a frame, on a timer tick of the Event Dispatch Thread. So a paste, a replace all or
+ * A load that makes millions of document events gives a few updates of the window, not millions.
+ *
+ * 标签页在文本周围显示的状态：标题（文件名、文件正在发生的事情以及是否已修改）和文档的大小。
+ * 更改只将状态标记为已更改，监听器（标签栏、窗口标题、状态栏）每帧最多被通知一次，
+ * 在事件调度线程的计时器滴答中进行。因此产生数百万个文档事件的粘贴、全部替换或加载
+ * 只会对窗口进行几次更新，而不是数百万次。
+ */
+
+
+// Editor state class
+// 编辑器状态类
+
+public class EditorState implements DocumentListener
+{
+    // Time between two updates of the listeners
+    // 两次更新监听器之间的时间
+    static final int FRAME_MILLIS = 16;
+
+    // Listener of the state, called on the Event Dispatch Thread
+    // 状态的监听器，在事件调度线程上调用
+    public interface Listener
+    {
+        void stateChanged(EditorState state);
+    }
+
+    private final List<Listener> listeners = new ArrayList<>();
+    private final Timer timer = new Timer(FRAME_MILLIS, e -> update());
+
+    // Title parts: name of the file, note after it (null when there's none) and the modified mark.
+    // While a file is loading the title is the one of the loading file, it goes back when loading fails.
+    //
+    // 标题部分：文件名、其后的注释（没有时为null）和修改标记。
+    // 文件加载时标题是正在加载的文件的标题，加载失败时恢复原标题。
+    private String name = "New";
+    private String note;
+    private boolean modified;
+    private String loadingName;
+    private int loadingPercent;
+
+    // Document of the tab and its size at the last update
+    // 标签页的文档及其在上次更新时的大小
+    private Document document;
+    private int length;
+    private int lineCount = 1;
+
+    // Constructor
+    // 构造函数
+    public EditorState()
+    {
+        timer.setRepeats(false);
+    }
+
+    public void addListener(Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    // Following the document of the tab (null when the tab has none)
+    // 跟随标签页的文档（标签页没有文档时为null）
+    void setDocument(Document newDocument)
+    {
+        if (document == newDocument) return;
+        if (document != null) document.removeDocumentListener(this);
+        document = newDocument;
+        if (document != null) document.addDocumentListener(this);
+        changed();
+    }
+
+    // Title of a file, the note is null when there's nothing to say about the file
+    // 文件的标题，没有关于文件的说明时注释为null
+    void setTitle(String newName, String newNote, boolean isModified)
+    {
+        name = newName;
+        note = newNote;
+        modified = isModified;
+        loadingName = null;
+        changed();
+    }
+
+    void setModified(boolean isModified)
+    {
+        if (modified == isModified) return;
+        modified = isModified;
+        changed();
+    }
+
+    // File being loaded, percent is -1 until the loader knows it
+    // 正在加载的文件，在加载器知道之前百分比为-1
+    void setLoading(String fileName, int percent)
+    {
+        if (fileName.equals(loadingName) && percent == loadingPercent) return;
+        loadingName = fileName;
+        loadingPercent = percent;
+        changed();
+    }
+
+    // Loading failed or was cancelled before the text was shown, the title is the one from before
+    // 加载失败或在显示文本之前被取消，标题是之前的标题
+    void loadingStopped()
+    {
+        if (loadingName == null) return;
+        loadingName = null;
+        changed();
+    }
+
+    public String getTitle()
+    {
+        if (loadingName != null)
+        {
+            return loadingName + " — Loading" + (loadingPercent >= 0 ? " " + loadingPercent + "%" : "");
+        }
+        return name + (note != null ? " — " + note : "") + (modified ? " — Modified" : "");
+    }
+
+    public boolean isModified()
+    {
+        return modified;
+    }
+
+    // Chars and lines of the document at the last update
+    // 上次更新时文档的字符数和行数
+    public int getLength()
+    {
+        return length;
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    // Document events only mark the state as changed
+    // 文档事件只将状态标记为已更改
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        changed();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        changed();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        changed();
+    }
+
+    // The first change of a frame starts the timer, the next ones wait for it
+    // 一帧中的第一次更改启动计时器，后续更改等待它
+    private void changed()
+    {
+        if (!timer.isRunning()) timer.start();
+    }
+
+    // Reading the size of the document once and telling the listeners
+    // 读取一次文档大小并通知监听器
+    void update()
+    {
+        timer.stop();
+        if (document != null)
+        {
+            length = document.getLength();
+            lineCount = document.getDefaultRootElement().getElementCount();
+        }
+        else
+        {
+            length = 0;
+            lineCount = 1;
+        }
+
+        for (Listener listener : new ArrayList<>(listeners))
+        {
+            listener.stateChanged(this);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mozilla.universalchardet.UniversalDetector;
+
+/*
+ * Encoding detection with a fixed cost.
+ * Only three blocks of the file are read (head, middle and tail), so detection does not depend on the file size.
+ * A byte order mark or valid UTF-8 with non-ASCII characters is recognized at once,
+ * Other files are passed to juniversalchardet with the same blocks.
+ * Results are cached by path, size and modification time, so a file that is opened again is not read at all.
+ *
+ * 固定开销的编码检测。
+ * 只读取文件的三个块（开头、中间和结尾），因此检测不取决于文件大小。
+ * 字节顺序标记或带有非ASCII字符的有效UTF-8会立即被识别，
+ * 其他文件使用相同的块传递给juniversalchardet。
+ * 结果按路径、大小和修改时间缓存，因此再次打开的文件根本不会被读取。
+ */
+
+
+// Encoding detector class
+// 编码检测器类
+
+public class EncodingDetector
+{
+    // Encoding used when nothing was detected
+    // 未检测到任何内容时使用的编码
+    static final String DEFAULT_ENCODING = "CP1251";
+
+    static final int SAMPLE_BYTES = 64 << 10;
+    private static final int CACHE_SIZE = 64;
+
+    // Cached result of one file
+    // 一个文件的缓存结果
+    private static class CacheEntry
+    {
+        final long size;
+        final long modified;
+        final String encoding;
+
+        CacheEntry(long size, long modified, String encoding)
+        {
+            this.size = size;
+            this.modified = modified;
+            this.encoding = encoding;
+        }
+    }
+
+    // Least recently used files are removed first
+    // 最近最少使用的文件首先被删除
+    private final Map<String, CacheEntry> cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private volatile int reads;
+
+    // Detecting the encoding of the file (called from the loader thread)
+    // 检测文件的编码（从加载器线程调用）
+    public String detect(File file)
+    {
+        String encoding = cached(file);
+        if (encoding != null) return encoding;
+
+        try
+        {
+            encoding = detect(readSamples(file, file.length()));
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return DEFAULT_ENCODING;
+        }
+
+        remember(file, encoding);
+        return encoding;
+    }
+
+    // Detecting the encoding of a file that can't be sampled (compressed text) from its decoded head
+    // Head shorter than SAMPLE_BYTES is the whole text
+    //
+    // 从解码后的开头检测无法采样的文件（压缩文本）的编码
+    // 短于SAMPLE_BYTES的开头是整个文本
+    public String detect(File file, byte[] head)
+    {
+        String encoding = cached(file);
+        if (encoding != null) return encoding;
+
+        encoding = detect(new byte[][] { head }, head.length < SAMPLE_BYTES);
+        remember(file, encoding);
+        return encoding;
+    }
+
+    private String cached(File file)
+    {
+        synchronized (cache)
+        {
+            CacheEntry entry = cache.get(file.getAbsolutePath());
+            if (entry != null && entry.size == file.length() && entry.modified == file.lastModified())
+            {
+                return entry.encoding;
+            }
+        }
+        return null;
+    }
+
+    // Remembering the encoding of a file that was just written
+    // 记住刚写入的文件的编码
+    public void remember(File file, String encoding)
+    {
+        synchronized (cache)
+        {
+            cache.put(file.getAbsolutePath(), new CacheEntry(file.length(), file.lastModified(), encoding));
+        }
+    }
+
+    // Number of times a file was actually read
+    // 实际读取文件的次数
+    int getReads()
+    {
+        return reads;
+    }
+
+    // Reading head, middle and tail blocks, small files are read whole
+    // 读取开头、中间和结尾块，小文件被完整读取
+    private byte[][] readSamples(File file, long size) throws IOException
+    {
+        reads++;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r"))
+        {
+            if (size <= 3L * SAMPLE_BYTES)
+            {
+                return new byte[][] { read(in, 0, (int) size) };
+            }
+            return new byte[][] {
+                read(in, 0, SAMPLE_BYTES),
+                read(in, size / 2 - SAMPLE_BYTES / 2, SAMPLE_BYTES),
+                read(in, size - SAMPLE_BYTES, SAMPLE_BYTES)
+            };
+        }
+    }
+
+    private static byte[] read(RandomAccessFile in, long position, int length) throws IOException
+    {
+        byte[] block = new byte[length];
+        in.seek(position);
+        in.readFully(block);
+        return block;
+    }
+
+    // Detecting the encoding from the sampled blocks
+    // 从采样块检测编码
+    static String detect(byte[][] samples)
+    {
+        return detect(samples, true);
+    }
+
+    // The last sample ends at the end of the text only if toEnd is true
+    // 只有当toEnd为真时，最后一个样本才在文本末尾结束
+    static String detect(byte[][] samples, boolean toEnd)
+    {
+        String bom = detectBom(samples[0]);
+        if (bom != null) return bom;
+
+        // Strict UTF-8 check, a sample may start and end inside a character
+        // 严格的UTF-8检查，样本可以在字符内部开始和结束
+        int result = 0;
+        for (int i = 0; i < samples.length && result >= 0; i++)
+        {
+            int sample = checkUtf8(samples[i], i > 0, toEnd && i == samples.length - 1);
+            result = sample < 0 ? -1 : Math.max(result, sample);
+        }
+        if (result > 0) return "UTF-8";
+
+        UniversalDetector detector = new UniversalDetector(null);
+        for (int i = 0; i < samples.length && !detector.isDone(); i++)
+        {
+            detector.handleData(samples[i], 0, samples[i].length);
+        }
+        detector.dataEnd();
+        String encoding = detector.getDetectedCharset();
+        return encoding != null ? encoding : DEFAULT_ENCODING;
+    }
+
+    // Encoding given by a byte order mark
+    // 字节顺序标记给出的编码
+    static String detectBom(byte[] head)
+    {
+        if (startsWith(head, 0xEF, 0xBB, 0xBF)) return "UTF-8";
+        if (startsWith(head, 0xFF, 0xFE, 0x00, 0x00)) return "UTF-32LE";
+        if (startsWith(head, 0x00, 0x00, 0xFE, 0xFF)) return "UTF-32BE";
+        if (startsWith(head, 0xFF, 0xFE)) return "UTF-16LE";
+        if (startsWith(head, 0xFE, 0xFF)) return "UTF-16BE";
+        return null;
+    }
+
+    private static boolean startsWith(byte[] data, int... prefix)
+    {
+        if (data.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++)
+        {
+            if ((data[i] & 0xFF) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    // Checking a block of UTF-8: -1 if invalid, 0 if only ASCII, 1 if there are multibyte characters
+    // 检查UTF-8块：无效返回-1，只有ASCII返回0，有多字节字符返回1
+    static int checkUtf8(byte[] data, boolean skipLeading, boolean atEnd)
+    {
+        int i = 0;
+        int length = data.length;
+
+        // Continuation bytes of a character that started before the block
+        // 在块之前开始的字符的后续字节
+        if (skipLeading)
+        {
+            while (i < length && i < 3 && (data[i] & 0xC0) == 0x80) i++;
+        }
+
+        int result = 0;
+        while (i < length)
+        {
+            int b = data[i] & 0xFF;
+            if (b < 0x80)
+            {
+                i++;
+                continue;
+            }
+
+            int count;
+            int min;
+            if (b >= 0xC2 && b <= 0xDF) { count = 1; min = 0x80; }
+            else if (b >= 0xE0 && b <= 0xEF) { count = 2; min = 0x800; }
+            else if (b >= 0xF0 && b <= 0xF4) { count = 3; min = 0x10000; }
+            else return -1;
+
+            // Character cut by the end of a sample is accepted
+            // 被样本结尾截断的字符被接受
+            if (i + count >= length)
+            {
+                if (atEnd) return -1;
+                for (int j = i + 1; j < length; j++)
+                {
+                    if ((data[j] & 0xC0) != 0x80) return -1;
+                }
+                return 1;
+            }
+
+            int code = b & (0x3F >> count);
+            for (int j = 1; j <= count; j++)
+            {
+                int next = data[i + j] & 0xFF;
+                if ((next & 0xC0) != 0x80) return -1;
+                code = (code << 6) | (next & 0x3F);
+            }
+            if (code < min || code > 0x10FFFF || (code >= 0xD800 && code <= 0xDFFF)) return -1;
+
+            result = 1;
+            i += count + 1;
+        }
+        return result;
+    }
+}
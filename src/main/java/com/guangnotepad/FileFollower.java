@@ -0,0 +1,191 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import javax.swing.SwingUtilities;
+
+/*
+ * Follow mode for growing text files (logs).
+ * The directory of the file is registered with a WatchService, the thread sleeps in take() while the file is idle.
+ * When the file grows only the new bytes after the last known offset are read and decoded into the spool,
+ * The Event Dispatch Thread then appends the new piece to the document like the loader does.
+ * A file that became shorter or was replaced by another file (rotation) is reported to FileFunction.
+ *
+ * 增长文本文件（日志）的跟随模式。
+ * 文件所在目录注册到WatchService，文件空闲时线程在take()中休眠。
+ * 文件增长时，只读取最后已知偏移之后的新字节并解码到缓冲文件中，
+ * 然后事件调度线程像加载器一样将新片段追加到文档中。
+ * 变短或被另一个文件替换（轮转）的文件会报告给FileFunction。
+ */
+
+
+// File follower class
+// 文件跟随器类
+
+public class FileFollower implements Runnable
+{
+    private static final int BLOCK = 256 << 10;
+
+    // Writes that come quickly one after another are read together
+    // 快速连续的写入被一起读取
+    private static final long SETTLE_MILLIS = 100;
+
+    private final FileFunction fileFunction;
+    private final Path path;
+    private final CharSpool spool;
+    private final TextDecoder decoder;
+    private final LineEndings tailEndings;
+    private final WatchService watcher;
+    private final Thread thread;
+
+    // Identity of the followed file and bytes of it that are decoded (follower thread state)
+    // 被跟随文件的标识及其已解码的字节（跟随器线程状态）
+    private final Object fileKey;
+    private long offset;
+
+    // Constructor, offset is the number of bytes of the file that are already in the document
+    // 构造函数，offset是文档中已有的文件字节数
+    public FileFollower(FileFunction fileFunction, File file, PieceTableDocument document, String encoding,
+                        long offset, LineEndings lineEndings) throws IOException
+    {
+        this.fileFunction = fileFunction;
+        this.path = file.toPath().toAbsolutePath();
+        this.spool = document.getPieceTable().getOriginal();
+        this.tailEndings = lineEndings.continuation();
+        this.decoder = new TextDecoder(Charset.forName(encoding), BLOCK, tailEndings);
+        if (lineEndings.endsWithCR(document)) decoder.continueAfterCR();
+        this.offset = offset;
+        this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+
+        watcher = path.getFileSystem().newWatchService();
+        path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+        thread = new Thread(this, "File follower");
+        thread.setDaemon(true);
+    }
+
+    public void start()
+    {
+        thread.start();
+    }
+
+    // Stopping the thread, take() ends when the watch service is closed.
+    // The thread is waited for, so a new follower never appends to the spool at the same time.
+    //
+    // 停止线程，监视服务关闭时take()结束。
+    // 等待线程结束，因此新的跟随器永远不会同时追加到缓冲文件。
+    public void stop()
+    {
+        try
+        {
+            watcher.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            // Text written between the end of loading and registration
+            // 加载结束和注册之间写入的文本
+            boolean changed = true;
+            while (true)
+            {
+                if (changed && !check()) return;
+
+                WatchKey key = watcher.take();
+                Thread.sleep(SETTLE_MILLIS);
+                changed = false;
+                for (; key != null; key = watcher.poll())
+                {
+                    for (WatchEvent<?> event : key.pollEvents())
+                    {
+                        Object context = event.context();
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW ||
+                            context instanceof Path && path.getFileName().equals(context))
+                        {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | ClosedByInterruptException | InterruptedException e)
+        {
+            // Following was stopped
+            // 跟随已停止
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            SwingUtilities.invokeLater(() -> fileFunction.followingFailed(this, e));
+        }
+    }
+
+    // Reading new bytes, returns false when the file was truncated or replaced and following ends
+    // 读取新字节，当文件被截断或替换且跟随结束时返回false
+    private boolean check() throws IOException
+    {
+        // Rotated file that is not created again yet
+        // 尚未重新创建的轮转文件
+        if (!Files.exists(path)) return true;
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        boolean replaced = fileKey != null && !fileKey.equals(attributes.fileKey());
+        if (replaced || attributes.size() < offset)
+        {
+            SwingUtilities.invokeLater(() -> fileFunction.followedFileReplaced(this));
+            return false;
+        }
+        if (attributes.size() == offset) return true;
+
+        int spoolStart = spool.length();
+        int textStart = decoder.getOffset();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            channel.position(offset);
+            InputStream in = Channels.newInputStream(channel);
+            decoder.decodeAvailable(in, spool::append);
+            offset = channel.position();
+        }
+
+        int count = spool.length() - spoolStart;
+        LineEndings appended = tailEndings.take(textStart);
+        long bytes = offset;
+        if (count > 0 || appended.joinsCR())
+        {
+            SwingUtilities.invokeLater(() -> fileFunction.tailAppended(this, spoolStart, count, appended, bytes));
+        }
+        return true;
+    }
+}
@@ -1,12 +1,12 @@
 package com.guangnotepad;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.*;
-import javax.swing.text.rtf.RTFEditorKit;
-
-import org.mozilla.universalchardet.UniversalDetector;
 
 /* 
  * The "file" menu class uses the FileDialog class to display a dialog message
@@ -15,11 +15,15 @@ import org.mozilla.universalchardet.UniversalDetector;
  * Each method uses the isSaved and isNewFile variables to track whether the file has been saved or just created. 
  * For user convenience, the word "Modified" is added to the window title,
  * Indicating that changes have been made to the file.
+ * Every tab of the workspace has its own FileFunction with its document and undo history,
+ * The text area, viewer and window title are only changed while the tab is the selected one.
  * 
  * "文件"菜单类使用FileDialog类显示一个对话框消息，用于选择读取/写入文件的路径，
  * FileReader和FileWriter用于从文件读取文本和写入文本到文件。
  * 每个方法都使用isSaved和isNewFile变量来跟踪文件是否已保存或刚刚创建。
  * 为了用户方便，窗口标题中添加了"Modified"字样，表示已对文件进行了修改。
+ * 工作区的每个标签页都有自己的FileFunction及其文档和撤销历史，
+ * 只有当标签页是所选标签页时，才会更改文本区、查看器和窗口标题。
 */
 
 
@@ -29,14 +33,72 @@ import org.mozilla.universalchardet.UniversalDetector;
 
 public class FileFunction
 {
+    // Files bigger than this are opened in the read-only viewer
+    // 大于此大小的文件将在只读查看器中打开
+    static final long VIEWER_THRESHOLD = 1L << 30;
+
+    // Gzip-compressed text, decompressed while it is loaded and compressed again when it is saved
+    // Gzip压缩的文本，加载时解压，保存时再次压缩
+    static final String COMPRESSED_EXTENSION = "gz";
+
+    // Detection results are cached (for all tabs), so files that are opened again are not read twice
+    // 检测结果被缓存（所有标签页共用），因此再次打开的文件不会被读取两次
+    private static final EncodingDetector encodingDetector = new EncodingDetector();
+
     private File selectedFile;
     private StyledDocument doc;
     private GUI gui;
     private String fileName, fileExtension;
     private String selectedEncoding = System.getProperty("file.encoding");;
+
+    // Size and modification time of the file when its encoding was read or written (size -1 if unknown)
+    // 读取或写入文件编码时文件的大小和修改时间（未知时大小为-1）
+    private long encodingSize = -1;
+    private long encodingModified;
     private boolean isNewFile = true;
     boolean isSaved = false;
 
+    // Undo history (memory-bounded), title and caret of the tab (the caret is remembered while the tab is not shown).
+    // Document is null when the tab was not loaded yet or its document was dropped.
+    //
+    // 标签页的撤销历史（内存有界）、标题和光标（标签页不显示时记住光标）。
+    // 当标签页尚未加载或其文档被丢弃时，文档为null。
+    private final UndoHistory undoManager = new UndoHistory();
+    private final EditorState state = new EditorState();
+    private int caret;
+
+    // Read-only viewer for very large files (null when not used)
+    // 超大文件的只读查看器（不使用时为null）
+    private LargeFileViewer viewer;
+
+    // Background loader of the file being opened (null when nothing is loading)
+    // 正在打开的文件的后台加载器（没有加载时为null）
+    private FileLoader loader;
+
+    // Save running in the background and closing (of the tab or the program) that waits for it
+    // 后台运行的保存和等待它的关闭（标签页或程序）
+    private FileSaver saver;
+    private Runnable closeAfterSave;
+
+    // Journal of unsaved edits and a journal waiting to be applied to the file that is loading
+    // 未保存编辑的日志和等待应用于正在加载的文件的日志
+    private EditJournal journal;
+    private EditJournal.Header recovery;
+
+    // Line separators of the opened text file (null means \n)
+    // 打开的文本文件的行分隔符（null表示\n）
+    private LineEndings lineEndings;
+
+    // Follow mode: text appended to the opened file is shown (follower is null when not following).
+    // Loaded bytes are the bytes of the file that are in the document.
+    //
+    // 跟随模式：显示追加到打开文件中的文本（不跟随时follower为null）。
+    // 已加载字节是文档中已有的文件字节。
+    private FileFollower follower;
+    private boolean followRequested;
+    private File followedFile;
+    private long loadedBytes;
+
     // Constructor
     // 构造函数
     public FileFunction(GUI gui)
@@ -44,71 +106,38 @@ public class FileFunction
         this.gui = gui;
     }
 
-    // New file method
-    // 新建文件方法
-    public void newFile()
+    // New file method: the tab gets an empty document
+    // 新建文件方法：标签页获得一个空文档
+    void newFile()
     {
-        // Get document from text area
-        // 从文本区域获取文档
-        doc = gui.textArea.getStyledDocument();
+        installNewDocument();
+        state.setTitle("New", null, false);
 
-        // If text area is not empty, ask user if they want to save
-        // 如果文本区域不为空，询问用户是否要保存
-        if (doc.getLength() > 0)
-        {
-            int result = JOptionPane.showConfirmDialog(gui.window,
-            "Do you want to save the current file?",
-              "Save", JOptionPane.YES_NO_CANCEL_OPTION);
-
-            // If user selects "Yes", save file
-            // 如果用户选择"是"，保存文件
-            if (result == JOptionPane.YES_OPTION) 
-            {
-                save();
-                gui.textArea.setText("");
-                gui.window.setTitle(("New"));
-
-                isNewFile = true;
-                isSaved = false;
-
-                gui.currentPopup = new PopupMessage(gui, "File saved, new file created!");
-                gui.currentPopup.setVisible(true);
-            } 
-            
-            // If user selects "No", clear text area and set title to "New"
-            // 如果用户选择"否"，清空文本区域并将标题设置为"New"
-            else if (result == JOptionPane.NO_OPTION)
-            {
-                gui.textArea.setText("");
-                gui.window.setTitle(("New"));
-                
-                isSaved = false;
-
-                gui.currentPopup = new PopupMessage(gui, "File Created!");
-                gui.currentPopup.setVisible(true);
-            }
-
-            // If user selects "Cancel", return
-            // 如果用户选择"取消"，返回
-            else if (result == JOptionPane.CANCEL_OPTION)
-            {
-                return;
-            }
-        }
+        isNewFile = true;
+        isSaved = false;
+    }
 
-        // If text area is empty, clear text area and set title to "New"
-        // 如果文本区域为空，清空文本区域并将标题设置为"New"
-        else
+    // Tab restored from a session, the file is loaded when the tab is shown
+    // 从会话恢复的标签页，文件在显示标签页时加载
+    void restore(File file, String encoding, long size, long modified, int caretPosition)
+    {
+        selectedFile = file;
+        fileName = file.getName();
+        fileExtension = fileName.substring(fileName.lastIndexOf(".") + 1);
+        selectedEncoding = encoding;
+        encodingSize = size;
+        encodingModified = modified;
+        caret = caretPosition;
+        isNewFile = false;
+        isSaved = true;
+
+        // Encoding of the session is used only for the same file, a file changed since then is detected again
+        // 会话的编码仅用于同一文件，此后更改的文件会被重新检测
+        if (!isStyled(fileExtension) && size == file.length() && modified == file.lastModified())
         {
-            gui.textArea.setText("");
-            gui.window.setTitle(("New"));
-    
-            isNewFile = true;
-            isSaved = false;
-
-            gui.currentPopup = new PopupMessage(gui, "File Created!");
-            gui.currentPopup.setVisible(true);
+            encodingDetector.remember(file, encoding);
         }
+        state.setTitle(fileName, null, false);
     }
     
     // Open file method
@@ -119,9 +148,13 @@ public class FileFunction
         JFileChooser fileChooser = new JFileChooser();
         FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Text Files (*.txt)", "txt");
         FileNameExtensionFilter rtfFilter = new FileNameExtensionFilter("Rich Text Format (*.rtf)", "rtf");
+        FileNameExtensionFilter nativeFilter = new FileNameExtensionFilter("GuangNotepad Document (*.gnd)", NativeFormat.EXTENSION);
+        FileNameExtensionFilter compressedFilter = new FileNameExtensionFilter("Compressed Text (*.gz)", COMPRESSED_EXTENSION);
 
         fileChooser.addChoosableFileFilter(txtFilter);
         fileChooser.addChoosableFileFilter(rtfFilter);
+        fileChooser.addChoosableFileFilter(nativeFilter);
+        fileChooser.addChoosableFileFilter(compressedFilter);
 
         fileChooser.setFileFilter(txtFilter);
         
@@ -131,58 +164,242 @@ public class FileFunction
         // If user selects a file
         if (result == JFileChooser.APPROVE_OPTION)
         {
-            selectedFile = fileChooser.getSelectedFile();
-    
-            // Getting name and file extension
-            fileName = selectedFile.getName();
-            fileExtension = fileName.substring(fileName.lastIndexOf(".") + 1);
+            gui.workspace.open(fileChooser.getSelectedFile());
+        }
 
-            // If there's no extension or it's not a txt or rtf file
-            if (!fileExtension.equalsIgnoreCase("txt") && !fileExtension.equalsIgnoreCase("rtf"))
-            {
-                gui.currentPopup = new PopupMessage(gui, "Only txt/rtf files can be opened!");
-                gui.currentPopup.setVisible(true);
-                return;
-            }
+        // If user selects "cancel" option
+        else 
+        {
+            gui.currentPopup = new PopupMessage(gui, "File wasn't selected!");
+            gui.currentPopup.setVisible(true);
+        }
+    }
 
-            selectedEncoding = detectFileEncoding(selectedFile);
+    // Opening a file in this tab, the file becomes the selected one only when its text is shown
+    // 在此标签页中打开文件，只有在显示文件文本时，文件才会成为所选文件
+    void open(File file)
+    {
+        // Getting name and file extension
+        String name = file.getName();
+        String extension = name.substring(name.lastIndexOf(".") + 1);
+
+        // If there's no extension or it's not a txt, gz, rtf or gnd file
+        if (!canOpen(file))
+        {
+            gui.currentPopup = new PopupMessage(gui, "Only txt/gz/rtf/gnd files can be opened!");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
 
-            switch (fileExtension)
+        // Loading runs in the background, the title shows the progress
+        // 加载在后台运行，标题显示进度
+        cancelLoading();
+        loader = new FileLoader(this, file, isStyled(extension), extension.equalsIgnoreCase(COMPRESSED_EXTENSION));
+        loader.addPropertyChangeListener(evt ->
+        {
+            if ("progress".equals(evt.getPropertyName()) && loader == evt.getSource())
             {
-                case "txt":
-                    readTxtFile(selectedFile);
-                    break;
-                case "rtf":
-                    readRtfFile(selectedFile);
-                    break;
+                state.setLoading(name, (Integer) evt.getNewValue());
             }
+        });
+        state.setLoading(name, -1);
+        loader.execute();
+    }
+
+
+    // Only txt, gz, rtf and gnd files can be opened
+    // 只能打开txt、gz、rtf和gnd文件
+    static boolean canOpen(File file)
+    {
+        String name = file.getName();
+        String extension = name.substring(name.lastIndexOf(".") + 1);
+        return extension.equalsIgnoreCase("txt") || extension.equalsIgnoreCase(COMPRESSED_EXTENSION) || isStyled(extension);
+    }
+
+
+    // Styled files are read into the element structure, text files into the spool
+    // 带样式的文件被读入元素结构，文本文件被读入缓冲文件
+    private static boolean isStyled(String extension)
+    {
+        return extension.equalsIgnoreCase("rtf") || extension.equalsIgnoreCase(NativeFormat.EXTENSION);
+    }
+
+
+    // Text typed while the file is loading, the loaded tab keeps it as a modification
+    // 文件加载时输入的文本，加载完成的标签页将其保留为修改
+    private boolean editedWhileLoading;
+
+    // Checking if a file is being loaded
+    // 检查文件是否正在加载
+    boolean isLoading()
+    {
+        return loader != null;
+    }
+
+    // Cancelling the background loading (Escape), the text loaded so far stays
+    // 取消后台加载（Escape），已加载的文本保留
+    public void cancelLoading()
+    {
+        if (loader != null)
+        {
+            loader.cancel(false);
+        }
+    }
+
+    // Called by the loader when the first part of the text is ready to be shown
+    // 当文本的第一部分准备好显示时由加载器调用
+    void showLoadingDocument(FileLoader fileLoader, StyledDocument document)
+    {
+        if (fileLoader != loader) return;
+        selectedFile = fileLoader.getFile();
+        fileName = selectedFile.getName();
+        fileExtension = fileName.substring(fileName.lastIndexOf(".") + 1);
+
+        stopFollowing();
+        closeViewer();
+        closeJournal(true);
+        installDocument(document);
+        editedWhileLoading = false;
+    }
+
+    // Called by the loader when loading is finished, cancelled or failed
+    // 加载完成、取消或失败时由加载器调用
+    void loadingFinished(FileLoader fileLoader, Exception error)
+    {
+        if (fileLoader != loader) return;
+        loader = null;
+
+        if (error != null || fileLoader.isCancelled() && !fileLoader.isInstalled())
+        {
+            recovery = null;
+            state.loadingStopped();
+            if (error == null) return;
+
+            JOptionPane.showMessageDialog(null, "Error reading file: " + error.getMessage());
+            return;
+        }
+
+        selectedEncoding = fileLoader.getEncoding();
+        encodingSize = fileLoader.getFile().length();
+        encodingModified = fileLoader.getFile().lastModified();
+        lineEndings = fileLoader.getLineEndings();
+        if (lineEndings != null && !fileLoader.isViewer())
+        {
+            lineEndings.bind(doc);
+        }
+        selectedFile = fileLoader.getFile();
+        fileName = selectedFile.getName();
+        fileExtension = fileName.substring(fileName.lastIndexOf(".") + 1);
+
+        // Very large text files are opened in the read-only viewer
+        // 非常大的文本文件在只读查看器中打开
+        if (fileLoader.isViewer())
+        {
+            recovery = null;
+            endFollowing();
+            openInViewer(selectedFile);
+            return;
+        }
+
+        // Partially loaded file can't be saved over the original
+        // 部分加载的文件不能覆盖原始文件保存
+        if (fileLoader.isCancelled())
+        {
+            state.setTitle(fileName, "Partially loaded", false);
+            endFollowing();
+            isNewFile = true;
+            isSaved = false;
+            recovery = null;
+            startJournal(EditJournal.Base.NONE, false);
+
+            gui.currentPopup = new PopupMessage(gui, "Loading cancelled");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
+
+        state.setTitle(fileName, null, editedWhileLoading);
+        isNewFile = false;
+        isSaved = !editedWhileLoading;
+
+        // Caret of a tab that was loaded again goes back where it was
+        // 重新加载的标签页的光标回到原来的位置
+        caret = Math.min(caret, doc.getLength());
+        if (isActive()) gui.textArea.setCaretPosition(caret);
+
+        // Unsaved work found in a journal is applied on top of the file, not over text typed while loading
+        // 在日志中找到的未保存工作应用于文件之上，而不是加载时输入的文本之上
+        if (editedWhileLoading) recovery = null;
+        boolean recovered = applyRecovery();
+        boolean isStyled = isStyled(fileExtension);
 
-            gui.window.setTitle(fileName);
+        // Undo history of the file goes on from where it was saved, recovered edits are not in it
+        // 文件的撤销历史从保存的位置继续，恢复的编辑不在其中
+        if (!recovered && !editedWhileLoading && doc instanceof PieceTableDocument)
+        {
+            undoManager.restore(selectedFile, (PieceTableDocument) doc);
+        }
+        startJournal(EditJournal.Base.of(selectedFile, selectedEncoding, isStyled), !isStyled);
+        if (recovered || editedWhileLoading) journal.checkpoint();
+
+        // A followed file that was truncated or replaced is followed again after reloading
+        // 被截断或替换的跟随文件在重新加载后再次被跟随
+        loadedBytes = fileLoader.getBytesRead();
+        if (followRequested && selectedFile.equals(followedFile) && canFollow()) startFollowing();
+        else endFollowing();
+    }
+
+    // Open file in the read-only viewer
+    // 在只读查看器中打开文件
+    private void openInViewer(File file)
+    {
+        try
+        {
+            LargeFileViewer newViewer = new LargeFileViewer(file, Charset.forName(selectedEncoding),
+                gui.textArea.getFont(), gui.textArea.getForeground(), gui.textArea.getBackground());
+            newViewer.addKeyListener(gui.hotkeyHandler);
+
+            // Text area is cleared, so the big file is never kept in memory
+            // 清空文本区，因此大文件永远不会保存在内存中
+            endFollowing();
+            closeJournal(true);
+            installDocument(new PieceTableDocument());
+            closeViewer();
+            viewer = newViewer;
+            if (isActive()) gui.showViewer(viewer);
+
+            state.setTitle(fileName, "Read only", false);
             isNewFile = false;
             isSaved = true;
 
-            // Removing "Modified" title after opening file, because program automatically adds it
-            if (gui.window.getTitle().endsWith(" — Modified"))
-            {
-                String title = gui.window.getTitle();
-                title = title.replace(" — Modified", "");
-                gui.window.setTitle(title);
-            }
+            gui.currentPopup = new PopupMessage(gui, "Large file opened in read-only mode");
+            gui.currentPopup.setVisible(true);
         }
-
-        // If user selects "cancel" option
-        else 
+        catch (IOException e)
         {
-            gui.currentPopup = new PopupMessage(gui, "File wasn't selected!");
+            state.setTitle(fileName, null, false);
+            gui.currentPopup = new PopupMessage(gui, "Error opening file in viewer: " + e.getMessage());
             gui.currentPopup.setVisible(true);
         }
     }
 
+    // Checking if the file can't be saved now (read-only viewer, still loading or already saving)
+    // 检查文件现在是否无法保存（只读查看器、仍在加载或正在保存）
+    private boolean isReadOnly()
+    {
+        if (viewer == null && loader == null && saver == null) return false;
+
+        gui.currentPopup = new PopupMessage(gui, loader != null ? "File is still loading!" :
+            saver != null ? "File is still saving!" : "File is opened in read-only mode!");
+        gui.currentPopup.setVisible(true);
+        return true;
+    }
 
     // Save file method
     // 保存文件方法
     public void save()
     {
+        if (isReadOnly()) return;
+
         // If file is new, call saveAs method
         // 如果文件是新的，调用saveAs方法
         if (isNewFile)
@@ -199,43 +416,20 @@ public class FileFunction
             fileName = selectedFile.getName();
             if (fileName.endsWith(".rtf"))
             {
-                RTFEditorKit rtfKit = new RTFEditorKit();
-
-                try (FileOutputStream fos = new FileOutputStream(selectedFile))
-                {
-                    rtfKit.write(fos, gui.textArea.getStyledDocument(), 0, gui.textArea.getStyledDocument().getLength());
-                }             
-                catch (Exception e)
-                {
-                    gui.currentPopup = new PopupMessage(gui, "Error saving rtf file (211): " + e.getMessage());
-                    gui.currentPopup.setVisible(true);
-                } 
+                startSaving(selectedFile, "rtf");
             }
-            else if (fileName.endsWith(".txt"))
+            else if (fileName.endsWith("." + NativeFormat.EXTENSION))
             {
-                try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(selectedFile), selectedEncoding)))
-                {
-                    writer.write(gui.textArea.getText());
-                }
-                catch (Exception e)
-                {
-                    gui.currentPopup = new PopupMessage(gui, "Error saving txt file (223): " + e.getMessage());
-                    gui.currentPopup.setVisible(true);
-                } 
+                startSaving(selectedFile, NativeFormat.EXTENSION);
             }
-            
-
-            if (gui.window.getTitle().endsWith(" — Modified"))
+            else if (fileName.endsWith("." + COMPRESSED_EXTENSION))
             {
-                String title = gui.window.getTitle();
-                title = title.replace(" — Modified", "");
-                gui.window.setTitle(title);
+                startSaving(selectedFile, COMPRESSED_EXTENSION);
+            }
+            else if (fileName.endsWith(".txt"))
+            {
+                startSaving(selectedFile, "txt");
             }
-
-            isSaved = true;
-
-            gui.currentPopup = new PopupMessage(gui, "File Saved!");
-            gui.currentPopup.setVisible(true);
         }
     }
 
@@ -244,6 +438,8 @@ public class FileFunction
     // 另存为方法
     public void saveAs()
     {
+        if (isReadOnly()) return;
+
         // Create a new FileChooser
         // 在保存模式下创建一个新的文件对话框
         JFileChooser fileChooser = new JFileChooser();
@@ -252,10 +448,14 @@ public class FileFunction
         // Создание фильтров для txt и rtf форматов
         FileNameExtensionFilter txtFilter = new FileNameExtensionFilter("Text Files (*.txt)", "txt");
         FileNameExtensionFilter rtfFilter = new FileNameExtensionFilter("Rich Text Format (*.rtf)", "rtf");
+        FileNameExtensionFilter nativeFilter = new FileNameExtensionFilter("GuangNotepad Document (*.gnd)", NativeFormat.EXTENSION);
+        FileNameExtensionFilter compressedFilter = new FileNameExtensionFilter("Compressed Text (*.gz)", COMPRESSED_EXTENSION);
 
         // Добавление фильтров в JFileChooser
         fileChooser.addChoosableFileFilter(txtFilter);
         fileChooser.addChoosableFileFilter(rtfFilter);
+        fileChooser.addChoosableFileFilter(nativeFilter);
+        fileChooser.addChoosableFileFilter(compressedFilter);
 
         // Установка фильтра txt как фильтра по умолчанию
         fileChooser.setFileFilter(txtFilter);
@@ -279,198 +479,640 @@ public class FileFunction
                 // Сохранение файла в формате .rtf
                 saveAsRtf(fileToSave);
             }
-        }
-    }
-
-
-    // Exit method
-    // 退出方法
-    public void exit()
-    {
-        doc = gui.textArea.getStyledDocument();
 
-        if (isSaved) System.exit(0);
-        else if (!isSaved && isNewFile && doc.getLength() == 0) System.exit(0);
-
-        else if (!isSaved && !isNewFile ||
-                 !isSaved && isNewFile && doc.getLength() > 0)
-        {
-            int result = JOptionPane.showConfirmDialog(gui.window,
-            "Do you want to save the file before leaving?",
-              "Save", JOptionPane.YES_NO_CANCEL_OPTION);
-
-            // If user selects "Yes", save file
-            // 如果用户选择"是"，保存文件
-            if (result == JOptionPane.YES_OPTION) 
-            {
-                save();
-                if (isSaved) System.exit(0);
-                else return;
-            } 
-            
-            // If user selects "No", clear text area and set title to "New"
-            // 如果用户选择"否"，清空文本区域并将标题设置为"New"
-            else if (result == JOptionPane.NO_OPTION)
+            else if (NativeFormat.EXTENSION.equals(selectedExtension))
             {
-                System.exit(0);
+                // Styled document in the native format
+                // 以本地格式保存带样式的文档
+                saveAsNative(fileToSave);
             }
 
-            // If user selects "Cancel", return
-            // 如果用户选择"取消"，返回
-            else if (result == JOptionPane.CANCEL_OPTION)
+            else if (COMPRESSED_EXTENSION.equals(selectedExtension))
             {
-                return;
+                // Plain text compressed with gzip
+                // 用gzip压缩的纯文本
+                saveAsCompressed(fileToSave);
             }
         }
-        else System.exit(0);
     }
 
-    // Read txt file
-    void readTxtFile(File file)
+
+    // Closing the tab (or the program), the user is asked to save unsaved changes first.
+    // Closed is called when the tab can be closed, after the background save if the user wanted it.
+    //
+    // 关闭标签页（或程序），首先询问用户是否保存未保存的更改。
+    // 当标签页可以关闭时调用closed，如果用户需要，则在后台保存之后调用。
+    void close(Runnable closed)
     {
-        StringBuilder content = new StringBuilder();
+        if (!hasUnsavedChanges())
+        {
+            closed.run();
+            return;
+        }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), selectedEncoding))) 
+        int result = JOptionPane.showConfirmDialog(gui.window,
+        "Do you want to save " + (isNewFile ? "the new file" : fileName) + " before closing?",
+          "Save", JOptionPane.YES_NO_CANCEL_OPTION);
+
+        // If user selects "Yes", save file
+        // 如果用户选择"是"，保存文件
+        if (result == JOptionPane.YES_OPTION) 
         {
-            String line;
-            while ((line = reader.readLine()) != null) 
-            {
-                content.append(line).append("\n");
-            }
-            
-            gui.textArea.setText(content.toString());
+            // Tab is closed when the background save is finished
+            // 后台保存完成后关闭标签页
+            closeAfterSave = closed;
+            save();
+            if (saver == null) closeAfterSave = null;
         } 
-        catch (Exception e) 
+        
+        // If user selects "No", the changes are thrown away
+        // 如果用户选择"否"，丢弃更改
+        else if (result == JOptionPane.NO_OPTION)
         {
-            JOptionPane.showMessageDialog(null, "Error reading txt file: " + e.getMessage());
+            closed.run();
         }
     }
 
+    // Checking if closing the tab would lose changes
+    // 检查关闭标签页是否会丢失更改
+    boolean hasUnsavedChanges()
+    {
+        if (doc == null || isSaved) return false;
+        return !isNewFile || doc.getLength() > 0;
+    }
+
+    // file encoding detector (also called from the loader thread)
+    String detectFileEncoding(File file) 
+    {
+        return encodingDetector.detect(file);
+    }
+
+    // encoding of a compressed file, detected from its decompressed head
+    String detectFileEncoding(File file, byte[] head)
+    {
+        return encodingDetector.detect(file, head);
+    }
+
+    
+    // save as txt file
+    void saveAsTxt(File file)
+    {   
+        startSaving(new File(file.getName().contains(".txt") ? file.getAbsolutePath() : file.getAbsolutePath() + ".txt"), "txt");
+    }
+
+
+    // save as rtf file
+    void saveAsRtf(File file)
+    {
+        startSaving(new File(file.getAbsolutePath().contains(".rtf") ? file.getAbsolutePath() : file.getAbsolutePath() + ".rtf"), "rtf");
+    }
+
+
+    // save as gnd file
+    void saveAsNative(File file)
+    {
+        String extension = "." + NativeFormat.EXTENSION;
+        startSaving(new File(file.getAbsolutePath().endsWith(extension) ? file.getAbsolutePath() : file.getAbsolutePath() + extension),
+                    NativeFormat.EXTENSION);
+    }
+
+
+    // save as gz file
+    void saveAsCompressed(File file)
+    {
+        String extension = "." + COMPRESSED_EXTENSION;
+        startSaving(new File(file.getAbsolutePath().endsWith(extension) ? file.getAbsolutePath() : file.getAbsolutePath() + extension),
+                    COMPRESSED_EXTENSION);
+    }
+
+
+    // Taking a snapshot of the document and writing it on a background thread
+    // 获取文档快照并在后台线程上写入
+    private void startSaving(File file, String format)
+    {
+        saver = new FileSaver(this, (PieceTableDocument) doc, file, format, selectedEncoding, lineEndings);
+        saver.execute();
+    }
+
 
-    // Read rtf file
-    void readRtfFile(File file)
+    // Called by the saver when the file is written or saving failed
+    // 文件写入或保存失败时由保存器调用
+    void savingFinished(FileSaver fileSaver, Exception error)
     {
-        RTFEditorKit rtfKit = new RTFEditorKit();
-        selectedEncoding = detectFileEncoding(file);
+        saver = null;
+        String format = fileSaver.getFormat();
 
-        try (InputStreamReader isr = new InputStreamReader(new FileInputStream(file), selectedEncoding))
+        if (error != null)
         {
-            /* gui.textArea.setText("");
-            rtfKit.read(isr, gui.textArea.getStyledDocument(), 0); */
-            gui.textArea.setDocument(new DefaultStyledDocument());
-            rtfKit.read(isr, gui.textArea.getStyledDocument(), 0);
+            closeAfterSave = null;
+            gui.currentPopup = new PopupMessage(gui, "Exception when saving file in " + format + " format!\n" + error.toString());
+            gui.currentPopup.setVisible(true);
+            return;
         }
-        catch (IOException | BadLocationException e)
+
+        if (!fileSaver.isStyled())
         {
-            e.printStackTrace();
+            encodingDetector.remember(fileSaver.getFile(), fileSaver.getEncoding());
         }
+
+        // Another document is shown now, only the message is left
+        // 现在显示的是另一个文档，只剩下消息
+        DocumentSnapshot snapshot = fileSaver.getSnapshot();
+        if (snapshot.getDocument() != doc)
+        {
+            gui.currentPopup = new PopupMessage(gui, "File saved in " + format + "!");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
+
+        selectedFile = fileSaver.getFile();
+        fileName = selectedFile.getName();
+        fileExtension = format;
+        isNewFile = false;
+        encodingSize = selectedFile.length();
+        encodingModified = selectedFile.lastModified();
+
+        // File is saved only if nothing was typed after the snapshot
+        // 只有在快照之后没有输入任何内容时，文件才被保存
+        isSaved = !snapshot.isOutdated();
+        state.setTitle(fileName, null, !isSaved);
+        if (isSaved)
+        {
+            undoManager.saved(selectedFile, snapshot.getDocument(), fileSaver.getTextHash());
+        }
+        if (journal != null)
+        {
+            journal.saved(EditJournal.Base.of(selectedFile, fileSaver.getEncoding(), fileSaver.isStyled()), !isSaved);
+        }
+
+        // Saved file replaced the followed one, following continues from its end
+        // 保存的文件替换了被跟随的文件，从其末尾继续跟随
+        if (follower != null)
+        {
+            loadedBytes = selectedFile.length();
+            if (selectedFile.equals(followedFile) && canFollow()) startFollowing();
+            else endFollowing();
+        }
+
+        Runnable closed = closeAfterSave;
+        closeAfterSave = null;
+        if (isSaved && closed != null)
+        {
+            closed.run();
+            return;
+        }
+
+        gui.currentPopup = new PopupMessage(gui, "File saved in " + format + "!");
+        gui.currentPopup.setVisible(true);
     }
 
 
-    // file encoding detector
-    private String detectFileEncoding(File file) 
+    // Follow mode on or off (menu File > Follow)
+    // 打开或关闭跟随模式（菜单 文件 > 跟随）
+    public void toggleFollow()
     {
-        byte[] buf = new byte[4096];
-        try (FileInputStream fis = new FileInputStream(file))
+        if (followRequested)
         {
-            UniversalDetector detector = new UniversalDetector(null);
-            
-            int nread;
-            while ((nread = fis.read(buf)) > 0 && !detector.isDone())
-            {
-                detector.handleData(buf, 0, nread);
-            }
-            detector.dataEnd();
-            
-            String encoding = detector.getDetectedCharset();
-            detector.reset();
-            
-            if (encoding != null)
-            {
-                return encoding;
-            } 
-            else 
-            {
-                return "CP1251"; // Возвращаем значение по умолчанию, если кодировка не была определена
-            }
+            endFollowing();
+            return;
+        }
+        if (!canFollow())
+        {
+            gui.fFollow.setSelected(false);
+            gui.currentPopup = new PopupMessage(gui, "Only txt files opened in the editor can be followed!");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
 
-        } 
-        
+        followRequested = true;
+        followedFile = selectedFile;
+        startFollowing();
+    }
+
+
+    // Text that was loaded from the file (it's in the spool) and still can grow from the file's end
+    // 从文件加载的文本（在缓冲文件中），仍然可以从文件末尾增长
+    private boolean canFollow()
+    {
+        return !isNewFile && !isLoading() && selectedFile != null && viewer == null && lineEndings != null &&
+            "txt".equalsIgnoreCase(fileExtension) && doc instanceof PieceTableDocument &&
+            ((PieceTableDocument) doc).getPieceTable().getOriginal() != null;
+    }
+
+
+    private void startFollowing()
+    {
+        stopFollowing();
+        try
+        {
+            follower = new FileFollower(this, selectedFile, (PieceTableDocument) doc, selectedEncoding,
+                loadedBytes, lineEndings);
+            follower.start();
+            if (isActive()) gui.fFollow.setSelected(true);
+        }
         catch (IOException e)
         {
-            e.printStackTrace();
-            return "CP1251"; // Возвращаем значение по умолчанию в случае ошибки
+            followingFailed(null, e);
         }
     }
 
-    
-    // save as txt file
-    void saveAsTxt(File file)
-    {   
-        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter
-            (new FileOutputStream(
-                file.getName().contains(".txt") ? file.getAbsolutePath() : file.getAbsolutePath() + ".txt"), selectedEncoding)))
+
+    private void stopFollowing()
+    {
+        if (follower == null) return;
+        follower.stop();
+        follower = null;
+    }
+
+
+    private void endFollowing()
+    {
+        followRequested = false;
+        stopFollowing();
+        if (isActive()) gui.fFollow.setSelected(false);
+    }
+
+
+    // Called by the follower with text decoded from the new end of the file
+    // 由跟随器调用，带有从文件新末尾解码的文本
+    void tailAppended(FileFollower fileFollower, int spoolStart, int count, LineEndings appended, long bytes)
+    {
+        if (fileFollower != follower) return;
+        PieceTableDocument document = (PieceTableDocument) doc;
+
+        // Caret at the end keeps showing the newest lines
+        // 末尾的光标持续显示最新的行
+        int start = document.getLength();
+        boolean atEnd = getCaret() == start;
+        if (count > 0) document.appendOriginal(spoolStart, count);
+        lineEndings.append(document, appended, start);
+        loadedBytes = bytes;
+        if (atEnd)
         {
-            writer.write(gui.textArea.getText());
+            caret = document.getLength();
+            if (isActive()) gui.textArea.setCaretPosition(caret);
+        }
 
-            if (gui.window.getTitle().endsWith(" — Modified"))
-            {
-                String title = gui.window.getTitle();
-                title = title.replace(" — Modified", "");
-                gui.window.setTitle(title);
-            }
+        // Unchanged document is the file as it is now
+        // 未更改的文档就是文件现在的样子
+        if (isSaved && journal != null)
+        {
+            journal.saved(EditJournal.Base.of(selectedFile, selectedEncoding, false), false);
+        }
+    }
 
-            isNewFile = false;
-            isSaved = true;
 
-            gui.currentPopup = new PopupMessage(gui, "File saved in txt!");
+    // Called by the follower when the file was truncated or replaced (rotated)
+    // 文件被截断或替换（轮转）时由跟随器调用
+    void followedFileReplaced(FileFollower fileFollower)
+    {
+        if (fileFollower != follower) return;
+        stopFollowing();
+
+        // Unsaved edits are not thrown away by reloading
+        // 重新加载不会丢弃未保存的编辑
+        if (!isSaved)
+        {
+            endFollowing();
+            gui.currentPopup = new PopupMessage(gui, "File was truncated or replaced, following stopped");
             gui.currentPopup.setVisible(true);
+            return;
+        }
+        open(followedFile);
+    }
+
+
+    void followingFailed(FileFollower fileFollower, IOException error)
+    {
+        if (fileFollower != follower) return;
+        endFollowing();
+        gui.currentPopup = new PopupMessage(gui, "Error following file: " + error.getMessage());
+        gui.currentPopup.setVisible(true);
+    }
+
+
+    // Replacing the document with an empty one
+    // 用空文档替换文档
+    private void installNewDocument()
+    {
+        endFollowing();
+        installDocument(new PieceTableDocument());
+        lineEndings = null;
+        startJournal(EditJournal.Base.NONE, false);
+    }
+
+
+    // Starting the journal of unsaved edits for the shown document
+    // 为显示的文档启动未保存编辑的日志
+    void startJournal(EditJournal.Base base, boolean originalPieces)
+    {
+        closeJournal(true);
+        if (doc instanceof PieceTableDocument)
+        {
+            journal = new EditJournal((PieceTableDocument) doc, base, originalPieces);
+        }
+    }
+
+
+    private void closeJournal(boolean delete)
+    {
+        if (journal == null) return;
+        journal.close(delete);
+        journal = null;
+    }
 
-            gui.window.setTitle(file.getName().contains(".txt") ? file.getName() : file.getName() + ".txt");
 
-            String filePath = file.getAbsolutePath().contains(".txt") ? file.getAbsolutePath() : file.getAbsolutePath() + ".txt";
-            selectedFile = new File(filePath);
+    // Closing the tab, the changes were saved or the user didn't want them.
+    // When the program is exiting, the journal is deleted before the program ends.
+    //
+    // 关闭标签页，更改已保存或用户不需要它们。
+    // 程序退出时，在程序结束之前删除日志。
+    void dispose(boolean exiting)
+    {
+        cancelLoading();
+        loader = null;
+        endFollowing();
+        closeViewer();
+
+        // Undo history on disk is handed to the writer thread before the program waits for it
+        // 在程序等待写入线程之前，将磁盘上的撤销历史交给它
+        undoManager.discardAllEdits();
+        if (exiting && journal != null)
+        {
+            journal.closeAndWait(true);
+            journal = null;
         }
+        closeJournal(true);
+        dropDocument();
+    }
+
 
-        catch (Exception e)
+    // Recovering work left by an editor that was not closed normally into this tab
+    // 将未正常关闭的编辑器留下的工作恢复到此标签页中
+    void recover(EditJournal.Header header)
+    {
+        if (!header.baseRequired)
+        {
+            recoverWithoutFile(header);
+        }
+        else if (header.base.isUnchanged())
+        {
+            // Journal is applied when the file is loaded
+            // 加载文件时应用日志
+            recovery = header;
+            open(header.base.getFile());
+        }
+        else
         {
-            gui.currentPopup = new PopupMessage(gui, "Exception when saving file in txt format!\n" + e.toString());
+            gui.currentPopup = new PopupMessage(gui, "File was changed, unsaved changes can't be recovered");
             gui.currentPopup.setVisible(true);
+            header.journal.delete();
         }
     }
 
 
-    // save as rtf file
-    void saveAsRtf(File file)
+    // Recovered text doesn't need the original file, it becomes a new file
+    // 恢复的文本不需要原始文件，它成为一个新文件
+    private void recoverWithoutFile(EditJournal.Header header)
     {
-        String filePath = file.getAbsolutePath().contains(".rtf") ? file.getAbsolutePath() : file.getAbsolutePath() + ".rtf";
-        selectedFile = new File(filePath);
+        cancelLoading();
+        endFollowing();
+        closeViewer();
+        closeJournal(true);
+        installDocument(new PieceTableDocument());
+        lineEndings = null;
+
+        recovery = header;
+        applyRecovery();
+        startJournal(EditJournal.Base.NONE, false);
+        journal.checkpoint();
+
+        isNewFile = true;
+        isSaved = false;
+        state.setTitle("Recovered", null, true);
+    }
 
-        RTFEditorKit rtfKit = new RTFEditorKit();
-        try (BufferedOutputStream fos = new BufferedOutputStream(new FileOutputStream(selectedFile)))
-        {
-            rtfKit.write(fos, gui.doc, 0, gui.doc.getLength());
-            
-            if (gui.window.getTitle().endsWith(" — Modified"))
-            {
-                String title = gui.window.getTitle();
-                title = title.replace(" — Modified", "");
-                gui.window.setTitle(title);
-            }
 
-            isNewFile = false;
-            isSaved = true;
+    // Replaying the journal into the shown document, replayed edits can't be undone
+    // 将日志重放到显示的文档中，重放的编辑无法撤销
+    private boolean applyRecovery()
+    {
+        if (recovery == null) return false;
+        EditJournal.Header header = recovery;
+        recovery = null;
 
-            gui.currentPopup = new PopupMessage(gui, "File saved in rtf!");
+        boolean complete;
+        try
+        {
+            complete = EditJournal.replay(header.journal, (PieceTableDocument) doc);
+        }
+        catch (IOException e)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Error recovering changes: " + e.getMessage());
             gui.currentPopup.setVisible(true);
+            return false;
+        }
+        undoManager.discardAllEdits();
+        header.journal.delete();
+
+        gui.currentPopup = new PopupMessage(gui, complete ? "Unsaved changes recovered" : "Unsaved changes partially recovered");
+        gui.currentPopup.setVisible(true);
+        return true;
+    }
 
-            gui.window.setTitle(file.getName().contains(".rtf") ? file.getName() : file.getName() + ".rtf");
+
+    // Showing the tab in the window, a tab without a document loads its file again
+    // 在窗口中显示标签页，没有文档的标签页会重新加载其文件
+    void activated()
+    {
+        boolean reload = doc == null;
+        if (reload) installNewDocument();
+        else gui.showDocument(doc);
+
+        gui.showViewer(viewer);
+        gui.fFollow.setSelected(followRequested);
+        gui.window.setTitle(state.getTitle());
+        gui.statusBar.refresh();
+        if (!reload)
+        {
+            gui.textArea.setCaretPosition(Math.min(caret, doc.getLength()));
+            return;
         }
 
-        catch (Exception e)
+        // Until the text is shown the tab is not the file, so it can't be saved over it
+        // 在显示文本之前，标签页不是该文件，因此不能覆盖它保存
+        isNewFile = true;
+        if (selectedFile.isFile())
         {
-            gui.currentPopup = new PopupMessage(gui, "Exception when saving file in rtf format!\n" + e.toString());
-            gui.currentPopup.setVisible(true);
+            open(selectedFile);
+            return;
         }
+        state.setTitle("New", null, false);
+        gui.currentPopup = new PopupMessage(gui, "File " + fileName + " wasn't found!");
+        gui.currentPopup.setVisible(true);
     }
+
+    // Another tab is shown, the caret is remembered
+    // 显示另一个标签页，记住光标
+    void deactivated()
+    {
+        if (viewer == null && doc != null) caret = gui.textArea.getCaretPosition();
+    }
+
+    private boolean isActive()
+    {
+        return gui.fileFunction == this;
+    }
+
+    // Checking if the document of the tab is in memory
+    // 检查标签页的文档是否在内存中
+    boolean isLoaded()
+    {
+        return doc != null;
+    }
+
+    // Saved file that is not shown can drop its document, it's loaded again from the file
+    // 未显示的已保存文件可以丢弃其文档，它会从文件重新加载
+    boolean canEvict()
+    {
+        return doc != null && isSaved && !isNewFile && selectedFile != null && loader == null && saver == null &&
+            !followRequested && viewer == null;
+    }
+
+    void evict()
+    {
+        closeJournal(true);
+        dropDocument();
+        lineEndings = null;
+    }
+
+    // Empty new tab, a file that is opened is loaded into it
+    // 空的新标签页，打开的文件被加载到其中
+    boolean isUnused()
+    {
+        return isNewFile && loader == null && viewer == null && doc != null && doc.getLength() == 0;
+    }
+
+    // File of the tab (null for a new file)
+    // 标签页的文件（新文件为null）
+    File getFile()
+    {
+        return isNewFile ? null : selectedFile.getAbsoluteFile();
+    }
+
+    String getEncoding()
+    {
+        return selectedEncoding;
+    }
+
+    long getEncodingSize()
+    {
+        return encodingSize;
+    }
+
+    long getEncodingModified()
+    {
+        return encodingModified;
+    }
+
+    int getCaret()
+    {
+        return isActive() && viewer == null && doc != null ? gui.textArea.getCaretPosition() : caret;
+    }
+
+    UndoHistory getUndoManager()
+    {
+        return undoManager;
+    }
+
+    // Title and size of the tab, listeners hear of its changes at most once a frame
+    // 标签页的标题和大小，监听器每帧最多收到一次其更改的通知
+    EditorState getState()
+    {
+        return state;
+    }
+
+    String getTitle()
+    {
+        return state.getTitle();
+    }
+
+    // Giving the tab a new document, the text area shows it if the tab is selected
+    // 给标签页一个新文档，如果标签页被选中，文本区会显示它
+    private void installDocument(StyledDocument newDoc)
+    {
+        if (doc != newDoc) dropDocument();
+
+        doc = newDoc;
+        newDoc.addUndoableEditListener(undoManager);
+        newDoc.addDocumentListener(modificationListener);
+        state.setDocument(newDoc);
+        undoManager.discardAllEdits();
+        if (isActive()) gui.showDocument(newDoc);
+    }
+
+    // Listeners are removed and the spool file of the document is deleted
+    // 移除监听器并删除文档的缓冲文件
+    private void dropDocument()
+    {
+        if (doc == null) return;
+        doc.removeUndoableEditListener(undoManager);
+        doc.removeDocumentListener(modificationListener);
+        state.setDocument(null);
+        if (doc instanceof PieceTableDocument)
+        {
+            ((PieceTableDocument) doc).dispose();
+        }
+        doc = null;
+        undoManager.discardAllEdits();
+    }
+
+    // Closing the viewer, the text area returns to the window if the tab is selected
+    // 关闭查看器，如果标签页被选中，文本区返回到窗口
+    private void closeViewer()
+    {
+        if (viewer == null) return;
+        viewer.close();
+        viewer = null;
+        if (isActive()) gui.showViewer(null);
+    }
+
+    // Document listener of the tab
+    // 标签页的文档监听器
+    private final DocumentListener modificationListener = new DocumentListener() 
+    {
+        // Method for tracking document changes
+        // 跟踪文档变化的方法
+        public void change(DocumentEvent e) 
+        {
+            // Text added by the background loader or by following the file is not a modification
+            // 后台加载器添加的文本或跟随文件添加的文本不是修改
+            Document document = e.getDocument();
+            if (document instanceof PieceTableDocument && ((PieceTableDocument) document).isAppending()) return;
+            if (isLoading()) editedWhileLoading = true;
+
+            // Set isSaved to false when the document is changed, the title shows it on the next frame
+            // 当文档发生变化时，将isSaved设置为false，标题在下一帧显示它
+            isSaved = false;
+            state.setModified(true);
+        }
+
+        @Override
+        public void insertUpdate(DocumentEvent e)
+        {
+            change(e);
+        }
+
+        @Override
+        public void removeUpdate(DocumentEvent e)
+        {
+            change(e);
+        }
+
+        @Override
+        public void changedUpdate(DocumentEvent e)
+        {
+            change(e);
+        }
+    };
 }
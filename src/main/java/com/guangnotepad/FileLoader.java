@@ -0,0 +1,313 @@
+package com.guangnotepad;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/*
+ * Background file loading with SwingWorker.
+ * Encoding detection and decoding run on a worker thread, decoded text is written into a CharSpool
+ * And published in batches, the Event Dispatch Thread only appends the new pieces to the document.
+ * So the first screen of text appears almost at once and the window stays responsive.
+ * Loading can be cancelled (Escape), the text loaded so far stays in the document.
+ *
+ * 使用SwingWorker在后台加载文件。
+ * 编码检测和解码在工作线程上运行，解码后的文本写入CharSpool并分批发布，
+ * 事件调度线程只将新片段追加到文档中。
+ * 因此第一屏文本几乎立即出现，窗口保持响应。
+ * 可以取消加载（Escape），已加载的文本保留在文档中。
+ */
+
+
+// File loader class
+// 文件加载器类
+
+public class FileLoader extends SwingWorker<Void, Integer>
+{
+    // First block is small, so the first screen is shown quickly
+    // 第一个块很小，因此第一屏很快显示
+    private static final int FIRST_BLOCK = 16 << 10;
+    private static final int BLOCK = 256 << 10;
+
+    private final FileFunction fileFunction;
+    private final File file;
+    private final boolean isStyled;
+    private final boolean isCompressed;
+
+    // Written by the worker thread
+    // 由工作线程写入
+    private volatile String encoding;
+    private volatile boolean useViewer;
+    private volatile PieceTableDocument document;
+    private volatile CharSpool spool;
+    private volatile LineEndings lineEndings;
+    private volatile long bytesRead;
+
+    // State of the Event Dispatch Thread: text shown so far and whether the worker has ended
+    // 事件调度线程的状态：到目前为止显示的文本以及工作线程是否已结束
+    private boolean installed;
+    private int appended;
+    private boolean workerEnded;
+
+    // Constructor
+    // 构造函数
+    public FileLoader(FileFunction fileFunction, File file, boolean isStyled, boolean isCompressed)
+    {
+        this.fileFunction = fileFunction;
+        this.file = file;
+        this.isStyled = isStyled;
+        this.isCompressed = isCompressed;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    // Line separators of a text file (null for styled files)
+    // 文本文件的行分隔符（带样式的文件为null）
+    public LineEndings getLineEndings()
+    {
+        return lineEndings;
+    }
+
+    // Bytes of the file that were read (compressed bytes for a compressed file)
+    // 已读取的文件字节数（压缩文件为压缩字节数）
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    // True if some text of the file is already shown
+    // 如果文件的某些文本已经显示，则为真
+    public boolean isInstalled()
+    {
+        return installed;
+    }
+
+    // True if the file is too big and must be shown in the read-only viewer
+    // 如果文件太大必须在只读查看器中显示，则为真
+    public boolean isViewer()
+    {
+        return useViewer;
+    }
+
+    // Background part
+    // 后台部分
+    @Override
+    protected Void doInBackground() throws Exception
+    {
+        try
+        {
+            read();
+        }
+        finally
+        {
+            SwingUtilities.invokeLater(this::ended);
+        }
+        return null;
+    }
+
+    private void read() throws Exception
+    {
+        if (isCompressed)
+        {
+            readCompressed();
+            return;
+        }
+
+        encoding = fileFunction.detectFileEncoding(file);
+
+        if (!isStyled && file.length() > FileFunction.VIEWER_THRESHOLD &&
+            Charset.isSupported(encoding) && LargeFileViewer.supports(Charset.forName(encoding)))
+        {
+            useViewer = true;
+            return;
+        }
+
+        if (isStyled)
+        {
+            readStyled();
+        }
+        else
+        {
+            try (InputStream in = new ProgressStream(new FileInputStream(file)))
+            {
+                readTxt(in);
+            }
+        }
+    }
+
+    // Compressed text is decompressed while it is decoded, so only the decoded text is kept (in the spool).
+    // The encoding is detected from the decompressed head, which is then decoded before the rest of the stream.
+    //
+    // 压缩文本在解码时解压，因此只保留解码后的文本（在缓冲文件中）。
+    // 编码从解压后的开头检测，然后先解码开头，再解码流的其余部分。
+    private void readCompressed() throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new ProgressStream(new FileInputStream(file)), BLOCK))
+        {
+            byte[] head = new byte[EncodingDetector.SAMPLE_BYTES];
+            int length = 0;
+            int n;
+            while (length < head.length && (n = in.read(head, length, head.length - length)) > 0)
+            {
+                length += n;
+            }
+            head = Arrays.copyOf(head, length);
+            encoding = fileFunction.detectFileEncoding(file, head);
+            readTxt(new SequenceInputStream(new ByteArrayInputStream(head), in));
+        }
+    }
+
+    // Decoding the text into the spool block by block
+    // 将文本逐块解码到缓冲文件中
+    private void readTxt(InputStream in) throws IOException
+    {
+        spool = new CharSpool();
+        document = new PieceTableDocument(spool);
+
+        // One decoder with reused buffers for the whole file, line separators are recorded
+        // 整个文件使用一个带有重用缓冲区的解码器，记录行分隔符
+        TextDecoder decoder = new TextDecoder(Charset.forName(encoding), BLOCK);
+        lineEndings = decoder.getLineEndings();
+
+        int blockSize = FIRST_BLOCK;
+        while (!isCancelled() && decoder.decodeBlock(in, blockSize, spool::append))
+        {
+            publish(spool.length());
+            blockSize = BLOCK;
+        }
+        spool.trim();
+    }
+
+    // Rtf and native files are read into a document that is not shown yet
+    // Rtf和本地格式文件被读入尚未显示的文档
+    private void readStyled() throws Exception
+    {
+        document = new PieceTableDocument();
+        if (NativeFormat.isNative(file))
+        {
+            NativeFormat.read(file, document);
+            return;
+        }
+        try (InputStream in = new ProgressStream(new FileInputStream(file)))
+        {
+            new RtfReader(document).read(in);
+        }
+    }
+
+    // Appending published text on the Event Dispatch Thread
+    // 在事件调度线程上追加已发布的文本
+    @Override
+    protected void process(List<Integer> lengths)
+    {
+        if (isCancelled()) return;
+        appendUpTo(lengths.get(lengths.size() - 1));
+    }
+
+    // Showing the document and adding pieces that are not in it yet
+    // 显示文档并添加尚未在其中的片段
+    private void appendUpTo(int length)
+    {
+        if (!installed)
+        {
+            fileFunction.showLoadingDocument(this, document);
+            installed = true;
+        }
+        if (length > appended)
+        {
+            document.appendOriginal(appended, length - appended);
+            appended = length;
+        }
+    }
+
+    // Called when loading is finished or cancelled.
+    // A cancelled worker may still be adding text to the spool and the line endings,
+    // So text that is already shown is finished only after the worker has ended.
+    //
+    // 加载完成或取消时调用。
+    // 被取消的工作线程可能仍在向缓冲文件和行尾添加文本，
+    // 因此已显示的文本只有在工作线程结束后才会完成。
+    @Override
+    protected void done()
+    {
+        if (isCancelled() && installed && !workerEnded) return;
+        finish();
+    }
+
+    // The worker has ended, everything it wrote is seen by the Event Dispatch Thread
+    // 工作线程已结束，它写入的所有内容对事件调度线程都可见
+    private void ended()
+    {
+        workerEnded = true;
+        if (isCancelled() && installed) finish();
+    }
+
+    private void finish()
+    {
+        Exception error = null;
+        if (!isCancelled())
+        {
+            try
+            {
+                get();
+            }
+            catch (Exception e)
+            {
+                error = e;
+            }
+        }
+
+        // Text that was decoded but not published yet is added here, a load cancelled before any text was shown shows none
+        // 已解码但尚未发布的文本在这里添加，在显示任何文本之前取消的加载不显示文本
+        if (error == null && !useViewer && document != null && (installed || !isCancelled()))
+        {
+            appendUpTo(spool != null ? spool.length() : 0);
+        }
+        fileFunction.loadingFinished(this, error);
+    }
+
+    // Input stream that reports the progress of reading
+    // 报告读取进度的输入流
+    private class ProgressStream extends FilterInputStream
+    {
+        private final long size = Math.max(1, file.length());
+
+        ProgressStream(InputStream in)
+        {
+            super(new BufferedInputStream(in, 64 << 10));
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) report(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) report(n);
+            return n;
+        }
+
+        private void report(int n)
+        {
+            bytesRead += n;
+            setProgress((int) Math.min(100, bytesRead * 100 / size));
+        }
+    }
+}
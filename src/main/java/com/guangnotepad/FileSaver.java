@@ -0,0 +1,137 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+
+/*
+ * Background file saving with SwingWorker.
+ * A snapshot of the document is taken on the Event Dispatch Thread (this is cheap),
+ * Encoding and writing run on a worker thread, so typing continues while a big file is saved.
+ * When saving is finished FileFunction checks if the document was edited after the snapshot.
+ *
+ * 使用SwingWorker在后台保存文件。
+ * 在事件调度线程上获取文档快照（成本很低），
+ * 编码和写入在工作线程上运行，因此保存大文件时可以继续输入。
+ * 保存完成后，FileFunction检查快照之后文档是否被编辑过。
+ */
+
+
+// File saver class
+// 文件保存器类
+
+public class FileSaver extends SwingWorker<Void, Void>
+{
+    private final FileFunction fileFunction;
+    private final DocumentSnapshot snapshot;
+    private final File file;
+    private final String format;
+    private final String encoding;
+    private final LineEndings lineEndings;
+    private long textHash;
+
+    // Constructor, must be called on the Event Dispatch Thread
+    // 构造函数，必须在事件调度线程上调用
+    public FileSaver(FileFunction fileFunction, PieceTableDocument document, File file, String format,
+                     String encoding, LineEndings lineEndings)
+    {
+        this.fileFunction = fileFunction;
+        this.snapshot = document.snapshot(isStyled(format));
+        this.file = file;
+        this.format = format;
+        this.encoding = encoding;
+        this.lineEndings = lineEndings == null ? null : lineEndings.snapshot();
+    }
+
+    public DocumentSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    // File type: "txt", FileFunction.COMPRESSED_EXTENSION, "rtf" or NativeFormat.EXTENSION
+    // 文件类型："txt"、FileFunction.COMPRESSED_EXTENSION、"rtf"或NativeFormat.EXTENSION
+    public String getFormat()
+    {
+        return format;
+    }
+
+    public boolean isStyled()
+    {
+        return isStyled(format);
+    }
+
+    private static boolean isStyled(String format)
+    {
+        return format.equals("rtf") || format.equals(NativeFormat.EXTENSION);
+    }
+
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    // Hash of the saved text, the undo history on disk is kept for it
+    // 已保存文本的哈希值，磁盘上的撤销历史为其保存
+    public long getTextHash()
+    {
+        return textHash;
+    }
+
+    // Background part
+    // 后台部分
+    @Override
+    protected Void doInBackground() throws Exception
+    {
+        try
+        {
+            if (format.equals("rtf"))
+            {
+                DocumentSaver.saveRtf(snapshot, file);
+            }
+            else if (format.equals(NativeFormat.EXTENSION))
+            {
+                DocumentSaver.saveNative(snapshot, file);
+            }
+            else if (format.equals(FileFunction.COMPRESSED_EXTENSION))
+            {
+                DocumentSaver.saveCompressedText(snapshot, file, encoding, lineEndings);
+            }
+            else
+            {
+                DocumentSaver.saveText(snapshot, file, encoding, lineEndings);
+            }
+            textHash = UndoStore.hash(snapshot);
+        }
+        finally
+        {
+            snapshot.release();
+        }
+        return null;
+    }
+
+    // Called when saving is finished or failed
+    // 保存完成或失败时调用
+    @Override
+    protected void done()
+    {
+        Exception error = null;
+        try
+        {
+            get();
+        }
+        catch (ExecutionException e)
+        {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        catch (Exception e)
+        {
+            error = e;
+        }
+        fileFunction.savingFinished(this, error);
+    }
+}
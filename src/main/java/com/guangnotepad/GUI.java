@@ -3,15 +3,12 @@ package com.guangnotepad;
 import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
-import javax.swing.event.DocumentListener;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.UndoableEditEvent;
-import javax.swing.event.UndoableEditListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
-import javax.swing.undo.UndoManager;
 
 
 // GUI class
@@ -33,11 +30,32 @@ public class GUI implements ActionListener
     JTextPane textArea;
     JScrollPane scrollPane;
 
+    // Read-only viewer shown instead of the text area (null when not used)
+    // 代替文本区显示的只读查看器（不使用时为null）
+    LargeFileViewer viewer;
+
+    // Highlights of search matches and of the selected word, painted over the visible text
+    // 搜索匹配项和所选单词的高亮，绘制在可见文本上
+    MatchHighlighter matchHighlighter;
+
+    // Open find and replace dialog (null when it is closed)
+    // 打开的查找和替换对话框（关闭时为null）
+    SearchFunction searchFunction;
+
+    // Caret position, size and state of the selected tab under the text area
+    // 文本区下方所选标签页的光标位置、大小和状态
+    StatusBar statusBar;
+
+    // Tabs, every tab has its own file, document and undo history
+    // 标签页，每个标签页都有自己的文件、文档和撤销历史
+    Workspace workspace;
+
     //Top Menu Bar 
     // 顶部菜单栏
     JMenuBar menuBar;
     JMenu fileMenu, editMenu, formatMenu;
-    JMenuItem fNew, fOpen, fSave, fSaveAs, fExit,
+    JCheckBoxMenuItem fFollow, eHighlightAll;
+    JMenuItem fNew, fOpen, fSave, fSaveAs, fClose, fExit,
     eUndo, eRedo, eCut, eCopy, ePaste, eFind,
     fFontAndSize, fTextColor, fTextHighlightColor,fBackgroundColor;
     
@@ -46,13 +64,13 @@ public class GUI implements ActionListener
     JButton resetText = new JButton("Reset text settings");
     JButton quickHighlight = new JButton("Highlight");
 
-    // Methods of the framework 
-    // 框架的方法
-    FileFunction fileFunction = new FileFunction(this);
+    // Methods of the framework, file function and undo manager are the ones of the selected tab
+    // 框架的方法，文件功能和撤销管理器是所选标签页的
+    FileFunction fileFunction;
     FormatFunction formatFunction = new FormatFunction(this, doc);
     EditFunction editFunction = new EditFunction(this);
     HotkeyHandler hotkeyHandler = new HotkeyHandler(this);
-    UndoManager um = new UndoManager();
+    UndoHistory um;
     RightClickMenu rightClickMenu;
 
     // Constructor 
@@ -86,10 +104,29 @@ public class GUI implements ActionListener
         // Add right mouse click menu
         // 添加右键菜单
         addRightMouseClickMenu();
+
+        // Undo histories of files that were not used for a long time are deleted
+        // 删除长时间未使用的文件的撤销历史
+        UndoStore.cleanUp();
+
+        // Tabs of the last session, only the selected one is loaded
+        // 上次会话的标签页，只加载所选的标签页
+        workspace.restoreSession();
+
+        // Setting default text color and background color
+        // 设置默认文本颜色和背景颜色
+        MutableAttributeSet attrs = new SimpleAttributeSet();
+        StyleConstants.setBackground(attrs, textArea.getBackground()); // Установка цвета фона
+        StyleConstants.setForeground(attrs, Color.BLACK); // Установка цвета текста
+        doc.setCharacterAttributes(0, doc.getLength(), attrs, false);
         
         // Set window visible
         // 设置窗口可见
         window.setVisible(true); 
+
+        // Unsaved edits are journaled, work left by a crash is offered for recovery
+        // 未保存的编辑被记录，崩溃留下的工作被提供恢复
+        SwingUtilities.invokeLater(workspace::recoverUnsavedWork);
     }
 
     // Create window method 
@@ -108,7 +145,7 @@ public class GUI implements ActionListener
             @Override
             public void windowClosing(WindowEvent e)
             {
-                fileFunction.exit();
+                workspace.exit();
             }
         });
     }
@@ -129,15 +166,6 @@ public class GUI implements ActionListener
         textArea = new JTextPane();
         textArea.addKeyListener(hotkeyHandler);
 
-        // Add undo manager 
-        // 添加撤销管理器
-        textArea.getDocument().addUndoableEditListener(new UndoableEditListener() {
-            public void undoableEditHappened(UndoableEditEvent e)
-            {
-                um.addEdit(e.getEdit());
-            }
-        });
-
         // Add scroll pane 
         // 添加滚动窗格
         scrollPane = new JScrollPane(textArea, 
@@ -146,53 +174,43 @@ public class GUI implements ActionListener
 
         this.scrollPane.setBorder(BorderFactory.createEmptyBorder());
         window.add(scrollPane);
-    
-        // Receiving the document from the text area 
-        // And setting default text color and background color
-        doc = textArea.getStyledDocument();
-        MutableAttributeSet attrs = new SimpleAttributeSet();
-        StyleConstants.setBackground(attrs, textArea.getBackground()); // Установка цвета фона
-        StyleConstants.setForeground(attrs, Color.BLACK); // Установка цвета текста
-        doc.setCharacterAttributes(0, doc.getLength(), attrs, false);
+        matchHighlighter = new MatchHighlighter(textArea, scrollPane.getViewport());
+        statusBar = new StatusBar(this);
+        window.add(statusBar, BorderLayout.SOUTH);
+
+        // Tab bar above the text area
+        // 文本区上方的标签栏
+        workspace = new Workspace(this);
+        window.add(workspace.getTabBar(), BorderLayout.NORTH);
+    }
 
-        // Add a document listener to the text area
-        // 为文本区域添加文档监听器
-        textArea.getDocument().addDocumentListener(new DocumentListener() 
-        {
-            // Method for tracking text area changes
-            // 跟踪文本区域变化的方法
-            public void change() 
-            {
-                // Set isSaved to false when the text area is changed
-                // 当文本区域发生变化时，将isSaved设置为false
-                fileFunction.isSaved = false;
-
-                // Setting Modified in the title of the window when the text area is changed
-                // 当文本区域发生变化时，在窗口的标题中设置"Modified"
-                if (!window.getTitle().endsWith(" — Modified"))
-                {
-                    window.setTitle(window.getTitle() + " — Modified");
-                }
-            }
+    // Show a document in the text area (documents are owned by the tabs)
+    // 在文本区中显示文档（文档属于标签页）
+    public void showDocument(StyledDocument newDoc)
+    {
+        boolean changed = newDoc != textArea.getDocument();
+        doc = newDoc;
+        textArea.setDocument(newDoc);
 
-            @Override
-            public void insertUpdate(DocumentEvent e)
-            {
-                change();
-            }
+        // Matches of the find dialog belong to the document that was shown before
+        // 查找对话框的匹配项属于之前显示的文档
+        if (changed && searchFunction != null) searchFunction.documentShown();
+    }
 
-            @Override
-            public void removeUpdate(DocumentEvent e)
-            {
-                change();
-            }
+    // Show read-only viewer instead of the text area, null returns the text area to the window
+    // 显示只读查看器代替文本区，null将文本区返回到窗口
+    public void showViewer(LargeFileViewer newViewer)
+    {
+        if (newViewer == viewer) return;
 
-            @Override
-            public void changedUpdate(DocumentEvent e)
-            {
-                change();
-            }
-        });
+        window.remove(viewer != null ? viewer.getPanel() : scrollPane);
+        viewer = newViewer;
+        window.add(viewer != null ? viewer.getPanel() : scrollPane);
+        window.revalidate();
+        window.repaint();
+
+        if (viewer != null) viewer.requestFocusInWindow();
+        else textArea.requestFocusInWindow();
     }
 
     // Create menu bar method
@@ -276,6 +294,20 @@ public class GUI implements ActionListener
         fSaveAs.addActionListener(this);
         fSaveAs.setActionCommand("SaveAs");
         fileMenu.add(fSaveAs);
+
+        // Follow the end of a growing file
+        // 跟随增长文件的末尾
+        fFollow = new JCheckBoxMenuItem("Follow");
+        fFollow.addActionListener(this);
+        fFollow.setActionCommand("Follow");
+        fileMenu.add(fFollow);
+
+        // Close tab
+        // 关闭标签页
+        fClose = new JMenuItem("<html>Close tab<span style='color: gray;'>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;Ctrl+W</span></html>");
+        fClose.addActionListener(this);
+        fClose.setActionCommand("Close");
+        fileMenu.add(fClose);
         fileMenu.addSeparator();
 
         // Exit program
@@ -304,6 +336,30 @@ public class GUI implements ActionListener
         eRedo.setActionCommand("Redo");
         editMenu.add(eRedo);
 
+        // Memory held by the undo history of the tab, shown when the menu opens
+        // 标签页撤销历史占用的内存，在菜单打开时显示
+        editMenu.addMenuListener(new MenuListener()
+        {
+            @Override
+            public void menuSelected(MenuEvent e)
+            {
+                if (um == null) return;
+                eUndo.setToolTipText("Undo history: " + (um.getMemoryBytes() + 1023) / 1024 + " KB of " +
+                    (um.getBudget() >> 10) + " KB, " + um.getEntryCount() + " steps, " +
+                    (um.getDiskBytes() + 1023) / 1024 + " KB on disk");
+            }
+
+            @Override
+            public void menuDeselected(MenuEvent e)
+            {
+            }
+
+            @Override
+            public void menuCanceled(MenuEvent e)
+            {
+            }
+        });
+
         // Cut
         // 剪切
         eCut = new JMenuItem("<html>Cut<span style='color: gray;'>&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;Ctrl + X</span></html>");
@@ -332,6 +388,13 @@ public class GUI implements ActionListener
         eFind.addActionListener(this);
         eFind.setActionCommand("Find");
         editMenu.add(eFind);
+
+        // Highlight all matches and occurrences of the selected word
+        // 高亮所有匹配项和所选单词的出现
+        eHighlightAll = new JCheckBoxMenuItem("Highlight all", true);
+        eHighlightAll.addActionListener(this);
+        eHighlightAll.setActionCommand("HighlightAll");
+        editMenu.add(eHighlightAll);
     }
 
     // Creating menu "Format" method
@@ -393,15 +456,19 @@ public class GUI implements ActionListener
         switch(command)
         {
             case "New": 
-                fileFunction.newFile(); break;
+                workspace.newTab(); break;
             case "Open":
                 fileFunction.openFile(); break;
             case "Save":
                 fileFunction.save(); break;
             case "SaveAs":
                 fileFunction.saveAs(); break;
+            case "Follow":
+                fileFunction.toggleFollow(); break;
+            case "Close":
+                workspace.closeTab(); break;
             case "Exit":
-                fileFunction.exit(); break;
+                workspace.exit(); break;
             case "FontAndSize":
                 formatFunction.setTextFontAndSize(); break;
             case "SetTextColor":
@@ -426,6 +493,8 @@ public class GUI implements ActionListener
                 editFunction.paste(); break;
             case "Find":
                 editFunction.find(); break;
+            case "HighlightAll":
+                matchHighlighter.setEnabled(eHighlightAll.isSelected()); break;
             default:
                 break;
         }
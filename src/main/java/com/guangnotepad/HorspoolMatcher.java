@@ -0,0 +1,137 @@
+package com.guangnotepad;
+
+import java.util.Arrays;
+
+/*
+ * Boyer-Moore-Horspool matching of a literal text.
+ * The last char of the window is compared first, on a mismatch the window jumps by the distance
+ * Of that char from the end of the searched text, so long texts skip most of the chars of the document.
+ * Without case the chars are folded as they are compared, the document is never copied or lowercased.
+ * The shift table has 256 entries for all chars: chars that share an entry get the smallest shift of them.
+ * Texts of up to three chars can't skip much, they are found by a plain loop over their first char.
+ *
+ * 字面文本的Boyer-Moore-Horspool匹配。
+ * 首先比较窗口的最后一个字符，不匹配时窗口跳过该字符到搜索文本末尾的距离，
+ * 因此长文本会跳过文档的大部分字符。
+ * 忽略大小写时，字符在比较时折叠，文档永远不会被复制或转为小写。
+ * 移位表为所有字符提供256个条目：共享条目的字符获得其中最小的移位。
+ * 最多三个字符的文本跳不了多少，通过遍历其第一个字符的简单循环查找。
+ */
+
+
+// Horspool matcher class
+// Horspool匹配器类
+
+public class HorspoolMatcher implements TextMatcher
+{
+    // Texts shorter than this are matched without the shift table
+    // 短于此长度的文本不使用移位表进行匹配
+    private static final int SHORT = 4;
+
+    private final String text;
+    private final boolean matchCase;
+    private final char[] pattern;
+    private final int[] shift = new int[256];
+
+    // Constructor
+    // 构造函数
+    public HorspoolMatcher(String text, boolean matchCase)
+    {
+        this.text = text;
+        this.matchCase = matchCase;
+        this.pattern = matchCase ? text.toCharArray() : TextMatcher.fold(text);
+
+        int last = pattern.length - 1;
+        Arrays.fill(shift, Math.max(1, pattern.length));
+        for (int i = 0; i < last; i++)
+        {
+            shift[pattern[i] & 0xFF] = last - i;
+        }
+    }
+
+    @Override
+    public String getText()
+    {
+        return text;
+    }
+
+    @Override
+    public int find(char[] chars, int start, int end, int from, int limit)
+    {
+        if (pattern.length == 0) return -1;
+        int stop = Math.min(limit, end - pattern.length + 1);
+        if (pattern.length < SHORT)
+        {
+            return matchCase ? findShort(chars, from, stop) : findShortFolded(chars, start, end, from, stop);
+        }
+        return matchCase ? findExact(chars, from, stop) : findFolded(chars, start, end, from, stop);
+    }
+
+    // Short texts can't skip much, a loop over their first char is faster then
+    // 短文本跳不了多少，此时遍历其第一个字符的循环更快
+    private int findShort(char[] chars, int from, int stop)
+    {
+        char firstChar = pattern[0];
+        for (int i = from; i < stop; i++)
+        {
+            if (chars[i] != firstChar) continue;
+            int j = 1;
+            while (j < pattern.length && chars[i + j] == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    private int findShortFolded(char[] chars, int start, int end, int from, int stop)
+    {
+        char firstChar = pattern[0];
+        for (int i = from; i < stop; i++)
+        {
+            if (TextMatcher.foldAt(chars, i, start, end) != firstChar) continue;
+            int j = 1;
+            while (j < pattern.length && TextMatcher.foldAt(chars, i + j, start, end) == pattern[j]) j++;
+            if (j == pattern.length) return i;
+        }
+        return -1;
+    }
+
+    // Separate loops for both cases, so comparing a char is one array read when the case matters
+    // 两种情况使用单独的循环，因此区分大小写时比较一个字符只需读取一次数组
+    private int findExact(char[] chars, int from, int stop)
+    {
+        int last = pattern.length - 1;
+        char lastChar = pattern[last];
+        int i = from;
+        while (i < stop)
+        {
+            char c = chars[i + last];
+            if (c == lastChar)
+            {
+                int j = last - 1;
+                while (j >= 0 && chars[i + j] == pattern[j]) j--;
+                if (j < 0) return i;
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    private int findFolded(char[] chars, int start, int end, int from, int stop)
+    {
+        int last = pattern.length - 1;
+        char lastChar = pattern[last];
+        int i = from;
+        while (i < stop)
+        {
+            char c = TextMatcher.foldAt(chars, i + last, start, end);
+            if (c == lastChar)
+            {
+                int j = last - 1;
+                while (j >= 0 && TextMatcher.foldAt(chars, i + j, start, end) == pattern[j]) j--;
+                if (j < 0) return i;
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+}
@@ -21,20 +21,29 @@ public class HotkeyHandler implements KeyListener
     @Override
     public void keyPressed(KeyEvent e)
     {
-        if (e.isAltDown() && e.getKeyCode() == KeyEvent.VK_F4) gui.fileFunction.exit();
+        if (e.isAltDown() && e.getKeyCode() == KeyEvent.VK_F4) gui.workspace.exit();
+
+        // Escape cancels loading of a file and a paste
+        // Escape取消文件加载和粘贴
+        if (e.getKeyCode() == KeyEvent.VK_ESCAPE)
+        {
+            gui.fileFunction.cancelLoading();
+            gui.editFunction.cancelPaste();
+        }
         
         // Ctrl +
         if (e.isControlDown() & !e.isShiftDown()) 
         {
             switch (e.getKeyCode())
             {
-                case KeyEvent.VK_N: gui.fileFunction.newFile(); break; // new file // 新文件
+                case KeyEvent.VK_N: gui.workspace.newTab(); break; // new file // 新文件
                 case KeyEvent.VK_O: gui.fileFunction.openFile(); break; // open file // 打开文件
                 case KeyEvent.VK_S: gui.fileFunction.save(); break; // save file // 保存文件
+                case KeyEvent.VK_W: gui.workspace.closeTab(); break; // close tab // 关闭标签页
                 case KeyEvent.VK_Z: gui.editFunction.undo(); break; // undo // 撤销
-                case KeyEvent.VK_X: gui.editFunction.cut(); break; // cut // 剪切
-                case KeyEvent.VK_C: gui.editFunction.copy(); break; // copy // 复制
-                case KeyEvent.VK_V: gui.editFunction.paste(); break; // paste // 粘贴
+                case KeyEvent.VK_X: gui.editFunction.cut(); e.consume(); break; // cut, not again by the text area // 剪切，文本区不再剪切
+                case KeyEvent.VK_C: gui.editFunction.copy(); e.consume(); break; // copy, not again by the text area // 复制，文本区不再复制
+                case KeyEvent.VK_V: gui.editFunction.paste(); e.consume(); break; // paste, not again by the text area // 粘贴，文本区不再粘贴
                 case KeyEvent.VK_F: gui.editFunction.find(); break; // find // 查找
                 case KeyEvent.VK_B: gui.formatFunction.setTextColor(false); break; // change character background // 更改字符背景
                 case KeyEvent.VK_R: gui.formatFunction.resetText(); break; // quick reset // 快速重置
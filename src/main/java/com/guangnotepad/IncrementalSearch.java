@@ -0,0 +1,232 @@
+package com.guangnotepad;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/*
+ * Background search of a literal text while it is typed in the find dialog.
+ * The text is matched in chunks of a document snapshot, matches of every chunk are published
+ * So the counter grows while the search goes on. A newer query cancels the search at the next chunk.
+ * When the new query only extends the previous one, its matches can only start where the
+ * Previous matches started, so only these offsets are checked instead of the whole document.
+ * This holds only if matches of the previous query can't overlap (the query has no border,
+ * A prefix that is also its suffix), otherwise some occurrences were skipped and the document is scanned.
+ *
+ * 在查找对话框中输入字面文本时的后台搜索。
+ * 文本在文档快照的块中匹配，每个块的匹配项都会发布，因此计数器在搜索进行时增长。
+ * 较新的查询会在下一个块处取消搜索。
+ * 当新查询只是扩展了前一个查询时，其匹配项只能从前一个匹配项开始的位置开始，
+ * 因此只检查这些偏移量而不是整个文档。
+ * 这仅在前一个查询的匹配项不能重叠时成立（查询没有边界，即同时也是其后缀的前缀），
+ * 否则一些出现被跳过，需要扫描文档。
+ */
+
+
+// Incremental search class
+// 增量搜索类
+
+public class IncrementalSearch extends SwingWorker<Integer, int[]>
+{
+    // Chars matched between two checks for cancellation
+    // 两次检查取消之间匹配的字符数
+    private static final int CHUNK = 1 << 20;
+
+    private final SearchFunction searchFunction;
+    private final DocumentSnapshot snapshot;
+    private final TextMatcher matcher;
+    private final int[] candidates;
+    private final int candidateCount;
+    private volatile boolean started;
+
+    // Receiver of the matches found in one chunk
+    // 一个块中找到的匹配项的接收者
+    interface BatchConsumer
+    {
+        void matches(int[] starts);
+    }
+
+    // Constructor, must be called on the Event Dispatch Thread.
+    // Candidates are the matches of the previous query (null to scan the document).
+    //
+    // 构造函数，必须在事件调度线程上调用。
+    // 候选项是前一个查询的匹配项（为null时扫描文档）。
+    public IncrementalSearch(SearchFunction searchFunction, PieceTableDocument document, TextMatcher matcher,
+                             int[] candidates, int candidateCount)
+    {
+        this.searchFunction = searchFunction;
+        this.snapshot = document.snapshot(false);
+        this.matcher = matcher;
+        this.candidates = candidates;
+        this.candidateCount = candidateCount;
+    }
+
+    public DocumentSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    public String getText()
+    {
+        return matcher.getText();
+    }
+
+    // True if all matches of the next query start at matches of the previous one
+    // 如果下一个查询的所有匹配项都从前一个查询的匹配项开始，则为真
+    public static boolean extendsQuery(String previous, String next, boolean matchCase)
+    {
+        if (previous.isEmpty() || next.length() <= previous.length()) return false;
+        char[] a = matchCase ? previous.toCharArray() : TextMatcher.fold(previous);
+        char[] b = matchCase ? next.toCharArray() : TextMatcher.fold(next);
+        for (int i = 0; i < a.length; i++)
+        {
+            if (a[i] != b[i]) return false;
+        }
+
+        // A border lets matches of the previous query overlap
+        // 边界会让前一个查询的匹配项重叠
+        for (int k = 1; k < a.length; k++)
+        {
+            int j = 0;
+            while (j < k && a[j] == a[a.length - k + j]) j++;
+            if (j == k) return false;
+        }
+        return true;
+    }
+
+    // Background part
+    // 后台部分
+    @Override
+    protected Integer doInBackground() throws BadLocationException
+    {
+        started = true;
+        try
+        {
+            return search(batch -> publish(batch));
+        }
+        finally
+        {
+            snapshot.release();
+        }
+    }
+
+    // Finding the matches on the current thread, returns their number
+    // 在当前线程上查找匹配项，返回其数量
+    int search(BatchConsumer consumer) throws BadLocationException
+    {
+        return candidates == null ? scan(consumer) : check(consumer);
+    }
+
+    // Matching the whole snapshot chunk by chunk, one more char on both sides is read as context
+    // 逐块匹配整个快照，两侧各多读取一个字符作为上下文
+    private int scan(BatchConsumer consumer) throws BadLocationException
+    {
+        Segment segment = new Segment();
+        int length = snapshot.getLength();
+        int wordLength = matcher.getText().length();
+        int found = 0;
+        int next = 0;
+        for (int start = 0; start < length && !isCancelled(); start += CHUNK)
+        {
+            int end = Math.min(length, start + CHUNK);
+            int regionStart = Math.max(0, start - 1);
+            int regionEnd = Math.min(length, end + wordLength);
+            snapshot.getText(regionStart, regionEnd - regionStart, segment);
+
+            int base = segment.offset - regionStart;
+            int[] batch = new int[16];
+            int count = 0;
+            int i = base + Math.max(start, next);
+            while (i < base + end)
+            {
+                int match = matcher.find(segment.array, segment.offset, segment.offset + segment.count, i, base + end);
+                if (match < 0) break;
+                if (count == batch.length) batch = Arrays.copyOf(batch, count * 2);
+                batch[count++] = match - base;
+                i = match + wordLength;
+            }
+            next = Math.max(next, i - base);
+            if (count > 0) consumer.matches(Arrays.copyOf(batch, count));
+            found += count;
+        }
+        return found;
+    }
+
+    // Checking only the offsets where the previous query matched
+    // 只检查前一个查询匹配的偏移量
+    private int check(BatchConsumer consumer) throws BadLocationException
+    {
+        Segment segment = new Segment();
+        int length = snapshot.getLength();
+        int wordLength = matcher.getText().length();
+        int[] batch = new int[64];
+        int count = 0;
+        int found = 0;
+        int next = 0;
+        for (int c = 0; c < candidateCount && !isCancelled(); c++)
+        {
+            int start = candidates[c];
+            if (start < next || start + wordLength > length) continue;
+            int regionStart = Math.max(0, start - 1);
+            int regionEnd = Math.min(length, start + wordLength + 1);
+            snapshot.getText(regionStart, regionEnd - regionStart, segment);
+
+            int at = segment.offset + start - regionStart;
+            if (matcher.find(segment.array, segment.offset, segment.offset + segment.count, at, at + 1) == at)
+            {
+                if (count == batch.length) batch = Arrays.copyOf(batch, count * 2);
+                batch[count++] = start;
+                next = start + wordLength;
+            }
+
+            // Matches are published in batches, the first one at once
+            // 匹配项分批发布，第一个立即发布
+            if (count > 0 && (found == 0 || count >= 4096))
+            {
+                consumer.matches(Arrays.copyOf(batch, count));
+                found += count;
+                count = 0;
+            }
+        }
+        if (count > 0) consumer.matches(Arrays.copyOf(batch, count));
+        return found + count;
+    }
+
+    // Matches found since the last call, on the Event Dispatch Thread
+    // 自上次调用以来找到的匹配项，在事件调度线程上
+    @Override
+    protected void process(List<int[]> batches)
+    {
+        if (!isCancelled()) searchFunction.liveMatchesFound(this, batches);
+    }
+
+    // Called when the search is finished or failed, a cancelled search is forgotten
+    // 搜索完成或失败时调用，取消的搜索会被忽略
+    @Override
+    protected void done()
+    {
+        Exception error = null;
+        try
+        {
+            get();
+        }
+        catch (CancellationException e)
+        {
+            if (!started) snapshot.release();
+            return;
+        }
+        catch (ExecutionException e)
+        {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        catch (InterruptedException e)
+        {
+            error = e;
+        }
+        searchFunction.liveSearchFinished(this, error);
+    }
+}
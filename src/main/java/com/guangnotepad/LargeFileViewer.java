@@ -0,0 +1,379 @@
+package com.guangnotepad;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import javax.swing.*;
+
+/*
+ * Read-only viewer for files that are too big to be loaded into the text area.
+ * The file is mapped with FileChannel.map in windows of a few megabytes,
+ * Only the lines that fit into the visible area are decoded and painted.
+ * The vertical scroll bar works with byte offsets instead of pixels,
+ * So files of any size can be scrolled and jumped through.
+ *
+ * 只读查看器，用于无法加载到文本区的大文件。
+ * 文件通过FileChannel.map按几兆字节的窗口进行映射，
+ * 只有可见区域内的行才会被解码和绘制。
+ * 垂直滚动条使用字节偏移量而不是像素，
+ * 因此可以滚动和跳转任意大小的文件。
+ */
+
+
+// Large file viewer class
+// 大文件查看器类
+
+public class LargeFileViewer extends JComponent
+{
+    // Size of one mapped window and the longest line we're scanning for
+    // 一个映射窗口的大小和扫描的最长行
+    private static final int WINDOW_SIZE = 8 << 20;
+    private static final int MAX_LINE_BYTES = 64 << 10;
+    private static final int MAX_LINE_CHARS = 4096;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long fileSize;
+
+    // Currently mapped window of the file
+    // 当前映射的文件窗口
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+
+    // Byte offset of the first visible line
+    // 第一个可见行的字节偏移量
+    private long topOffset;
+    private int leftPixel;
+
+    // Decoder and buffers are reused for every painted line
+    // 每个绘制的行都重复使用解码器和缓冲区
+    private final CharsetDecoder decoder;
+    private final CharBuffer lineChars = CharBuffer.allocate(MAX_LINE_CHARS);
+    private final byte[] lineBytes = new byte[MAX_LINE_BYTES];
+
+    // Scroll bars work with shifted byte offsets, so int range is enough for any file
+    // 滚动条使用移位后的字节偏移量，因此int范围足以满足任何文件
+    private final JScrollBar verticalBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JScrollBar horizontalBar = new JScrollBar(JScrollBar.HORIZONTAL);
+    private int scrollShift;
+    private boolean adjusting;
+    private int widestLine;
+
+    private final JPanel panel;
+
+    // Constructor
+    // 构造函数
+    public LargeFileViewer(File file, Charset charset, Font font, Color foreground, Color background) throws IOException
+    {
+        randomAccessFile = new RandomAccessFile(file, "r");
+        channel = randomAccessFile.getChannel();
+        fileSize = channel.size();
+
+        decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        setFont(font);
+        setForeground(foreground);
+        setBackground(background);
+        setOpaque(true);
+        setFocusable(true);
+
+        // Byte offsets are shifted until they fit into the scroll bar
+        // 字节偏移量被移位，直到适合滚动条
+        while ((fileSize >> scrollShift) > Integer.MAX_VALUE / 2)
+        {
+            scrollShift++;
+        }
+        verticalBar.setMaximum((int) (fileSize >> scrollShift) + 1);
+        verticalBar.addAdjustmentListener(e ->
+        {
+            if (adjusting) return;
+            scrollTo(lineStartBefore((long) e.getValue() << scrollShift));
+        });
+        horizontalBar.addAdjustmentListener(e ->
+        {
+            leftPixel = e.getValue();
+            repaint();
+        });
+
+        addMouseWheelListener(e -> scrollLines(e.getWheelRotation() * 3));
+        addMouseListener(new MouseAdapter()
+        {
+            @Override
+            public void mousePressed(MouseEvent e)
+            {
+                requestFocusInWindow();
+            }
+        });
+        addKeyListener(new KeyAdapter()
+        {
+            @Override
+            public void keyPressed(KeyEvent e)
+            {
+                handleKey(e);
+            }
+        });
+        addComponentListener(new ComponentAdapter()
+        {
+            @Override
+            public void componentResized(ComponentEvent e)
+            {
+                updateScrollBars();
+            }
+        });
+
+        // Panel with the viewer and its scroll bars
+        // 包含查看器及其滚动条的面板
+        panel = new JPanel(new BorderLayout());
+        panel.add(this, BorderLayout.CENTER);
+        panel.add(verticalBar, BorderLayout.EAST);
+        panel.add(horizontalBar, BorderLayout.SOUTH);
+    }
+
+    // Checking if a charset can be used with byte-level line scanning
+    // 检查字符集是否可以用于字节级行扫描
+    public static boolean supports(Charset charset)
+    {
+        return "\n".getBytes(charset).length == 1 && "\r".getBytes(charset).length == 1;
+    }
+
+    // Panel that is placed into the window instead of the text area
+    // 放置在窗口中代替文本区的面板
+    public JPanel getPanel()
+    {
+        return panel;
+    }
+
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    // Closing the file, mapped windows are released by the garbage collector
+    // 关闭文件，映射的窗口由垃圾收集器释放
+    public void close()
+    {
+        window = null;
+        windowStart = -1;
+        try
+        {
+            channel.close();
+            randomAccessFile.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // Reading one byte, remapping the window if needed
+    // 读取一个字节，必要时重新映射窗口
+    private byte byteAt(long position) throws IOException
+    {
+        if (window == null || position < windowStart || position >= windowStart + window.limit())
+        {
+            // New window starts a bit before the position, so scrolling back doesn't remap at once
+            // 新窗口在位置之前开始，因此向后滚动不会立即重新映射
+            long start = Math.max(0, position - WINDOW_SIZE / 4) & ~0xFFFFL;
+            long size = Math.min(WINDOW_SIZE, fileSize - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowStart = start;
+        }
+        return window.get((int) (position - windowStart));
+    }
+
+    // Finding the start of the line that contains the position
+    // 查找包含该位置的行的开始
+    private long lineStartBefore(long position)
+    {
+        try
+        {
+            position = Math.max(0, Math.min(position, fileSize));
+            long limit = Math.max(0, position - MAX_LINE_BYTES);
+            for (long i = position - 1; i >= limit; i--)
+            {
+                if (byteAt(i) == '\n') return i + 1;
+            }
+            return limit;
+        }
+        catch (IOException e)
+        {
+            return position;
+        }
+    }
+
+    // Finding the start of the next line
+    // 查找下一行的开始
+    private long nextLineStart(long position)
+    {
+        try
+        {
+            long limit = Math.min(fileSize, position + MAX_LINE_BYTES);
+            for (long i = position; i < limit; i++)
+            {
+                if (byteAt(i) == '\n') return i + 1;
+            }
+            return limit;
+        }
+        catch (IOException e)
+        {
+            return fileSize;
+        }
+    }
+
+    // Finding the start of the previous line
+    // 查找上一行的开始
+    private long prevLineStart(long position)
+    {
+        if (position <= 0) return 0;
+        return lineStartBefore(position - 1);
+    }
+
+    // Number of lines that fit into the visible area
+    // 可见区域内容纳的行数
+    private int visibleLines()
+    {
+        int lineHeight = getFontMetrics(getFont()).getHeight();
+        return Math.max(1, getHeight() / lineHeight);
+    }
+
+    // Scrolling by a number of lines (negative goes up)
+    // 按行数滚动（负数向上）
+    public void scrollLines(int lines)
+    {
+        long position = topOffset;
+        for (int i = 0; i < Math.abs(lines); i++)
+        {
+            long next = lines > 0 ? nextLineStart(position) : prevLineStart(position);
+            if (next >= fileSize) break;
+            position = next;
+        }
+        scrollTo(position);
+    }
+
+    // Setting the first visible line and updating the scroll bar
+    // 设置第一个可见行并更新滚动条
+    private void scrollTo(long position)
+    {
+        topOffset = Math.max(0, Math.min(position, fileSize));
+        adjusting = true;
+        verticalBar.setValue((int) (topOffset >> scrollShift));
+        adjusting = false;
+        repaint();
+    }
+
+    // Updating extents of the scroll bars after resizing
+    // 调整大小后更新滚动条的范围
+    private void updateScrollBars()
+    {
+        int lineHeight = getFontMetrics(getFont()).getHeight();
+        int approximateLineBytes = 80;
+        int extent = (int) Math.min(verticalBar.getMaximum(), ((long) visibleLines() * approximateLineBytes) >> scrollShift);
+        verticalBar.setVisibleAmount(Math.max(1, extent));
+        verticalBar.setBlockIncrement(Math.max(1, extent));
+        verticalBar.setUnitIncrement(Math.max(1, (approximateLineBytes >> scrollShift)));
+        horizontalBar.setVisibleAmount(Math.max(1, getWidth()));
+        horizontalBar.setBlockIncrement(Math.max(1, getWidth()));
+        horizontalBar.setUnitIncrement(lineHeight);
+    }
+
+    // Keyboard navigation
+    // 键盘导航
+    private void handleKey(KeyEvent e)
+    {
+        switch (e.getKeyCode())
+        {
+            case KeyEvent.VK_DOWN: scrollLines(1); break;
+            case KeyEvent.VK_UP: scrollLines(-1); break;
+            case KeyEvent.VK_PAGE_DOWN: scrollLines(visibleLines() - 1); break;
+            case KeyEvent.VK_PAGE_UP: scrollLines(-(visibleLines() - 1)); break;
+            case KeyEvent.VK_HOME: if (e.isControlDown()) scrollTo(0); break;
+            case KeyEvent.VK_END:
+                if (e.isControlDown())
+                {
+                    scrollTo(lineStartBefore(fileSize));
+                    scrollLines(-(visibleLines() - 1));
+                }
+                break;
+            case KeyEvent.VK_RIGHT: horizontalBar.setValue(horizontalBar.getValue() + horizontalBar.getUnitIncrement()); break;
+            case KeyEvent.VK_LEFT: horizontalBar.setValue(horizontalBar.getValue() - horizontalBar.getUnitIncrement()); break;
+            default: break;
+        }
+    }
+
+    // Decoding one line from the mapped window, without the line separator
+    // 从映射窗口解码一行，不包括行分隔符
+    private String decodeLine(long start, long end) throws IOException
+    {
+        int length = (int) Math.min(end - start, lineBytes.length);
+        while (length > 0 && (byteAt(start + length - 1) == '\n' || byteAt(start + length - 1) == '\r'))
+        {
+            length--;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            lineBytes[i] = byteAt(start + i);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(lineBytes, 0, length);
+        ((Buffer) lineChars).clear();
+        decoder.reset();
+        decoder.decode(in, lineChars, true);
+        decoder.flush(lineChars);
+        ((Buffer) lineChars).flip();
+        return lineChars.toString();
+    }
+
+    // Painting only the lines that are visible
+    // 只绘制可见的行
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        g.setColor(getForeground());
+        g.setFont(getFont());
+
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int y = metrics.getAscent();
+        long position = topOffset;
+
+        try
+        {
+            for (int i = 0; i <= visibleLines() && position < fileSize; i++)
+            {
+                long next = nextLineStart(position);
+                String line = decodeLine(position, next);
+                g.drawString(line, 4 - leftPixel, y);
+
+                // Widest line seen so far defines horizontal scrolling
+                // 迄今为止看到的最宽行定义了水平滚动
+                int width = metrics.stringWidth(line) + 8;
+                if (width > widestLine)
+                {
+                    widestLine = width;
+                    horizontalBar.setMaximum(widestLine);
+                }
+
+                position = next;
+                y += lineHeight;
+            }
+        }
+        catch (IOException e)
+        {
+            g.drawString("Error reading file: " + e.getMessage(), 4, y);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.guangnotepad;
+
+import java.util.Arrays;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Position;
+
+/*
+ * Line separators of a loaded file.
+ * The document always uses \n, so the loader remembers the separator of the file (the first one found)
+ * And the offsets of the lines that end differently (mixed files).
+ * After the document is shown these offsets become Positions, so they move together with edits,
+ * And DocumentSaver puts the original separators back when saving.
+ *
+ * 已加载文件的行分隔符。
+ * 文档始终使用\n，因此加载器会记住文件的分隔符（找到的第一个分隔符）
+ * 以及以不同方式结束的行的偏移量（混合文件）。
+ * 文档显示后，这些偏移量变为Position，因此它们随编辑一起移动，
+ * DocumentSaver在保存时将原始分隔符放回。
+ */
+
+
+// Line endings class
+// 行尾类
+
+public class LineEndings
+{
+    public static final String LF = "\n";
+    public static final String CRLF = "\r\n";
+    public static final String CR = "\r";
+
+    private String dominant;
+
+    // Lines with another separator, offsets of their \n in the document
+    // 具有其他分隔符的行，其\n在文档中的偏移量
+    private int[] offsets = new int[16];
+    private String[] separators = new String[16];
+    private Position[] positions;
+    private int count;
+
+    // Appended text starts with the \n of a \r\n whose \r ended the text before
+    // 追加的文本以\r\n的\n开头，其\r结束了之前的文本
+    private boolean joinsCR;
+
+    // Separator used for all lines that are not exceptions
+    // 用于所有非例外行的分隔符
+    public String getDominant()
+    {
+        return dominant == null ? LF : dominant;
+    }
+
+    // Number of lines whose separator differs from the dominant one
+    // 分隔符与主要分隔符不同的行数
+    public int getMixedCount()
+    {
+        return count;
+    }
+
+    // Recording the separator of the line break at the offset (called by the decoder in order)
+    // 记录偏移处换行符的分隔符（由解码器按顺序调用）
+    void record(int offset, String separator)
+    {
+        if (dominant == null)
+        {
+            dominant = separator;
+            return;
+        }
+        if (separator.equals(dominant)) return;
+
+        if (count == offsets.length)
+        {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            separators = Arrays.copyOf(separators, count * 2);
+        }
+        offsets[count] = offset;
+        separators[count] = separator;
+        count++;
+    }
+
+    // The \n of a \r\n was dropped at the start of the text (called by the decoder)
+    // 在文本开头丢弃了\r\n的\n（由解码器调用）
+    void joinCR()
+    {
+        joinsCR = true;
+    }
+
+    boolean joinsCR()
+    {
+        return joinsCR;
+    }
+
+    // Checking if the last char of the bound document is the line break of a lone \r
+    // 检查绑定文档的最后一个字符是否是单独\r的换行符
+    boolean endsWithCR(Document document)
+    {
+        int end = document.getLength() - 1;
+        try
+        {
+            if (end < 0 || !document.getText(end, 1).equals("\n")) return false;
+        }
+        catch (BadLocationException e)
+        {
+            return false;
+        }
+        if (count > 0 && offsetAt(count - 1) == end) return separators[count - 1].equals(CR);
+        return CR.equals(dominant);
+    }
+
+    // Turning recorded offsets into positions of the document
+    // 将记录的偏移量转换为文档的位置
+    public void bind(Document document)
+    {
+        positions = new Position[count];
+        for (int i = 0; i < count; i++)
+        {
+            try
+            {
+                positions[i] = document.createPosition(offsets[i]);
+            }
+            catch (BadLocationException e)
+            {
+                positions[i] = null;
+            }
+        }
+        offsets = null;
+    }
+
+    // Empty line endings for text that continues this one (the followed end of a growing file)
+    // 用于延续此文本的文本（被跟随的增长文件的末尾）的空行尾
+    LineEndings continuation()
+    {
+        LineEndings next = new LineEndings();
+        next.dominant = dominant;
+        return next;
+    }
+
+    // Moving the exceptions recorded so far into a new object, their offsets become relative to start
+    // 将迄今为止记录的例外移入新对象，其偏移量变为相对于start
+    LineEndings take(int start)
+    {
+        LineEndings taken = continuation();
+        taken.count = count;
+        taken.joinsCR = joinsCR;
+        taken.offsets = new int[count];
+        taken.separators = Arrays.copyOf(separators, count);
+        for (int i = 0; i < count; i++)
+        {
+            taken.offsets[i] = offsets[i] - start;
+        }
+        count = 0;
+        joinsCR = false;
+        return taken;
+    }
+
+    // Adding the exceptions of text appended at the offset to the bound document
+    // 将在偏移处追加的文本的例外添加到绑定的文档
+    void append(Document document, LineEndings appended, int offset)
+    {
+        if (dominant == null) dominant = appended.dominant;
+        if (appended.joinsCR) joinCR(document, offset - 1);
+        if (appended.count == 0) return;
+
+        if (separators.length < count + appended.count)
+        {
+            separators = Arrays.copyOf(separators, Math.max(count + appended.count, count * 2));
+        }
+        positions = Arrays.copyOf(positions, count + appended.count);
+        for (int i = 0; i < appended.count; i++)
+        {
+            try
+            {
+                positions[count + i] = document.createPosition(offset + appended.offsets[i]);
+            }
+            catch (BadLocationException e)
+            {
+                positions[count + i] = null;
+            }
+            separators[count + i] = appended.separators[i];
+        }
+        count += appended.count;
+    }
+
+    // The \r at the end of the text before and the \n of the appended text are one \r\n
+    // 之前文本末尾的\r和追加文本的\n是一个\r\n
+    private void joinCR(Document document, int end)
+    {
+        if (count > 0 && offsetAt(count - 1) == end)
+        {
+            if (CRLF.equals(dominant)) count--;
+            else separators[count - 1] = CRLF;
+            return;
+        }
+        LineEndings joined = continuation();
+        joined.record(0, CRLF);
+        append(document, joined, end);
+    }
+
+    // Copy with the current offsets, so it can be used on another thread while the document changes
+    // 具有当前偏移量的副本，因此在文档更改时可以在另一个线程上使用
+    public LineEndings snapshot()
+    {
+        LineEndings copy = new LineEndings();
+        copy.dominant = dominant;
+        copy.count = count;
+        copy.offsets = new int[count];
+        copy.separators = Arrays.copyOf(separators, count);
+        for (int i = 0; i < count; i++)
+        {
+            copy.offsets[i] = offsetAt(i);
+        }
+        return copy;
+    }
+
+    // Offset of an exception line break (positions after binding)
+    // 例外换行符的偏移量（绑定后为位置）
+    int offsetAt(int index)
+    {
+        if (positions == null) return offsets[index];
+        return positions[index] == null ? -1 : positions[index].getOffset();
+    }
+
+    String separatorAt(int index)
+    {
+        return separators[index];
+    }
+
+    // Separator lookup for text that is written from the beginning in order
+    // 从开头按顺序写入的文本的分隔符查找
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    // Exceptions are visited one by one, so every lookup is cheap
+    // 逐个访问例外，因此每次查找都很便宜
+    public class Cursor
+    {
+        private int next;
+
+        // Separator of the line break at the offset
+        // 偏移处换行符的分隔符
+        public String separatorAt(int offset)
+        {
+            while (next < count && offsetAt(next) < offset)
+            {
+                next++;
+            }
+            if (next < count && offsetAt(next) == offset)
+            {
+                return separators[next];
+            }
+            return getDominant();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JTextPane;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultHighlighter;
+import javax.swing.text.Document;
+import javax.swing.text.Highlighter;
+import javax.swing.text.Segment;
+
+/*
+ * Painting of all search matches and of the occurrences of the selected word.
+ * Highlights are added to the Highlighter of the text area, the document is never changed,
+ * So nothing goes to undo or into a saved file.
+ * Only matches that intersect the visible part of the text get a highlight: on every scroll
+ * The visible range is found, its first match by binary search in the sorted match offsets,
+ * And the old highlights are replaced, so a million matches cost as much as the few on the screen.
+ * The match set follows edits by itself, an edit only repaints the highlights.
+ * Occurrences of the selected word are found by matching only the visible text.
+ *
+ * 绘制所有搜索匹配项和所选单词的出现。
+ * 高亮添加到文本区的Highlighter中，文档永远不会被更改，
+ * 因此没有任何内容进入撤销或保存的文件。
+ * 只有与文本可见部分相交的匹配项才会获得高亮：每次滚动时找到可见范围，
+ * 通过在已排序的匹配偏移量中进行二分查找找到其第一个匹配项，并替换旧的高亮，
+ * 因此一百万个匹配项的开销与屏幕上的几个相同。
+ * 匹配集自己跟随编辑，编辑只会重绘高亮。
+ * 所选单词的出现只通过匹配可见文本来查找。
+ */
+
+
+// Match highlighter class
+// 匹配高亮器类
+
+public class MatchHighlighter implements DocumentListener
+{
+    // Most highlights added for one screen and the longest selected word that is highlighted
+    // 为一屏添加的最多高亮数和被高亮的最长所选单词
+    private static final int MAX_HIGHLIGHTS = 2000;
+    private static final int MAX_WORD = 100;
+
+    private static final Highlighter.HighlightPainter MATCH_PAINTER =
+        new DefaultHighlighter.DefaultHighlightPainter(new Color(255, 226, 110));
+    private static final Highlighter.HighlightPainter WORD_PAINTER =
+        new DefaultHighlighter.DefaultHighlightPainter(new Color(200, 222, 255));
+
+    private final JTextPane textArea;
+    private final JViewport viewport;
+    private final List<Object> tags = new ArrayList<>();
+    private final Segment segment = new Segment();
+    private Document document;
+    private boolean enabled = true;
+    private boolean refreshPending;
+
+    // Matches of the search (empty when there is no search)
+    // 搜索的匹配项（没有搜索时为空）
+    private MatchSet matches = new MatchSet();
+
+    // Constructor, highlights follow scrolling, selection and the shown document
+    // 构造函数，高亮跟随滚动、选择和显示的文档
+    public MatchHighlighter(JTextPane textArea, JViewport viewport)
+    {
+        this.textArea = textArea;
+        this.viewport = viewport;
+        viewport.addChangeListener(e -> scheduleRefresh());
+        textArea.addCaretListener(e -> scheduleRefresh());
+        textArea.addPropertyChangeListener("document", e -> documentChanged());
+        documentChanged();
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+        scheduleRefresh();
+    }
+
+    // Matches of the find dialog, the set may grow later (call matchesChanged then)
+    // 查找对话框的匹配项，匹配集以后可能会增长（届时调用matchesChanged）
+    public void setMatches(MatchSet matches)
+    {
+        this.matches = matches != null ? matches : new MatchSet();
+        scheduleRefresh();
+    }
+
+    public void matchesChanged()
+    {
+        scheduleRefresh();
+    }
+
+    // Following the document shown in the text area
+    // 跟随文本区中显示的文档
+    private void documentChanged()
+    {
+        if (document != null) document.removeDocumentListener(this);
+        document = textArea.getDocument();
+        if (document != null) document.addDocumentListener(this);
+        setMatches(null);
+    }
+
+    // Many changes in one event (typing, scrolling, a batch of matches) give one refresh
+    // 一个事件中的多次更改（输入、滚动、一批匹配项）只进行一次刷新
+    private void scheduleRefresh()
+    {
+        if (refreshPending) return;
+        refreshPending = true;
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    // Replacing the highlights with the ones of the visible range
+    // (viewToModel2D, which replaces the deprecated viewToModel, is not in Java 8)
+    //
+    // 用可见范围的高亮替换现有高亮
+    // （替代已弃用的viewToModel的viewToModel2D在Java 8中不存在）
+    @SuppressWarnings("deprecation")
+    private void refresh()
+    {
+        refreshPending = false;
+        Highlighter highlighter = textArea.getHighlighter();
+        for (Object tag : tags)
+        {
+            highlighter.removeHighlight(tag);
+        }
+        tags.clear();
+        if (!enabled || !textArea.isShowing()) return;
+
+        Rectangle view = viewport.getViewRect();
+        int first = textArea.viewToModel(new Point(view.x, view.y));
+        int last = textArea.viewToModel(new Point(view.x + view.width, view.y + view.height));
+        if (first < 0 || last < first) return;
+        last = Math.min(document.getLength(), last + 1);
+
+        try
+        {
+            highlightMatches(highlighter, first, last);
+            highlightSelectedWord(highlighter, first, last);
+        }
+        catch (BadLocationException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // Search matches that intersect [first, last), found by binary search
+    // 与[first, last)相交的搜索匹配项，通过二分查找找到
+    private void highlightMatches(Highlighter highlighter, int first, int last) throws BadLocationException
+    {
+        for (int i = matches.firstEndingAfter(first);
+             i < matches.size() && matches.getStart(i) < last && tags.size() < MAX_HIGHLIGHTS; i++)
+        {
+            int end = Math.min(matches.getEnd(i), document.getLength());
+            if (end > matches.getStart(i)) tags.add(highlighter.addHighlight(matches.getStart(i), end, MATCH_PAINTER));
+        }
+    }
+
+    // Other occurrences of a selected whole word in the visible text
+    // 可见文本中所选整词的其他出现
+    private void highlightSelectedWord(Highlighter highlighter, int first, int last) throws BadLocationException
+    {
+        int selectionStart = textArea.getSelectionStart();
+        int selectionEnd = textArea.getSelectionEnd();
+        int length = selectionEnd - selectionStart;
+        if (length == 0 || length > MAX_WORD) return;
+
+        String word = document.getText(selectionStart, length);
+        for (int i = 0; i < word.length(); i++)
+        {
+            char c = word.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && !Character.isSurrogate(c)) return;
+        }
+
+        // The visible text with one more char on both sides for the word boundaries
+        // 可见文本，两侧各多一个字符用于单词边界
+        int regionStart = Math.max(0, first - length);
+        int regionEnd = Math.min(document.getLength(), last + length);
+        document.getText(regionStart, regionEnd - regionStart, segment);
+        TextMatcher matcher = TextMatcher.of(word, true, true);
+        int base = segment.offset - regionStart;
+        int end = segment.offset + segment.count;
+        int i = segment.offset;
+        while (tags.size() < MAX_HIGHLIGHTS)
+        {
+            int match = matcher.find(segment.array, segment.offset, end, i, end);
+            if (match < 0) break;
+            if (match - base != selectionStart)
+            {
+                tags.add(highlighter.addHighlight(match - base, match - base + length, WORD_PAINTER));
+            }
+            i = match + length;
+        }
+    }
+
+    // Edits move the text under the highlights, the match set has already moved with it
+    // 编辑会移动高亮下的文本，匹配集已经随之移动
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        scheduleRefresh();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        // Attributes don't move matches
+        // 属性不会移动匹配项
+    }
+}
@@ -0,0 +1,371 @@
+package com.guangnotepad;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/*
+ * Sorted, non-overlapping search matches that stay right while the document is edited.
+ * Starts and ends are kept in two int arrays with a gap (8 bytes per match), like the chars of a
+ * Gap buffer: matches before the gap hold their offsets, matches after it hold offsets minus a
+ * Common shift. An edit moves the gap to the edited place and changes the shift, so typing
+ * Moves all later matches at once and the matches are never rescanned.
+ * Only matches near the edit (within the reach of the Rematcher) are dropped and found again
+ * In a small window around it.
+ *
+ * 在文档被编辑时保持正确的已排序、不重叠的搜索匹配项。
+ * 开始和结束位置保存在两个带间隙的int数组中（每个匹配项8字节），就像间隙缓冲区的字符：
+ * 间隙之前的匹配项保存其偏移量，间隙之后的匹配项保存偏移量减去公共位移。
+ * 编辑会将间隙移动到编辑的位置并更改位移，因此输入会一次移动所有后面的匹配项，匹配项永远不会被重新扫描。
+ * 只有编辑附近（在Rematcher的范围内）的匹配项会被丢弃，并在其周围的小窗口中重新查找。
+ */
+
+
+// Match set class
+// 匹配集类
+
+public class MatchSet implements DocumentListener
+{
+    // Free slots kept by trim and around a regular expression edit
+    // trim保留的空闲槽位以及正则表达式编辑周围的范围
+    private static final int SLACK = 16;
+    private static final int REGEX_REACH = 1024;
+
+    private int[] starts = new int[SLACK];
+    private int[] ends = new int[SLACK];
+    private int gapStart;
+    private int gapEnd = SLACK;
+    private int shift;
+
+    private Document document;
+    private Rematcher rematcher;
+    private Listener listener;
+
+    // Finding matches again around an edit
+    // 在编辑周围重新查找匹配项
+    public interface Rematcher
+    {
+        // Farthest distance from an edit at which a match can change (its length and context)
+        // 匹配项可能改变的距编辑的最远距离（其长度和上下文）
+        int getReach();
+
+        // First match inside [from, to), its start and end are stored in found; false if there is none
+        // [from, to)内的第一个匹配项，其开始和结束存储在found中；如果没有则为false
+        boolean find(Document document, int from, int to, int[] found) throws BadLocationException;
+    }
+
+    // Receiver of the changes made by edits
+    // 编辑所做更改的接收者
+    public interface Listener
+    {
+        // Matches [index, index + removed) were replaced by added matches
+        // 匹配项[index, index + removed)被added个匹配项替换
+        void matchesEdited(int index, int removed, int added);
+    }
+
+    public int size()
+    {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    public int getStart(int i)
+    {
+        return i < gapStart ? starts[i] : starts[i + gapEnd - gapStart] + shift;
+    }
+
+    public int getEnd(int i)
+    {
+        return i < gapStart ? ends[i] : ends[i + gapEnd - gapStart] + shift;
+    }
+
+    // Bytes used by the arrays
+    // 数组使用的字节数
+    public long getMemoryBytes()
+    {
+        return starts.length * 8L;
+    }
+
+    // Adding a match after the last one
+    // 在最后一个匹配项之后添加一个匹配项
+    public void add(int start, int end)
+    {
+        moveGap(size());
+        insertAtGap(start, end);
+    }
+
+    public void clear()
+    {
+        starts = new int[SLACK];
+        ends = new int[SLACK];
+        gapStart = 0;
+        gapEnd = SLACK;
+        shift = 0;
+    }
+
+    // Giving back the free slots once the matches are all added
+    // 在所有匹配项添加完后归还空闲槽位
+    public void trim()
+    {
+        int size = size();
+        if (starts.length - size <= SLACK) return;
+        moveGap(size);
+        starts = Arrays.copyOf(starts, size + SLACK);
+        ends = Arrays.copyOf(ends, size + SLACK);
+        gapEnd = starts.length;
+    }
+
+    // Index of the first match that ends after the offset
+    // 在偏移量之后结束的第一个匹配项的索引
+    public int firstEndingAfter(int offset)
+    {
+        int low = 0;
+        int high = size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (getEnd(middle) <= offset) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Index of the first match that starts at or after the offset
+    // 在偏移量处或之后开始的第一个匹配项的索引
+    public int firstStartingAt(int offset)
+    {
+        int low = 0;
+        int high = size();
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (getStart(middle) < offset) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    // Following the edits of the document, the rematcher finds matches again around them
+    // 跟随文档的编辑，rematcher在编辑周围重新查找匹配项
+    public void track(Document document, Rematcher rematcher)
+    {
+        dispose();
+        this.document = document;
+        this.rematcher = rematcher;
+        document.addDocumentListener(this);
+    }
+
+    // Stopping to follow the document
+    // 停止跟随文档
+    public void dispose()
+    {
+        if (document != null) document.removeDocumentListener(this);
+        document = null;
+        rematcher = null;
+    }
+
+    // Document that is followed (null when none is)
+    // 正在跟随的文档（没有时为null）
+    public Document getDocument()
+    {
+        return document;
+    }
+
+    public void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    // Rematcher of a literal text, matches can change one char (the word boundary) away from an edit
+    // 字面文本的rematcher，匹配项可以在距编辑一个字符（单词边界）处改变
+    public static Rematcher literal(TextMatcher matcher)
+    {
+        final int length = matcher.getText().length();
+        final Segment segment = new Segment();
+        return new Rematcher()
+        {
+            @Override
+            public int getReach()
+            {
+                return length + 1;
+            }
+
+            @Override
+            public boolean find(Document document, int from, int to, int[] found) throws BadLocationException
+            {
+                if (to - from < length) return false;
+                int regionStart = Math.max(0, from - 1);
+                int regionEnd = Math.min(document.getLength(), to + 1);
+                document.getText(regionStart, regionEnd - regionStart, segment);
+                int base = segment.offset - regionStart;
+                int match = matcher.find(segment.array, segment.offset, segment.offset + segment.count,
+                    base + from, base + to - length + 1);
+                if (match < 0) return false;
+                found[0] = match - base;
+                found[1] = found[0] + length;
+                return true;
+            }
+        };
+    }
+
+    // Rematcher of a regular expression over a piece table document.
+    // Its matches can be of any length, a match longer than the reach that appears near an edit
+    // Is found by the next search.
+    //
+    // 片段表文档上正则表达式的rematcher。
+    // 其匹配项可以是任意长度，在编辑附近出现的长于范围的匹配项由下一次搜索找到。
+    public static Rematcher regex(Pattern pattern)
+    {
+        return new Rematcher()
+        {
+            @Override
+            public int getReach()
+            {
+                return REGEX_REACH;
+            }
+
+            @Override
+            public boolean find(Document document, int from, int to, int[] found)
+            {
+                DocumentSnapshot snapshot = ((PieceTableDocument) document).snapshot(false);
+                try
+                {
+                    DocumentCharSequence text = new DocumentCharSequence(snapshot);
+                    text.setTimeout(RegexSearch.TIMEOUT_MILLIS);
+                    Matcher matcher = pattern.matcher(text);
+                    matcher.region(from, to);
+                    matcher.useTransparentBounds(true);
+                    matcher.useAnchoringBounds(false);
+                    if (!matcher.find()) return false;
+                    found[0] = matcher.start();
+                    found[1] = matcher.end();
+                    return true;
+                }
+                catch (CancellationException e)
+                {
+                    return false;
+                }
+                finally
+                {
+                    snapshot.release();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        edited(e.getOffset(), 0, e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        edited(e.getOffset(), e.getLength(), 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        // Attributes don't move matches
+        // 属性不会移动匹配项
+    }
+
+    // Moving the matches after an edit and finding again the ones within reach of it.
+    // Offsets before the edit are old ones, the document already has the new text.
+    //
+    // 在编辑之后移动匹配项，并重新查找在其范围内的匹配项。
+    // 编辑之前的偏移量是旧的，文档已经有新的文本。
+    void edited(int offset, int removed, int inserted)
+    {
+        int reach = rematcher.getReach();
+        int delta = inserted - removed;
+
+        // Matches [first, last) are within reach, the window to search again covers them all
+        // 匹配项[first, last)在范围内，重新搜索的窗口覆盖它们全部
+        int first = firstEndingAfter(offset - reach);
+        int last = Math.max(first, firstStartingAt(offset + removed + reach));
+        int from = offset - reach;
+        int to = offset + removed + reach;
+        if (first < last)
+        {
+            from = Math.min(from, getStart(first));
+            to = Math.max(to, getEnd(last - 1));
+        }
+        to += delta;
+        if (first > 0) from = Math.max(from, getEnd(first - 1));
+        to = Math.min(to, last < size() ? getStart(last) + delta : document.getLength());
+        from = Math.max(0, from);
+        to = Math.min(to, document.getLength());
+
+        // Dropping them and shifting all later matches, which are after the gap now
+        // 丢弃它们并移动所有后面的匹配项，它们现在在间隙之后
+        moveGap(first);
+        gapEnd += last - first;
+        shift += delta;
+
+        int added = 0;
+        int[] found = new int[2];
+        int i = from;
+        try
+        {
+            while (i < to && rematcher.find(document, i, to, found))
+            {
+                insertAtGap(found[0], found[1]);
+                added++;
+                i = Math.max(found[1], found[0] + 1);
+            }
+        }
+        catch (BadLocationException e)
+        {
+            e.printStackTrace();
+        }
+        if (listener != null) listener.matchesEdited(first, last - first, added);
+    }
+
+    // Moving the gap before match index, offsets that cross it are stored with or without the shift
+    // 将间隙移动到匹配项索引之前，跨越它的偏移量在存储时加上或去掉位移
+    private void moveGap(int index)
+    {
+        while (gapStart > index)
+        {
+            gapStart--;
+            gapEnd--;
+            starts[gapEnd] = starts[gapStart] - shift;
+            ends[gapEnd] = ends[gapStart] - shift;
+        }
+        while (gapStart < index)
+        {
+            starts[gapStart] = starts[gapEnd] + shift;
+            ends[gapStart] = ends[gapEnd] + shift;
+            gapStart++;
+            gapEnd++;
+        }
+    }
+
+    private void insertAtGap(int start, int end)
+    {
+        if (gapStart == gapEnd)
+        {
+            // The arrays grow by half, the part after the gap moves to the end
+            // 数组增长一半，间隙之后的部分移动到末尾
+            int length = starts.length;
+            int grown = length + Math.max(SLACK, length >> 1);
+            int tail = length - gapEnd;
+            starts = Arrays.copyOf(starts, grown);
+            ends = Arrays.copyOf(ends, grown);
+            System.arraycopy(starts, gapEnd, starts, grown - tail, tail);
+            System.arraycopy(ends, gapEnd, ends, grown - tail, tail);
+            gapEnd = grown - tail;
+        }
+        starts[gapStart] = start;
+        ends[gapStart] = end;
+        gapStart++;
+    }
+}
@@ -0,0 +1,207 @@
+package com.guangnotepad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+
+/*
+ * Native file format for styled documents (*.gnd).
+ * The file has a small header, a table of the distinct attribute sets of the document,
+ * A run-length table of (length, attribute set) pairs and then the text in UTF-8.
+ * Loading is one bulk read of the file and one bulk decode of the text,
+ * The element structure is built straight from the run table, so there is nothing to parse.
+ * Attribute sets are written like in the edit journal (the attributes that can be set in the editor).
+ *
+ * 带样式文档的本地文件格式（*.gnd）。
+ * 文件包含一个小的文件头、文档中不同属性集的表、
+ * （长度，属性集）对的游程表，然后是UTF-8文本。
+ * 加载是对文件的一次批量读取和对文本的一次批量解码，
+ * 元素结构直接从游程表构建，因此没有需要解析的内容。
+ * 属性集的写入方式与编辑日志相同（可以在编辑器中设置的属性）。
+ */
+
+
+// Native format class
+// 本地格式类
+
+public class NativeFormat
+{
+    static final String EXTENSION = "gnd";
+
+    // "GND1"
+    private static final int MAGIC = 0x474E4431;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Characters added to the document with one event while loading
+    // 加载时一个事件添加到文档中的字符数
+    private static final int BATCH = 1 << 20;
+
+    public static boolean isNative(File file)
+    {
+        return file.getName().toLowerCase().endsWith("." + EXTENSION);
+    }
+
+    // Everything before the text: header, attribute sets and runs of a styled snapshot
+    // 文本之前的所有内容：带样式快照的文件头、属性集和字符段
+    static ByteBuffer header(DocumentSnapshot snapshot) throws IOException
+    {
+        Map<AttributeSet, Integer> indexes = new HashMap<>();
+        List<AttributeSet> styles = new ArrayList<>();
+        int[] runs = new int[64];
+        int runCount = 0;
+
+        // Neighbouring runs with equal attributes become one run
+        // 具有相同属性的相邻字符段合并为一个字符段
+        int length = snapshot.getLength();
+        int start = 0;
+        for (int i = 0; i < snapshot.getRunCount() && start < length; i++)
+        {
+            int end = Math.min(snapshot.getRunEnd(i), length);
+            AttributeSet attributes = snapshot.getRunAttributes(i);
+            Integer index = indexes.get(attributes);
+            if (index == null)
+            {
+                index = styles.size();
+                indexes.put(attributes, index);
+                styles.add(attributes);
+            }
+
+            if (runCount > 0 && runs[2 * runCount - 1] == index)
+            {
+                runs[2 * runCount - 2] += end - start;
+            }
+            else
+            {
+                if (2 * runCount == runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+                runs[2 * runCount] = end - start;
+                runs[2 * runCount + 1] = index;
+                runCount++;
+            }
+            start = end;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 8 * runCount);
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(MAGIC);
+        data.writeInt(length);
+        data.writeInt(styles.size());
+        for (AttributeSet attributes : styles)
+        {
+            EditJournal.writeAttributes(data, attributes);
+        }
+        data.writeInt(runCount);
+        for (int i = 0; i < 2 * runCount; i++)
+        {
+            data.writeInt(runs[i]);
+        }
+        data.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    // Reading a file to the end of an empty document
+    // 将文件读取到空文档的末尾
+    public static void read(File file, PieceTableDocument document) throws IOException, BadLocationException
+    {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        DataInputStream data = new DataInputStream(in);
+        if (bytes.length < 16 || data.readInt() != MAGIC)
+        {
+            throw new IOException("Not a GuangNotepad document: " + file.getName());
+        }
+
+        int length = data.readInt();
+        AttributeSet[] styles = new AttributeSet[data.readInt()];
+        for (int i = 0; i < styles.length; i++)
+        {
+            styles[i] = EditJournal.readAttributes(data);
+        }
+
+        // Run table in one bulk read
+        // 一次批量读取游程表
+        int runCount = data.readInt();
+        int position = bytes.length - in.available();
+        if (length < 0 || runCount < 0 || runCount > (bytes.length - position) / 8)
+        {
+            throw new IOException("Broken GuangNotepad document: " + file.getName());
+        }
+        int[] runs = new int[2 * runCount];
+        ByteBuffer.wrap(bytes, position, 8 * runCount).asIntBuffer().get(runs);
+        position += 8 * runCount;
+
+        int[] runEnds = new int[runCount];
+        AttributeSet[] runAttributes = new AttributeSet[runCount];
+        long end = 0;
+        for (int i = 0; i < runCount; i++)
+        {
+            if (runs[2 * i] <= 0 || runs[2 * i + 1] < 0 || runs[2 * i + 1] >= styles.length)
+            {
+                throw new IOException("Broken GuangNotepad document: " + file.getName());
+            }
+            end += runs[2 * i];
+            runEnds[i] = (int) Math.min(end, Integer.MAX_VALUE);
+            runAttributes[i] = styles[runs[2 * i + 1]];
+        }
+
+        // Text in one bulk decode
+        // 一次批量解码文本
+        char[] text = new char[length];
+        CharBuffer chars = CharBuffer.wrap(text);
+        UTF8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(ByteBuffer.wrap(bytes, position, bytes.length - position), chars, true);
+        if (end != length || chars.hasRemaining())
+        {
+            throw new IOException("Broken GuangNotepad document: " + file.getName());
+        }
+
+        append(document, text, runEnds, runAttributes);
+    }
+
+    // Adding the text in batches that end with a newline, a run is split where a batch ends
+    // 以换行符结尾的批次添加文本，字符段在批次结束处拆分
+    private static void append(PieceTableDocument document, char[] text, int[] runEnds, AttributeSet[] runAttributes)
+        throws BadLocationException
+    {
+        int length = text.length;
+        int start = 0;
+        int run = 0;
+        while (start < length)
+        {
+            int cut = length;
+            for (int i = start + BATCH; i < length; i++)
+            {
+                if (text[i] == '\n')
+                {
+                    cut = i + 1;
+                    break;
+                }
+            }
+
+            int first = run;
+            while (runEnds[run] < cut) run++;
+            int[] ends = Arrays.copyOfRange(runEnds, first, run + 1);
+            ends[ends.length - 1] = cut;
+            document.appendRuns(text, start, ends, Arrays.copyOfRange(runAttributes, first, run + 1), ends.length);
+
+            if (runEnds[run] == cut) run++;
+            start = cut;
+        }
+    }
+}
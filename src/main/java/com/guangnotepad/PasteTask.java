@@ -0,0 +1,317 @@
+package com.guangnotepad;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import javax.swing.JTextPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.Timer;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+
+/*
+ * Paste of clipboard text in chunks, so a very big paste doesn't freeze the window.
+ * The clipboard text is read through a Reader (over the InputStream of the clipboard when it has one,
+ * So the text is never made into one big String) and inserted a chunk at a time on timer ticks of the
+ * Event Dispatch Thread. All chunks are one compound edit, one undo takes the whole paste back.
+ * A paste that takes long shows a progress dialog, Cancel or Escape stops it and the text pasted
+ * So far stays (one undo removes it).
+ *
+ * 分块粘贴剪贴板文本，因此非常大的粘贴不会冻结窗口。
+ * 剪贴板文本通过Reader读取（如果剪贴板有InputStream则基于它，因此文本永远不会变成一个大的String），
+ * 并在事件调度线程的计时器滴答中一次插入一个块。所有块是一个复合编辑，一次撤销即可撤回整个粘贴。
+ * 耗时较长的粘贴会显示进度对话框，取消或Escape会停止粘贴，已粘贴的文本保留（一次撤销即可删除）。
+ */
+
+
+// Paste task class
+// 粘贴任务类
+
+public class PasteTask implements ActionListener
+{
+    // Chars inserted at once and the time a tick may take
+    // 一次插入的字符数和一次滴答可以占用的时间
+    static final int CHUNK = 64 << 10;
+    private static final long TICK_NANOS = 20_000_000L;
+
+    private final PieceTableDocument document;
+    private final AttributeSet attributes;
+    private final Reader reader;
+    private final char[] buffer = new char[CHUNK];
+
+    // End of the pasted text, chars pasted and whether the last chunk ended with a carriage return
+    // 粘贴文本的结尾、已粘贴的字符数以及最后一个块是否以回车符结尾
+    private int end;
+    private int selected;
+    private long pasted;
+    private boolean afterReturn;
+
+    // Window part, set by create
+    // 窗口部分，由create设置
+    private EditFunction owner;
+    private JTextPane textArea;
+    private ProgressStream progress;
+    private ProgressMonitor monitor;
+    private Timer timer;
+
+    // Constructor, the text goes to offset with the given attributes
+    // 构造函数，文本以给定的属性插入到offset处
+    PasteTask(PieceTableDocument document, int offset, AttributeSet attributes, Reader reader)
+    {
+        this.document = document;
+        this.end = offset;
+        this.attributes = attributes;
+        this.reader = reader;
+    }
+
+    // Paste of the clipboard over the selection of the text area, null if the clipboard has no text.
+    // The task is started by start, so the owner knows of it before it can finish.
+    //
+    // 将剪贴板粘贴到文本区选择上的粘贴任务，如果剪贴板没有文本则为null。
+    // 任务由start启动，因此所有者在它可能完成之前就知道它。
+    static PasteTask create(JTextPane textArea, Clipboard clipboard, EditFunction owner)
+        throws IOException, UnsupportedFlavorException
+    {
+        Transferable contents = clipboard.getContents(null);
+        DataFlavor flavor = contents == null ? null : selectFlavor(contents.getTransferDataFlavors());
+        if (flavor == null) return null;
+
+        // Bytes of the clipboard are decoded while they are inserted, other text is read as it is given.
+        // The data is checked and not the flavor, some clipboards give a Reader for a stream flavor.
+        //
+        // 剪贴板的字节在插入时解码，其他文本按给定的方式读取。
+        // 检查的是数据而不是格式，有些剪贴板为流格式提供Reader。
+        ProgressStream progress = null;
+        Reader reader;
+        Object data = contents.getTransferData(flavor);
+        if (data instanceof InputStream)
+        {
+            String charset = flavor.getParameter("charset");
+            progress = new ProgressStream((InputStream) data);
+            reader = new InputStreamReader(progress, charset == null ? Charset.defaultCharset() : Charset.forName(charset));
+        }
+        else if (data instanceof Reader)
+        {
+            reader = (Reader) data;
+        }
+        else if (data instanceof String)
+        {
+            reader = new StringReader((String) data);
+        }
+        else
+        {
+            reader = flavor.getReaderForText(contents);
+        }
+
+        PasteTask task = new PasteTask((PieceTableDocument) textArea.getDocument(), textArea.getSelectionStart(),
+            new SimpleAttributeSet(textArea.getInputAttributes()), reader);
+        task.owner = owner;
+        task.textArea = textArea;
+        task.progress = progress;
+        task.selected = textArea.getSelectionEnd() - textArea.getSelectionStart();
+        return task;
+    }
+
+    // Plain text of the clipboard, not the markup of its html or rtf. A Reader or a stream with a charset
+    // Is read as it's pasted, the String is made only when there's nothing else. Other text is the last choice.
+    //
+    // 剪贴板的纯文本，而不是其html或rtf的标记。Reader或带字符集的流在粘贴时读取，
+    // 只有在没有其他选择时才生成String。其他文本是最后的选择。
+    static DataFlavor selectFlavor(DataFlavor[] flavors)
+    {
+        DataFlavor stream = null;
+        DataFlavor plain = null;
+        boolean hasString = false;
+        for (DataFlavor flavor : flavors)
+        {
+            if (flavor.equals(DataFlavor.stringFlavor)) hasString = true;
+            if (!flavor.isMimeTypeEqual("text/plain")) continue;
+
+            Class<?> representation = flavor.getRepresentationClass();
+            if (Reader.class.isAssignableFrom(representation)) return flavor;
+            if (stream == null && InputStream.class.isAssignableFrom(representation) && flavor.getParameter("charset") != null)
+            {
+                stream = flavor;
+            }
+            if (plain == null) plain = flavor;
+        }
+        if (stream != null) return stream;
+        if (hasString) return DataFlavor.stringFlavor;
+        if (plain != null) return plain;
+        return DataFlavor.selectBestTextFlavor(flavors);
+    }
+
+    // Removing the selection and pasting the first chunks, the rest follows on timer ticks
+    // 删除选择并粘贴最初的块，其余的在计时器滴答中进行
+    void start()
+    {
+        document.beginCompoundEdit();
+        try
+        {
+            if (selected > 0) document.remove(end, selected);
+        }
+        catch (BadLocationException e)
+        {
+            finish(false, e);
+            return;
+        }
+
+        // The text area can't be edited until the paste is finished, so nothing else goes into its edit
+        // 在粘贴完成之前文本区不能被编辑，因此其他内容不会进入其编辑
+        textArea.setEditable(false);
+        monitor = new ProgressMonitor(textArea.getTopLevelAncestor(), "Pasting", "", 0, 100);
+        monitor.setMillisToDecideToPopup(300);
+        monitor.setMillisToPopup(500);
+        timer = new Timer(1, this);
+        actionPerformed(null);
+        if (timer != null) timer.start();
+    }
+
+    // Timer tick: chunks are pasted until the time of the tick is used up
+    // 计时器滴答：粘贴块直到滴答的时间用完
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+        long deadline = System.nanoTime() + TICK_NANOS;
+        try
+        {
+            do
+            {
+                if (!pasteChunk())
+                {
+                    finish(false, null);
+                    return;
+                }
+            }
+            while (System.nanoTime() < deadline);
+        }
+        catch (IOException | BadLocationException ex)
+        {
+            finish(false, ex);
+            return;
+        }
+
+        if (monitor.isCanceled())
+        {
+            finish(true, null);
+            return;
+        }
+        if (progress != null) monitor.setProgress(progress.getPercent());
+        monitor.setNote((pasted >> 20) + " MB pasted");
+    }
+
+    // Inserting the next chunk, false when all the text is pasted.
+    // Line ends are turned into newlines like in the paste of the text area, also across chunks.
+    //
+    // 插入下一个块，当所有文本都已粘贴时为false。
+    // 行尾像文本区的粘贴一样转换为换行符，跨块时也是如此。
+    boolean pasteChunk() throws IOException, BadLocationException
+    {
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count < 0) return false;
+
+        int length = 0;
+        for (int i = 0; i < count; i++)
+        {
+            char c = buffer[i];
+            if (c == '\n' && afterReturn)
+            {
+                afterReturn = false;
+                continue;
+            }
+            afterReturn = c == '\r';
+            buffer[length++] = afterReturn ? '\n' : c;
+        }
+        if (length == 0) return true;
+
+        document.insertString(end, new String(buffer, 0, length), attributes);
+        end += length;
+        pasted += length;
+        return true;
+    }
+
+    // End of the pasted text
+    // 粘贴文本的结尾
+    int getEnd()
+    {
+        return end;
+    }
+
+    // Stopping the paste, the text pasted so far stays
+    // 停止粘贴，已粘贴的文本保留
+    public void cancel()
+    {
+        finish(true, null);
+    }
+
+    private void finish(boolean cancelled, Exception error)
+    {
+        if (owner == null) return;
+        if (timer != null) timer.stop();
+        timer = null;
+        if (monitor != null) monitor.close();
+        try
+        {
+            reader.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        document.endCompoundEdit();
+        textArea.setEditable(true);
+
+        // Caret goes after the pasted text if the document is still shown
+        // 如果文档仍然显示，光标移到粘贴文本之后
+        if (textArea.getDocument() == document) textArea.setCaretPosition(Math.min(end, document.getLength()));
+        EditFunction finished = owner;
+        owner = null;
+        finished.pasteFinished(this, cancelled, error);
+    }
+
+    // Input stream that knows how much of the clipboard was read
+    // 知道剪贴板读取了多少的输入流
+    private static class ProgressStream extends FilterInputStream
+    {
+        private final long size;
+        private long bytesRead;
+
+        ProgressStream(InputStream in) throws IOException
+        {
+            super(in);
+            size = Math.max(1, in.available());
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if (b >= 0) bytesRead++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if (n > 0) bytesRead += n;
+            return n;
+        }
+
+        int getPercent()
+        {
+            return (int) Math.min(100, bytesRead * 100 / size);
+        }
+    }
+}
@@ -0,0 +1,798 @@
+package com.guangnotepad;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+
+/*
+ * Document content stored as a piece table.
+ * The text is described by pieces that point either into the original buffer (the opened file,
+ * Kept on disk in a CharSpool) or into the append-only add buffer with typed text.
+ * Pieces are kept in a balanced tree (treap) where every node knows the length of its subtree,
+ * So inserts and removes only split and merge O(log pieces) nodes.
+ * Nodes are never changed after creation, so removed text can be kept by undo edits as a subtree.
+ *
+ * Positions work like in GapContent: marks are sorted by offset and a virtual gap is kept
+ * At the last edit, so only marks between two edit points have to be moved.
+ *
+ * 以片段表形式存储的文档内容。
+ * 文本由片段描述，片段指向原始缓冲区（打开的文件，保存在磁盘上的CharSpool中）
+ * 或指向包含输入文本的仅追加缓冲区。
+ * 片段保存在平衡树（treap）中，每个节点都知道其子树的长度，
+ * 因此插入和删除只需拆分和合并O(log 片段数)个节点。
+ * 节点创建后永不更改，因此撤销编辑可以将删除的文本保留为子树。
+ *
+ * 位置的工作方式与GapContent相同：标记按偏移量排序，并在上次编辑处保留一个虚拟间隙，
+ * 因此只需移动两个编辑点之间的标记。
+ */
+
+
+// Piece table content class
+// 片段表内容类
+
+public class PieceTableContent implements AbstractDocument.Content
+{
+    // Longest chunk returned by getChars with partial return
+    // 部分返回时getChars返回的最长块
+    private static final int PARTIAL_CHUNK = 16 << 10;
+
+    private final Random random = new Random();
+
+    // Original text (may be null for new documents) and add buffer
+    // 原始文本（新文档可能为null）和添加缓冲区
+    private final CharSpool original;
+    private volatile char[] added = new char[1024];
+    private volatile int addedLength;
+
+    // Root of the piece tree
+    // 片段树的根
+    private Node root;
+
+    // Position marks, see class comment
+    // 位置标记，见类注释
+    private MarkRef[] marks = new MarkRef[64];
+    private int markCount;
+    private int gapPos;
+    private long gapSize = Long.MAX_VALUE / 4;
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+    private int unusedMarks;
+
+    // Constructor, content always starts with the implied line break
+    // 构造函数，内容总是以隐含的换行符开始
+    public PieceTableContent(CharSpool original)
+    {
+        this.original = original;
+        appendAdded(new char[] {'\n'}, 0, 1);
+        root = new Node(true, 0, 1, random.nextInt(), null, null);
+    }
+
+    public CharSpool getOriginal()
+    {
+        return original;
+    }
+
+    // Content interface
+    // 内容接口
+
+    @Override
+    public int length()
+    {
+        return total(root);
+    }
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException
+    {
+        // Dropping marks of positions that are no longer used
+        // 删除不再使用的位置的标记
+        while (queue.poll() != null)
+        {
+            unusedMarks++;
+        }
+        if (unusedMarks > Math.max(5, markCount / 10))
+        {
+            removeUnusedMarks();
+        }
+
+        int index = findMark(offset);
+        if (index < markCount && logical(marks[index].stored) == offset)
+        {
+            StickyPosition existing = marks[index].get();
+            if (existing != null) return existing;
+        }
+
+        MarkRef mark = new MarkRef(offset < gapPos ? offset : offset + gapSize);
+        StickyPosition position = new StickyPosition(mark);
+        mark.setPosition(position, queue);
+
+        if (markCount == marks.length)
+        {
+            marks = Arrays.copyOf(marks, markCount * 2);
+        }
+        System.arraycopy(marks, index, marks, index + 1, markCount - index);
+        marks[index] = mark;
+        markCount++;
+        return position;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException
+    {
+        if (where >= length() || where < 0)
+        {
+            throw new BadLocationException("Invalid insert", length());
+        }
+
+        int start = addedLength;
+        char[] chars = str.toCharArray();
+        appendAdded(chars, 0, chars.length);
+        insertPiece(where, true, start, chars.length);
+        return new InsertUndo(where, chars.length);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException
+    {
+        if (where + nitems >= length())
+        {
+            throw new BadLocationException("Invalid remove", length() + 1);
+        }
+
+        List<PosRef> posRefs = capturePositions(where, nitems);
+        Node removed = removeRange(where, nitems);
+        return new RemoveUndo(where, nitems, removed, posRefs);
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException
+    {
+        Segment s = new Segment();
+        getChars(where, len, s);
+        return new String(s.array, s.offset, s.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException
+    {
+        getChars(root, added, original, where, len, txt);
+    }
+
+    // Reading text of a tree, shared with snapshots
+    // 读取树的文本，与快照共享
+    static void getChars(Node root, char[] added, CharSpool original, int where, int len, Segment txt)
+        throws BadLocationException
+    {
+        int end = where + len;
+        if (where < 0 || end > total(root) || len < 0)
+        {
+            throw new BadLocationException("Invalid location", total(root) + 1);
+        }
+
+        // Partial return gives a single piece, typed text doesn't need a copy at all
+        // 部分返回给出单个片段，输入的文本根本不需要复制
+        if (txt.isPartialReturn() && len > 0)
+        {
+            Node node = root;
+            int offset = where;
+            while (node != null)
+            {
+                int leftTotal = total(node.left);
+                if (offset < leftTotal)
+                {
+                    node = node.left;
+                }
+                else if (offset < leftTotal + node.length)
+                {
+                    int inPiece = offset - leftTotal;
+                    int count = Math.min(len, node.length - inPiece);
+                    if (node.added)
+                    {
+                        txt.array = added;
+                        txt.offset = node.start + inPiece;
+                        txt.count = count;
+                    }
+                    else
+                    {
+                        count = Math.min(count, PARTIAL_CHUNK);
+                        txt.array = new char[count];
+                        txt.offset = 0;
+                        txt.count = count;
+                        original.getChars(node.start + inPiece, count, txt.array, 0);
+                    }
+                    return;
+                }
+                else
+                {
+                    offset -= leftTotal + node.length;
+                    node = node.right;
+                }
+            }
+        }
+
+        char[] chars = new char[len];
+        copy(root, added, original, where, len, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = len;
+    }
+
+    // Appending a range of the original buffer before the implied line break (used when loading)
+    // 在隐含的换行符之前追加原始缓冲区的一段（加载时使用）
+    public void appendOriginal(int spoolStart, int count)
+    {
+        insertPiece(length() - 1, false, spoolStart, count);
+    }
+
+    // Receiver of pieces, original pieces point into the spool
+    // 片段的接收者，原始片段指向缓冲文件
+    public interface PieceVisitor
+    {
+        void piece(boolean original, int start, int length, int offset) throws IOException;
+    }
+
+    // Immutable copy of the current text, it can be read on another thread
+    // 当前文本的不可变副本，可以在另一个线程上读取
+    public Snapshot snapshot()
+    {
+        if (original != null) original.retain();
+        return new Snapshot(root, added, original);
+    }
+
+    // Text at one moment: nodes are never changed and the add buffer only grows,
+    // So the snapshot stays valid while the document is edited
+    //
+    // 某一时刻的文本：节点永不更改，添加缓冲区只会增长，
+    // 因此在编辑文档时快照仍然有效
+    public static final class Snapshot
+    {
+        private final Node root;
+        private final char[] added;
+        private final CharSpool original;
+        private boolean released;
+
+        Snapshot(Node root, char[] added, CharSpool original)
+        {
+            this.root = root;
+            this.added = added;
+            this.original = original;
+        }
+
+        // Length without the implied line break (like Document.getLength)
+        // 不包括隐含换行符的长度（与Document.getLength相同）
+        public int getLength()
+        {
+            return total(root) - 1;
+        }
+
+        public void getText(int offset, int length, Segment txt) throws BadLocationException
+        {
+            getChars(root, added, original, offset, length, txt);
+        }
+
+        public String getText(int offset, int length) throws BadLocationException
+        {
+            Segment segment = new Segment();
+            getText(offset, length, segment);
+            return new String(segment.array, segment.offset, segment.count);
+        }
+
+        // Visiting pieces in text order, the implied line break at the end is skipped
+        // 按文本顺序访问片段，跳过末尾的隐含换行符
+        public void visitPieces(PieceVisitor visitor) throws IOException
+        {
+            visit(root, 0, getLength(), visitor);
+        }
+
+        private static int visit(Node node, int offset, int limit, PieceVisitor visitor) throws IOException
+        {
+            while (node != null)
+            {
+                offset = visit(node.left, offset, limit, visitor);
+                int length = Math.min(node.length, limit - offset);
+                if (length > 0)
+                {
+                    visitor.piece(!node.added, node.start, length, offset);
+                }
+                offset += node.length;
+                node = node.right;
+            }
+            return offset;
+        }
+
+        // Letting the spool file go when the snapshot is no longer needed
+        // 当快照不再需要时释放缓冲文件
+        public synchronized void release()
+        {
+            if (released) return;
+            released = true;
+            if (original != null) original.close();
+        }
+    }
+
+    // Piece tree
+    // 片段树
+
+    // Immutable tree node describing one piece
+    // 描述一个片段的不可变树节点
+    static final class Node
+    {
+        final boolean added;
+        final int start;
+        final int length;
+        final int priority;
+        final Node left;
+        final Node right;
+        final int total;
+        final int count;
+
+        Node(boolean added, int start, int length, int priority, Node left, Node right)
+        {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.total = length + total(left) + total(right);
+            this.count = 1 + count(left) + count(right);
+        }
+
+        Node with(Node newLeft, Node newRight)
+        {
+            return new Node(added, start, length, priority, newLeft, newRight);
+        }
+    }
+
+    static int total(Node node)
+    {
+        return node == null ? 0 : node.total;
+    }
+
+    static int count(Node node)
+    {
+        return node == null ? 0 : node.count;
+    }
+
+    // Splitting a tree into the first "offset" characters and the rest
+    // 将树拆分为前"offset"个字符和其余部分
+    private void split(Node node, int offset, Node[] out)
+    {
+        if (node == null)
+        {
+            out[0] = null;
+            out[1] = null;
+            return;
+        }
+
+        int leftTotal = total(node.left);
+        if (offset <= leftTotal)
+        {
+            split(node.left, offset, out);
+            out[1] = node.with(out[1], node.right);
+        }
+        else if (offset >= leftTotal + node.length)
+        {
+            split(node.right, offset - leftTotal - node.length, out);
+            out[0] = node.with(node.left, out[0]);
+        }
+        else
+        {
+            // Offset is inside the piece, it is cut into two pieces.
+            // The second piece gets its own priority, pieces cut from one big piece
+            // Would otherwise share a priority and make a chain instead of a balanced tree.
+            //
+            // 偏移量在片段内部，片段被切成两个。
+            // 第二个片段获得自己的优先级，否则从一个大片段切出的片段
+            // 会共享一个优先级，形成一条链而不是平衡树。
+            int cut = offset - leftTotal;
+            out[0] = new Node(node.added, node.start, cut, node.priority, node.left, null);
+            out[1] = merge(new Node(node.added, node.start + cut, node.length - cut, random.nextInt(), null, null),
+                node.right);
+        }
+    }
+
+    // Merging two trees, all text of the first goes before the second
+    // 合并两棵树，第一棵树的所有文本都在第二棵之前
+    private static Node merge(Node a, Node b)
+    {
+        if (a == null) return b;
+        if (b == null) return a;
+
+        if (a.priority > b.priority)
+        {
+            return a.with(a.left, merge(a.right, b));
+        }
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    // Extending the last piece of a tree (used to join consecutive typing)
+    // 扩展树的最后一个片段（用于连接连续输入）
+    private static Node extendLast(Node node, int count)
+    {
+        if (node.right != null)
+        {
+            return node.with(node.left, extendLast(node.right, count));
+        }
+        return new Node(node.added, node.start, node.length + count, node.priority, node.left, null);
+    }
+
+    private static Node last(Node node)
+    {
+        while (node != null && node.right != null)
+        {
+            node = node.right;
+        }
+        return node;
+    }
+
+    // Inserting a new piece and moving the marks
+    // 插入新片段并移动标记
+    private void insertPiece(int where, boolean isAdded, int start, int count)
+    {
+        Node[] parts = new Node[2];
+        split(root, where, parts);
+
+        // If the piece continues the previous one, the previous piece is just extended
+        // 如果片段延续前一个片段，则只扩展前一个片段
+        Node previous = last(parts[0]);
+        Node left;
+        if (previous != null && previous.added == isAdded && previous.start + previous.length == start)
+        {
+            left = extendLast(parts[0], count);
+        }
+        else
+        {
+            left = merge(parts[0], new Node(isAdded, start, count, random.nextInt(), null, null));
+        }
+
+        root = merge(left, parts[1]);
+        insertMarks(where, count);
+    }
+
+    // Inserting a whole subtree (used by undo and redo)
+    // 插入整个子树（用于撤销和重做）
+    private void insertTree(int where, Node tree)
+    {
+        Node[] parts = new Node[2];
+        split(root, where, parts);
+        root = merge(merge(parts[0], tree), parts[1]);
+        insertMarks(where, total(tree));
+    }
+
+    // Removing a range and returning the removed subtree
+    // 删除一个范围并返回删除的子树
+    private Node removeRange(int where, int count)
+    {
+        Node[] parts = new Node[2];
+        split(root, where, parts);
+        Node left = parts[0];
+        split(parts[1], count, parts);
+        root = merge(left, parts[1]);
+        removeMarks(where, count);
+        return parts[0];
+    }
+
+    // Copying characters of a subtree into an array
+    // 将子树的字符复制到数组中
+    private static void copy(Node node, char[] added, CharSpool original, int from, int count, char[] dest, int destPos)
+    {
+        while (node != null && count > 0)
+        {
+            int leftTotal = total(node.left);
+            if (from < leftTotal)
+            {
+                int n = Math.min(count, leftTotal - from);
+                copy(node.left, added, original, from, n, dest, destPos);
+                from += n;
+                count -= n;
+                destPos += n;
+            }
+            if (count == 0) return;
+
+            int inPiece = from - leftTotal;
+            if (inPiece < node.length)
+            {
+                int n = Math.min(count, node.length - inPiece);
+                if (node.added)
+                {
+                    System.arraycopy(added, node.start + inPiece, dest, destPos, n);
+                }
+                else
+                {
+                    original.getChars(node.start + inPiece, n, dest, destPos);
+                }
+                from += n;
+                count -= n;
+                destPos += n;
+            }
+
+            from -= leftTotal + node.length;
+            node = node.right;
+        }
+    }
+
+    // Appending to the add buffer, old arrays stay valid for readers
+    // 追加到添加缓冲区，旧数组对读取者仍然有效
+    private void appendAdded(char[] chars, int offset, int count)
+    {
+        char[] buffer = added;
+        if (addedLength + count > buffer.length)
+        {
+            int capacity = Math.max(addedLength + count, buffer.length + (buffer.length >> 1));
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+        System.arraycopy(chars, offset, buffer, addedLength, count);
+        added = buffer;
+        addedLength += count;
+    }
+
+    // Position marks
+    // 位置标记
+
+    // Weak reference to a position with its stored offset
+    // 对位置的弱引用及其存储的偏移量
+    static final class MarkRef
+    {
+        long stored;
+        private WeakReference<StickyPosition> reference;
+
+        MarkRef(long stored)
+        {
+            this.stored = stored;
+        }
+
+        void setPosition(StickyPosition position, ReferenceQueue<StickyPosition> queue)
+        {
+            reference = new WeakReference<>(position, queue);
+        }
+
+        StickyPosition get()
+        {
+            return reference.get();
+        }
+    }
+
+    // Position that moves together with the text
+    // 随文本一起移动的位置
+    final class StickyPosition implements Position
+    {
+        private final MarkRef mark;
+
+        StickyPosition(MarkRef mark)
+        {
+            this.mark = mark;
+        }
+
+        @Override
+        public int getOffset()
+        {
+            return (int) logical(mark.stored);
+        }
+
+        @Override
+        public String toString()
+        {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    // Mark and the offset it had before an edit, used to restore positions on undo
+    // 标记及其在编辑之前的偏移量，用于在撤销时恢复位置
+    static final class PosRef
+    {
+        final MarkRef mark;
+        final int offset;
+
+        PosRef(MarkRef mark, int offset)
+        {
+            this.mark = mark;
+            this.offset = offset;
+        }
+    }
+
+    // Converting a stored offset to the real one
+    // 将存储的偏移量转换为实际偏移量
+    private long logical(long stored)
+    {
+        return stored < gapPos ? stored : stored - gapSize;
+    }
+
+    // Index of the first mark with offset >= the given one
+    // 偏移量>=给定偏移量的第一个标记的索引
+    private int findMark(long offset)
+    {
+        int low = 0;
+        int high = markCount;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (logical(marks[mid].stored) < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    // Moving the virtual gap, marks >= position end up after the gap
+    // 移动虚拟间隙，>=位置的标记位于间隙之后
+    private void moveGap(int position)
+    {
+        if (position < gapPos)
+        {
+            for (int i = findMark(position); i < markCount && marks[i].stored < gapPos; i++)
+            {
+                marks[i].stored += gapSize;
+            }
+        }
+        else if (position > gapPos)
+        {
+            for (int i = findMark(gapPos); i < markCount && logical(marks[i].stored) < position; i++)
+            {
+                marks[i].stored -= gapSize;
+            }
+        }
+        gapPos = position;
+    }
+
+    // Marks at the insert point move forward, except marks at zero
+    // 插入点处的标记向前移动，零处的标记除外
+    private void insertMarks(int where, int count)
+    {
+        int threshold = where == 0 ? 1 : where;
+        moveGap(threshold);
+        gapSize -= count;
+        gapPos = threshold + count;
+    }
+
+    // Marks inside the removed range collapse to its start
+    // 删除范围内的标记折叠到其开始位置
+    private void removeMarks(int where, int count)
+    {
+        moveGap(where);
+        long collapsed = where + gapSize + count;
+        for (int i = findMark(where); i < markCount && logical(marks[i].stored) < where + count; i++)
+        {
+            marks[i].stored = collapsed;
+        }
+        gapSize += count;
+    }
+
+    // Remembering the marks inside a range before it is removed
+    // 在删除范围之前记住范围内的标记
+    private List<PosRef> capturePositions(int where, int count)
+    {
+        List<PosRef> refs = new ArrayList<>();
+        for (int i = findMark(where); i < markCount; i++)
+        {
+            long offset = logical(marks[i].stored);
+            if (offset > where + count) break;
+            if (marks[i].get() != null)
+            {
+                refs.add(new PosRef(marks[i], (int) offset));
+            }
+        }
+        return refs;
+    }
+
+    // Putting remembered marks back after the range was inserted again
+    // 范围再次插入后将记住的标记放回原处
+    private void restorePositions(List<PosRef> refs, int where, int count)
+    {
+        if (refs == null || refs.isEmpty()) return;
+
+        moveGap(where);
+        int from = findMark(where);
+        int to = from;
+        while (to < markCount && logical(marks[to].stored) <= where + count)
+        {
+            to++;
+        }
+
+        for (PosRef ref : refs)
+        {
+            ref.mark.stored = ref.offset + gapSize;
+        }
+        Arrays.sort(marks, from, to, (a, b) -> Long.compare(a.stored, b.stored));
+    }
+
+    // Removing marks whose positions were garbage collected
+    // 删除位置已被垃圾回收的标记
+    private void removeUnusedMarks()
+    {
+        int n = 0;
+        for (int i = 0; i < markCount; i++)
+        {
+            if (marks[i].get() != null)
+            {
+                marks[n++] = marks[i];
+            }
+        }
+        Arrays.fill(marks, n, markCount, null);
+        markCount = n;
+        unusedMarks = 0;
+    }
+
+    // Undo edits
+    // 撤销编辑
+
+    // Undo of an insert, the inserted subtree is kept for redo
+    // 插入的撤销，保留插入的子树以便重做
+    class InsertUndo extends AbstractUndoableEdit
+    {
+        private final int offset;
+        private final int length;
+        private Node removed;
+        private List<PosRef> posRefs;
+
+        InsertUndo(int offset, int length)
+        {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException
+        {
+            super.undo();
+            posRefs = capturePositions(offset, length);
+            removed = removeRange(offset, length);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException
+        {
+            super.redo();
+            insertTree(offset, removed);
+            restorePositions(posRefs, offset, length);
+            removed = null;
+            posRefs = null;
+        }
+    }
+
+    // Undo of a remove, the removed text is kept as a subtree, not as a copy
+    // 删除的撤销，删除的文本保留为子树，而不是副本
+    class RemoveUndo extends AbstractUndoableEdit
+    {
+        private final int offset;
+        private final int length;
+        private Node removed;
+        private List<PosRef> posRefs;
+
+        RemoveUndo(int offset, int length, Node removed, List<PosRef> posRefs)
+        {
+            this.offset = offset;
+            this.length = length;
+            this.removed = removed;
+            this.posRefs = posRefs;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException
+        {
+            super.undo();
+            insertTree(offset, removed);
+            restorePositions(posRefs, offset, length);
+            removed = null;
+            posRefs = null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException
+        {
+            super.redo();
+            posRefs = capturePositions(offset, length);
+            removed = removeRange(offset, length);
+        }
+    }
+}
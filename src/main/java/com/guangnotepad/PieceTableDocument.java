@@ -0,0 +1,466 @@
+package com.guangnotepad;
+
+import java.text.Bidi;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.StyleContext;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+
+/*
+ * Styled document that keeps its text in a PieceTableContent instead of GapContent.
+ * Elements, attributes and undo work exactly like in DefaultStyledDocument,
+ * Only the storage of characters is different.
+ * Text of an opened file is added with appendOriginal and stays in the CharSpool on disk.
+ *
+ * 将文本保存在PieceTableContent而不是GapContent中的样式文档。
+ * 元素、属性和撤销的工作方式与DefaultStyledDocument完全相同，
+ * 只有字符的存储方式不同。
+ * 打开文件的文本通过appendOriginal添加，并保留在磁盘上的CharSpool中。
+ */
+
+
+// Piece table document class
+// 片段表文档类
+
+public class PieceTableDocument extends DefaultStyledDocument
+{
+    // Longest chunk of original text added with one document event
+    // 一个文档事件添加的原始文本的最长块
+    static final int APPEND_CHUNK = 64 << 10;
+
+    // Name of the package-private AbstractDocument.I18NProperty
+    // 包私有的AbstractDocument.I18NProperty的名称
+    private static final String I18N = "i18n";
+
+    private final PieceTableContent content;
+    private final AttributeContext context;
+
+    // Grows with every change of text or attributes, used to find edits made after a snapshot.
+    // It's changed under the write lock of the document and read without a lock by snapshots on other threads.
+    //
+    // 随文本或属性的每次更改而增长，用于查找快照之后进行的编辑。
+    // 它在文档的写锁下更改，并由其他线程上的快照在没有锁的情况下读取。
+    private volatile int modificationCount;
+
+    // Index for finding text, made by the first search and then kept up to date by document events
+    // 用于查找文本的索引，由第一次搜索创建，然后由文档事件保持最新
+    private SearchIndex searchIndex;
+
+    // Edits collected between beginCompoundEdit and endCompoundEdit, undone as one
+    // 在beginCompoundEdit和endCompoundEdit之间收集的编辑，作为一个整体撤销
+    private GroupEdit compoundEdit;
+    private int compoundDepth;
+    private int compoundCount;
+
+    // Observer of text and attributes just before they change (the undo store) and loading of text
+    // 文本和属性即将更改之前的观察者（撤销存储）以及文本的加载
+    private ChangeObserver changeObserver;
+    private boolean appending;
+
+    // Receiver of the old text and attributes of an edit, the document events only have the new ones
+    // 编辑的旧文本和旧属性的接收者，文档事件只有新的
+    interface ChangeObserver
+    {
+        // Text [offset, offset + length) is about to be removed
+        // 文本[offset, offset + length)即将被删除
+        void removing(int offset, int length);
+
+        // Character attributes of [offset, offset + length) are about to change
+        // [offset, offset + length)的字符属性即将更改
+        void restyling(int offset, int length);
+    }
+
+    // Constructor for a new empty document
+    // 新空文档的构造函数
+    public PieceTableDocument()
+    {
+        this((CharSpool) null);
+    }
+
+    // Constructor for a document with text from a spool
+    // 带有缓冲文件中文本的文档的构造函数
+    public PieceTableDocument(CharSpool original)
+    {
+        this(new PieceTableContent(original));
+    }
+
+    private PieceTableDocument(PieceTableContent content)
+    {
+        this(content, new AttributeContext());
+    }
+
+    private PieceTableDocument(PieceTableContent content, AttributeContext context)
+    {
+        super(content, context);
+        this.content = content;
+        this.context = context;
+    }
+
+    public PieceTableContent getPieceTable()
+    {
+        return content;
+    }
+
+    // Adding text from the original spool at the end of the document
+    // Loading is not an edit, so no undoable edit is created
+    //
+    // 在文档末尾添加原始缓冲文件中的文本
+    // 加载不是编辑，因此不会创建可撤销编辑
+    public void appendOriginal(int spoolStart, int length)
+    {
+        while (length > 0)
+        {
+            int count = Math.min(length, APPEND_CHUNK);
+            writeLock();
+            try
+            {
+                int offset = getLength();
+                content.appendOriginal(spoolStart, count);
+
+                DefaultDocumentEvent event = new DefaultDocumentEvent(offset, count, DocumentEvent.EventType.INSERT);
+                insertUpdate(event, null);
+                event.end();
+                appending = true;
+                fireInsertUpdate(event);
+            }
+            finally
+            {
+                appending = false;
+                writeUnlock();
+            }
+            spoolStart += count;
+            length -= count;
+        }
+    }
+
+    // Appending styled text with one document event: runs are turned into element specs directly,
+    // So a big rtf file does not need one insertString and one setCharacterAttributes for every run.
+    // Runs cover text from start, their ends are indexes in text.
+    // The document must end with a newline (or be empty) and so must every batch except the last one.
+    //
+    // 用一个文档事件追加带样式的文本：字符段直接转换为元素规范，
+    // 因此大型rtf文件不需要为每个字符段调用一次insertString和一次setCharacterAttributes。
+    // 字符段从start开始覆盖文本，其结束位置是文本中的索引。
+    // 文档必须以换行符结尾（或为空），除最后一批外的每一批也必须如此。
+    void appendRuns(char[] text, int start, int[] runEnds, AttributeSet[] runAttributes, int runCount)
+        throws BadLocationException
+    {
+        if (runCount == 0) return;
+        writeLock();
+        try
+        {
+            int offset = getLength();
+            AttributeSet paragraph = context.share(getParagraphElement(offset).getAttributes());
+            AttributeSet implied = getCharacterElement(offset).getAttributes();
+            List<ElementSpec> specs = new ArrayList<>(2 * runCount + 2);
+            ElementSpec lastStart = null;
+
+            // Same specs as insertUpdate creates for text inserted after a newline
+            // 与insertUpdate为换行符之后插入的文本创建的规范相同
+            if (offset > 0)
+            {
+                specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+                lastStart = new ElementSpec(paragraph, ElementSpec.StartTagType);
+                specs.add(lastStart);
+            }
+
+            int runStart = start;
+            for (int i = 0; i < runCount; i++)
+            {
+                AttributeSet attributes = context.share(runAttributes[i]);
+                int from = runStart;
+                int end = runEnds[i];
+                for (int j = runStart; j < end; j++)
+                {
+                    if (text[j] != '\n') continue;
+                    specs.add(content(attributes, text, from, j + 1));
+                    specs.add(new ElementSpec(null, ElementSpec.EndTagType));
+                    lastStart = new ElementSpec(paragraph, ElementSpec.StartTagType);
+                    specs.add(lastStart);
+                    from = j + 1;
+                }
+                if (from < end)
+                {
+                    specs.add(content(attributes, text, from, end));
+                }
+                runStart = end;
+            }
+
+            // Text after the last newline joins the implied newline if it has the same attributes
+            // 最后一个换行符之后的文本如果具有相同的属性，则与隐含的换行符合并
+            ElementSpec last = specs.get(specs.size() - 1);
+            if (last.getType() == ElementSpec.ContentType && last.getAttributes().isEqual(implied))
+            {
+                last.setDirection(ElementSpec.JoinNextDirection);
+            }
+
+            // The rest of the last paragraph (its implied newline) joins the last new paragraph
+            // 最后一个段落的其余部分（其隐含的换行符）加入最后一个新段落
+            if (lastStart != null)
+            {
+                lastStart.setDirection(offset > 0 ? ElementSpec.JoinNextDirection : ElementSpec.JoinFractureDirection);
+            }
+            // Right-to-left text needs bidi elements, insertString checks this in the same way
+            // 从右到左的文本需要双向元素，insertString以同样的方式检查
+            if (!Boolean.TRUE.equals(getProperty(I18N)) && requiresBidi(text, start, runEnds[runCount - 1]))
+            {
+                putProperty(I18N, Boolean.TRUE);
+            }
+            appending = true;
+            insert(offset, specs.toArray(new ElementSpec[0]));
+        }
+        finally
+        {
+            appending = false;
+            context.forgetShared();
+            writeUnlock();
+        }
+    }
+
+    // Characters below Hebrew are never right-to-left, so most text is not given to the slow Bidi check
+    // 希伯来文以下的字符永远不是从右到左的，因此大多数文本不会交给缓慢的Bidi检查
+    private static boolean requiresBidi(char[] text, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            if (text[i] >= '\u0590') return Bidi.requiresBidi(text, i, end);
+        }
+        return false;
+    }
+
+    // ElementSpec copies the whole array it is given, so every spec gets only its own characters
+    // ElementSpec会复制给它的整个数组，因此每个规范只得到自己的字符
+    private static ElementSpec content(AttributeSet attributes, char[] text, int start, int end)
+    {
+        return new ElementSpec(attributes, ElementSpec.ContentType, Arrays.copyOfRange(text, start, end), 0, end - start);
+    }
+
+    public SearchIndex getSearchIndex()
+    {
+        if (searchIndex == null) searchIndex = new SearchIndex(this);
+        return searchIndex;
+    }
+
+    public int getModificationCount()
+    {
+        return modificationCount;
+    }
+
+    void setChangeObserver(ChangeObserver observer)
+    {
+        changeObserver = observer;
+    }
+
+    // Text is being added by appendOriginal or appendRuns, it's loaded and not typed
+    // 文本正在由appendOriginal或appendRuns添加，它是加载的而不是输入的
+    boolean isAppending()
+    {
+        return appending;
+    }
+
+    // Immutable copy of the document for reading on another thread, styles are copied only if needed
+    // 用于在另一个线程上读取的文档的不可变副本，仅在需要时复制样式
+    public DocumentSnapshot snapshot(boolean withStyles)
+    {
+        readLock();
+        try
+        {
+            return new DocumentSnapshot(this, content.snapshot(), modificationCount, withStyles);
+        }
+        finally
+        {
+            readUnlock();
+        }
+    }
+
+    // Snapshot with the styles of [start, end) only, for copying a part of a big document
+    // 仅带有[start, end)样式的快照，用于复制大文档的一部分
+    public DocumentSnapshot snapshot(int start, int end)
+    {
+        readLock();
+        try
+        {
+            return new DocumentSnapshot(this, content.snapshot(), modificationCount, start, end);
+        }
+        finally
+        {
+            readUnlock();
+        }
+    }
+
+    // Starting a group of edits that the undo manager gets as one edit (groups can be nested)
+    // 开始一组编辑，撤销管理器将其作为一个编辑获得（组可以嵌套）
+    public void beginCompoundEdit()
+    {
+        if (compoundDepth++ == 0)
+        {
+            compoundEdit = new GroupEdit();
+            compoundCount = 0;
+        }
+    }
+
+    public void endCompoundEdit()
+    {
+        if (--compoundDepth > 0) return;
+        GroupEdit edit = compoundEdit;
+        compoundEdit = null;
+        edit.end();
+        if (compoundCount > 0) super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+    }
+
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e)
+    {
+        if (compoundEdit != null)
+        {
+            compoundEdit.addEdit(e.getEdit());
+            compoundCount++;
+        }
+        else
+        {
+            super.fireUndoableEditUpdate(e);
+        }
+    }
+
+    // Edit of a group, its edits can be looked at (the undo history counts their bytes)
+    // 一组的编辑，可以查看其中的编辑（撤销历史计算它们的字节数）
+    static class GroupEdit extends CompoundEdit
+    {
+        List<UndoableEdit> getEdits()
+        {
+            return Collections.unmodifiableList(edits);
+        }
+    }
+
+    // Replacing sorted matches that don't overlap in one pass, undone with one undo.
+    // Every replacement gets the character attributes of the first char it replaces.
+    //
+    // 一次替换已排序且不重叠的匹配项，一次撤销即可还原。
+    // 每个替换都获得它所替换的第一个字符的字符属性。
+    public void replaceAll(int[] starts, int[] ends, String[] replacements, int count) throws BadLocationException
+    {
+        beginCompoundEdit();
+        try
+        {
+            // Offsets of later matches move by the length change of earlier replacements
+            // 后面匹配项的偏移量随前面替换的长度变化而移动
+            int shift = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int start = starts[i] + shift;
+                int length = ends[i] - starts[i];
+                AttributeSet attributes = getCharacterElement(start).getAttributes();
+                if (length > 0) remove(start, length);
+                if (!replacements[i].isEmpty()) insertString(start, replacements[i], attributes);
+                shift += replacements[i].length() - length;
+            }
+        }
+        finally
+        {
+            endCompoundEdit();
+        }
+    }
+
+    // Called with the write lock before the text is removed
+    // 在删除文本之前持有写锁时调用
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng)
+    {
+        if (changeObserver != null) changeObserver.removing(chng.getOffset(), chng.getLength());
+        super.removeUpdate(chng);
+    }
+
+    @Override
+    public void setCharacterAttributes(int offset, int length, AttributeSet s, boolean replace)
+    {
+        int changed = Math.min(length, getLength() - offset);
+        if (changeObserver != null && changed > 0 && offset >= 0) changeObserver.restyling(offset, changed);
+        super.setCharacterAttributes(offset, length, s, replace);
+    }
+
+    @Override
+    protected void fireInsertUpdate(DocumentEvent e)
+    {
+        modificationCount++;
+        super.fireInsertUpdate(e);
+    }
+
+    @Override
+    protected void fireRemoveUpdate(DocumentEvent e)
+    {
+        modificationCount++;
+        super.fireRemoveUpdate(e);
+    }
+
+    @Override
+    protected void fireChangedUpdate(DocumentEvent e)
+    {
+        modificationCount++;
+        super.fireChangedUpdate(e);
+    }
+
+    // Releasing the spool file when the document is no longer shown
+    // 当文档不再显示时释放缓冲文件
+    public void dispose()
+    {
+        if (searchIndex != null)
+        {
+            searchIndex.dispose();
+            searchIndex = null;
+        }
+        if (content.getOriginal() != null)
+        {
+            content.getOriginal().close();
+        }
+    }
+
+    // Attribute context that knows the sets it has already shared for appendRuns:
+    // Every element created from such a set would look it up in the table of unique sets again,
+    // For a big styled file that is one lookup for every run and paragraph.
+    //
+    // 知道已经为appendRuns共享的属性集的属性上下文：
+    // 从这样的集合创建的每个元素都会再次在唯一集合表中查找它，
+    // 对于大型带样式文件，这是每个字符段和段落一次查找。
+    private static class AttributeContext extends StyleContext
+    {
+        private final Map<AttributeSet, AttributeSet> shared = new IdentityHashMap<>();
+        private final Map<AttributeSet, Boolean> sharedResults = new IdentityHashMap<>();
+
+        // Unique immutable copy of a set, made once per distinct set
+        // 集合的唯一不可变副本，每个不同的集合只创建一次
+        synchronized AttributeSet share(AttributeSet attributes)
+        {
+            AttributeSet result = shared.get(attributes);
+            if (result == null)
+            {
+                result = super.addAttributes(getEmptySet(), attributes);
+                shared.put(attributes, result);
+                sharedResults.put(result, Boolean.TRUE);
+            }
+            return result;
+        }
+
+        synchronized void forgetShared()
+        {
+            shared.clear();
+            sharedResults.clear();
+        }
+
+        @Override
+        public synchronized AttributeSet addAttributes(AttributeSet old, AttributeSet attributes)
+        {
+            if (old == getEmptySet() && sharedResults.containsKey(attributes)) return attributes;
+            return super.addAttributes(old, attributes);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.guangnotepad;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.SwingWorker;
+
+/*
+ * Background search with a regular expression.
+ * The pattern runs over a snapshot of the document (DocumentCharSequence), so nothing is copied
+ * And the user can keep typing. Matches are published while the search goes on,
+ * The find dialog shows the first one at once and the counter grows with the rest.
+ * Every find has a timeout: a pattern that backtracks too long stops the search,
+ * The matches found so far are kept.
+ *
+ * 使用正则表达式进行后台搜索。
+ * 模式在文档的快照（DocumentCharSequence）上运行，因此不复制任何内容，用户可以继续输入。
+ * 匹配项在搜索进行时发布，查找对话框立即显示第一个匹配项，计数器随其余匹配项增长。
+ * 每次查找都有超时：回溯太久的模式会停止搜索，已找到的匹配项会保留。
+ */
+
+
+// Regex search class
+// 正则表达式搜索类
+
+public class RegexSearch extends SwingWorker<Integer, int[]>
+{
+    // Time one find may take before the pattern is considered runaway
+    // 在模式被认为失控之前一次查找可以花费的时间
+    static final long TIMEOUT_MILLIS = 5000;
+
+    private final SearchFunction searchFunction;
+    private final DocumentSnapshot snapshot;
+    private final Pattern pattern;
+    private volatile boolean started;
+
+    // Receiver of matches found by findAll
+    // findAll找到的匹配项的接收者
+    public interface MatchConsumer
+    {
+        void match(int start, int end);
+    }
+
+    // Constructor, must be called on the Event Dispatch Thread
+    // 构造函数，必须在事件调度线程上调用
+    public RegexSearch(SearchFunction searchFunction, PieceTableDocument document, Pattern pattern)
+    {
+        this.searchFunction = searchFunction;
+        this.snapshot = document.snapshot(false);
+        this.pattern = pattern;
+    }
+
+    public DocumentSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    // Pattern for the options of the find dialog, throws PatternSyntaxException
+    // 用于查找对话框选项的模式，抛出PatternSyntaxException
+    public static Pattern compile(String regex, boolean matchCase, boolean wholeWord)
+    {
+        if (wholeWord) regex = "(?<![\\p{L}\\p{N}_])(?:" + regex + ")(?![\\p{L}\\p{N}_])";
+        int flags = Pattern.MULTILINE | (matchCase ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        return Pattern.compile(regex, flags);
+    }
+
+    // Finding all matches of the text, throws CancellationException when one find takes too long
+    // 查找文本的所有匹配项，一次查找花费太久时抛出CancellationException
+    public static int findAll(DocumentCharSequence text, Pattern pattern, long timeoutMillis, MatchConsumer consumer)
+    {
+        Matcher matcher = pattern.matcher(text);
+        int found = 0;
+        text.setTimeout(timeoutMillis);
+        while (matcher.find())
+        {
+            consumer.match(matcher.start(), matcher.end());
+            found++;
+            text.setTimeout(timeoutMillis);
+        }
+        return found;
+    }
+
+    // Replacement of a match, $n, ${name} and \ escapes work like in Matcher.appendReplacement
+    // 匹配项的替换，$n、${name}和\转义的作用与Matcher.appendReplacement中相同
+    public static String expand(Matcher matcher, String replacement)
+    {
+        StringBuilder result = new StringBuilder();
+        int i = 0;
+        while (i < replacement.length())
+        {
+            char c = replacement.charAt(i++);
+            if (c == '\\')
+            {
+                if (i == replacement.length()) throw new IllegalArgumentException("Character to be escaped is missing");
+                result.append(replacement.charAt(i++));
+            }
+            else if (c != '$')
+            {
+                result.append(c);
+            }
+            else if (i < replacement.length() && replacement.charAt(i) == '{')
+            {
+                int close = replacement.indexOf('}', i);
+                if (close < 0) throw new IllegalArgumentException("Named group reference is missing '}'");
+                String group = matcher.group(replacement.substring(i + 1, close));
+                if (group != null) result.append(group);
+                i = close + 1;
+            }
+            else
+            {
+                // The longest group number that exists is used, like appendReplacement does
+                // 使用存在的最长组号，与appendReplacement相同
+                if (i == replacement.length() || !Character.isDigit(replacement.charAt(i)))
+                {
+                    throw new IllegalArgumentException("Illegal group reference");
+                }
+                int number = replacement.charAt(i++) - '0';
+                if (number > matcher.groupCount()) throw new IndexOutOfBoundsException("No group " + number);
+                while (i < replacement.length() && Character.isDigit(replacement.charAt(i)))
+                {
+                    int longer = number * 10 + replacement.charAt(i) - '0';
+                    if (longer > matcher.groupCount()) break;
+                    number = longer;
+                    i++;
+                }
+                String group = matcher.group(number);
+                if (group != null) result.append(group);
+            }
+        }
+        return result.toString();
+    }
+
+    // Background part
+    // 后台部分
+    @Override
+    protected Integer doInBackground()
+    {
+        started = true;
+        try
+        {
+            return findAll(new DocumentCharSequence(snapshot), pattern, TIMEOUT_MILLIS,
+                (start, end) -> publish(new int[] { start, end }));
+        }
+        finally
+        {
+            snapshot.release();
+        }
+    }
+
+    // Matches found since the last call, on the Event Dispatch Thread
+    // 自上次调用以来找到的匹配项，在事件调度线程上
+    @Override
+    protected void process(List<int[]> matches)
+    {
+        if (!isCancelled()) searchFunction.regexMatchesFound(this, matches);
+    }
+
+    // Called when the search is finished, was cancelled or took too long
+    // 搜索完成、被取消或花费太久时调用
+    @Override
+    protected void done()
+    {
+        Exception error = null;
+        try
+        {
+            get();
+        }
+        catch (CancellationException e)
+        {
+            // A search cancelled before it started still holds its snapshot
+            // 在开始之前被取消的搜索仍然持有其快照
+            if (!started) snapshot.release();
+            return;
+        }
+        catch (ExecutionException e)
+        {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        catch (InterruptedException e)
+        {
+            error = e;
+        }
+        searchFunction.regexSearchFinished(this, error);
+    }
+}
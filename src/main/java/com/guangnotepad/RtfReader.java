@@ -0,0 +1,801 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/*
+ * Streaming rtf reader.
+ * Bytes are tokenized directly (no Reader and no String for every control word),
+ * Character formatting is packed into a long and every distinct formatting gets one shared AttributeSet.
+ * Text is collected into runs and appended to the document in batches of whole paragraphs,
+ * One document event per batch instead of one insertString and one setCharacterAttributes per run.
+ * Understood: fonts and their charsets, colors, bold, italic, underline, strikethrough, font size,
+ * Foreground and background, paragraph alignment, \'hh and unicode escapes. Other destinations are skipped.
+ *
+ * 流式rtf读取器。
+ * 直接对字节进行分词（没有Reader，也不为每个控制字创建String），
+ * 字符格式被打包成long，每种不同的格式得到一个共享的AttributeSet。
+ * 文本被收集成字符段，并以整段为批次追加到文档中，
+ * 每批一个文档事件，而不是每个字符段一次insertString和一次setCharacterAttributes。
+ * 支持：字体及其字符集、颜色、粗体、斜体、下划线、删除线、字体大小、
+ * 前景色和背景色、段落对齐、\'hh和unicode转义。其他目标被跳过。
+ */
+
+
+// Rtf reader class
+// Rtf读取器类
+
+public class RtfReader
+{
+    private static final int BUFFER = 64 << 10;
+    private static final int BATCH = 64 << 10;
+
+    // Destinations
+    // 目标
+    private static final int TEXT = 0;
+    private static final int FONT_TABLE = 1;
+    private static final int COLOR_TABLE = 2;
+
+    // Keywords that are handled, everything else is ignored
+    // 被处理的关键字，其他一切都被忽略
+    private static final String[] KEYWORDS = {
+        "par", "line", "tab", "page", "sect", "emdash", "endash", "lquote", "rquote", "ldblquote", "rdblquote",
+        "bullet", "u", "uc", "ansicpg", "fonttbl", "colortbl", "f", "fcharset", "red", "green", "blue",
+        "plain", "pard", "b", "i", "ul", "ulnone", "strike", "fs", "cf", "cb", "chcbpat", "highlight",
+        "ql", "qr", "qc", "qj", "bin",
+        "stylesheet", "info", "pict", "object", "header", "headerl", "headerr", "headerf",
+        "footer", "footerl", "footerr", "footerf", "footnote", "annotation", "listtable",
+        "listoverridetable", "revtbl", "filetbl", "xe", "tc", "txe", "nonshppict", "shp"
+    };
+    private static final int PAR = 0, LINE = 1, TAB = 2, PAGE = 3, SECT = 4, EMDASH = 5, ENDASH = 6,
+        LQUOTE = 7, RQUOTE = 8, LDBLQUOTE = 9, RDBLQUOTE = 10, BULLET = 11, U = 12, UC = 13, ANSICPG = 14,
+        FONTTBL = 15, COLORTBL = 16, F = 17, FCHARSET = 18, RED = 19, GREEN = 20, BLUE = 21,
+        PLAIN = 22, PARD = 23, B = 24, I = 25, UL = 26, ULNONE = 27, STRIKE = 28, FS = 29, CF = 30,
+        CB = 31, CHCBPAT = 32, HIGHLIGHT = 33, QL = 34, QR = 35, QC = 36, QJ = 37, BIN = 38,
+        FIRST_SKIPPED = 39;
+
+    // Open addressing table of keyword indexes by String.hashCode
+    // 按String.hashCode排列的关键字索引开放寻址表
+    private static final int[] SLOTS = new int[256];
+
+    static
+    {
+        Arrays.fill(SLOTS, -1);
+        for (int i = 0; i < KEYWORDS.length; i++)
+        {
+            int slot = KEYWORDS[i].hashCode() & 255;
+            while (SLOTS[slot] != -1) slot = (slot + 1) & 255;
+            SLOTS[slot] = i;
+        }
+    }
+
+    // State of a group, copied when a group starts
+    // 组的状态，在组开始时复制
+    private static final class Group
+    {
+        int destination;
+        int skipCount = 1;
+        int font = -1;
+        int alignment = StyleConstants.ALIGN_LEFT;
+
+        // Character formatting packed into one long:
+        // Bits 0-3 bold, italic, underline, strike, 4-15 size in half points, 16-31 font, 32-47 foreground, 48-63 background
+        //
+        // 打包成一个long的字符格式：
+        // 位0-3粗体、斜体、下划线、删除线，4-15以半磅为单位的大小，16-31字体，32-47前景色，48-63背景色
+        long format;
+
+        void copy(Group other)
+        {
+            destination = other.destination;
+            skipCount = other.skipCount;
+            font = other.font;
+            alignment = other.alignment;
+            format = other.format;
+        }
+    }
+
+    private final PieceTableDocument document;
+    private InputStream in;
+    private final byte[] buffer = new byte[BUFFER];
+    private int position;
+    private int limit;
+    private final byte[] word = new byte[32];
+
+    private final List<Group> groups = new ArrayList<>();
+    private int depth;
+    private Group group;
+
+    // Tables
+    // 表
+    private final Map<Integer, String> fonts = new HashMap<>();
+    private final Map<Integer, Integer> fontCodePages = new HashMap<>();
+    private final List<Color> colors = new ArrayList<>();
+    private final StringBuilder fontName = new StringBuilder();
+    private int red = -1, green = -1, blue = -1;
+    private int codePage = 1252;
+
+    // Bytes of \'hh escapes waiting to be decoded (a character may take two of them)
+    // 等待解码的\'hh转义字节（一个字符可能占用两个）
+    private final Map<Integer, CharsetDecoder> decoders = new HashMap<>();
+    private final ByteBuffer pendingBytes = ByteBuffer.allocate(256);
+    private final CharBuffer decodedChars = CharBuffer.allocate(256);
+    private int pendingCodePage;
+    private int skipping;
+
+    // Current batch of text and its runs
+    // 当前批次的文本及其字符段
+    private char[] text = new char[BATCH + 1024];
+    private int length;
+    private int[] runEnds = new int[256];
+    private AttributeSet[] runAttributes = new AttributeSet[256];
+    private int runCount;
+    private final Map<Long, AttributeSet> styles = new HashMap<>();
+    private long runFormat = -1;
+    private AttributeSet runStyle;
+
+    // Paragraphs with alignment, applied when everything is read
+    // 带对齐方式的段落，在读取完所有内容后应用
+    private final List<int[]> alignedParagraphs = new ArrayList<>();
+    private int paragraphStart;
+    private int appended;
+
+    public RtfReader(PieceTableDocument document)
+    {
+        this.document = document;
+    }
+
+    // Reading an rtf stream to the end of the document
+    // 将rtf流读取到文档末尾
+    public void read(InputStream in) throws IOException, BadLocationException
+    {
+        this.in = in;
+        groups.add(new Group());
+        group = groups.get(0);
+
+        int c;
+        while ((c = next()) != -1)
+        {
+            switch (c)
+            {
+                case '{':
+                    flushBytes();
+                    skipping = 0;
+                    beginGroup();
+                    break;
+                case '}':
+                    flushBytes();
+                    skipping = 0;
+                    endGroup();
+                    break;
+                case '\\':
+                    control();
+                    break;
+                case '\r':
+                case '\n':
+                    break;
+                default:
+                    character(c);
+                    break;
+            }
+        }
+        flushBytes();
+        endParagraph();
+        flushBatch();
+        alignParagraphs();
+    }
+
+    // Groups
+    // 组
+
+    private void beginGroup()
+    {
+        depth++;
+        if (depth == groups.size()) groups.add(new Group());
+        Group inner = groups.get(depth);
+        inner.copy(group);
+        group = inner;
+    }
+
+    private void endGroup()
+    {
+        if (group.destination == FONT_TABLE && fontName.length() > 0) addFont();
+        popGroup();
+    }
+
+    private void popGroup()
+    {
+        if (depth == 0) return;
+        depth--;
+        group = groups.get(depth);
+    }
+
+    // Control words and control symbols
+    // 控制字和控制符号
+    private void control() throws IOException, BadLocationException
+    {
+        int c = next();
+        if (c == -1) return;
+        if (!isLetter(c))
+        {
+            symbol(c);
+            return;
+        }
+
+        int count = 0;
+        int h = 0;
+        while (c != -1 && isLetter(c))
+        {
+            if (count < word.length) word[count++] = (byte) c;
+            h = 31 * h + c;
+            c = next();
+        }
+
+        boolean negative = false;
+        boolean hasParameter = false;
+        int parameter = 0;
+        if (c == '-')
+        {
+            negative = true;
+            c = next();
+        }
+        while (c >= '0' && c <= '9')
+        {
+            hasParameter = true;
+            parameter = parameter * 10 + (c - '0');
+            c = next();
+        }
+        if (negative) parameter = -parameter;
+        if (c != ' ' && c != -1) position--;
+
+        int keyword = lookup(h, count);
+        if (keyword != U) flushBytes();
+        if (skipping > 0 && keyword != U)
+        {
+            skipping--;
+            return;
+        }
+        keyword(keyword, hasParameter, hasParameter ? parameter : 1);
+    }
+
+    private void symbol(int c) throws IOException, BadLocationException
+    {
+        if (c == '\'')
+        {
+            int value = hex(next()) << 4;
+            value |= hex(next());
+            if (skipping > 0)
+            {
+                skipping--;
+                return;
+            }
+            if (group.destination == TEXT || group.destination == FONT_TABLE) addByte(value);
+            return;
+        }
+        flushBytes();
+        if (skipping > 0)
+        {
+            skipping--;
+            return;
+        }
+        switch (c)
+        {
+            case '\\':
+            case '{':
+            case '}':
+                append((char) c);
+                break;
+            case '~':
+                append('\u00A0');
+                break;
+            case '_':
+                append('\u2011');
+                break;
+            case '\r':
+            case '\n':
+                paragraph();
+                break;
+            case '*':
+                skipGroup();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void keyword(int keyword, boolean hasParameter, int parameter) throws IOException, BadLocationException
+    {
+        switch (keyword)
+        {
+            case PAR:
+            case PAGE:
+            case SECT:
+                paragraph();
+                break;
+            case LINE:
+                append('\n');
+                break;
+            case TAB:
+                append('\t');
+                break;
+            case EMDASH:
+                append('\u2014');
+                break;
+            case ENDASH:
+                append('\u2013');
+                break;
+            case LQUOTE:
+                append('\u2018');
+                break;
+            case RQUOTE:
+                append('\u2019');
+                break;
+            case LDBLQUOTE:
+                append('\u201C');
+                break;
+            case RDBLQUOTE:
+                append('\u201D');
+                break;
+            case BULLET:
+                append('\u2022');
+                break;
+            case U:
+                flushBytes();
+                append((char) (parameter < 0 ? parameter + 65536 : parameter));
+                skipping = group.skipCount;
+                break;
+            case UC:
+                group.skipCount = Math.max(0, parameter);
+                break;
+            case ANSICPG:
+                codePage = parameter;
+                break;
+            case FONTTBL:
+                group.destination = FONT_TABLE;
+                break;
+            case COLORTBL:
+                group.destination = COLOR_TABLE;
+                break;
+            case F:
+                if (group.destination == FONT_TABLE)
+                {
+                    if (fontName.length() > 0) addFont();
+                    group.font = parameter;
+                }
+                else
+                {
+                    group.font = parameter;
+                    setFormat(16, 0xFFFF, fonts.containsKey(parameter) ? parameter + 1 : 0);
+                }
+                break;
+            case FCHARSET:
+                if (group.destination == FONT_TABLE && group.font >= 0)
+                {
+                    int charsetCodePage = codePageOfCharset(parameter);
+                    if (charsetCodePage != 0) fontCodePages.put(group.font, charsetCodePage);
+                }
+                break;
+            case RED:
+                red = parameter;
+                break;
+            case GREEN:
+                green = parameter;
+                break;
+            case BLUE:
+                blue = parameter;
+                break;
+            case PLAIN:
+                group.format = 0;
+                group.font = -1;
+                break;
+            case PARD:
+                group.alignment = StyleConstants.ALIGN_LEFT;
+                break;
+            case B:
+                setFormat(0, 1, parameter != 0 ? 1 : 0);
+                break;
+            case I:
+                setFormat(1, 1, parameter != 0 ? 1 : 0);
+                break;
+            case UL:
+                setFormat(2, 1, parameter != 0 ? 1 : 0);
+                break;
+            case ULNONE:
+                setFormat(2, 1, 0);
+                break;
+            case STRIKE:
+                setFormat(3, 1, parameter != 0 ? 1 : 0);
+                break;
+            case FS:
+                setFormat(4, 0xFFF, hasParameter ? Math.min(parameter, 0xFFF) : 0);
+                break;
+            case CF:
+                setFormat(32, 0xFFFF, color(parameter));
+                break;
+            case CB:
+            case CHCBPAT:
+            case HIGHLIGHT:
+                setFormat(48, 0xFFFF, color(parameter));
+                break;
+            case QL:
+                group.alignment = StyleConstants.ALIGN_LEFT;
+                break;
+            case QR:
+                group.alignment = StyleConstants.ALIGN_RIGHT;
+                break;
+            case QC:
+                group.alignment = StyleConstants.ALIGN_CENTER;
+                break;
+            case QJ:
+                group.alignment = StyleConstants.ALIGN_JUSTIFIED;
+                break;
+            case BIN:
+                skipBytes(parameter);
+                break;
+            default:
+                if (keyword >= FIRST_SKIPPED) skipGroup();
+                break;
+        }
+    }
+
+    // Plain characters
+    // 普通字符
+    private void character(int c)
+    {
+        if (group.destination == COLOR_TABLE)
+        {
+            if (c == ';') addColor();
+            return;
+        }
+        if (group.destination == FONT_TABLE)
+        {
+            flushBytes();
+            if (c == ';') addFont();
+            else fontName.append((char) c);
+            return;
+        }
+        if (c >= 0x80)
+        {
+            // Bytes that should have been escaped
+            // 本应被转义的字节
+            if (skipping > 0) skipping--;
+            else addByte(c);
+            return;
+        }
+        flushBytes();
+        if (skipping > 0)
+        {
+            skipping--;
+            return;
+        }
+        append((char) c);
+    }
+
+    private void append(char c)
+    {
+        if (group.destination == FONT_TABLE)
+        {
+            fontName.append(c);
+            return;
+        }
+        if (group.destination != TEXT) return;
+
+        if (group.format != runFormat)
+        {
+            closeRun();
+            runFormat = group.format;
+            runStyle = style(runFormat);
+        }
+        if (length == text.length) text = Arrays.copyOf(text, length * 2);
+        text[length++] = c;
+    }
+
+    private void paragraph() throws BadLocationException
+    {
+        if (group.destination != TEXT) return;
+        append('\n');
+        endParagraph();
+        if (length >= BATCH) flushBatch();
+    }
+
+    private void endParagraph()
+    {
+        int end = appended + length;
+        if (group.alignment != StyleConstants.ALIGN_LEFT && end > paragraphStart)
+        {
+            int[] last = alignedParagraphs.isEmpty() ? null : alignedParagraphs.get(alignedParagraphs.size() - 1);
+            if (last != null && last[1] == paragraphStart && last[2] == group.alignment) last[1] = end;
+            else alignedParagraphs.add(new int[] { paragraphStart, end, group.alignment });
+        }
+        paragraphStart = end;
+    }
+
+    // Runs and batches
+    // 字符段和批次
+
+    private void closeRun()
+    {
+        int start = runCount == 0 ? 0 : runEnds[runCount - 1];
+        if (length == start) return;
+        if (runCount == runEnds.length)
+        {
+            runEnds = Arrays.copyOf(runEnds, runCount * 2);
+            runAttributes = Arrays.copyOf(runAttributes, runCount * 2);
+        }
+        runEnds[runCount] = length;
+        runAttributes[runCount++] = runStyle;
+    }
+
+    private void flushBatch() throws BadLocationException
+    {
+        closeRun();
+        document.appendRuns(text, 0, runEnds, runAttributes, runCount);
+        appended += length;
+        length = 0;
+        runCount = 0;
+    }
+
+    // One shared attribute set for every distinct formatting
+    // 每种不同的格式使用一个共享的属性集
+    private AttributeSet style(long format)
+    {
+        AttributeSet style = styles.get(format);
+        if (style != null) return style;
+
+        SimpleAttributeSet attributes = new SimpleAttributeSet();
+        int font = (int) (format >>> 16) & 0xFFFF;
+        if (font > 0 && fonts.get(font - 1) != null) StyleConstants.setFontFamily(attributes, fonts.get(font - 1));
+        int size = (int) (format >>> 4) & 0xFFF;
+        if (size > 0) StyleConstants.setFontSize(attributes, size / 2);
+        if ((format & 1) != 0) StyleConstants.setBold(attributes, true);
+        if ((format & 2) != 0) StyleConstants.setItalic(attributes, true);
+        if ((format & 4) != 0) StyleConstants.setUnderline(attributes, true);
+        if ((format & 8) != 0) StyleConstants.setStrikeThrough(attributes, true);
+        Color foreground = colorAt((int) (format >>> 32) & 0xFFFF);
+        if (foreground != null) StyleConstants.setForeground(attributes, foreground);
+        Color background = colorAt((int) (format >>> 48) & 0xFFFF);
+        if (background != null) StyleConstants.setBackground(attributes, background);
+
+        styles.put(format, attributes);
+        return attributes;
+    }
+
+    private void setFormat(int shift, long mask, long value)
+    {
+        group.format = (group.format & ~(mask << shift)) | ((value & mask) << shift);
+    }
+
+    // Font and color tables
+    // 字体表和颜色表
+
+    private void addFont()
+    {
+        String name = fontName.toString().trim();
+        fontName.setLength(0);
+        if (group.font >= 0 && !name.isEmpty())
+        {
+            fonts.put(group.font, name);
+            styles.clear();
+            runFormat = -1;
+        }
+    }
+
+    private void addColor()
+    {
+        colors.add(red < 0 && green < 0 && blue < 0 ? null
+            : new Color(Math.max(0, red) & 255, Math.max(0, green) & 255, Math.max(0, blue) & 255));
+        red = green = blue = -1;
+        styles.clear();
+        runFormat = -1;
+    }
+
+    // Color index + 1, 0 is the automatic color
+    // 颜色索引+1，0是自动颜色
+    private int color(int index)
+    {
+        return index >= 0 && index < colors.size() && colors.get(index) != null ? index + 1 : 0;
+    }
+
+    private Color colorAt(int index)
+    {
+        return index > 0 && index <= colors.size() ? colors.get(index - 1) : null;
+    }
+
+    // Decoding \'hh bytes with the code page of the current font
+    // 使用当前字体的代码页解码\'hh字节
+    private void addByte(int value)
+    {
+        int bytesCodePage = codePage;
+        if (group.font >= 0)
+        {
+            Integer fontCodePage = fontCodePages.get(group.font);
+            if (fontCodePage != null) bytesCodePage = fontCodePage;
+        }
+        if (pendingBytes.position() > 0 && (bytesCodePage != pendingCodePage || !pendingBytes.hasRemaining()))
+        {
+            flushBytes();
+        }
+        pendingCodePage = bytesCodePage;
+        pendingBytes.put((byte) value);
+    }
+
+    private void flushBytes()
+    {
+        if (pendingBytes.position() == 0) return;
+        CharsetDecoder decoder = decoders.get(pendingCodePage);
+        if (decoder == null)
+        {
+            decoder = charsetOf(pendingCodePage).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoders.put(pendingCodePage, decoder);
+        }
+        ((Buffer) pendingBytes).flip();
+        ((Buffer) decodedChars).clear();
+        decoder.reset();
+        decoder.decode(pendingBytes, decodedChars, true);
+        decoder.flush(decodedChars);
+        ((Buffer) pendingBytes).clear();
+        ((Buffer) decodedChars).flip();
+
+        while (decodedChars.hasRemaining()) append(decodedChars.get());
+    }
+
+    static Charset charsetOf(int codePage)
+    {
+        try
+        {
+            return Charset.forName("cp" + codePage);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return Charset.forName("windows-1252");
+        }
+    }
+
+    private static int codePageOfCharset(int charset)
+    {
+        switch (charset)
+        {
+            case 128: return 932;
+            case 129: return 949;
+            case 134: return 936;
+            case 136: return 950;
+            case 161: return 1253;
+            case 162: return 1254;
+            case 163: return 1258;
+            case 177: return 1255;
+            case 178: return 1256;
+            case 186: return 1257;
+            case 204: return 1251;
+            case 222: return 874;
+            case 238: return 1250;
+            default: return 0;
+        }
+    }
+
+    // Paragraph alignment is rare, so it is set after the text is in the document
+    // 段落对齐很少见，因此在文本进入文档后设置
+    private void alignParagraphs()
+    {
+        for (int[] paragraph : alignedParagraphs)
+        {
+            SimpleAttributeSet attributes = new SimpleAttributeSet();
+            StyleConstants.setAlignment(attributes, paragraph[2]);
+            document.setParagraphAttributes(paragraph[0], paragraph[1] - paragraph[0], attributes, false);
+        }
+    }
+
+    // Skipping
+    // 跳过
+
+    // Skipping the rest of the current group (\* destinations, pictures, style sheets and so on)
+    // 跳过当前组的其余部分（\*目标、图片、样式表等）
+    private void skipGroup() throws IOException
+    {
+        int level = 1;
+        int c;
+        while ((c = next()) != -1)
+        {
+            if (c == '\\')
+            {
+                c = next();
+                if (c == 'b' && peek('i') && peek('n'))
+                {
+                    int count = 0;
+                    while ((c = next()) >= '0' && c <= '9') count = count * 10 + (c - '0');
+                    if (c != ' ' && c != -1) position--;
+                    skipBytes(count);
+                }
+            }
+            else if (c == '{')
+            {
+                level++;
+            }
+            else if (c == '}' && --level == 0)
+            {
+                popGroup();
+                return;
+            }
+        }
+    }
+
+    private boolean peek(int expected) throws IOException
+    {
+        int c = next();
+        if (c == expected) return true;
+        if (c != -1) position--;
+        return false;
+    }
+
+    private void skipBytes(int count) throws IOException
+    {
+        while (count-- > 0 && next() != -1)
+        {
+            // Binary data is ignored
+            // 二进制数据被忽略
+        }
+    }
+
+    // Reading bytes
+    // 读取字节
+
+    private int next() throws IOException
+    {
+        if (position == limit)
+        {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0)
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private static boolean isLetter(int c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int hex(int c)
+    {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return 0;
+    }
+
+    // Finding a keyword without creating a String
+    // 在不创建String的情况下查找关键字
+    private int lookup(int h, int count)
+    {
+        for (int slot = h & 255; SLOTS[slot] != -1; slot = (slot + 1) & 255)
+        {
+            String keyword = KEYWORDS[SLOTS[slot]];
+            if (keyword.length() != count) continue;
+            boolean same = true;
+            for (int i = 0; i < count && same; i++) same = keyword.charAt(i) == word[i];
+            if (same) return SLOTS[slot];
+        }
+        return -1;
+    }
+}
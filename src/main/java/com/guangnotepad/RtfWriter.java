@@ -0,0 +1,293 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import javax.swing.text.StyleConstants;
+
+/*
+ * Streaming rtf writer.
+ * Works on a styled DocumentSnapshot, so the element tree is not walked again and saving can run on a worker thread.
+ * The first pass over the character runs collects the font and color tables
+ * And prepares the control words of every distinct attribute set once,
+ * The second pass writes the text piece by piece into a byte buffer.
+ * Characters outside ASCII are written as unicode escapes, so the result does not depend on a code page.
+ *
+ * 流式rtf写入器。
+ * 作用于带样式的DocumentSnapshot，因此不会再次遍历元素树，保存可以在工作线程上运行。
+ * 第一遍遍历字符段收集字体表和颜色表，
+ * 并为每个不同的属性集准备一次控制字，
+ * 第二遍将文本逐段写入字节缓冲区。
+ * ASCII以外的字符被写为unicode转义，因此结果不依赖于代码页。
+ */
+
+
+// Rtf writer class
+// Rtf写入器类
+
+public class RtfWriter
+{
+    private static final int CHUNK = 64 << 10;
+
+    private final DocumentSnapshot snapshot;
+    private final OutputStream out;
+    private final byte[] buffer = new byte[CHUNK];
+    private int count;
+
+    // Font and color tables, indexes in the order of first use (color 0 is the automatic color)
+    // 字体表和颜色表，按首次使用的顺序编号（颜色0是自动颜色）
+    private final Map<String, Integer> fonts = new LinkedHashMap<>();
+    private final Map<Color, Integer> colors = new LinkedHashMap<>();
+
+    // Control words of every distinct attribute set of the snapshot
+    // 快照中每个不同属性集的控制字
+    private final Map<AttributeSet, String> formats = new IdentityHashMap<>();
+
+    private RtfWriter(DocumentSnapshot snapshot, OutputStream out)
+    {
+        this.snapshot = snapshot;
+        this.out = out;
+    }
+
+    // Writing a styled snapshot, the stream is flushed but not closed
+    // 写入带样式的快照，流被刷新但不关闭
+    public static void write(DocumentSnapshot snapshot, OutputStream out) throws IOException, BadLocationException
+    {
+        write(snapshot, 0, snapshot.getLength(), out);
+    }
+
+    // Writing the text [from, to) of a snapshot that has the styles of that range
+    // 写入具有该范围样式的快照的文本[from, to)
+    static void write(DocumentSnapshot snapshot, int from, int to, OutputStream out) throws IOException, BadLocationException
+    {
+        RtfWriter writer = new RtfWriter(snapshot, out);
+        writer.collectTables();
+        writer.writeHeader();
+        writer.writeBody(from, to);
+        writer.flush();
+        out.flush();
+    }
+
+    // First pass: tables and control words
+    // 第一遍：表和控制字
+    private void collectTables()
+    {
+        for (int i = 0; i < snapshot.getRunCount(); i++)
+        {
+            AttributeSet attributes = snapshot.getRunAttributes(i);
+            if (formats.containsKey(attributes)) continue;
+
+            StringBuilder words = new StringBuilder("\\plain");
+            Object family = attributes.getAttribute(StyleConstants.FontFamily);
+            if (family instanceof String)
+            {
+                words.append("\\f").append(index(fonts, (String) family, 0));
+            }
+            Object size = attributes.getAttribute(StyleConstants.FontSize);
+            if (size instanceof Integer)
+            {
+                words.append("\\fs").append((Integer) size * 2);
+            }
+            if (StyleConstants.isBold(attributes)) words.append("\\b");
+            if (StyleConstants.isItalic(attributes)) words.append("\\i");
+            if (StyleConstants.isUnderline(attributes)) words.append("\\ul");
+            if (StyleConstants.isStrikeThrough(attributes)) words.append("\\strike");
+            Object foreground = attributes.getAttribute(StyleConstants.Foreground);
+            if (foreground instanceof Color)
+            {
+                words.append("\\cf").append(index(colors, (Color) foreground, 1));
+            }
+            Object background = attributes.getAttribute(StyleConstants.Background);
+            if (background instanceof Color)
+            {
+                int color = index(colors, (Color) background, 1);
+                words.append("\\cb").append(color).append("\\chcbpat").append(color);
+            }
+            formats.put(attributes, words.append(' ').toString());
+        }
+    }
+
+    private static <K> int index(Map<K, Integer> table, K key, int first)
+    {
+        Integer index = table.get(key);
+        if (index == null)
+        {
+            index = first + table.size();
+            table.put(key, index);
+        }
+        return index;
+    }
+
+    private void writeHeader() throws IOException
+    {
+        writeAscii("{\\rtf1\\ansi\\ansicpg1252\\deff0\\uc1\n{\\fonttbl");
+        for (Map.Entry<String, Integer> font : fonts.entrySet())
+        {
+            writeAscii("{\\f");
+            writeNumber(font.getValue());
+            writeAscii("\\fnil ");
+            String name = font.getKey();
+            for (int i = 0; i < name.length(); i++) writeChar(name.charAt(i));
+            writeAscii(";}");
+        }
+        writeAscii("}\n{\\colortbl;");
+        for (Color color : colors.keySet())
+        {
+            writeAscii("\\red");
+            writeNumber(color.getRed());
+            writeAscii("\\green");
+            writeNumber(color.getGreen());
+            writeAscii("\\blue");
+            writeNumber(color.getBlue());
+            writeAscii(";");
+        }
+        writeAscii("}\n\\pard\\plain ");
+    }
+
+    // Second pass: paragraphs, runs and text
+    // 第二遍：段落、字符段和文本
+    private void writeBody(int from, int to) throws IOException, BadLocationException
+    {
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+
+        int paragraph = 0;
+        int current = -1;
+        int alignment = StyleConstants.ALIGN_LEFT;
+        AttributeSet previous = null;
+
+        int start = from;
+        for (int i = 0; i < snapshot.getRunCount() && start < to; i++)
+        {
+            // Runs before the written range are skipped
+            // 跳过写入范围之前的字符段
+            if (snapshot.getRunEnd(i) <= start) continue;
+
+            // Runs never cross paragraphs, so a paragraph starts together with one of its runs
+            // 字符段从不跨越段落，因此段落与其某个字符段一起开始
+            while (paragraph < snapshot.getParagraphCount() - 1 && snapshot.getParagraphEnd(paragraph) <= start)
+            {
+                paragraph++;
+            }
+            if (paragraph != current)
+            {
+                current = paragraph;
+                int paragraphAlignment = StyleConstants.getAlignment(snapshot.getParagraphAttributes(paragraph));
+                if (paragraphAlignment != alignment)
+                {
+                    alignment = paragraphAlignment;
+                    writeAscii(alignmentWords(alignment));
+                }
+            }
+
+            AttributeSet attributes = snapshot.getRunAttributes(i);
+            if (attributes != previous)
+            {
+                writeAscii(formats.get(attributes));
+                previous = attributes;
+            }
+
+            int end = Math.min(snapshot.getRunEnd(i), to);
+            int offset = start;
+            while (offset < end)
+            {
+                snapshot.getText(offset, end - offset, segment);
+                for (int j = segment.offset; j < segment.offset + segment.count; j++)
+                {
+                    writeChar(segment.array[j]);
+                }
+                offset += segment.count;
+            }
+            start = snapshot.getRunEnd(i);
+        }
+        writeAscii("}\n");
+    }
+
+    private static String alignmentWords(int alignment)
+    {
+        switch (alignment)
+        {
+            case StyleConstants.ALIGN_RIGHT: return "\\pard\\qr ";
+            case StyleConstants.ALIGN_CENTER: return "\\pard\\qc ";
+            case StyleConstants.ALIGN_JUSTIFIED: return "\\pard\\qj ";
+            default: return "\\pard ";
+        }
+    }
+
+    // Writing bytes
+    // 写入字节
+
+    private void writeChar(char c) throws IOException
+    {
+        if (count + 16 > buffer.length) flush();
+        switch (c)
+        {
+            case '\\':
+            case '{':
+            case '}':
+                buffer[count++] = '\\';
+                buffer[count++] = (byte) c;
+                return;
+            case '\n':
+                writeAscii("\\par\n");
+                return;
+            case '\t':
+                writeAscii("\\tab ");
+                return;
+            default:
+                break;
+        }
+        if (c >= 0x20 && c < 0x80)
+        {
+            buffer[count++] = (byte) c;
+        }
+        else if (c >= 0x80)
+        {
+            // Signed 16-bit number followed by one replacement character for old readers
+            // 有符号16位数字，后跟一个供旧读取器使用的替换字符
+            buffer[count++] = '\\';
+            buffer[count++] = 'u';
+            writeNumber((short) c);
+            buffer[count++] = '?';
+        }
+    }
+
+    private void writeAscii(String text) throws IOException
+    {
+        if (count + text.length() > buffer.length) flush();
+        for (int i = 0; i < text.length(); i++)
+        {
+            buffer[count++] = (byte) text.charAt(i);
+        }
+    }
+
+    private void writeNumber(int number) throws IOException
+    {
+        if (count + 12 > buffer.length) flush();
+        if (number < 0)
+        {
+            buffer[count++] = '-';
+            number = -number;
+        }
+        int digits = 1;
+        for (int n = number; n >= 10; n /= 10) digits++;
+        for (int i = count + digits - 1; i >= count; i--)
+        {
+            buffer[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        count += digits;
+    }
+
+    private void flush() throws IOException
+    {
+        out.write(buffer, 0, count);
+        count = 0;
+    }
+}
@@ -2,9 +2,15 @@ package com.guangnotepad;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 
@@ -17,10 +23,25 @@ public class SearchFunction implements ActionListener, KeyListener
     private GUI gui;
     private JDialog findReplaceDialog;
     private JTextField searchField, replaceField;
-    private JButton closeButton, searchButton, replaceButton, prevButton, nextButton;
+    private JButton closeButton, searchButton, replaceButton, replaceAllButton, prevButton, nextButton;
     private JLabel searchLabel, counterLabel;
-    private List<Integer> indices;
+    private JCheckBox matchCaseBox, wholeWordBox, regexBox;
+    private MatchSet matches = new MatchSet();
+    private Pattern pattern;
+    private RegexSearch regexSearch;
     private int currentIndex;
+
+    // Search as you type: a search starts when typing pauses, a newer query cancels it
+    // 边输入边搜索：输入暂停时开始搜索，较新的查询会取消它
+    private static final int TYPING_DELAY = 150;
+    private Timer liveTimer;
+    private IncrementalSearch liveSearch;
+
+    // Query of the current matches, used when the next query extends it (null if they can't be reused)
+    // 当前匹配项的查询，在下一个查询扩展它时使用（如果不能重用则为null）
+    private String resultQuery;
+    private boolean resultMatchCase;
+    private int resultModification;
     private static boolean isActive = false;
 
     // Constructor
@@ -31,6 +52,7 @@ public class SearchFunction implements ActionListener, KeyListener
         
         isActive = true;
         this.gui = gui;
+        gui.searchFunction = this;
 
         gui.window.addComponentListener(new ComponentAdapter() 
         {
@@ -51,7 +73,7 @@ public class SearchFunction implements ActionListener, KeyListener
         // Set the size and default settings of the window
         // 设置窗口的大小和默认设置
         findReplaceDialog.setLayout(dialogLayout);
-        findReplaceDialog.setSize(250, 150);
+        findReplaceDialog.setSize(250, 205);
         findReplaceDialog.setUndecorated(true);
         findReplaceDialog.setLocationRelativeTo(gui.menuBar);
         
@@ -92,6 +114,30 @@ public class SearchFunction implements ActionListener, KeyListener
         searchField = new JTextField(10);
         searchField.addKeyListener(this);
 
+        // Every change of the query waits for a pause in typing, then searches in the background
+        // 查询的每次更改都会等待输入暂停，然后在后台搜索
+        liveTimer = new Timer(TYPING_DELAY, e -> startLiveSearch());
+        liveTimer.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener()
+        {
+            @Override
+            public void insertUpdate(DocumentEvent e)
+            {
+                scheduleLiveSearch();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e)
+            {
+                scheduleLiveSearch();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e)
+            {
+            }
+        });
+
         searchButton = new JButton("Search");
         searchButton.addActionListener(this);
         searchButton.setActionCommand("Search");
@@ -151,6 +197,32 @@ public class SearchFunction implements ActionListener, KeyListener
         gbc.gridx = 1;
         findReplaceDialog.add(replaceButton, gbc);
 
+        // Options of matching
+        // 匹配选项
+        matchCaseBox = new JCheckBox("Match case", true);
+        wholeWordBox = new JCheckBox("Whole word");
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        findReplaceDialog.add(matchCaseBox, gbc);
+
+        gbc.gridx = 1;
+        findReplaceDialog.add(wholeWordBox, gbc);
+        matchCaseBox.addActionListener(e -> scheduleLiveSearch());
+        wholeWordBox.addActionListener(e -> scheduleLiveSearch());
+
+        regexBox = new JCheckBox("Regex");
+        gbc.gridx = 0;
+        gbc.gridy = 5;
+        findReplaceDialog.add(regexBox, gbc);
+
+        // "Replace All" button
+        // “全部替换”按钮
+        replaceAllButton = new JButton("Replace All");
+        replaceAllButton.addActionListener(this);
+        replaceAllButton.setActionCommand("Replace All");
+        gbc.gridx = 1;
+        findReplaceDialog.add(replaceAllButton, gbc);
+
 
         // Handling window movement when parent window is moved
         // 处理父窗口移动时的窗口移动
@@ -180,37 +252,66 @@ public class SearchFunction implements ActionListener, KeyListener
         gui.textArea.addKeyListener(this);
     }
 
-    // Search method
-    // 搜索方法
+    // Search method, occurrences are found with the trigram index of the document
+    // 搜索方法，使用文档的三元组索引查找出现位置
     public void performSearch()
     {
-        // Get the text to search in
-        // 获取要搜索的文本
-        String text = gui.textArea.getText();
+        // Get the document to search in
+        // 获取要搜索的文档
+        Document doc = gui.textArea.getDocument();
 
         // Get the word to search for
         // 获取要搜索的单词
         String word = searchField.getText();
         
-        // List to store the indices of all occurrences
-        // 用于存储所有出现的索引的列表
-        indices = new ArrayList<>();
+        // Set to store all occurrences, it follows later edits of the document
+        // 用于存储所有出现的集合，它跟随文档之后的编辑
+        newMatches();
+        pattern = null;
+        resultQuery = null;
+        cancelSearches();
+
+        // Regular expressions are matched in the background, matches come to regexMatchesFound
+        // 正则表达式在后台匹配，匹配项进入regexMatchesFound
+        if (regexBox.isSelected() && !word.equals("") && doc instanceof PieceTableDocument)
+        {
+            startRegexSearch((PieceTableDocument) doc, word);
+        }
 
         // Search for all occurrences of the word in the text
         // 在文本中搜索单词的所有出现
-        if (!word.equals("") && !text.equals(""))
+        else if (!word.equals("") && doc.getLength() > 0)
         {
-            currentIndex = text.indexOf(word);
-            while (currentIndex != -1) 
+            // Documents other than the piece table document get an index only for this search
+            // 片段表文档以外的文档仅为此次搜索获得索引
+            boolean ownIndex = doc instanceof PieceTableDocument;
+            SearchIndex index = ownIndex ? ((PieceTableDocument) doc).getSearchIndex() : new SearchIndex(doc);
+            TextMatcher matcher = TextMatcher.of(word, matchCaseBox.isSelected(), wholeWordBox.isSelected());
+            try
+            {
+                index.findAll(matcher, matches);
+            }
+            catch (BadLocationException e)
             {
-                indices.add(currentIndex);
-                currentIndex = text.indexOf(word, currentIndex + 1);
+                e.printStackTrace();
             }
-            currentIndex = 0;
+            matches.track(doc, MatchSet.literal(matcher));
+            if (ownIndex && !wholeWordBox.isSelected())
+            {
+                resultQuery = word;
+                resultMatchCase = matchCaseBox.isSelected();
+                resultModification = ((PieceTableDocument) doc).getModificationCount();
+            }
+
+            // Size of the index is shown on the counter
+            // 索引的大小显示在计数器上
+            counterLabel.setToolTipText("Search index: " + index.getBlockCount() + " blocks, " +
+                (index.getMemoryBytes() + 1023) / 1024 + " KB");
+            if (!ownIndex) index.dispose();
 
             // If there are no matches, show a popup message
             // 如果没有匹配项，则显示弹出消息
-            if (indices.isEmpty()) 
+            if (matches.size() == 0) 
             {
                 counterLabel.setText("0/0");
                 gui.currentPopup = new PopupMessage(gui, "No matches found!");
@@ -223,16 +324,16 @@ public class SearchFunction implements ActionListener, KeyListener
             {
                 // Update the counterLabel
                 // 更新counterLabel
-                counterLabel.setText("1/" + indices.size());
+                counterLabel.setText("1/" + matches.size());
                 
                 // Set the cursor to the first occurrence
                 // 将光标设置为第一次出现
-                gui.textArea.setCaretPosition(indices.get(0));
+                gui.textArea.setCaretPosition(matches.getStart(0));
                 
                 // Highlight the found word
                 // 高亮显示找到的单词
-                gui.textArea.setSelectionStart(indices.get(0));
-                gui.textArea.setSelectionEnd(indices.get(0) + word.length());
+                gui.textArea.setSelectionStart(matches.getStart(0));
+                gui.textArea.setSelectionEnd(matches.getEnd(0));
             }
         }
 
@@ -246,7 +347,7 @@ public class SearchFunction implements ActionListener, KeyListener
 
         // If the text field is empty, show a popup message
         // 如果文本字段为空，则显示弹出消息
-        else if (text.equals(""))
+        else if (doc.getLength() == 0)
         {
             gui.currentPopup = new PopupMessage(gui, "There's no text to search!");
             gui.currentPopup.setVisible(true);
@@ -259,30 +360,292 @@ public class SearchFunction implements ActionListener, KeyListener
             gui.currentPopup = new PopupMessage(gui, "Search error");
             gui.currentPopup.setVisible(true);
         }
+        showMatches();
+    }
+
+    // Starting the background search of a regular expression, a bad pattern is reported at once
+    // 开始正则表达式的后台搜索，错误的模式立即报告
+    private void startRegexSearch(PieceTableDocument doc, String regex)
+    {
+        try
+        {
+            pattern = RegexSearch.compile(regex, matchCaseBox.isSelected(), wholeWordBox.isSelected());
+        }
+        catch (PatternSyntaxException e)
+        {
+            counterLabel.setText("0/0");
+            gui.currentPopup = new PopupMessage(gui, "Invalid regular expression: " + e.getDescription());
+            gui.currentPopup.setVisible(true);
+            return;
+        }
+
+        matches.track(doc, MatchSet.regex(pattern));
+        counterLabel.setToolTipText("Regular expression search");
+        regexSearch = new RegexSearch(this, doc, pattern);
+        regexSearch.execute();
+        counterLabel.setText(counterText());
+    }
+
+    // Stopping the searches that are running or waiting for the user to stop typing
+    // 停止正在运行或等待用户停止输入的搜索
+    private void cancelSearches()
+    {
+        liveTimer.stop();
+        if (regexSearch != null) regexSearch.cancel(true);
+        if (liveSearch != null) liveSearch.cancel(true);
+        regexSearch = null;
+        liveSearch = null;
+    }
+
+    // Matches published by the background search, the first one is selected at once
+    // 后台搜索发布的匹配项，第一个立即被选中
+    void regexMatchesFound(RegexSearch search, List<int[]> matches)
+    {
+        if (search != regexSearch) return;
+
+        // Offsets of an edited document are no longer right, the search is stopped
+        // 编辑过的文档的偏移量不再正确，搜索被停止
+        if (search.getSnapshot().isOutdated())
+        {
+            cancelSearches();
+            counterLabel.setText(counterText());
+            return;
+        }
+
+        boolean first = this.matches.size() == 0;
+        for (int[] match : matches)
+        {
+            this.matches.add(match[0], match[1]);
+        }
+        if (first && this.matches.size() > 0)
+        {
+            gui.textArea.setCaretPosition(this.matches.getStart(0));
+            gui.textArea.setSelectionStart(this.matches.getStart(0));
+            gui.textArea.setSelectionEnd(this.matches.getEnd(0));
+        }
+        gui.matchHighlighter.matchesChanged();
+        counterLabel.setText(counterText());
+    }
+
+    // End of the background search, a timeout keeps the matches found before it
+    // 后台搜索结束，超时会保留之前找到的匹配项
+    void regexSearchFinished(RegexSearch search, Exception error)
+    {
+        if (search != regexSearch) return;
+        regexSearch = null;
+        matches.trim();
+        counterLabel.setText(counterText());
+
+        if (error instanceof CancellationException)
+        {
+            gui.currentPopup = new PopupMessage(gui, "The regular expression took too long, search stopped");
+            gui.currentPopup.setVisible(true);
+        }
+        else if (error != null)
+        {
+            error.printStackTrace();
+            gui.currentPopup = new PopupMessage(gui, "Search error");
+            gui.currentPopup.setVisible(true);
+        }
+        else if (matches.size() == 0)
+        {
+            gui.currentPopup = new PopupMessage(gui, "No matches found!");
+            gui.currentPopup.setVisible(true);
+        }
+    }
+
+    // Counter text, a search that is still running is marked with an ellipsis
+    // 计数器文本，仍在运行的搜索用省略号标记
+    private String counterText()
+    {
+        String current = (matches.size() == 0 ? 0 : currentIndex + 1) + "/";
+        if (regexSearch != null || liveSearch != null) return current + "\u2265" + matches.size() + "\u2026";
+        return current + matches.size();
+    }
+
+    // New empty match set for a search, the caller makes it follow the document
+    // 用于搜索的新的空匹配集，调用者使其跟随文档
+    private void newMatches()
+    {
+        matches.dispose();
+        matches = new MatchSet();
+        matches.setListener(this::matchesEdited);
+        currentIndex = 0;
+    }
+
+    // An edit moved the matches without a new search, the current match keeps its number
+    // 编辑在没有新搜索的情况下移动了匹配项，当前匹配项保持其编号
+    private void matchesEdited(int index, int removed, int added)
+    {
+        if (currentIndex >= index + removed) currentIndex += added - removed;
+        else if (currentIndex > index) currentIndex = index;
+        currentIndex = Math.max(0, Math.min(currentIndex, matches.size() - 1));
+
+        // Literal matches are the same as a new search would find, the next query can still reuse them
+        // 字面匹配项与新搜索找到的相同，下一个查询仍然可以重用它们
+        Document doc = gui.textArea.getDocument();
+        if (resultQuery != null && doc instanceof PieceTableDocument)
+        {
+            resultModification = ((PieceTableDocument) doc).getModificationCount();
+        }
+        gui.matchHighlighter.matchesChanged();
+        counterLabel.setText(counterText());
+    }
+
+    // Replacement of the current regex match, group references are filled from the live document
+    // 替换当前的正则表达式匹配项，组引用从当前文档中填充
+    private String regexReplacement(PieceTableDocument doc, int start) throws BadLocationException
+    {
+        DocumentSnapshot snapshot = doc.snapshot(false);
+        try
+        {
+            DocumentCharSequence text = new DocumentCharSequence(snapshot);
+            text.setTimeout(RegexSearch.TIMEOUT_MILLIS);
+            Matcher matcher = pattern.matcher(text);
+            matcher.region(start, text.length());
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false);
+            if (!matcher.lookingAt() || matcher.end() != matches.getEnd(currentIndex))
+            {
+                throw new BadLocationException("The match was changed", start);
+            }
+            return RegexSearch.expand(matcher, replaceField.getText());
+        }
+        finally
+        {
+            snapshot.release();
+        }
+    }
+
+    // Restarting the wait for a pause in typing, the search of the old query is no longer needed
+    // 重新开始等待输入暂停，不再需要旧查询的搜索
+    private void scheduleLiveSearch()
+    {
+        cancelSearches();
+        liveTimer.restart();
+    }
+
+    // Search of the typed literal text, regular expressions are only searched on Enter
+    // (a half typed pattern is often invalid or slow)
+    //
+    // 搜索输入的字面文本，正则表达式只在按Enter时搜索
+    // （输入一半的模式通常无效或很慢）
+    private void startLiveSearch()
+    {
+        Document doc = gui.textArea.getDocument();
+        String word = searchField.getText();
+        if (regexBox.isSelected() || !(doc instanceof PieceTableDocument)) return;
+
+        PieceTableDocument document = (PieceTableDocument) doc;
+        boolean matchCase = matchCaseBox.isSelected();
+        boolean wholeWord = wholeWordBox.isSelected();
+
+        // Matches of the previous query are checked instead of the document when the query was extended
+        // 当查询被扩展时，检查前一个查询的匹配项而不是文档
+        int[] candidates = null;
+        if (resultQuery != null && resultModification == document.getModificationCount() &&
+            resultMatchCase == matchCase && !wholeWord && IncrementalSearch.extendsQuery(resultQuery, word, matchCase))
+        {
+            candidates = new int[matches.size()];
+            for (int i = 0; i < candidates.length; i++)
+            {
+                candidates[i] = matches.getStart(i);
+            }
+        }
+
+        String previous = resultQuery;
+        TextMatcher matcher = TextMatcher.of(word, matchCase, wholeWord);
+        newMatches();
+        matches.track(document, MatchSet.literal(matcher));
+        pattern = null;
+        resultQuery = null;
+        showMatches();
+        if (word.equals(""))
+        {
+            counterLabel.setText("0/0");
+            return;
+        }
+
+        counterLabel.setToolTipText(candidates == null ? "Searching the document" :
+            "Checking " + candidates.length + " matches of \"" + previous + "\"");
+        liveSearch = new IncrementalSearch(this, document, matcher, candidates, candidates == null ? 0 : candidates.length);
+        liveSearch.execute();
+        counterLabel.setText(counterText());
+    }
+
+    // Matches published by the search as you type, the first one is selected at once
+    // 边输入边搜索发布的匹配项，第一个立即被选中
+    void liveMatchesFound(IncrementalSearch search, List<int[]> batches)
+    {
+        if (search != liveSearch) return;
+        if (search.getSnapshot().isOutdated())
+        {
+            cancelSearches();
+            counterLabel.setText(counterText());
+            return;
+        }
+
+        boolean first = matches.size() == 0;
+        int wordLength = search.getText().length();
+        for (int[] batch : batches)
+        {
+            for (int start : batch)
+            {
+                matches.add(start, start + wordLength);
+            }
+        }
+        if (first && matches.size() > 0)
+        {
+            gui.textArea.setCaretPosition(matches.getStart(0));
+            gui.textArea.setSelectionStart(matches.getStart(0));
+            gui.textArea.setSelectionEnd(matches.getEnd(0));
+        }
+        gui.matchHighlighter.matchesChanged();
+        counterLabel.setText(counterText());
+    }
+
+    // End of the search as you type, its matches can be reused by the next query
+    // 边输入边搜索结束，其匹配项可以被下一个查询重用
+    void liveSearchFinished(IncrementalSearch search, Exception error)
+    {
+        if (search != liveSearch) return;
+        liveSearch = null;
+        matches.trim();
+        if (error != null)
+        {
+            error.printStackTrace();
+        }
+        else if (!wholeWordBox.isSelected())
+        {
+            resultQuery = search.getText();
+            resultMatchCase = matchCaseBox.isSelected();
+            resultModification = search.getSnapshot().getModificationCount();
+        }
+        counterLabel.setText(counterText());
     }
 
     // Switch to the next occurrence method
     // 切换到下一个出现的方法
     private void nextMatch()
     {
-        if (!indices.isEmpty())
+        if (hasShownMatches())
         {
             // Increase the current index and wrap it if it exceeds the size of the list
             // 增加当前索引并在超出列表大小时进行包装
-            currentIndex = (currentIndex + 1) % indices.size();
+            currentIndex = (currentIndex + 1) % matches.size();
     
             // Update the counterLabel
             // 更新counterLabel
-            counterLabel.setText((currentIndex + 1) + "/" + indices.size());
+            counterLabel.setText(counterText());
     
             // Set the cursor to the next occurrence
             // 将光标设置为下一个出现
-            gui.textArea.setCaretPosition(indices.get(currentIndex));
+            gui.textArea.setCaretPosition(matches.getStart(currentIndex));
     
             // Highlight the found word
             // 高亮显示找到的单词
-            gui.textArea.setSelectionStart(indices.get(currentIndex));
-            gui.textArea.setSelectionEnd(indices.get(currentIndex) + searchField.getText().length());
+            gui.textArea.setSelectionStart(matches.getStart(currentIndex));
+            gui.textArea.setSelectionEnd(matches.getEnd(currentIndex));
         }
     }
         
@@ -290,24 +653,24 @@ public class SearchFunction implements ActionListener, KeyListener
     // 切换到上一个出现的方法
     private void prevMatch()
     {
-        if (!indices.isEmpty())
+        if (hasShownMatches())
         {
             // Decrease the current index and wrap it if it is less than 0
             // 减少当前索引并在小于0时进行包装
-            currentIndex = (currentIndex - 1 + indices.size()) % indices.size();
+            currentIndex = (currentIndex - 1 + matches.size()) % matches.size();
 
             // Update the counterLabel    
             // 更新counterLabel
-            counterLabel.setText((currentIndex + 1) + "/" + indices.size());
+            counterLabel.setText(counterText());
     
             // Set the cursor to the previous occurrence
             // 将光标设置为上一个出现
-            gui.textArea.setCaretPosition(indices.get(currentIndex));
+            gui.textArea.setCaretPosition(matches.getStart(currentIndex));
     
             // Highlight the found word
             // 高亮显示找到的单词
-            gui.textArea.setSelectionStart(indices.get(currentIndex));
-            gui.textArea.setSelectionEnd(indices.get(currentIndex) + searchField.getText().length());
+            gui.textArea.setSelectionStart(matches.getStart(currentIndex));
+            gui.textArea.setSelectionEnd(matches.getEnd(currentIndex));
         }
     }
 
@@ -316,60 +679,209 @@ public class SearchFunction implements ActionListener, KeyListener
     // 替换所选文本的方法
     public void replaceText()
     {
-        // Check if there are any matches
-        // 检查是否有任何匹配项
-        if (indices != null)
+        // Check if there are any matches in the shown document
+        // 检查显示的文档中是否有任何匹配项
+        if (hasShownMatches())
         {
-            // Check if the search field and replace field are not empty
-            // 检查搜索字段和替换字段是否不为空
-            if (!indices.isEmpty()) 
+            try 
             {
-                try 
-                {
-                    // Get the text to replace with
-                    // 获取要替换的文本
-                    String replacement = replaceField.getText();
-
-                    // Get the document
-                    // 获取文档
-                    Document doc = gui.textArea.getDocument();
-
-                    // Get the start and end indices of the selected text
-                    // 获取所选文本的开始和结束索引
-                    int start = indices.get(currentIndex);
-                    int end = start + searchField.getText().length();
-
-                    // Replace the text
-                    // 替换文本
-                    doc.remove(start, end - start);
-                    doc.insertString(start, replacement, null);
-
-                    // Update the list of indices since the text has changed
-                    // 所以我们需要重新搜索
-                    performSearch();
-                } 
-                catch (BadLocationException e) 
+                // Get the document
+                // 获取文档
+                Document doc = gui.textArea.getDocument();
+
+                // Get the start and end indices of the selected text
+                // 获取所选文本的开始和结束索引
+                int start = matches.getStart(currentIndex);
+                int end = matches.getEnd(currentIndex);
+
+                // Get the text to replace with, a regex replacement can refer to groups ($1, ${name})
+                // 获取要替换的文本，正则表达式替换可以引用组（$1、${name}）
+                String replacement = pattern != null && doc instanceof PieceTableDocument
+                    ? regexReplacement((PieceTableDocument) doc, start) : replaceField.getText();
+
+                // Replace the text
+                // 替换文本
+                doc.remove(start, end - start);
+                doc.insertString(start, replacement, null);
+
+                // The match set followed both edits, the next match is the first one after the replacement
+                // 匹配集跟随了两次编辑，下一个匹配项是替换之后的第一个
+                currentIndex = matches.firstStartingAt(start + replacement.length());
+                if (currentIndex == matches.size()) currentIndex = 0;
+                counterLabel.setText(counterText());
+                if (matches.size() > 0)
                 {
-                    e.printStackTrace();
+                    gui.textArea.setCaretPosition(matches.getStart(currentIndex));
+                    gui.textArea.setSelectionStart(matches.getStart(currentIndex));
+                    gui.textArea.setSelectionEnd(matches.getEnd(currentIndex));
                 }
+            } 
+            catch (BadLocationException e) 
+            {
+                e.printStackTrace();
             }
-
-            // If there are no text to replace, show a popup message
-            // 如果没有文本可以替换，则显示弹出消息
-            else
+            catch (CancellationException e)
+            {
+                gui.currentPopup = new PopupMessage(gui, "The regular expression took too long");
+                gui.currentPopup.setVisible(true);
+            }
+            catch (IllegalArgumentException | IndexOutOfBoundsException e)
             {
-                gui.currentPopup = new PopupMessage(gui, "There's no text to replace");
+                gui.currentPopup = new PopupMessage(gui, "Invalid replacement: " + e.getMessage());
                 gui.currentPopup.setVisible(true);
             }
         }
 
+        // If there are no text to replace, show a popup message
+        // 如果没有文本可以替换，则显示弹出消息
         else
         {
-            gui.currentPopup = new PopupMessage(gui, "There's no text to replace or no text to enter replaced text");
+            gui.currentPopup = new PopupMessage(gui, "There's no text to replace");
             gui.currentPopup.setVisible(true);
         }
     }
 
+    // Replacing all matches in one pass, one undo brings them all back
+    // 一次替换所有匹配项，一次撤销即可全部还原
+    public void replaceAll()
+    {
+        Document doc = gui.textArea.getDocument();
+        String word = searchField.getText();
+        if (word.equals("") || !(doc instanceof PieceTableDocument))
+        {
+            gui.currentPopup = new PopupMessage(gui, "You did'nt enter anything to search!");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
+        PieceTableDocument document = (PieceTableDocument) doc;
+        cancelSearches();
+
+        try
+        {
+            // Matches are found once, before the document is changed
+            // 在文档更改之前一次找到所有匹配项
+            int[] starts = new int[16];
+            int[] matchEnds = new int[16];
+            String[] replacements = new String[16];
+            int count = 0;
+            if (regexBox.isSelected())
+            {
+                Pattern regex = RegexSearch.compile(word, matchCaseBox.isSelected(), wholeWordBox.isSelected());
+                DocumentSnapshot snapshot = document.snapshot(false);
+                try
+                {
+                    DocumentCharSequence text = new DocumentCharSequence(snapshot);
+                    Matcher matcher = regex.matcher(text);
+                    text.setTimeout(RegexSearch.TIMEOUT_MILLIS);
+                    while (matcher.find())
+                    {
+                        if (count == starts.length)
+                        {
+                            starts = Arrays.copyOf(starts, count * 2);
+                            matchEnds = Arrays.copyOf(matchEnds, count * 2);
+                            replacements = Arrays.copyOf(replacements, count * 2);
+                        }
+                        starts[count] = matcher.start();
+                        matchEnds[count] = matcher.end();
+                        replacements[count++] = RegexSearch.expand(matcher, replaceField.getText());
+                        text.setTimeout(RegexSearch.TIMEOUT_MILLIS);
+                    }
+                }
+                finally
+                {
+                    snapshot.release();
+                }
+            }
+            else
+            {
+                MatchSet found = new MatchSet();
+                document.getSearchIndex().findAll(
+                    TextMatcher.of(word, matchCaseBox.isSelected(), wholeWordBox.isSelected()), found);
+                count = found.size();
+                starts = new int[count];
+                matchEnds = new int[count];
+                replacements = new String[count];
+                for (int i = 0; i < count; i++)
+                {
+                    starts[i] = found.getStart(i);
+                    matchEnds[i] = found.getEnd(i);
+                    replacements[i] = replaceField.getText();
+                }
+            }
+
+            newMatches();
+            showMatches();
+            counterLabel.setText("0/0");
+            if (count == 0)
+            {
+                gui.currentPopup = new PopupMessage(gui, "No matches found!");
+                gui.currentPopup.setVisible(true);
+                return;
+            }
+
+            document.replaceAll(starts, matchEnds, replacements, count);
+            gui.currentPopup = new PopupMessage(gui, "Replaced " + count + (count == 1 ? " occurrence" : " occurrences"));
+            gui.currentPopup.setVisible(true);
+        }
+        catch (BadLocationException e)
+        {
+            e.printStackTrace();
+        }
+        catch (PatternSyntaxException e)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Invalid regular expression: " + e.getDescription());
+            gui.currentPopup.setVisible(true);
+        }
+        catch (CancellationException e)
+        {
+            gui.currentPopup = new PopupMessage(gui, "The regular expression took too long");
+            gui.currentPopup.setVisible(true);
+        }
+        catch (IllegalArgumentException | IndexOutOfBoundsException e)
+        {
+            gui.currentPopup = new PopupMessage(gui, "Invalid replacement: " + e.getMessage());
+            gui.currentPopup.setVisible(true);
+        }
+    }
+
+    // Closing the dialog, its searches and highlighted matches go away with it
+    // 关闭对话框，其搜索和高亮的匹配项随之消失
+    private void closeDialog()
+    {
+        isActive = false;
+        gui.searchFunction = null;
+        cancelSearches();
+        matches.dispose();
+        gui.matchHighlighter.setMatches(null);
+        findReplaceDialog.dispose();
+    }
+
+    // Another document is shown (a tab switch, a loaded file), the matches and searches of the old one are dropped
+    // 显示了另一个文档（切换标签页、加载的文件），旧文档的匹配项和搜索被丢弃
+    void documentShown()
+    {
+        cancelSearches();
+        newMatches();
+        pattern = null;
+        resultQuery = null;
+        showMatches();
+        counterLabel.setText("0/0");
+    }
+
+    // Matches can be selected or replaced only in the document they were found in
+    // 只能在找到匹配项的文档中选择或替换它们
+    private boolean hasShownMatches()
+    {
+        return matches.size() > 0 && matches.getDocument() == gui.textArea.getDocument();
+    }
+
+    // Matches are painted by the highlighter of the text area
+    // 匹配项由文本区的高亮器绘制
+    private void showMatches()
+    {
+        gui.matchHighlighter.setMatches(matches);
+    }
+
     // Action listener method
     // 操作侦听器方法
     @Override
@@ -378,9 +890,7 @@ public class SearchFunction implements ActionListener, KeyListener
         switch (e.getActionCommand())
         {
             case "Close":
-                findReplaceDialog.dispose();
-                isActive = false;
-                break;
+                closeDialog(); break;
             case "Search":
                 performSearch(); break;
             case "Next":
@@ -389,6 +899,8 @@ public class SearchFunction implements ActionListener, KeyListener
                 prevMatch(); break;
             case "Replace":
                 replaceText(); break;
+            case "Replace All":
+                replaceAll(); break;
         }
     }
 
@@ -401,13 +913,11 @@ public class SearchFunction implements ActionListener, KeyListener
         // Two cases for closing the window
         if (e.getSource() == gui.textArea && e.getKeyCode() == KeyEvent.VK_ESCAPE)
         {
-            isActive = false;
-            findReplaceDialog.dispose();  
+            closeDialog();
         }
         else if (e.getSource() == replaceField && e.getKeyCode() == KeyEvent.VK_ESCAPE)
         {
-            isActive = false;
-            findReplaceDialog.dispose();
+            closeDialog();
         }
             
         
@@ -418,8 +928,7 @@ public class SearchFunction implements ActionListener, KeyListener
             switch (e.getKeyCode())
             {
                 case KeyEvent.VK_ESCAPE:
-                    isActive = false;
-                    findReplaceDialog.dispose(); break;
+                    closeDialog(); break;
                 case KeyEvent.VK_ENTER:
                     performSearch(); break;
             }
@@ -0,0 +1,381 @@
+package com.guangnotepad;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+
+/*
+ * Trigram index of a document for finding text without reading all of it.
+ * The document is split into blocks, every block has a fixed size bit set of the trigrams
+ * (three characters, case folded) that start in it. A block can contain a match only if
+ * All trigrams of the searched text are in it or in the blocks the match can reach,
+ * So only these candidate blocks are read and compared with the searched text.
+ * Document events only change block lengths and mark the changed blocks, their bit sets are
+ * Built again by the next search, so typing costs nothing and a search after an edit reads one block.
+ * Memory of the index is bounded: when a document grows, its blocks get bigger instead of more numerous.
+ *
+ * 文档的三元组索引，用于在不读取全部内容的情况下查找文本。
+ * 文档被分成块，每个块都有一个固定大小的位集，包含从该块开始的三元组
+ * （三个字符，大小写折叠）。只有当搜索文本的所有三元组都在该块中
+ * 或在匹配可以到达的块中时，该块才可能包含匹配项，
+ * 因此只读取这些候选块并与搜索文本进行比较。
+ * 文档事件只更改块长度并标记更改的块，它们的位集由下一次搜索重新构建，
+ * 因此输入没有任何开销，编辑后的搜索只读取一个块。
+ * 索引的内存是有界的：当文档增长时，它的块变大而不是变多。
+ */
+
+
+// Search index class
+// 搜索索引类
+
+public class SearchIndex implements DocumentListener
+{
+    // Smallest block and the memory the index may take
+    // 最小的块和索引可以占用的内存
+    static final int MIN_BLOCK = 16 << 10;
+    static final long MAX_BYTES = 16L << 20;
+
+    // Bits of the trigram set of one block (2^13)
+    // 一个块的三元组集合的位数（2^13）
+    private static final int HASH_BITS = 13;
+    private static final int WORDS = (1 << HASH_BITS) / 64;
+
+    // Bytes of one block: the bit set, its array header and the block length
+    // 一个块的字节数：位集、其数组头和块长度
+    private static final int BLOCK_BYTES = WORDS * 8 + 16 + 8 + 4;
+
+    private final Document document;
+    private final int minBlock;
+    private final long maxBytes;
+    private final Segment segment = new Segment();
+
+    // Block lengths and trigram sets (null set means the block was changed and is built by the next search)
+    // 块长度和三元组集合（null集合表示块已更改，由下一次搜索构建）
+    private int blockSize;
+    private int count;
+    private int[] lengths = new int[0];
+    private long[][] sets = new long[0][];
+
+    // Constructor, the index follows the document from now on
+    // 构造函数，索引从现在开始跟随文档
+    public SearchIndex(Document document)
+    {
+        this(document, MIN_BLOCK, MAX_BYTES);
+    }
+
+    SearchIndex(Document document, int minBlock, long maxBytes)
+    {
+        this.document = document;
+        this.minBlock = minBlock;
+        this.maxBytes = maxBytes;
+        reset();
+        document.addDocumentListener(this);
+    }
+
+    // The index no longer follows the document
+    // 索引不再跟随文档
+    public void dispose()
+    {
+        document.removeDocumentListener(this);
+    }
+
+    public int getBlockCount()
+    {
+        return count;
+    }
+
+    // Memory taken by the index in bytes
+    // 索引占用的内存（字节）
+    public long getMemoryBytes()
+    {
+        long bytes = 64 + 16L * lengths.length;
+        for (int i = 0; i < count; i++)
+        {
+            if (sets[i] != null) bytes += WORDS * 8 + 16;
+        }
+        return bytes;
+    }
+
+    // Splitting the document into blocks again, big enough to keep the index in its memory
+    // 重新将文档分成块，块足够大以使索引保持在其内存中
+    private void reset()
+    {
+        int length = document.getLength();
+        long maxBlocks = Math.max(1, maxBytes / BLOCK_BYTES);
+        blockSize = (int) Math.max(minBlock, (length + maxBlocks - 1) / maxBlocks);
+
+        count = Math.max(1, (length + blockSize - 1) / blockSize);
+        lengths = new int[count];
+        sets = new long[count][];
+        for (int i = 0; i < count; i++)
+        {
+            lengths[i] = Math.min(blockSize, length - i * blockSize);
+        }
+        if (length == 0) lengths[0] = 0;
+    }
+
+    // Finding all occurrences of the text, case-sensitive
+    // 查找文本的所有出现，区分大小写
+    public List<Integer> findAll(String word) throws BadLocationException
+    {
+        return findAll(TextMatcher.of(word, true, false));
+    }
+
+    // Finding all matches (they don't overlap), only candidate blocks are read
+    // 查找所有匹配项（它们不重叠），只读取候选块
+    public List<Integer> findAll(TextMatcher matcher) throws BadLocationException
+    {
+        MatchSet matches = new MatchSet();
+        findAll(matcher, matches);
+        List<Integer> found = new ArrayList<>(matches.size());
+        for (int i = 0; i < matches.size(); i++)
+        {
+            found.add(matches.getStart(i));
+        }
+        return found;
+    }
+
+    // Adding all matches to the match set, 8 bytes per match instead of a boxed list
+    // 将所有匹配项添加到匹配集中，每个匹配项8字节，而不是装箱的列表
+    public void findAll(TextMatcher matcher, MatchSet found) throws BadLocationException
+    {
+        int wordLength = matcher.getText().length();
+        if (wordLength == 0) return;
+        update();
+
+        int[] hashes = hashes(matcher.getText());
+        int start = 0;
+        int next = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (lengths[i] > 0 && isCandidate(i, start, wordLength, hashes))
+            {
+                next = scan(start, lengths[i], Math.max(start, next), matcher, found);
+            }
+            start += lengths[i];
+        }
+        found.trim();
+    }
+
+    // Matching the region, matches must start in it but can end after it.
+    // One more char on both sides is read as the context of the matcher.
+    // Returns the offset where the next match may start.
+    //
+    // 匹配区域，匹配项必须在其中开始，但可以在其之后结束。
+    // 两侧各多读取一个字符作为匹配器的上下文。
+    // 返回下一个匹配可以开始的偏移量。
+    private int scan(int start, int length, int from, TextMatcher matcher, MatchSet found)
+        throws BadLocationException
+    {
+        int wordLength = matcher.getText().length();
+        int regionStart = Math.max(0, start - 1);
+        int regionEnd = Math.min(document.getLength(), start + length + wordLength);
+        document.getText(regionStart, regionEnd - regionStart, segment);
+
+        char[] text = segment.array;
+        int base = segment.offset - regionStart;
+        int end = segment.offset + segment.count;
+        int limit = base + start + length;
+        int i = base + from;
+        while (i < limit)
+        {
+            int match = matcher.find(text, segment.offset, end, i, limit);
+            if (match < 0) break;
+            found.add(match - base, match - base + wordLength);
+            i = match + wordLength;
+        }
+        return Math.max(from, i - base);
+    }
+
+    // A match starting in the block has its trigrams in the block and in the blocks it reaches
+    // 从块开始的匹配，其三元组在该块及其到达的块中
+    private boolean isCandidate(int block, int start, int wordLength, int[] hashes)
+    {
+        int reach = start + lengths[block] + wordLength - 3;
+        for (int hash : hashes)
+        {
+            boolean present = false;
+            int blockStart = start;
+            for (int i = block; i < count && blockStart <= reach && !present; i++)
+            {
+                present = (sets[i][hash >>> 6] & 1L << hash) != 0;
+                blockStart += lengths[i];
+            }
+            if (!present) return false;
+        }
+        return true;
+    }
+
+    // Distinct trigram hashes of the folded searched text (none for text shorter than three characters)
+    // 折叠后的搜索文本的不同三元组哈希（短于三个字符的文本没有）
+    private static int[] hashes(String word)
+    {
+        char[] folded = TextMatcher.fold(word);
+        int[] hashes = new int[Math.max(0, folded.length - 2)];
+        for (int i = 0; i < hashes.length; i++)
+        {
+            hashes[i] = hash(folded[i], folded[i + 1], folded[i + 2]);
+        }
+        Arrays.sort(hashes);
+
+        int distinct = 0;
+        for (int i = 0; i < hashes.length; i++)
+        {
+            if (distinct == 0 || hashes[distinct - 1] != hashes[i]) hashes[distinct++] = hashes[i];
+        }
+        return Arrays.copyOf(hashes, distinct);
+    }
+
+    private static int hash(char a, char b, char c)
+    {
+        return ((a << 16 ^ b << 8 ^ c ^ b >>> 8 << 24) * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    // Building the sets of changed blocks, a document that outgrew the index is split again
+    // 构建已更改块的集合，超出索引的文档被重新拆分
+    private void update() throws BadLocationException
+    {
+        if ((long) count * BLOCK_BYTES > maxBytes && count > 1) reset();
+
+        int start = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (sets[i] == null) sets[i] = build(start, lengths[i]);
+            start += lengths[i];
+        }
+    }
+
+    // Trigrams starting in the block, chars are folded with one more char on both sides as context
+    // 从块开始的三元组，字符在两侧各多一个字符作为上下文的情况下折叠
+    private long[] build(int start, int length) throws BadLocationException
+    {
+        long[] set = new long[WORDS];
+        int regionStart = Math.max(0, start - 1);
+        int regionEnd = Math.min(document.getLength(), start + length + 3);
+        if (regionEnd - start < 3) return set;
+
+        document.getText(regionStart, regionEnd - regionStart, segment);
+        char[] text = segment.array;
+        int first = segment.offset;
+        int end = segment.offset + segment.count;
+        int i = first + start - regionStart;
+        int last = Math.min(i + length, end - 2);
+
+        char a = TextMatcher.foldAt(text, i, first, end);
+        char b = TextMatcher.foldAt(text, i + 1, first, end);
+        for (; i < last; i++)
+        {
+            char c = TextMatcher.foldAt(text, i + 2, first, end);
+            int hash = hash(a, b, c);
+            set[hash >>> 6] |= 1L << hash;
+            a = b;
+            b = c;
+        }
+        return set;
+    }
+
+    // Block that contains the offset (the last block for the end of the document)
+    // 包含偏移量的块（文档末尾为最后一个块）
+    private int blockAt(int offset, int[] blockStart)
+    {
+        int start = 0;
+        for (int i = 0; i < count - 1; i++)
+        {
+            if (offset < start + lengths[i])
+            {
+                blockStart[0] = start;
+                return i;
+            }
+            start += lengths[i];
+        }
+        blockStart[0] = start;
+        return count - 1;
+    }
+
+    // Trigrams of the previous block reach two characters into the block
+    // 前一个块的三元组延伸到该块中的两个字符
+    private void changed(int block, int inBlock)
+    {
+        sets[block] = null;
+        if (inBlock < 2 && block > 0) sets[block - 1] = null;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        int[] blockStart = new int[1];
+        int block = blockAt(e.getOffset(), blockStart);
+        changed(block, e.getOffset() - blockStart[0]);
+        lengths[block] += e.getLength();
+
+        // Block that grew too big is split into blocks of the normal size
+        // 过大的块被拆分为正常大小的块
+        if (lengths[block] > 2 * blockSize)
+        {
+            int total = lengths[block];
+            int parts = (total + blockSize - 1) / blockSize;
+            insertBlocks(block, parts - 1);
+            for (int i = 0; i < parts; i++)
+            {
+                lengths[block + i] = Math.min(blockSize, total - i * blockSize);
+                sets[block + i] = null;
+            }
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        int[] blockStart = new int[1];
+        int block = blockAt(e.getOffset(), blockStart);
+        int inBlock = e.getOffset() - blockStart[0];
+        changed(block, inBlock);
+
+        // Removed text can span several blocks, blocks that become empty are removed
+        // 删除的文本可以跨越多个块，变空的块被删除
+        int remaining = e.getLength();
+        while (remaining > 0 && block < count)
+        {
+            int removed = Math.min(lengths[block] - inBlock, remaining);
+            lengths[block] -= removed;
+            sets[block] = null;
+            remaining -= removed;
+            if (lengths[block] == 0 && count > 1) removeBlock(block);
+            else block++;
+            inBlock = 0;
+        }
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        // Attributes are not indexed
+        // 属性不被索引
+    }
+
+    private void insertBlocks(int index, int added)
+    {
+        if (count + added > lengths.length)
+        {
+            int capacity = Math.max(count + added, lengths.length * 2);
+            lengths = Arrays.copyOf(lengths, capacity);
+            sets = Arrays.copyOf(sets, capacity);
+        }
+        System.arraycopy(lengths, index + 1, lengths, index + 1 + added, count - index - 1);
+        System.arraycopy(sets, index + 1, sets, index + 1 + added, count - index - 1);
+        count += added;
+    }
+
+    private void removeBlock(int index)
+    {
+        System.arraycopy(lengths, index + 1, lengths, index, count - index - 1);
+        System.arraycopy(sets, index + 1, sets, index, count - index - 1);
+        count--;
+        sets[count] = null;
+    }
+}
@@ -0,0 +1,122 @@
+package com.guangnotepad;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Tabs that were open when the editor was closed.
+ * Only the file, its encoding (with the size and time of the file it was known for) and the caret
+ * Of every tab are kept, the text is not,
+ * So tabs restored from a session cost nothing until they are shown.
+ * The session is a small text file in ~/.guangnotepad, one line per tab.
+ *
+ * 编辑器关闭时打开的标签页。
+ * 只保存每个标签页的文件、编码（以及已知该编码时文件的大小和时间）和光标位置，不保存文本，
+ * 因此从会话恢复的标签页在显示之前没有任何开销。
+ * 会话是~/.guangnotepad中的一个小文本文件，每个标签页一行。
+ */
+
+
+// Session class
+// 会话类
+
+public class Session
+{
+    static final File FILE = new File(EditJournal.DIRECTORY.getParentFile(), "session");
+
+    private static final String HEADER = "GuangNotepad session 2";
+    private static final String OLD_HEADER = "GuangNotepad session 1";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Tab of the session
+    // 会话的标签页
+    static class Tab
+    {
+        final File file;
+        final String encoding;
+        final long size;
+        final long modified;
+        final int caret;
+
+        // Size is -1 when it's not known for which version of the file the encoding is
+        // 当不知道编码对应文件的哪个版本时，大小为-1
+        Tab(File file, String encoding, long size, long modified, int caret)
+        {
+            this.file = file;
+            this.encoding = encoding;
+            this.size = size;
+            this.modified = modified;
+            this.caret = caret;
+        }
+    }
+
+    final List<Tab> tabs = new ArrayList<>();
+    int active;
+
+    // Reading a session, a missing or broken file is an empty session
+    // 读取会话，缺失或损坏的文件是空会话
+    static Session read(File file)
+    {
+        Session session = new Session();
+        if (!file.isFile()) return session;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8)))
+        {
+            // Sessions of the first version have no size and time of the files
+            // 第一个版本的会话没有文件的大小和时间
+            String header = reader.readLine();
+            boolean old = OLD_HEADER.equals(header);
+            if (!old && !HEADER.equals(header)) return session;
+
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                // active <index>  |  tab <caret> <size> <modified> <encoding> <path>
+                String[] fields = line.split("\t", old ? 4 : 6);
+                if (fields.length == 2 && fields[0].equals("active"))
+                {
+                    session.active = Integer.parseInt(fields[1]);
+                }
+                else if (old && fields.length == 4 && fields[0].equals("tab"))
+                {
+                    session.tabs.add(new Tab(new File(fields[3]), fields[2], -1, 0, Integer.parseInt(fields[1])));
+                }
+                else if (fields.length == 6 && fields[0].equals("tab"))
+                {
+                    session.tabs.add(new Tab(new File(fields[5]), fields[4], Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), Integer.parseInt(fields[1])));
+                }
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            e.printStackTrace();
+            session.tabs.clear();
+        }
+        session.active = Math.max(0, Math.min(session.active, session.tabs.size() - 1));
+        return session;
+    }
+
+    // Writing the session next to the old one and replacing it, so a crash never leaves half a session
+    // 在旧会话旁边写入会话并替换它，因此崩溃永远不会留下半个会话
+    void write(File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporary), UTF8)))
+        {
+            writer.write(HEADER + "\n");
+            writer.write("active\t" + active + "\n");
+            for (Tab tab : tabs)
+            {
+                writer.write("tab\t" + tab.caret + "\t" + tab.size + "\t" + tab.modified + "\t" + tab.encoding + "\t" +
+                    tab.file.getAbsolutePath() + "\n");
+            }
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,78 @@
+package com.guangnotepad;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.CaretEvent;
+import javax.swing.event.CaretListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/*
+ * Line under the text area with the caret position, the size of the document, the encoding and
+ * Whether the file was modified. The size comes from the editor state of the selected tab, which
+ * Is updated at most once a frame, caret moves are also gathered into one refresh.
+ *
+ * 文本区下方的一行，显示光标位置、文档大小、编码以及文件是否已修改。
+ * 大小来自所选标签页的编辑器状态，它每帧最多更新一次，光标移动也被合并为一次刷新。
+ */
+
+
+// Status bar class
+// 状态栏类
+
+public class StatusBar extends JLabel implements CaretListener
+{
+    private final GUI gui;
+    private boolean refreshPending;
+
+    // Constructor
+    // 构造函数
+    public StatusBar(GUI gui)
+    {
+        super(" ");
+        this.gui = gui;
+        setBorder(BorderFactory.createEmptyBorder(2, 8, 2, 8));
+        gui.textArea.addCaretListener(this);
+    }
+
+    // Many caret moves in one event (typing, a paste) give one refresh
+    // 一个事件中的多次光标移动（输入、粘贴）只进行一次刷新
+    @Override
+    public void caretUpdate(CaretEvent e)
+    {
+        if (refreshPending) return;
+        refreshPending = true;
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    // Showing the state of the selected tab
+    // 显示所选标签页的状态
+    void refresh()
+    {
+        refreshPending = false;
+        FileFunction tab = gui.fileFunction;
+        if (tab == null) return;
+
+        EditorState state = tab.getState();
+        StringBuilder text = new StringBuilder();
+        if (gui.viewer == null)
+        {
+            // Line of the caret is found in the line elements of the shown document
+            // 在显示文档的行元素中查找光标所在的行
+            Document document = gui.textArea.getDocument();
+            int dot = Math.min(gui.textArea.getCaretPosition(), document.getLength());
+            Element root = document.getDefaultRootElement();
+            int line = root.getElementIndex(dot);
+            text.append("Ln ").append(line + 1).append(", Col ").append(dot - root.getElement(line).getStartOffset() + 1);
+            text.append("    ").append(state.getLineCount()).append(" lines, ").append(state.getLength()).append(" chars");
+        }
+        else
+        {
+            text.append("Read only");
+        }
+        text.append("    ").append(tab.getEncoding());
+        if (state.isModified()) text.append("    Modified");
+        setText(text.toString());
+    }
+}
@@ -0,0 +1,208 @@
+package com.guangnotepad;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/*
+ * Bulk text decoder used when loading files.
+ * Whole byte blocks are decoded with one reused CharsetDecoder into a reused CharBuffer,
+ * No String is created per line. Line separators (\r\n, \r) are converted to \n
+ * And recorded in LineEndings, so the file can be written back unchanged.
+ *
+ * 加载文件时使用的批量文本解码器。
+ * 整个字节块使用一个重用的CharsetDecoder解码到重用的CharBuffer中，
+ * 不会为每行创建String。行分隔符（\r\n，\r）被转换为\n
+ * 并记录在LineEndings中，因此文件可以原样写回。
+ */
+
+
+// Text decoder class
+// 文本解码器类
+
+public class TextDecoder
+{
+    // Receiver of decoded characters
+    // 解码字符的接收者
+    public interface Sink
+    {
+        void append(char[] chars, int offset, int count) throws IOException;
+    }
+
+    private final CharsetDecoder decoder;
+    private final byte[] byteArray;
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+    private final LineEndings lineEndings;
+
+    // Offset of the next character in the document and a \r waiting for its \n
+    // 文档中下一个字符的偏移量和等待\n的\r
+    private int offset;
+    private int pendingCR = -1;
+    private boolean finished;
+
+    // A \r ended the text that this text continues, a \n at the start makes them one \r\n
+    // 此文本所延续的文本以\r结尾，开头的\n使它们成为一个\r\n
+    private boolean joinCR;
+
+    // Constructor, block size is the largest number of bytes decoded at once
+    // 构造函数，块大小是一次解码的最大字节数
+    public TextDecoder(Charset charset, int blockSize)
+    {
+        this(charset, blockSize, new LineEndings());
+    }
+
+    // Constructor for text that continues other text, separators are recorded into lineEndings
+    // 用于延续其他文本的文本的构造函数，分隔符记录到lineEndings中
+    public TextDecoder(Charset charset, int blockSize, LineEndings lineEndings)
+    {
+        this.lineEndings = lineEndings;
+        decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byteArray = new byte[blockSize];
+        bytes = ByteBuffer.wrap(byteArray);
+        ((Buffer) bytes).limit(0);
+        chars = CharBuffer.allocate((int) Math.ceil(blockSize * (double) decoder.maxCharsPerByte()) + 16);
+    }
+
+    public LineEndings getLineEndings()
+    {
+        return lineEndings;
+    }
+
+    // Text continues after a lone \r (the loaded end of a growing file)
+    // 文本在单独的\r之后继续（增长文件已加载的末尾）
+    public void continueAfterCR()
+    {
+        joinCR = true;
+    }
+
+    // Decoding the next block of at most maxBytes bytes, returns false at the end of the stream
+    // 解码下一个最多maxBytes字节的块，在流结束时返回false
+    public boolean decodeBlock(InputStream in, int maxBytes, Sink sink) throws IOException
+    {
+        return decode(in, maxBytes, sink, false);
+    }
+
+    // Decoding everything the stream has now, for a file that keeps growing:
+    // The end of the stream is not the end of the text, an unfinished character waits for the next call
+    //
+    // 解码流现在拥有的所有内容，用于不断增长的文件：
+    // 流的结束不是文本的结束，未完成的字符等待下一次调用
+    public void decodeAvailable(InputStream in, Sink sink) throws IOException
+    {
+        while (decode(in, byteArray.length, sink, true))
+        {
+            // Blocks are passed to the sink one by one
+            // 块逐个传递给接收者
+        }
+    }
+
+    // Offset of the next decoded character
+    // 下一个解码字符的偏移量
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    private boolean decode(InputStream in, int maxBytes, Sink sink, boolean growing) throws IOException
+    {
+        if (finished) return false;
+
+        // Bytes left from the previous block (an unfinished character) are moved to the front
+        // 上一个块剩余的字节（未完成的字符）被移到前面
+        bytes.compact();
+        int space = Math.min(maxBytes, bytes.remaining());
+        int n = in.read(byteArray, bytes.position(), Math.max(1, space));
+        if (n > 0)
+        {
+            ((Buffer) bytes).position(bytes.position() + n);
+        }
+        ((Buffer) bytes).flip();
+
+        if (n < 0 && growing) return false;
+
+        boolean endOfInput = n < 0;
+        decoder.decode(bytes, chars, endOfInput);
+        if (endOfInput)
+        {
+            decoder.flush(chars);
+            finished = true;
+        }
+
+        ((Buffer) chars).flip();
+        int count = normalize(chars.array(), chars.limit(), endOfInput);
+        sink.append(chars.array(), 0, count);
+        ((Buffer) chars).clear();
+        return !finished;
+    }
+
+    // Decoding the whole stream
+    // 解码整个流
+    public void decodeAll(InputStream in, Sink sink) throws IOException
+    {
+        while (decodeBlock(in, byteArray.length, sink))
+        {
+            // Blocks are passed to the sink one by one
+            // 块逐个传递给接收者
+        }
+    }
+
+    // Converting separators to \n in place and recording them, returns the new length
+    // 就地将分隔符转换为\n并记录它们，返回新长度
+    private int normalize(char[] array, int length, boolean endOfInput)
+    {
+        int out = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = array[i];
+            if (joinCR)
+            {
+                joinCR = false;
+                if (c == '\n')
+                {
+                    lineEndings.joinCR();
+                    continue;
+                }
+            }
+            if (pendingCR >= 0)
+            {
+                int crOffset = pendingCR;
+                pendingCR = -1;
+                if (c == '\n')
+                {
+                    lineEndings.record(crOffset, LineEndings.CRLF);
+                    continue;
+                }
+                lineEndings.record(crOffset, LineEndings.CR);
+            }
+
+            if (c == '\r')
+            {
+                pendingCR = offset;
+                c = '\n';
+            }
+            else if (c == '\n')
+            {
+                lineEndings.record(offset, LineEndings.LF);
+            }
+            array[out++] = c;
+            offset++;
+        }
+
+        // A \r at the very end of the file is a separator on its own
+        // 文件末尾的\r是一个单独的分隔符
+        if (endOfInput && pendingCR >= 0)
+        {
+            lineEndings.record(pendingCR, LineEndings.CR);
+            pendingCR = -1;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,81 @@
+package com.guangnotepad;
+
+/*
+ * Matching of the searched text in chunks of the document (arrays of a Segment).
+ * A matcher finds the first match that starts in a range of the chunk, the rest of the chunk
+ * Is only read as context (the character before and after a whole word, the other half of a surrogate pair).
+ * Matches have the length of the searched text: case is folded by code points
+ * And simple case mapping never changes the number of chars of a code point.
+ *
+ * 在文档块（Segment的数组）中匹配搜索文本。
+ * 匹配器查找在块的某个范围内开始的第一个匹配，块的其余部分只作为上下文读取
+ * （整词前后的字符，代理对的另一半）。
+ * 匹配项的长度与搜索文本相同：大小写按码点折叠，简单大小写映射永远不会改变码点的char数。
+ */
+
+
+// Text matcher interface
+// 文本匹配器接口
+
+public interface TextMatcher
+{
+    // Searched text, every match is equal to it (ignoring case if the case doesn't matter)
+    // 搜索文本，每个匹配项都等于它（如果大小写无关紧要，则忽略大小写）
+    String getText();
+
+    // Start of the first match that starts in [from, limit), chars of [start, end) can be read; -1 if there is none
+    // 在[from, limit)中开始的第一个匹配的开始位置，可以读取[start, end)的字符；如果没有则为-1
+    int find(char[] text, int start, int end, int from, int limit);
+
+    // Matcher for the options of the find dialog
+    // 用于查找对话框选项的匹配器
+    static TextMatcher of(String text, boolean matchCase, boolean wholeWord)
+    {
+        TextMatcher matcher = new HorspoolMatcher(text, matchCase);
+        return wholeWord ? new WholeWordMatcher(matcher) : matcher;
+    }
+
+    // Case folding: characters that are equal ignoring case fold to the same character
+    // 大小写折叠：忽略大小写相等的字符折叠为同一字符
+    static int fold(int codePoint)
+    {
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+
+    // Folded char at the index, a surrogate is folded together with the other half of its pair
+    // 索引处的折叠字符，代理字符与其对的另一半一起折叠
+    static char foldAt(char[] text, int index, int start, int end)
+    {
+        char c = text[index];
+        if (c < 128)
+        {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        if (!Character.isSurrogate(c))
+        {
+            return (char) fold(c);
+        }
+        if (Character.isHighSurrogate(c) && index + 1 < end && Character.isLowSurrogate(text[index + 1]))
+        {
+            return Character.highSurrogate(fold(Character.toCodePoint(c, text[index + 1])));
+        }
+        if (Character.isLowSurrogate(c) && index > start && Character.isHighSurrogate(text[index - 1]))
+        {
+            return Character.lowSurrogate(fold(Character.toCodePoint(text[index - 1], c)));
+        }
+        return c;
+    }
+
+    // Folded copy of the searched text
+    // 搜索文本的折叠副本
+    static char[] fold(String text)
+    {
+        char[] chars = text.toCharArray();
+        char[] folded = new char[chars.length];
+        for (int i = 0; i < chars.length; i++)
+        {
+            folded[i] = foldAt(chars, i, 0, chars.length);
+        }
+        return folded;
+    }
+}
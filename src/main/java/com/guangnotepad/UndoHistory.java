@@ -0,0 +1,609 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.IOException;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.StyledDocument;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoManager;
+import javax.swing.undo.UndoableEdit;
+
+/*
+ * Undo history of a tab with a memory budget.
+ * Every edit is kept in an entry that knows about how many bytes the edit holds
+ * (removed text, element and attribute copies). Typing and deleting key by key go into one entry
+ * Until a new word starts, the caret jumps or the user pauses, so one undo takes back a word,
+ * Not a char. When the entries hold more than the budget, the oldest ones are dropped.
+ * Entries of a file are also written to its UndoStore on disk: undo goes on from disk when the
+ * Entries in memory are used up, and the history is there again when the file is opened later.
+ *
+ * 带有内存预算的标签页撤销历史。
+ * 每个编辑都保存在一个条目中，该条目知道编辑大约占用多少字节（删除的文本、元素和属性的副本）。
+ * 逐键输入和删除进入同一个条目，直到开始新单词、光标跳转或用户暂停，因此一次撤销撤回一个单词，
+ * 而不是一个字符。当条目占用的内存超过预算时，最旧的条目被丢弃。
+ * 文件的条目也会写入其磁盘上的UndoStore：当内存中的条目用完时从磁盘继续撤销，以后打开文件时历史仍然存在。
+ */
+
+
+// Undo history class
+// 撤销历史类
+
+public class UndoHistory extends UndoManager
+{
+    // Budget of a tab, a pause that ends typing and the longest edit that counts as one key
+    // 标签页的预算、结束输入的暂停以及算作一个按键的最长编辑
+    static final long DEFAULT_BUDGET = Math.min(64L << 20, Runtime.getRuntime().maxMemory() / 16);
+    static final long TYPING_PAUSE_MILLIS = 1500;
+    private static final int KEY_LENGTH = 2;
+
+    // Estimated bytes of an edit, of an element or attribute copy and of a removed char
+    // 编辑、元素或属性副本以及删除的字符的估计字节数
+    private static final int EDIT_BYTES = 120;
+    private static final int ELEMENT_BYTES = 80;
+    private static final int CHAR_BYTES = 2;
+
+    private long budget;
+    private long memoryBytes;
+
+    // History of the file on disk (null for a new file) and steps undone from it that redo goes through first
+    // 磁盘上文件的历史（新文件为null）以及从中撤销的步骤，重做首先经过它们
+    private final File directory;
+    private UndoStore store;
+    private int diskRedo;
+    private boolean applying;
+    private Restorer restorer;
+
+    // Newest entry, typing can still go into it (null after undo and redo)
+    // 最新的条目，输入仍然可以进入其中（撤销和重做后为null）
+    private Entry typing;
+
+    // Constructor with the default budget
+    // 使用默认预算的构造函数
+    public UndoHistory()
+    {
+        this(DEFAULT_BUDGET);
+    }
+
+    public UndoHistory(long budget)
+    {
+        this(budget, UndoStore.DIRECTORY);
+    }
+
+    UndoHistory(long budget, File directory)
+    {
+        this.budget = budget;
+        this.directory = directory;
+        setLimit(Integer.MAX_VALUE);
+    }
+
+    public synchronized long getBudget()
+    {
+        return budget;
+    }
+
+    // A smaller budget drops old entries at once
+    // 较小的预算会立即丢弃旧条目
+    public synchronized void setBudget(long budget)
+    {
+        this.budget = budget;
+        evict();
+    }
+
+    // Estimated bytes held by all entries
+    // 所有条目占用的估计字节数
+    public synchronized long getMemoryBytes()
+    {
+        return memoryBytes;
+    }
+
+    public synchronized int getEntryCount()
+    {
+        return edits.size();
+    }
+
+    // Bytes of the history on disk
+    // 磁盘上历史的字节数
+    public synchronized long getDiskBytes()
+    {
+        return store == null ? 0 : store.getDiskBytes();
+    }
+
+    // Edits of the document, typing goes into the newest entry when it can
+    // 文档的编辑，输入尽可能进入最新的条目
+    @Override
+    public synchronized void undoableEditHappened(UndoableEditEvent e)
+    {
+        undoableEditHappened(e.getEdit(), System.currentTimeMillis());
+    }
+
+    // Time is given for tests
+    // 时间为测试而给出
+    synchronized void undoableEditHappened(UndoableEdit edit, long now)
+    {
+        // Steps read from disk are not new edits
+        // 从磁盘读取的步骤不是新的编辑
+        if (applying) return;
+
+        long bytes = estimate(edit);
+        boolean absorbed = typing != null && typing.absorb(edit, now);
+        if (!absorbed)
+        {
+            Entry entry = new Entry(edit, now);
+            addEdit(entry);
+            typing = entry;
+        }
+        typing.bytes += bytes;
+        memoryBytes += bytes;
+        store(typing, !absorbed);
+        evict();
+    }
+
+    // Writing the edit to disk, as a new step or as a part of the step of its entry
+    // 将编辑写入磁盘，作为新步骤或作为其条目步骤的一部分
+    private void store(Entry entry, boolean newStep)
+    {
+        diskRedo = 0;
+        if (store == null) return;
+        try
+        {
+            if (!newStep && entry.step == 0)
+            {
+                store.discardPending();
+                return;
+            }
+
+            // A step that can't be stored starts the history on disk again
+            // 无法存储的步骤会重新开始磁盘上的历史
+            entry.step = store.commit(newStep);
+            if (entry.step == 0) forgetSteps(Long.MAX_VALUE, 0);
+            else if (store.needsCompaction())
+            {
+                long keep = store.compact();
+                forgetSteps(keep, keep - UndoStore.HEADER);
+            }
+        }
+        catch (IOException e)
+        {
+            storeFailed(e);
+        }
+    }
+
+    // Entries before step keep are no longer on disk, the later ones moved back
+    // keep步骤之前的条目不再在磁盘上，后面的条目向前移动
+    private void forgetSteps(long keep, long moved)
+    {
+        for (UndoableEdit edit : edits)
+        {
+            Entry entry = (Entry) edit;
+            entry.step = entry.step < keep ? 0 : entry.step - moved;
+        }
+    }
+
+    // The history file can't be used, the history stays in memory
+    // 历史文件无法使用，历史保留在内存中
+    private void storeFailed(Exception e)
+    {
+        e.printStackTrace();
+        forgetSteps(Long.MAX_VALUE, 0);
+        detach();
+    }
+
+    @Override
+    public synchronized boolean canUndo()
+    {
+        return super.canUndo() || store != null && store.canUndo();
+    }
+
+    @Override
+    public synchronized boolean canRedo()
+    {
+        return diskRedo > 0 && store != null || super.canRedo();
+    }
+
+    // Undoing in memory while there are entries, then from disk
+    // 有条目时在内存中撤销，然后从磁盘撤销
+    @Override
+    public synchronized void undo() throws CannotUndoException
+    {
+        typing = null;
+        if (!super.canUndo())
+        {
+            if (store == null || !store.canUndo()) throw new CannotUndoException();
+            applyStep(true);
+            diskRedo++;
+            return;
+        }
+
+        Entry entry = (Entry) editToBeUndone();
+        pauseRecording(true);
+        try
+        {
+            super.undo();
+        }
+        finally
+        {
+            pauseRecording(false);
+        }
+        if (store != null && entry.step != 0) store.back();
+    }
+
+    // Redoing the steps undone from disk first, then the entries in memory
+    // 首先重做从磁盘撤销的步骤，然后是内存中的条目
+    @Override
+    public synchronized void redo() throws CannotRedoException
+    {
+        typing = null;
+        if (diskRedo > 0 && store != null)
+        {
+            applyStep(false);
+            diskRedo--;
+            return;
+        }
+
+        Entry entry = (Entry) editToBeRedone();
+        pauseRecording(true);
+        try
+        {
+            super.redo();
+        }
+        finally
+        {
+            pauseRecording(false);
+        }
+        if (store != null && entry != null && entry.step != 0) store.forward();
+    }
+
+    @Override
+    public synchronized void discardAllEdits()
+    {
+        super.discardAllEdits();
+        memoryBytes = 0;
+        typing = null;
+        detach();
+    }
+
+    // The document of the file was saved, its history on disk is kept under the saved file
+    // 文件的文档已保存，其磁盘上的历史保存在已保存的文件下
+    public synchronized void saved(File file, PieceTableDocument document, long textHash)
+    {
+        try
+        {
+            if (store == null)
+            {
+                store = UndoStore.create(directory, file, textHash, document);
+                store.start();
+            }
+            else store.moveTo(directory, file);
+            store.saved(textHash);
+        }
+        catch (IOException e)
+        {
+            storeFailed(e);
+        }
+    }
+
+    // The file was opened into the document, its history is read once its text is hashed.
+    // Loaded text is not an edit, so entries made while loading are dropped.
+    //
+    // 文件已打开到文档中，在其文本被哈希后读取其历史。
+    // 加载的文本不是编辑，因此加载时产生的条目被丢弃。
+    public synchronized void restore(File file, PieceTableDocument document)
+    {
+        discardAllEdits();
+        restorer = new Restorer(this, file, document);
+        restorer.execute();
+    }
+
+    // Called by the restorer on the Event Dispatch Thread, the history is used only if the text was not edited
+    // 由恢复器在事件调度线程上调用，只有当文本没有被编辑时才使用历史
+    private synchronized void restored(Restorer finished, UndoStore opened)
+    {
+        if (finished != restorer || finished.snapshot.isOutdated())
+        {
+            opened.close();
+            return;
+        }
+        restorer = null;
+        attach(opened);
+    }
+
+    // Going on with the history of the file, the document holds the text with this hash
+    // 继续文件的历史，文档保存具有此哈希值的文本
+    synchronized void attach(File file, PieceTableDocument document, long textHash)
+    {
+        try
+        {
+            attach(UndoStore.open(directory, file, textHash, document));
+        }
+        catch (IOException e)
+        {
+            storeFailed(e);
+        }
+    }
+
+    private void attach(UndoStore opened)
+    {
+        detach();
+        store = opened;
+        store.start();
+    }
+
+    // Stopping to write the history of the document
+    // 停止写入文档的历史
+    private void detach()
+    {
+        if (restorer != null) restorer.cancel(false);
+        restorer = null;
+        if (store != null) store.close();
+        store = null;
+        diskRedo = 0;
+    }
+
+    // Changes made by undo and redo are not recorded as edits
+    // 撤销和重做所做的更改不会被记录为编辑
+    private void pauseRecording(boolean paused)
+    {
+        if (store != null) store.setRecording(!paused);
+    }
+
+    // Undoing or redoing a step read from disk
+    // 撤销或重做从磁盘读取的步骤
+    private void applyStep(boolean undo)
+    {
+        applying = true;
+        pauseRecording(true);
+        try
+        {
+            if (undo) store.undo();
+            else store.redo();
+        }
+        catch (IOException | BadLocationException e)
+        {
+            storeFailed(e);
+            if (undo) throw new CannotUndoException();
+            throw new CannotRedoException();
+        }
+        finally
+        {
+            applying = false;
+            pauseRecording(false);
+        }
+    }
+
+    // Entries that are dropped give back their bytes
+    // 被丢弃的条目归还其字节
+    @Override
+    protected void trimEdits(int from, int to)
+    {
+        for (int i = from; i <= to && i < edits.size(); i++)
+        {
+            UndoableEdit edit = edits.get(i);
+            if (edit instanceof Entry) memoryBytes -= ((Entry) edit).bytes;
+            if (edit == typing) typing = null;
+        }
+        super.trimEdits(from, to);
+    }
+
+    // Dropping the oldest entries over the budget, the newest undo is always kept
+    // 丢弃超出预算的最旧条目，始终保留最新的撤销
+    private void evict()
+    {
+        while (memoryBytes > budget && edits.size() > 1)
+        {
+            UndoableEdit newest = editToBeUndone();
+            if (newest == null || edits.get(0) == newest) break;
+            trimEdits(0, 0);
+        }
+    }
+
+    // Bytes an edit holds, read right after the edit was made
+    // 编辑占用的字节数，在编辑完成后立即读取
+    static long estimate(UndoableEdit edit)
+    {
+        if (edit instanceof PieceTableDocument.GroupEdit)
+        {
+            long bytes = EDIT_BYTES;
+            for (UndoableEdit child : ((PieceTableDocument.GroupEdit) edit).getEdits())
+            {
+                bytes += estimate(child);
+            }
+            return bytes;
+        }
+        if (!(edit instanceof DocumentEvent)) return EDIT_BYTES;
+
+        DocumentEvent event = (DocumentEvent) edit;
+        Document document = event.getDocument();
+        long bytes = EDIT_BYTES;
+        if (event.getType() == DocumentEvent.EventType.REMOVE)
+        {
+            bytes += (long) event.getLength() * CHAR_BYTES;
+        }
+
+        // Attribute changes keep a copy of the attributes of every run in the range
+        // 属性更改会保留范围内每个片段的属性副本
+        if (event.getType() == DocumentEvent.EventType.CHANGE && document instanceof StyledDocument)
+        {
+            StyledDocument styled = (StyledDocument) document;
+            int end = Math.min(event.getOffset() + event.getLength(), styled.getLength());
+            int offset = event.getOffset();
+            while (offset < end)
+            {
+                bytes += ELEMENT_BYTES;
+                offset = Math.max(offset + 1, styled.getCharacterElement(offset).getEndOffset());
+            }
+        }
+
+        // Elements added and removed by the edit
+        // 编辑添加和删除的元素
+        for (Element root : document.getRootElements())
+        {
+            bytes += changedElements(event, root) * ELEMENT_BYTES;
+            int index = root.getElementIndex(event.getOffset());
+            if (index >= 0 && index < root.getElementCount())
+            {
+                bytes += changedElements(event, root.getElement(index)) * ELEMENT_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private static int changedElements(DocumentEvent event, Element element)
+    {
+        DocumentEvent.ElementChange change = event.getChange(element);
+        return change == null ? 0 : change.getChildrenAdded().length + change.getChildrenRemoved().length;
+    }
+
+    // Entry of the history: one edit, or keys typed or deleted one after another
+    // 历史条目：一个编辑，或者一个接一个输入或删除的按键
+    private static class Entry extends CompoundEdit
+    {
+        private final DocumentEvent.EventType type;
+        private int from;
+        private int to;
+        private long time;
+        private boolean spaced;
+        private long bytes;
+
+        // Offset of the step of the entry in the history file (0 if it's only in memory)
+        // 条目在历史文件中的步骤的偏移量（如果只在内存中则为0）
+        private long step;
+
+        Entry(UndoableEdit edit, long now)
+        {
+            edits.add(edit);
+            end();
+            time = now;
+            DocumentEvent key = asKey(edit);
+            type = key != null ? key.getType() : null;
+            if (key != null)
+            {
+                from = key.getOffset();
+                to = key.getOffset() + key.getLength();
+                spaced = type == DocumentEvent.EventType.INSERT && endsWithSpace(key);
+            }
+        }
+
+        // The undo manager never merges edits, absorb does
+        // 撤销管理器从不合并编辑，由absorb合并
+        @Override
+        public boolean addEdit(UndoableEdit edit)
+        {
+            return false;
+        }
+
+        // Taking the next key if it continues the typing or deleting of this entry
+        // 如果下一个按键继续此条目的输入或删除，则接受它
+        boolean absorb(UndoableEdit edit, long now)
+        {
+            DocumentEvent key = asKey(edit);
+            if (type == null || key == null || key.getType() != type || now - time > TYPING_PAUSE_MILLIS)
+            {
+                return false;
+            }
+
+            if (type == DocumentEvent.EventType.INSERT)
+            {
+                // A new word after a space starts a new entry
+                // 空格之后的新单词开始一个新条目
+                if (key.getOffset() != to || spaced && !startsWithSpace(key)) return false;
+                to += key.getLength();
+                spaced = endsWithSpace(key);
+            }
+            else
+            {
+                // Backspace deletes before the entry, Delete at its start
+                // Backspace在条目之前删除，Delete在其开始处删除
+                if (key.getOffset() + key.getLength() == from) from = key.getOffset();
+                else if (key.getOffset() != from) return false;
+            }
+            edits.add(edit);
+            time = now;
+            return true;
+        }
+
+        // Edit of one key, typed or deleted (null for other edits)
+        // 一个按键的编辑，输入或删除（其他编辑为null）
+        private static DocumentEvent asKey(UndoableEdit edit)
+        {
+            if (!(edit instanceof DocumentEvent)) return null;
+            DocumentEvent event = (DocumentEvent) edit;
+            boolean textEdit = event.getType() == DocumentEvent.EventType.INSERT ||
+                event.getType() == DocumentEvent.EventType.REMOVE;
+            return textEdit && event.getLength() <= KEY_LENGTH ? event : null;
+        }
+
+        private static boolean startsWithSpace(DocumentEvent key)
+        {
+            return isSpace(key, key.getOffset());
+        }
+
+        private static boolean endsWithSpace(DocumentEvent key)
+        {
+            return isSpace(key, key.getOffset() + key.getLength() - 1);
+        }
+
+        private static boolean isSpace(DocumentEvent key, int offset)
+        {
+            try
+            {
+                return Character.isWhitespace(key.getDocument().getText(offset, 1).charAt(0));
+            }
+            catch (BadLocationException e)
+            {
+                return true;
+            }
+        }
+    }
+
+    // Hashing the opened text and reading its history on background threads
+    // 在后台线程上对打开的文本进行哈希并读取其历史
+    private static class Restorer extends SwingWorker<UndoStore, Void>
+    {
+        private final UndoHistory history;
+        private final File file;
+        private final DocumentSnapshot snapshot;
+
+        Restorer(UndoHistory history, File file, PieceTableDocument document)
+        {
+            this.history = history;
+            this.file = file;
+            this.snapshot = document.snapshot(false);
+        }
+
+        @Override
+        protected UndoStore doInBackground() throws Exception
+        {
+            long textHash;
+            try
+            {
+                textHash = UndoStore.hash(snapshot);
+            }
+            finally
+            {
+                snapshot.release();
+            }
+            return UndoStore.open(history.directory, file, textHash, snapshot.getDocument());
+        }
+
+        @Override
+        protected void done()
+        {
+            if (isCancelled()) return;
+            try
+            {
+                history.restored(this, get());
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+}
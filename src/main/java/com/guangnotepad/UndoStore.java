@@ -0,0 +1,973 @@
+package com.guangnotepad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+
+/*
+ * Undo history of one file on disk, it outlives the tab and the process.
+ * Every undo step is a record of text and attribute deltas: inserted text, removed text and
+ * The character attributes of both, and the old and new attributes of restyled text.
+ * Records are appended to the history file and linked to the previous one. Only the offsets of the
+ * Steps are kept in memory, so a deep history costs little heap and a step is read from disk
+ * When it is undone or redone. The header holds a hash of the saved text and the step the
+ * File was saved at: a file that is opened with the same text goes on with its history,
+ * A file that was changed by another program starts a new one.
+ * The file is only touched by the writer thread of the edit journal: steps are collected on the
+ * Event Dispatch Thread and written once a second, so typing never waits for the disk.
+ *
+ * 一个文件在磁盘上的撤销历史，它比标签页和进程存活得更久。
+ * 每个撤销步骤是文本和属性增量的记录：插入的文本、删除的文本及两者的字符属性，以及重新设置样式的文本的旧属性和新属性。
+ * 记录追加到历史文件并链接到前一个记录。内存中只保存步骤的偏移量，因此很深的历史只占用很少的堆，
+ * 步骤在被撤销或重做时从磁盘读取。文件头保存已保存文本的哈希值和文件保存时所在的步骤：
+ * 以相同文本打开的文件继续其历史，被其他程序更改的文件开始新的历史。
+ * 文件只由编辑日志的写入线程访问：步骤在事件调度线程上收集并每秒写入一次，因此输入永远不会等待磁盘。
+ */
+
+
+// Undo store class
+// 撤销存储类
+
+public class UndoStore implements DocumentListener, PieceTableDocument.ChangeObserver
+{
+    static final File DIRECTORY = new File(new File(System.getProperty("user.home"), ".guangnotepad"), "history");
+
+    // Header: magic, hash of the saved text, step of the saved text (-1 if it was compacted away)
+    // 文件头：魔数、已保存文本的哈希值、已保存文本的步骤（如果被压缩掉则为-1）
+    private static final int MAGIC = 0x474E5531;
+    static final long HEADER = 20;
+
+    // Step record: length of its operations, offset of the previous step, operation count
+    // 步骤记录：其操作的长度、前一个步骤的偏移量、操作数
+    private static final int STEP_HEADER = 16;
+    private static final byte INSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte STYLE = 3;
+
+    // Biggest step that is kept (bigger ones start the history again) and the size that is compacted
+    // 保留的最大步骤（更大的步骤会重新开始历史）以及需要压缩的大小
+    static final int MAX_STEP_CHARS = 16 << 20;
+    static final long MAX_BYTES = 256L << 20;
+    private static final int CHUNK = 64 << 10;
+    private static final long FLUSH_MILLIS = 1000;
+
+    // Histories of files that were not opened or edited for this long are deleted,
+    // And the oldest ones while all histories together are bigger than the limit
+    //
+    // 超过此时间未打开或编辑的文件的历史被删除，
+    // 当所有历史加起来大于限制时，也删除最旧的历史
+    static final long MAX_AGE_MILLIS = 30L * 24 * 60 * 60 * 1000;
+    static final long MAX_TOTAL_BYTES = 1L << 30;
+
+    // Event Dispatch Thread state
+    // 事件调度线程状态
+    private final PieceTableDocument document;
+    private File file;
+    private boolean started;
+    private boolean opened;
+    private long savedHash;
+    private long savedPosition;
+
+    // Offsets and operation counts of the steps, the first current ones are done, and the end of the steps
+    // 步骤的偏移量和操作数，前current个步骤已完成，以及步骤的结尾
+    private long[] steps = new long[16];
+    private int[] counts = new int[16];
+    private int stepCount;
+    private int current;
+    private long end = HEADER;
+
+    // Operations of the edit that is being made, written when the undo history gets it
+    // 正在进行的编辑的操作，在撤销历史得到它时写入
+    private final ByteArrayOutputStream pendingBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pending = new DataOutputStream(pendingBytes);
+    private int pendingOps;
+    private long pendingChars;
+    private boolean overflow;
+    private boolean recording = true;
+    private final Segment segment = new Segment();
+
+    // Old runs of a restyled range, from before setCharacterAttributes until the change event
+    // 重新设置样式范围的旧片段，从setCharacterAttributes之前到更改事件
+    private byte[] restyled;
+    private int restyledOffset;
+    private int restyledLength;
+
+    // File work waiting for the writer thread, in the order it was made (guarded by tasks)
+    // 等待写入线程的文件工作，按产生的顺序排列（由tasks保护）
+    private final List<FileTask> tasks = new ArrayList<>();
+    private boolean flushScheduled;
+    private volatile IOException failure;
+
+    // Writer thread state
+    // 写入线程状态
+    private File dataFile;
+    private RandomAccessFile data;
+
+    private interface FileTask
+    {
+        void run() throws IOException;
+    }
+
+    private UndoStore(PieceTableDocument document, File file)
+    {
+        this.document = document;
+        this.file = file;
+        this.dataFile = file;
+    }
+
+    // History of the file for a document that holds its text, the text hash tells if the history still fits.
+    // The history goes back to the saved step, steps that were undone before saving are dropped.
+    // The file is read on the writer thread, after the writes of a history that was closed before.
+    //
+    // 保存文件文本的文档的文件历史，文本哈希值判断历史是否仍然适用。
+    // 历史回到保存的步骤，保存前被撤销的步骤被丢弃。
+    // 文件在写入线程上读取，在之前关闭的历史的写入之后。
+    static UndoStore open(File directory, File path, long textHash, PieceTableDocument document) throws IOException
+    {
+        UndoStore store = new UndoStore(document, fileOf(directory, path));
+        store.savedHash = textHash;
+        onWriter(() ->
+        {
+            store.read();
+            return null;
+        });
+        return store;
+    }
+
+    // New history of a file that was just saved with this text, an old history of the path is dropped
+    // 刚以此文本保存的文件的新历史，该路径的旧历史被丢弃
+    static UndoStore create(File directory, File path, long textHash, PieceTableDocument document)
+    {
+        UndoStore store = new UndoStore(document, fileOf(directory, path));
+        store.savedHash = textHash;
+        File old = store.file;
+        store.schedule(() -> Files.deleteIfExists(old.toPath()));
+        return store;
+    }
+
+    // Deleting histories that are not needed any more, on the writer thread when the editor starts
+    // 删除不再需要的历史，在编辑器启动时于写入线程上进行
+    public static void cleanUp()
+    {
+        EditJournal.WRITER.execute(() -> cleanUp(DIRECTORY, System.currentTimeMillis(), MAX_TOTAL_BYTES));
+    }
+
+    // Newest histories are kept while they fit in the limit, old ones are deleted.
+    // Opening a history touches its file, so histories of files in use stay new.
+    //
+    // 最新的历史在限制内时被保留，旧的被删除。
+    // 打开历史会更新其文件的时间，因此正在使用的文件的历史保持为新的。
+    static void cleanUp(File directory, long now, long maxTotal)
+    {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".undo"));
+        if (files == null) return;
+
+        long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++)
+        {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[b], modified[a]));
+
+        long total = 0;
+        for (int i : order)
+        {
+            long length = files[i].length();
+            if (now - modified[i] > MAX_AGE_MILLIS || total + length > maxTotal)
+            {
+                files[i].delete();
+                continue;
+            }
+            total += length;
+        }
+    }
+
+    // History file of a path: its name and a hash of the whole path
+    // 路径的历史文件：其名称和整个路径的哈希值
+    static File fileOf(File directory, File path)
+    {
+        String absolute = path.getAbsolutePath();
+        long hash = hash(absolute.toCharArray(), 0, absolute.length(), FNV_OFFSET);
+        return new File(directory, path.getName() + "-" + Long.toHexString(hash) + ".undo");
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    // Recording the edits of the document
+    // 记录文档的编辑
+    public void start()
+    {
+        started = true;
+        document.addDocumentListener(this);
+        document.setChangeObserver(this);
+    }
+
+    // Bytes of the history file
+    // 历史文件的字节数
+    public long getDiskBytes()
+    {
+        return opened ? end : 0;
+    }
+
+    public boolean canUndo()
+    {
+        return current > 0;
+    }
+
+    public boolean canRedo()
+    {
+        return current < stepCount;
+    }
+
+    // Undo and redo change the document without being recorded
+    // 撤销和重做更改文档而不被记录
+    public void setRecording(boolean recording)
+    {
+        this.recording = recording;
+        discardPending();
+    }
+
+    // Adding the operations of the last edit as a new step, or adding them to the last step.
+    // Steps that were undone are dropped. Returns the offset of the step, 0 if the edit was too big
+    // Or nothing of it was seen: the history can't go back over it then, so it starts again.
+    // Nothing is written here, the record goes to the writer thread.
+    //
+    // 将最后一次编辑的操作添加为新步骤，或将其添加到最后一个步骤。
+    // 被撤销的步骤被丢弃。返回步骤的偏移量，如果编辑太大或其中什么都没有看到则返回0：
+    // 此时历史不能越过它回退，因此重新开始。这里不写入任何内容，记录交给写入线程。
+    public long commit(boolean newStep) throws IOException
+    {
+        checkFailure();
+        try
+        {
+            if (overflow || pendingOps == 0 || !newStep && current == 0)
+            {
+                reset();
+                return 0;
+            }
+            boolean created = !opened;
+            if (created)
+            {
+                opened = true;
+                writeHeader();
+            }
+
+            // Saved step is dropped or changed, the saved text can't be found any more
+            // 保存的步骤被丢弃或更改，再也找不到保存的文本
+            long position = getPosition();
+            if (savedPosition > position || !newStep && savedPosition == position)
+            {
+                savedPosition = -1;
+                writeHeader();
+            }
+
+            // Undone steps are cut off the file
+            // 被撤销的步骤从文件中截掉
+            boolean truncated = created || current < stepCount;
+            if (current < stepCount) end = steps[current];
+            stepCount = current;
+
+            pending.flush();
+            byte[] operations = pendingBytes.toByteArray();
+            long at = end;
+            if (newStep)
+            {
+                byte[] record = ByteBuffer.allocate(STEP_HEADER + operations.length)
+                    .putInt(operations.length).putLong(position).putInt(pendingOps).put(operations).array();
+                addStep(at, pendingOps);
+                end += record.length;
+                schedule(() ->
+                {
+                    RandomAccessFile out = data();
+                    if (truncated) out.setLength(at);
+                    out.seek(at);
+                    out.write(record);
+                });
+            }
+            else
+            {
+                // Length and operation count of the last step grow, its operations go on after it
+                // 最后一个步骤的长度和操作数增加，其操作在其后继续
+                int last = current - 1;
+                long step = steps[last];
+                int length = (int) (end - step - STEP_HEADER) + operations.length;
+                int count = counts[last] += pendingOps;
+                end += operations.length;
+                schedule(() ->
+                {
+                    RandomAccessFile out = data();
+                    if (truncated) out.setLength(at);
+                    out.seek(step);
+                    out.writeInt(length);
+                    out.seek(step + 12);
+                    out.writeInt(count);
+                    out.seek(at);
+                    out.write(operations);
+                });
+            }
+            return steps[current - 1];
+        }
+        finally
+        {
+            discardPending();
+        }
+    }
+
+    // Edits that don't go into the history (those seen while a step is read are dropped too)
+    // 不进入历史的编辑（读取步骤时看到的编辑也被丢弃）
+    public void discardPending()
+    {
+        pendingBytes.reset();
+        pendingOps = 0;
+        pendingChars = 0;
+        overflow = false;
+        restyled = null;
+    }
+
+    // Moving back over the last step, the document was changed by an undo in memory
+    // 退回到最后一个步骤之前，文档已被内存中的撤销更改
+    public void back()
+    {
+        if (current > 0) current--;
+    }
+
+    public void forward()
+    {
+        if (canRedo()) current++;
+    }
+
+    // Undoing the last step with its operations read from disk
+    // 使用从磁盘读取的操作撤销最后一个步骤
+    public void undo() throws IOException, BadLocationException
+    {
+        if (current == 0) return;
+        List<Operation> operations = readStep(steps[current - 1]);
+        for (int i = operations.size() - 1; i >= 0; i--)
+        {
+            operations.get(i).undo(document);
+        }
+        current--;
+    }
+
+    public void redo() throws IOException, BadLocationException
+    {
+        if (!canRedo()) return;
+        for (Operation operation : readStep(steps[current]))
+        {
+            operation.redo(document);
+        }
+        current++;
+    }
+
+    // The document was saved with this text at the current step
+    // 文档在当前步骤以此文本保存
+    public void saved(long textHash) throws IOException
+    {
+        checkFailure();
+        savedHash = textHash;
+        savedPosition = getPosition();
+        if (opened) writeHeader();
+    }
+
+    // The document was saved under another name, the history goes with it (the old one stays)
+    // 文档以另一个名称保存，历史随之而去（旧的历史保留）
+    public void moveTo(File directory, File path) throws IOException
+    {
+        checkFailure();
+        File moved = fileOf(directory, path);
+        if (moved.equals(file)) return;
+        file = moved;
+        boolean copy = opened;
+        schedule(() ->
+        {
+            closeData();
+            if (copy) Files.copy(dataFile.toPath(), moved.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dataFile = moved;
+        });
+    }
+
+    // Starting a new history at the current text
+    // 在当前文本处开始新的历史
+    public void reset()
+    {
+        current = 0;
+        stepCount = 0;
+        savedPosition = -1;
+        end = HEADER;
+        if (!opened) return;
+        writeHeader();
+        schedule(() -> data().setLength(HEADER));
+    }
+
+    public boolean needsCompaction()
+    {
+        return end > MAX_BYTES;
+    }
+
+    // Dropping the oldest steps, the newest half of the history is moved to the start of the file.
+    // Returns the old offset of the first kept step, later steps moved back by it minus HEADER.
+    // The offsets change at once, the bytes are moved by the writer thread.
+    //
+    // 丢弃最旧的步骤，历史中最新的一半被移动到文件的开头。
+    // 返回第一个保留步骤的旧偏移量，后面的步骤向前移动了它减去HEADER的距离。
+    // 偏移量立即更改，字节由写入线程移动。
+    public long compact()
+    {
+        int first = 0;
+        while (first < current - 1 && end - steps[first] > MAX_BYTES / 2)
+        {
+            first++;
+        }
+        long keep = stepCount == 0 ? HEADER : steps[first];
+        long moved = keep - HEADER;
+        if (moved == 0) return keep;
+
+        long oldEnd = end;
+        stepCount -= first;
+        current -= first;
+        System.arraycopy(steps, first, steps, 0, stepCount);
+        System.arraycopy(counts, first, counts, 0, stepCount);
+        for (int i = 0; i < stepCount; i++)
+        {
+            steps[i] -= moved;
+        }
+        end -= moved;
+        savedPosition = savedPosition >= keep ? savedPosition - moved : -1;
+        long[] kept = Arrays.copyOf(steps, stepCount);
+        long length = end;
+        schedule(() ->
+        {
+            RandomAccessFile out = data();
+            byte[] buffer = new byte[CHUNK];
+            for (long from = keep; from < oldEnd; from += buffer.length)
+            {
+                int count = (int) Math.min(buffer.length, oldEnd - from);
+                out.seek(from);
+                out.readFully(buffer, 0, count);
+                out.seek(from - moved);
+                out.write(buffer, 0, count);
+            }
+            out.setLength(length);
+
+            // Steps link to the moved previous steps, the first one to none
+            // 步骤链接到移动后的前一个步骤，第一个步骤不链接
+            long previous = 0;
+            for (long step : kept)
+            {
+                out.seek(step + 4);
+                out.writeLong(previous);
+                previous = step;
+            }
+        });
+        writeHeader();
+        return keep;
+    }
+
+    // Stopping to record the document, the history file is written and stays
+    // 停止记录文档，历史文件被写入并保留
+    public void close()
+    {
+        if (started)
+        {
+            document.removeDocumentListener(this);
+            document.setChangeObserver(null);
+            started = false;
+        }
+        discardPending();
+        EditJournal.WRITER.execute(() ->
+        {
+            flush();
+            closeData();
+        });
+    }
+
+    @Override
+    public void removing(int offset, int length)
+    {
+        if (!record(length)) return;
+        try
+        {
+            pending.writeByte(REMOVE);
+            pending.writeInt(offset);
+            writeText(offset, length);
+            writeRuns(pending, offset, offset + length);
+            pendingOps++;
+        }
+        catch (IOException | BadLocationException e)
+        {
+            overflow = true;
+        }
+    }
+
+    @Override
+    public void restyling(int offset, int length)
+    {
+        if (!record(length)) return;
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeRuns(new DataOutputStream(bytes), offset, offset + length);
+            restyled = bytes.toByteArray();
+            restyledOffset = offset;
+            restyledLength = length;
+        }
+        catch (IOException e)
+        {
+            overflow = true;
+        }
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e)
+    {
+        // Text of the opened file and of a followed file is not an edit
+        // 打开的文件和跟随的文件的文本不是编辑
+        if (document.isAppending() || !record(e.getLength())) return;
+        try
+        {
+            pending.writeByte(INSERT);
+            pending.writeInt(e.getOffset());
+            writeText(e.getOffset(), e.getLength());
+            writeRuns(pending, e.getOffset(), e.getOffset() + e.getLength());
+            pendingOps++;
+        }
+        catch (IOException | BadLocationException ex)
+        {
+            overflow = true;
+        }
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e)
+    {
+        // Removed text was written by removing
+        // 删除的文本已由removing写入
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e)
+    {
+        if (restyled == null || !recording) return;
+        try
+        {
+            pending.writeByte(STYLE);
+            pending.writeInt(restyledOffset);
+            pending.writeInt(restyledLength);
+            pending.write(restyled);
+            writeRuns(pending, restyledOffset, restyledOffset + restyledLength);
+            pendingOps++;
+        }
+        catch (IOException ex)
+        {
+            overflow = true;
+        }
+        restyled = null;
+    }
+
+    // Counting the chars of the pending step, a step that gets too big is not kept
+    // 计算待处理步骤的字符数，变得太大的步骤不会被保留
+    private boolean record(int length)
+    {
+        if (!recording || overflow) return false;
+        pendingChars += length;
+        if (pendingChars > MAX_STEP_CHARS)
+        {
+            overflow = true;
+            pendingBytes.reset();
+            return false;
+        }
+        return true;
+    }
+
+    // Text as its length and UTF-16 chars, so surrogates stay as they are
+    // 文本以其长度和UTF-16字符写入，因此代理字符保持原样
+    private void writeText(int offset, int length) throws IOException, BadLocationException
+    {
+        pending.writeInt(length);
+        byte[] bytes = new byte[2 * Math.min(length, CHUNK)];
+        for (int done = 0; done < length; )
+        {
+            int count = Math.min(length - done, CHUNK);
+            document.getText(offset + done, count, segment);
+            for (int i = 0; i < count; i++)
+            {
+                char c = segment.array[segment.offset + i];
+                bytes[2 * i] = (byte) (c >> 8);
+                bytes[2 * i + 1] = (byte) c;
+            }
+            pending.write(bytes, 0, 2 * count);
+            done += count;
+        }
+    }
+
+    // Character runs of [start, end) as their lengths and attributes
+    // [start, end)的字符片段，以其长度和属性写入
+    private void writeRuns(DataOutputStream out, int start, int end) throws IOException
+    {
+        int count = 0;
+        for (int offset = start; offset < end; count++)
+        {
+            offset = Math.max(offset + 1, document.getCharacterElement(offset).getEndOffset());
+        }
+        out.writeInt(count);
+        for (int offset = start; offset < end; )
+        {
+            Element run = document.getCharacterElement(offset);
+            int runEnd = Math.min(end, Math.max(offset + 1, run.getEndOffset()));
+            out.writeInt(runEnd - offset);
+            EditJournal.writeAttributes(out, run.getAttributes());
+            offset = runEnd;
+        }
+    }
+
+    // Offset of the last step that is done (0 if none)
+    // 最后完成的步骤的偏移量（没有则为0）
+    private long getPosition()
+    {
+        return current == 0 ? 0 : steps[current - 1];
+    }
+
+    private void addStep(long step, int count)
+    {
+        if (stepCount == steps.length)
+        {
+            steps = Arrays.copyOf(steps, stepCount * 2);
+            counts = Arrays.copyOf(counts, stepCount * 2);
+        }
+        steps[stepCount] = step;
+        counts[stepCount] = count;
+        stepCount++;
+        current = stepCount;
+    }
+
+    private void writeHeader()
+    {
+        byte[] header = ByteBuffer.allocate((int) HEADER).putInt(MAGIC).putLong(savedHash).putLong(savedPosition).array();
+        schedule(() ->
+        {
+            RandomAccessFile out = data();
+            out.seek(0);
+            out.write(header);
+        });
+    }
+
+    // Writing failed on the writer thread, the history can't be used any more
+    // 在写入线程上写入失败，历史不能再使用
+    private void checkFailure() throws IOException
+    {
+        IOException e = failure;
+        if (e != null) throw e;
+    }
+
+    // Reading a step after everything before it is written
+    // 在之前的所有内容写入之后读取步骤
+    private List<Operation> readStep(long step) throws IOException
+    {
+        checkFailure();
+        return onWriter(() ->
+        {
+            flush();
+            checkFailure();
+            return readOperations(step);
+        });
+    }
+
+    // Running on the writer thread and waiting for it
+    // 在写入线程上运行并等待它
+    private static <T> T onWriter(Callable<T> task) throws IOException
+    {
+        try
+        {
+            return EditJournal.WRITER.submit(task).get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    // Queueing file work, the writer thread does it with the journals in its next flush
+    // 将文件工作排队，写入线程在下一次刷新时与日志一起完成
+    private void schedule(FileTask task)
+    {
+        synchronized (tasks)
+        {
+            tasks.add(task);
+            if (flushScheduled) return;
+            flushScheduled = true;
+        }
+        EditJournal.WRITER.schedule(this::flush, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Writer thread
+    // 写入线程
+
+    private void flush()
+    {
+        List<FileTask> work;
+        synchronized (tasks)
+        {
+            work = new ArrayList<>(tasks);
+            tasks.clear();
+            flushScheduled = false;
+        }
+        if (failure != null) return;
+        try
+        {
+            for (FileTask task : work)
+            {
+                task.run();
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            failure = e;
+            closeData();
+        }
+    }
+
+    private RandomAccessFile data() throws IOException
+    {
+        if (data != null) return data;
+        dataFile.getParentFile().mkdirs();
+        data = new RandomAccessFile(dataFile, "rw");
+        return data;
+    }
+
+    private void closeData()
+    {
+        if (data == null) return;
+        try
+        {
+            data.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        data = null;
+    }
+
+    // Reading the header and the offsets of the steps up to the saved one, a file that doesn't fit is started again
+    // 读取文件头和直到保存步骤的步骤偏移量，不适用的文件重新开始
+    private void read() throws IOException
+    {
+        if (!dataFile.isFile()) return;
+        opened = true;
+        dataFile.setLastModified(System.currentTimeMillis());
+        try
+        {
+            RandomAccessFile in = data();
+            if (in.length() >= HEADER && in.readInt() == MAGIC && in.readLong() == savedHash)
+            {
+                long saved = in.readLong();
+                if (saved >= 0 && readSteps(in, saved))
+                {
+                    savedPosition = saved;
+                    in.setLength(end);
+                    return;
+                }
+            }
+
+            current = 0;
+            stepCount = 0;
+            end = HEADER;
+            savedPosition = 0;
+            in.seek(0);
+            in.write(ByteBuffer.allocate((int) HEADER).putInt(MAGIC).putLong(savedHash).putLong(savedPosition).array());
+            in.setLength(HEADER);
+        }
+        finally
+        {
+            closeData();
+        }
+    }
+
+    // Walking the steps from the first to the saved one, false if the saved step isn't found
+    // 从第一个步骤走到保存的步骤，如果找不到保存的步骤则为false
+    private boolean readSteps(RandomAccessFile in, long saved) throws IOException
+    {
+        long length = in.length();
+        byte[] header = new byte[STEP_HEADER];
+        long step = HEADER;
+        while (step <= saved && saved != 0)
+        {
+            if (step + STEP_HEADER > length) return false;
+            in.seek(step);
+            in.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            int operations = buffer.getInt();
+            buffer.getLong();
+            addStep(step, buffer.getInt());
+            step += STEP_HEADER + operations;
+        }
+        if (step > length) return false;
+        end = step;
+        return saved == 0 || steps[stepCount - 1] == saved;
+    }
+
+    private List<Operation> readOperations(long step) throws IOException
+    {
+        RandomAccessFile in = data();
+        in.seek(step);
+        byte[] bytes = new byte[in.readInt()];
+        in.readLong();
+        int count = in.readInt();
+        in.readFully(bytes);
+
+        DataInputStream operations = new DataInputStream(new ByteArrayInputStream(bytes));
+        List<Operation> read = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            read.add(Operation.read(operations));
+        }
+        return read;
+    }
+
+    // Hash of the text of a snapshot (64-bit FNV-1a), read on a background thread
+    // 快照文本的哈希值（64位FNV-1a），在后台线程上读取
+    static long hash(DocumentSnapshot snapshot) throws BadLocationException
+    {
+        Segment text = new Segment();
+        long hash = FNV_OFFSET;
+        int length = snapshot.getLength();
+        for (int done = 0; done < length; done += CHUNK)
+        {
+            int count = Math.min(length - done, CHUNK);
+            snapshot.getText(done, count, text);
+            hash = hash(text.array, text.offset, count, hash);
+        }
+        return hash;
+    }
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static long hash(char[] chars, int start, int count, long hash)
+    {
+        for (int i = start; i < start + count; i++)
+        {
+            hash = (hash ^ (chars[i] & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (chars[i] >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Operation of a step read from disk
+    // 从磁盘读取的步骤的操作
+    private static class Operation
+    {
+        private byte type;
+        private int offset;
+        private int length;
+        private String text;
+        private int[] runLengths;
+        private AttributeSet[] runAttributes;
+        private int[] newRunLengths;
+        private AttributeSet[] newRunAttributes;
+
+        static Operation read(DataInputStream in) throws IOException
+        {
+            Operation operation = new Operation();
+            operation.type = in.readByte();
+            operation.offset = in.readInt();
+            if (operation.type == STYLE)
+            {
+                operation.length = in.readInt();
+                operation.readRuns(in);
+                int[] lengths = operation.runLengths;
+                AttributeSet[] attributes = operation.runAttributes;
+                operation.readRuns(in);
+                operation.newRunLengths = operation.runLengths;
+                operation.newRunAttributes = operation.runAttributes;
+                operation.runLengths = lengths;
+                operation.runAttributes = attributes;
+                return operation;
+            }
+
+            operation.length = in.readInt();
+            char[] chars = new char[operation.length];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = in.readChar();
+            }
+            operation.text = new String(chars);
+            operation.readRuns(in);
+            return operation;
+        }
+
+        private void readRuns(DataInputStream in) throws IOException
+        {
+            int count = in.readInt();
+            runLengths = new int[count];
+            runAttributes = new AttributeSet[count];
+            for (int i = 0; i < count; i++)
+            {
+                runLengths[i] = in.readInt();
+                runAttributes[i] = EditJournal.readAttributes(in);
+            }
+        }
+
+        void undo(PieceTableDocument document) throws BadLocationException
+        {
+            if (type == INSERT) document.remove(offset, length);
+            else if (type == REMOVE) insert(document);
+            else style(document, runLengths, runAttributes);
+        }
+
+        void redo(PieceTableDocument document) throws BadLocationException
+        {
+            if (type == INSERT) insert(document);
+            else if (type == REMOVE) document.remove(offset, length);
+            else style(document, newRunLengths, newRunAttributes);
+        }
+
+        private void insert(PieceTableDocument document) throws BadLocationException
+        {
+            document.insertString(offset, text, null);
+            style(document, runLengths, runAttributes);
+        }
+
+        private void style(PieceTableDocument document, int[] lengths, AttributeSet[] attributes)
+        {
+            int start = offset;
+            for (int i = 0; i < lengths.length; i++)
+            {
+                document.setCharacterAttributes(start, lengths[i], attributes[i], true);
+                start += lengths[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.guangnotepad;
+
+/*
+ * Matches of another matcher that are whole words:
+ * The code points before and after the match are not letters, digits or underscores.
+ * Code points are read across surrogate pairs, so words of supplementary characters are whole words too.
+ *
+ * 另一个匹配器的整词匹配项：
+ * 匹配前后的码点不是字母、数字或下划线。
+ * 码点跨代理对读取，因此增补字符的单词也是整词。
+ */
+
+
+// Whole word matcher class
+// 整词匹配器类
+
+public class WholeWordMatcher implements TextMatcher
+{
+    private final TextMatcher matcher;
+
+    // Constructor
+    // 构造函数
+    public WholeWordMatcher(TextMatcher matcher)
+    {
+        this.matcher = matcher;
+    }
+
+    @Override
+    public String getText()
+    {
+        return matcher.getText();
+    }
+
+    @Override
+    public int find(char[] text, int start, int end, int from, int limit)
+    {
+        int length = matcher.getText().length();
+        int i = from;
+        while (i < limit)
+        {
+            int found = matcher.find(text, start, end, i, limit);
+            if (found < 0) return -1;
+
+            int matchEnd = found + length;
+            boolean wordBefore = found > start && isWordChar(Character.codePointBefore(text, found, start));
+            boolean wordAfter = matchEnd < end && isWordChar(Character.codePointAt(text, matchEnd, end));
+            if (!wordBefore && !wordAfter) return found;
+            i = found + 1;
+        }
+        return -1;
+    }
+
+    static boolean isWordChar(int codePoint)
+    {
+        return Character.isLetterOrDigit(codePoint) || codePoint == '_';
+    }
+}
@@ -0,0 +1,324 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+
+/*
+ * Tabs of the editor.
+ * Every tab is a FileFunction with its own document, file state, journal and undo history,
+ * The window has one text area that shows the document of the selected tab.
+ * Tabs restored from the last session are only loaded when they are shown for the first time,
+ * And saved tabs that were not shown for a while drop their document and load it again when shown,
+ * So the memory is spent on the visible tab and a few recently used ones, not on all open files.
+ *
+ * 编辑器的标签页。
+ * 每个标签页都是一个FileFunction，拥有自己的文档、文件状态、日志和撤销历史，
+ * 窗口只有一个文本区，显示所选标签页的文档。
+ * 从上次会话恢复的标签页只在第一次显示时加载，
+ * 一段时间未显示的已保存标签页会丢弃其文档，并在显示时重新加载，
+ * 因此内存用于可见的标签页和少数最近使用的标签页，而不是所有打开的文件。
+ */
+
+
+// Workspace class
+// 工作区类
+
+public class Workspace
+{
+    // Inactive tabs that keep their documents, more are dropped starting from the least recently shown
+    // 保留文档的非活动标签页数，超出的从最久未显示的开始丢弃
+    static final int MAX_LOADED_TABS = 8;
+
+    // When the heap is this full, all inactive saved tabs drop their documents
+    // 当堆达到此占用率时，所有非活动的已保存标签页都会丢弃其文档
+    private static final double MEMORY_LIMIT = 0.7;
+
+    private final GUI gui;
+    private final JTabbedPane tabBar = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+
+    // Tabs in the order of the tab bar and in the order they were shown (last is the selected one)
+    // 按标签栏顺序和显示顺序排列的标签页（最后一个是所选的）
+    private final List<FileFunction> tabs = new ArrayList<>();
+    private final List<FileFunction> recent = new ArrayList<>();
+    private boolean updating;
+
+    // Constructor
+    // 构造函数
+    public Workspace(GUI gui)
+    {
+        this.gui = gui;
+        tabBar.setFocusable(false);
+        tabBar.addChangeListener(e ->
+        {
+            int index = tabBar.getSelectedIndex();
+            if (!updating && index >= 0) activate(tabs.get(index));
+        });
+    }
+
+    public JTabbedPane getTabBar()
+    {
+        return tabBar;
+    }
+
+    // Restoring the tabs of the last session, only the selected one is loaded
+    // 恢复上次会话的标签页，只加载所选的标签页
+    public void restoreSession()
+    {
+        Session session = Session.read(Session.FILE);
+        FileFunction selected = null;
+        for (int i = 0; i < session.tabs.size(); i++)
+        {
+            Session.Tab saved = session.tabs.get(i);
+            if (!saved.file.isFile()) continue;
+
+            FileFunction tab = addTab();
+            tab.restore(saved.file, saved.encoding, saved.size, saved.modified, saved.caret);
+            if (i <= session.active || selected == null) selected = tab;
+        }
+
+        if (selected == null) selected = newTab();
+        select(selected);
+    }
+
+    // Writing the open files to the session
+    // 将打开的文件写入会话
+    private void saveSession()
+    {
+        Session session = new Session();
+        for (FileFunction tab : tabs)
+        {
+            File file = tab.getFile();
+            if (file == null) continue;
+            if (tab == gui.fileFunction) session.active = session.tabs.size();
+            session.tabs.add(new Session.Tab(file, tab.getEncoding(), tab.getEncodingSize(), tab.getEncodingModified(),
+                tab.getCaret()));
+        }
+
+        try
+        {
+            session.write(Session.FILE);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    // New empty tab (it's not selected)
+    // 新的空标签页（未被选中）
+    private FileFunction addTab()
+    {
+        FileFunction tab = new FileFunction(gui);
+        tabs.add(tab);
+        tab.getState().addListener(state -> stateChanged(tab));
+
+        updating = true;
+        tabBar.addTab(tab.getTitle(), new JPanel());
+        updating = false;
+        return tab;
+    }
+
+    // New file method: a new empty tab is selected
+    // 新建文件方法：选中一个新的空标签页
+    public FileFunction newTab()
+    {
+        FileFunction tab = addTab();
+        tab.newFile();
+        select(tab);
+        return tab;
+    }
+
+    // Opening a file in its own tab, a file that is already open is only selected
+    // 在自己的标签页中打开文件，已经打开的文件只会被选中
+    public void open(File file)
+    {
+        if (!FileFunction.canOpen(file))
+        {
+            gui.currentPopup = new PopupMessage(gui, "Only txt/gz/rtf/gnd files can be opened!");
+            gui.currentPopup.setVisible(true);
+            return;
+        }
+
+        for (FileFunction tab : tabs)
+        {
+            if (file.getAbsoluteFile().equals(tab.getFile()))
+            {
+                select(tab);
+                return;
+            }
+        }
+
+        // Empty new tab is reused
+        // 重用空的新标签页
+        FileFunction tab = gui.fileFunction;
+        if (tab == null || !tab.isUnused())
+        {
+            tab = addTab();
+            tab.newFile();
+            select(tab);
+        }
+        tab.open(file);
+    }
+
+    // Offering recovery of unsaved work, every journal in a tab of its own
+    // 提供未保存工作的恢复，每个日志都在单独的标签页中
+    public void recoverUnsavedWork()
+    {
+        for (EditJournal.Header header : EditJournal.findJournals())
+        {
+            File base = header.base.getFile();
+            int result = JOptionPane.showConfirmDialog(gui.window,
+                "Unsaved changes of " + (base == null ? "a new file" : base.getName()) + " were found. Recover them?",
+                "Recover", JOptionPane.YES_NO_CANCEL_OPTION);
+
+            // Journal stays for the next start, so do the journals after it
+            // 日志保留到下次启动，之后的日志也是如此
+            if (result != JOptionPane.YES_OPTION && result != JOptionPane.NO_OPTION) return;
+
+            if (result == JOptionPane.NO_OPTION)
+            {
+                header.journal.delete();
+                continue;
+            }
+
+            // Every recovered journal gets its own tab, an unused selected tab is taken first
+            // 每个恢复的日志都有自己的标签页，首先使用未使用的所选标签页
+            FileFunction tab = gui.fileFunction;
+            boolean added = !tab.isUnused();
+            if (added) tab = newTab();
+
+            tab.recover(header);
+            if (added && tab.isUnused()) remove(tab);
+        }
+    }
+
+    // Selecting a tab
+    // 选择标签页
+    public void select(FileFunction tab)
+    {
+        updating = true;
+        tabBar.setSelectedIndex(tabs.indexOf(tab));
+        updating = false;
+        activate(tab);
+    }
+
+    // Showing the document of a tab in the text area
+    // 在文本区中显示标签页的文档
+    private void activate(FileFunction tab)
+    {
+        FileFunction old = gui.fileFunction;
+        if (old == tab) return;
+        if (old != null) old.deactivated();
+
+        gui.fileFunction = tab;
+        gui.um = tab.getUndoManager();
+        tab.activated();
+
+        recent.remove(tab);
+        recent.add(tab);
+        evictInactive();
+    }
+
+    // Dropping documents of saved tabs that were not shown for the longest time
+    // 丢弃最长时间未显示的已保存标签页的文档
+    private void evictInactive()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        int limit = used > runtime.maxMemory() * MEMORY_LIMIT ? 0 : MAX_LOADED_TABS;
+
+        int loaded = 0;
+        for (FileFunction tab : recent)
+        {
+            if (tab.isLoaded() && tab != gui.fileFunction) loaded++;
+        }
+        for (FileFunction tab : recent)
+        {
+            if (loaded <= limit) break;
+            if (tab != gui.fileFunction && tab.canEvict())
+            {
+                tab.evict();
+                loaded--;
+            }
+        }
+    }
+
+    // Called at most once a frame when the title or the document of a tab was changed
+    // 当标签页的标题或文档被更改时，每帧最多调用一次
+    private void stateChanged(FileFunction tab)
+    {
+        int index = tabs.indexOf(tab);
+        if (index < 0) return;
+
+        tabBar.setTitleAt(index, tab.getTitle());
+        File file = tab.getFile();
+        tabBar.setToolTipTextAt(index, file == null ? null : file.getAbsolutePath());
+        if (tab != gui.fileFunction) return;
+        gui.window.setTitle(tab.getTitle());
+        gui.statusBar.refresh();
+    }
+
+    // Closing the selected tab, the user is asked to save it first
+    // 关闭所选标签页，首先询问用户是否保存
+    public void closeTab()
+    {
+        FileFunction tab = gui.fileFunction;
+        tab.close(() -> remove(tab));
+    }
+
+    private void remove(FileFunction tab)
+    {
+        int index = tabs.indexOf(tab);
+        if (index < 0) return;
+
+        tab.dispose(false);
+        tabs.remove(index);
+        recent.remove(tab);
+
+        updating = true;
+        tabBar.removeTabAt(index);
+        updating = false;
+
+        if (tab != gui.fileFunction) return;
+        if (tabs.isEmpty())
+        {
+            newTab();
+            return;
+        }
+        select(tabs.get(Math.min(index, tabs.size() - 1)));
+    }
+
+    // Exit method: every tab with unsaved changes is shown and asked about, then the program ends
+    // 退出方法：显示并询问每个有未保存更改的标签页，然后程序结束
+    public void exit()
+    {
+        exitFrom(0);
+    }
+
+    private void exitFrom(int index)
+    {
+        for (int i = index; i < tabs.size(); i++)
+        {
+            FileFunction tab = tabs.get(i);
+            if (tab.hasUnsavedChanges())
+            {
+                int next = i + 1;
+                select(tab);
+                tab.close(() -> exitFrom(next));
+                return;
+            }
+        }
+
+        saveSession();
+        for (FileFunction tab : tabs)
+        {
+            tab.dispose(true);
+        }
+        System.exit(0);
+    }
+}
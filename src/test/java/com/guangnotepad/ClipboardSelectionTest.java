@@ -0,0 +1,137 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+import org.junit.Test;
+
+/**
+ * Copied text is made from the snapshot of the copy in every flavor, styles only while the document is unchanged.
+ */
+public class ClipboardSelectionTest
+{
+    @Test
+    public void flavorsGiveTheCopiedText() throws Exception
+    {
+        PieceTableDocument document = styledDocument();
+        ClipboardSelection copy = ClipboardSelection.copy(document, 5, 14);
+        document.insertString(6, "edited ", null);
+        assertEquals("one <b> &", copy.getTransferData(DataFlavor.stringFlavor));
+
+        StringBuilder read = new StringBuilder();
+        Reader reader = (Reader) copy.getTransferData(ClipboardSelection.READER_FLAVOR);
+        int c;
+        while ((c = reader.read()) >= 0)
+        {
+            read.append((char) c);
+        }
+        assertEquals("one <b> &", read.toString());
+        assertEquals("one <b> &", read((InputStream) copy.getTransferData(ClipboardSelection.UTF8_FLAVOR)));
+
+        // The document was edited before styles were asked for, only text is left
+        // 在请求样式之前文档已被编辑，只剩下文本
+        assertFalse(Arrays.asList(copy.getTransferDataFlavors()).contains(ClipboardSelection.RTF_FLAVOR));
+        copy.lostOwnership(null, null);
+    }
+
+    @Test
+    public void cutKeepsItsStyles() throws Exception
+    {
+        PieceTableDocument document = styledDocument();
+        ClipboardSelection cut = ClipboardSelection.cut(document, 5, 14);
+        document.remove(5, 9);
+
+        String html = read((InputStream) cut.getTransferData(ClipboardSelection.HTML_FLAVOR));
+        assertTrue(html.contains("<span style=\"font-weight: bold\">one</span>"));
+        assertTrue(html.contains("&lt;b&gt; &amp;</span>"));
+
+        String rtf = read((InputStream) cut.getTransferData(ClipboardSelection.RTF_FLAVOR));
+        assertTrue(rtf.startsWith("{\\rtf1"));
+        assertTrue(rtf.contains("\\b one"));
+        assertFalse(rtf.contains("zero"));
+        cut.lostOwnership(null, null);
+    }
+
+    @Test
+    public void copyIsPastedAsText() throws Exception
+    {
+        PieceTableDocument document = styledDocument();
+        SwingUtilities.invokeAndWait(() ->
+        {
+            ClipboardSelection copy = ClipboardSelection.copy(document, 5, 14);
+            Clipboard clipboard = new Clipboard("test");
+            clipboard.setContents(copy, copy);
+
+            // The html and rtf of the copy are offered first, the paste takes the text
+            // 复制的html和rtf首先提供，粘贴取的是文本
+            JTextPane textArea = new JTextPane(new PieceTableDocument());
+            new EditFunction(null).paste(textArea, clipboard);
+            assertEquals("one <b> &", textArea.getText());
+        });
+    }
+
+    @Test
+    public void openReaderKeepsTheSnapshot() throws Exception
+    {
+        // Text longer than a segment of the spool, so it's read from the mapped file
+        // 比缓冲文件的一个段更长的文本，因此从映射的文件中读取
+        char[] chars = new char[(1 << 20) + 100];
+        for (int i = 0; i < chars.length; i++) chars[i] = (char) ('a' + i % 26);
+        CharSpool spool = new CharSpool();
+        spool.append(chars, 0, chars.length);
+        PieceTableDocument document = new PieceTableDocument(spool);
+        document.appendOriginal(0, spool.length());
+
+        ClipboardSelection copy = ClipboardSelection.copy(document, 0, chars.length);
+        Reader reader = (Reader) copy.getTransferData(ClipboardSelection.READER_FLAVOR);
+        InputStream in = (InputStream) copy.getTransferData(ClipboardSelection.UTF8_FLAVOR);
+
+        // The paste is still reading when the document closes and the clipboard takes something else
+        // 当文档关闭且剪贴板获取其他内容时，粘贴仍在读取
+        document.dispose();
+        copy.lostOwnership(null, null);
+
+        char[] buffer = new char[4096];
+        StringBuilder read = new StringBuilder();
+        for (int n; (n = reader.read(buffer, 0, buffer.length)) > 0; ) read.append(buffer, 0, n);
+        reader.close();
+        assertEquals(new String(chars), read.toString());
+        assertEquals(new String(chars), read(in));
+    }
+
+    // "zero one <b> & two" with "one" in bold
+    // "zero one <b> & two"，其中"one"为粗体
+    private static PieceTableDocument styledDocument() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        document.insertString(0, "zero one <b> & two", null);
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        document.setCharacterAttributes(5, 3, bold, false);
+        return document;
+    }
+
+    private static String read(InputStream in) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0)
+        {
+            bytes.write(buffer, 0, n);
+        }
+        return new String(bytes.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,91 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+import org.junit.Test;
+
+/**
+ * Replaying a journal gives the same document as the edits that were journaled.
+ */
+public class EditJournalTest
+{
+    @Test
+    public void editsAndAttributesAreReplayed() throws Exception
+    {
+        File directory = Files.createTempDirectory("journal").toFile();
+        PieceTableDocument document = new PieceTableDocument();
+        EditJournal journal = new EditJournal(document, EditJournal.Base.NONE, false, directory);
+
+        document.insertString(0, "hello world\nsecond line", null);
+        document.remove(5, 6);
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        StyleConstants.setFontSize(bold, 20);
+        document.setCharacterAttributes(0, 3, bold, false);
+        document.insertString(2, "XY", bold);
+        journal.closeAndWait(false);
+
+        PieceTableDocument replayed = new PieceTableDocument();
+        assertTrue(EditJournal.replay(journal.getFile(), replayed));
+        assertEquals(document.getText(0, document.getLength()), replayed.getText(0, replayed.getLength()));
+        assertTrue(StyleConstants.isBold(replayed.getCharacterElement(3).getAttributes()));
+        assertEquals(20, StyleConstants.getFontSize(replayed.getCharacterElement(3).getAttributes()));
+        assertEquals(false, StyleConstants.isBold(replayed.getCharacterElement(8).getAttributes()));
+    }
+
+    @Test
+    public void checkpointKeepsPiecesOfTheOpenedFile() throws Exception
+    {
+        File directory = Files.createTempDirectory("journal").toFile();
+        char[] text = "first line\nsecond line\nthird line\n".toCharArray();
+        PieceTableDocument document = load(text);
+        EditJournal journal = new EditJournal(document, EditJournal.Base.NONE, true, directory);
+
+        document.insertString(11, "inserted ", null);
+        document.remove(0, 6);
+        journal.checkpoint();
+        document.insertString(document.getLength(), "after checkpoint", null);
+        journal.closeAndWait(false);
+
+        PieceTableDocument replayed = load(text);
+        assertTrue(EditJournal.replay(journal.getFile(), replayed));
+        assertEquals(document.getText(0, document.getLength()), replayed.getText(0, replayed.getLength()));
+
+        // Journal is small: the opened text is not copied into the checkpoint
+        assertTrue(journal.getFile().length() < 200);
+    }
+
+    @Test
+    public void brokenEndIsIgnored() throws Exception
+    {
+        File directory = Files.createTempDirectory("journal").toFile();
+        PieceTableDocument document = new PieceTableDocument();
+        EditJournal journal = new EditJournal(document, EditJournal.Base.NONE, false, directory);
+        document.insertString(0, "kept", null);
+        document.insertString(4, " lost", null);
+        journal.closeAndWait(false);
+
+        byte[] bytes = Files.readAllBytes(journal.getFile().toPath());
+        Files.write(journal.getFile().toPath(), Arrays.copyOf(bytes, bytes.length - 2));
+
+        PieceTableDocument replayed = new PieceTableDocument();
+        assertEquals(false, EditJournal.replay(journal.getFile(), replayed));
+        assertEquals("kept", replayed.getText(0, replayed.getLength()));
+    }
+
+    private static PieceTableDocument load(char[] text) throws Exception
+    {
+        CharSpool spool = new CharSpool();
+        spool.append(text, 0, text.length);
+        PieceTableDocument document = new PieceTableDocument(spool);
+        document.appendOriginal(0, spool.length());
+        return document;
+    }
+}
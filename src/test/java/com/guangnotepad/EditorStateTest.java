@@ -0,0 +1,75 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+
+import org.junit.Test;
+
+/**
+ * Many document events and title changes in one frame give one update of the listeners.
+ */
+public class EditorStateTest
+{
+    @Test
+    public void manyEventsGiveOneUpdate() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        EditorState state = new EditorState();
+        AtomicInteger updates = new AtomicInteger();
+        state.addListener(s -> updates.incrementAndGet());
+
+        // 100000 inserts and a title change on the Event Dispatch Thread
+        // 在事件调度线程上进行100000次插入和一次标题更改
+        SwingUtilities.invokeAndWait(() ->
+        {
+            state.setDocument(document);
+            state.setTitle("notes.txt", null, false);
+            try
+            {
+                for (int i = 0; i < 100000; i++)
+                {
+                    document.insertString(document.getLength(), i % 10 == 9 ? "\n" : "a", null);
+                    state.setModified(true);
+                }
+            }
+            catch (BadLocationException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        });
+        waitForUpdates(updates, 1);
+        Thread.sleep(EditorState.FRAME_MILLIS * 4);
+        SwingUtilities.invokeAndWait(() -> { });
+
+        assertEquals(1, updates.get());
+        assertEquals(100000, state.getLength());
+        assertEquals(10001, state.getLineCount());
+        assertEquals("notes.txt — Modified", state.getTitle());
+
+        // Loading title is shown while loading and goes away when it stops
+        // 加载时显示加载标题，停止时消失
+        SwingUtilities.invokeAndWait(() ->
+        {
+            state.setLoading("other.txt", -1);
+            state.setLoading("other.txt", 40);
+            assertEquals("other.txt — Loading 40%", state.getTitle());
+            state.loadingStopped();
+        });
+        waitForUpdates(updates, 2);
+        assertEquals("notes.txt — Modified", state.getTitle());
+    }
+
+    private static void waitForUpdates(AtomicInteger updates, int count) throws Exception
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (updates.get() < count && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        assertTrue(updates.get() >= count);
+    }
+}
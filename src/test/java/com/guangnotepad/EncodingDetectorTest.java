@@ -0,0 +1,79 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+/**
+ * Encoding detection reads a fixed number of bytes and caches its results.
+ */
+public class EncodingDetectorTest
+{
+    @Test
+    public void byteOrderMarks()
+    {
+        assertEquals("UTF-8", EncodingDetector.detectBom(new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a' }));
+        assertEquals("UTF-16LE", EncodingDetector.detectBom(new byte[] { (byte) 0xFF, (byte) 0xFE, 'a', 0 }));
+        assertEquals("UTF-16BE", EncodingDetector.detectBom(new byte[] { (byte) 0xFE, (byte) 0xFF }));
+        assertEquals(null, EncodingDetector.detectBom(new byte[] { 'a' }));
+    }
+
+    @Test
+    public void strictUtf8()
+    {
+        byte[] text = "текст 文本".getBytes(Charset.forName("UTF-8"));
+        assertEquals(1, EncodingDetector.checkUtf8(text, false, true));
+        assertEquals(0, EncodingDetector.checkUtf8("ascii".getBytes(), false, true));
+        assertEquals(-1, EncodingDetector.checkUtf8("текст".getBytes(Charset.forName("CP1251")), false, true));
+
+        // Samples cut inside a character are accepted, the real end of the file is not
+        byte[] cut = new byte[text.length - 4];
+        System.arraycopy(text, 1, cut, 0, cut.length);
+        assertEquals(1, EncodingDetector.checkUtf8(cut, true, false));
+        assertEquals(-1, EncodingDetector.checkUtf8(cut, false, true));
+    }
+
+    @Test
+    public void largeFileIsSampledAndCached() throws Exception
+    {
+        File file = File.createTempFile("guangnotepad", ".txt");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            byte[] line = "строка текста\n".getBytes(Charset.forName("UTF-8"));
+            for (int i = 0; i < 100000; i++)
+            {
+                out.write(line);
+            }
+        }
+
+        EncodingDetector detector = new EncodingDetector();
+        assertEquals("UTF-8", detector.detect(file));
+        assertEquals("UTF-8", detector.detect(file));
+        assertEquals(1, detector.getReads());
+
+        // Changed file is detected again
+        try (FileOutputStream out = new FileOutputStream(file, true))
+        {
+            out.write('x');
+        }
+        detector.detect(file);
+        assertEquals(2, detector.getReads());
+    }
+
+    @Test
+    public void headOfCompressedTextMayEndInsideACharacter() throws Exception
+    {
+        File file = File.createTempFile("guangnotepad", ".txt.gz");
+        file.deleteOnExit();
+        byte[] text = "текст ".getBytes(Charset.forName("UTF-8"));
+        byte[] head = new byte[EncodingDetector.SAMPLE_BYTES];
+        for (int i = 0; i < head.length; i++) head[i] = text[i % text.length];
+
+        assertEquals("UTF-8", new EncodingDetector().detect(file, head));
+    }
+}
@@ -0,0 +1,77 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Search as you type finds the same matches by scanning and by checking the matches of a shorter query.
+ */
+public class IncrementalSearchTest
+{
+    @Test
+    public void extendedQueryReusesPreviousMatches() throws Exception
+    {
+        Random random = new Random(5);
+        PieceTableDocument document = new PieceTableDocument();
+        String[] words = { "cat", "Catalog", "cab", "concat", "dog", " ", "\n" };
+        for (int i = 0; i < 5000; i++)
+        {
+            document.insertString(random.nextInt(document.getLength() + 1), words[random.nextInt(words.length)], null);
+        }
+        String text = document.getText(0, document.getLength());
+
+        for (boolean matchCase : new boolean[] { true, false })
+        {
+            List<Integer> previous = find(document, "ca", matchCase, null);
+            List<Integer> scanned = find(document, "cat", matchCase, null);
+            assertEquals(scanned, find(document, "cat", matchCase, previous));
+            assertEquals(find(document, "catalog", matchCase, null), find(document, "catalog", matchCase, scanned));
+        }
+        assertEquals(TextMatcherTest.indexOf(text, "cat"), find(document, "cat", true, null));
+    }
+
+    @Test
+    public void queriesWithBordersAreScannedAgain()
+    {
+        assertTrue(IncrementalSearch.extendsQuery("ca", "cat", true));
+        assertTrue(IncrementalSearch.extendsQuery("CA", "cat", false));
+        assertFalse(IncrementalSearch.extendsQuery("CA", "cat", true));
+        assertFalse(IncrementalSearch.extendsQuery("cat", "cat", true));
+        assertFalse(IncrementalSearch.extendsQuery("cat", "ca", true));
+
+        // "aa" matches "aaab" at 0 only, "aab" matches at 1
+        assertFalse(IncrementalSearch.extendsQuery("aa", "aab", true));
+        assertFalse(IncrementalSearch.extendsQuery("abca", "abcab", true));
+    }
+
+    private static List<Integer> find(PieceTableDocument document, String word, boolean matchCase,
+                                      List<Integer> previous) throws Exception
+    {
+        int[] candidates = null;
+        if (previous != null)
+        {
+            candidates = new int[previous.size()];
+            for (int i = 0; i < candidates.length; i++)
+            {
+                candidates[i] = previous.get(i);
+            }
+        }
+
+        IncrementalSearch search = new IncrementalSearch(null, document, TextMatcher.of(word, matchCase, false),
+            candidates, candidates == null ? 0 : candidates.length);
+        List<Integer> found = new ArrayList<>();
+        search.search(starts ->
+        {
+            for (int start : starts) found.add(start);
+        });
+        search.getSnapshot().release();
+        return found;
+    }
+}
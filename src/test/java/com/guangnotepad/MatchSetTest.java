@@ -0,0 +1,164 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Matches follow random edits and stay the same as the matches of a new search.
+ */
+public class MatchSetTest
+{
+    @Test
+    public void literalMatchesFollowEdits() throws Exception
+    {
+        for (boolean wholeWord : new boolean[] { false, true })
+        {
+            TextMatcher matcher = TextMatcher.of("cat", false, wholeWord);
+            PieceTableDocument document = randomDocument(new String[] { "cat", "Cat ", "c", "at", " ", "x", "\n" }, 7);
+            MatchSet matches = new MatchSet();
+            document.getSearchIndex().findAll(matcher, matches);
+            matches.track(document, MatchSet.literal(matcher));
+
+            Random random = new Random(11);
+            String[] typed = { "c", "a", "t", "cat", " ", "_", "CAT" };
+            for (int i = 0; i < 2000; i++)
+            {
+                edit(document, random, typed);
+                if (i % 50 == 0) assertEquals(rescan(document, matcher), starts(matches));
+            }
+            assertEquals(rescan(document, matcher), starts(matches));
+            matches.dispose();
+        }
+    }
+
+    @Test
+    public void regexMatchesFollowEdits() throws Exception
+    {
+        Pattern pattern = RegexSearch.compile("\\d+", true, false);
+        PieceTableDocument document = randomDocument(new String[] { "12", "7", "ab", " ", "\n" }, 13);
+        MatchSet matches = new MatchSet();
+        Matcher found = pattern.matcher(document.getText(0, document.getLength()));
+        while (found.find())
+        {
+            matches.add(found.start(), found.end());
+        }
+        matches.track(document, MatchSet.regex(pattern));
+
+        Random random = new Random(17);
+        String[] typed = { "1", "23", "x", " " };
+        for (int i = 0; i < 1000; i++)
+        {
+            edit(document, random, typed);
+        }
+
+        List<Integer> expected = new ArrayList<>();
+        found = pattern.matcher(document.getText(0, document.getLength()));
+        while (found.find())
+        {
+            expected.add(found.start());
+            expected.add(found.end());
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++)
+        {
+            actual.add(matches.getStart(i));
+            actual.add(matches.getEnd(i));
+        }
+        assertEquals(expected, actual);
+        matches.dispose();
+    }
+
+    @Test
+    public void editsReportTheChangedMatches() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        document.insertString(0, "cat cat cat cat", null);
+        TextMatcher matcher = TextMatcher.of("cat", true, true);
+        MatchSet matches = new MatchSet();
+        document.getSearchIndex().findAll(matcher, matches);
+        matches.track(document, MatchSet.literal(matcher));
+        int[] reported = new int[3];
+        matches.setListener((index, removed, added) ->
+        {
+            reported[0] = index;
+            reported[1] = removed;
+            reported[2] = added;
+        });
+
+        // Typing into the second match breaks it, later matches only move
+        // 在第二个匹配项中输入会破坏它，后面的匹配项只是移动
+        document.insertString(5, "x", null);
+        assertEquals(3, matches.size());
+        assertEquals(9, matches.getStart(1));
+        assertEquals(16, matches.getEnd(2));
+        assertEquals(reported[1] - 1, reported[2]);
+
+        // Memory stays at 8 bytes per match once the set is trimmed
+        // 匹配集被修剪后，内存保持每个匹配项8字节
+        for (int i = 0; i < 10000; i++)
+        {
+            matches.add(100 + i * 4, 103 + i * 4);
+        }
+        matches.trim();
+        assertEquals(10003, matches.size());
+        assertEquals(8L * (10003 + 16), matches.getMemoryBytes());
+        matches.dispose();
+    }
+
+    private static PieceTableDocument randomDocument(String[] words, long seed) throws Exception
+    {
+        Random random = new Random(seed);
+        PieceTableDocument document = new PieceTableDocument();
+        for (int i = 0; i < 3000; i++)
+        {
+            document.insertString(random.nextInt(document.getLength() + 1), words[random.nextInt(words.length)], null);
+        }
+        return document;
+    }
+
+    // Typing or deleting a few chars somewhere in the document
+    // 在文档中的某处输入或删除几个字符
+    private static void edit(PieceTableDocument document, Random random, String[] typed) throws Exception
+    {
+        int offset = random.nextInt(document.getLength() + 1);
+        if (random.nextBoolean() || document.getLength() < 10)
+        {
+            document.insertString(offset, typed[random.nextInt(typed.length)], null);
+        }
+        else
+        {
+            document.remove(offset, Math.min(random.nextInt(4) + 1, document.getLength() - offset));
+        }
+    }
+
+    private static List<Integer> rescan(PieceTableDocument document, TextMatcher matcher) throws Exception
+    {
+        char[] text = document.getText(0, document.getLength()).toCharArray();
+        List<Integer> found = new ArrayList<>();
+        int i = 0;
+        while ((i = matcher.find(text, 0, text.length, i, text.length)) >= 0)
+        {
+            found.add(i);
+            i += matcher.getText().length();
+        }
+        return found;
+    }
+
+    private static List<Integer> starts(MatchSet matches)
+    {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++)
+        {
+            starts.add(matches.getStart(i));
+            assertEquals(matches.getStart(i) + 3, matches.getEnd(i));
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,53 @@
+package com.guangnotepad;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * Load times of the same styled document saved as .rtf and in the native format.
+ * Run with: java -cp target/classes:target/test-classes com.guangnotepad.NativeFormatBenchmark [megabytes]
+ */
+public class NativeFormatBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        File rtf = File.createTempFile("benchmark", ".rtf");
+        File gnd = File.createTempFile("benchmark", "." + NativeFormat.EXTENSION);
+        rtf.deleteOnExit();
+        gnd.deleteOnExit();
+        Files.write(rtf.toPath(), RtfBenchmark.generate(megabytes << 20));
+
+        PieceTableDocument document = readRtf(rtf);
+        DocumentSnapshot snapshot = document.snapshot(true);
+        DocumentSaver.saveNative(snapshot, gnd);
+        snapshot.release();
+        document = null;
+        System.out.println("rtf size: " + rtf.length() + " bytes, gnd size: " + gnd.length() + " bytes");
+
+        for (int round = 0; round < 3; round++)
+        {
+            long start = System.nanoTime();
+            readRtf(rtf);
+            long rtfTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            NativeFormat.read(gnd, new PieceTableDocument());
+            long nativeTime = System.nanoTime() - start;
+
+            System.out.printf("round %d: rtf %d ms, gnd %d ms%n", round, rtfTime / 1000000, nativeTime / 1000000);
+        }
+    }
+
+    private static PieceTableDocument readRtf(File file) throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        try (InputStream in = new FileInputStream(file))
+        {
+            new RtfReader(document).read(in);
+        }
+        return document;
+    }
+}
@@ -0,0 +1,99 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.StyleConstants;
+
+import org.junit.Test;
+
+/**
+ * Documents saved in the native format are loaded with the same text and character attributes.
+ */
+public class NativeFormatTest
+{
+    private static final String LONG = new String(new char[100]).replace('\0', 'x');
+
+    @Test
+    public void styledDocumentRoundTrip() throws Exception
+    {
+        PieceTableDocument document = styled(3);
+        PieceTableDocument read = read(save(document));
+
+        assertEquals(document.getText(0, document.getLength()), read.getText(0, read.getLength()));
+        assertSameRuns(document, read);
+    }
+
+    @Test
+    public void bigDocumentIsAppendedInBatches() throws Exception
+    {
+        PieceTableDocument document = styled(10000);
+        PieceTableDocument read = read(save(document));
+
+        assertTrue(read.getLength() > 1 << 20);
+        assertEquals(document.getText(0, document.getLength()), read.getText(0, read.getLength()));
+        assertEquals(document.getDefaultRootElement().getElementCount(), read.getDefaultRootElement().getElementCount());
+        assertSameRuns(document, read);
+    }
+
+    @Test
+    public void brokenFileIsRejected() throws Exception
+    {
+        File file = save(styled(3));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 10));
+        try
+        {
+            read(file);
+            fail();
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    // Lines with plain, bold and colored runs
+    private static PieceTableDocument styled(int lines) throws Exception
+    {
+        return StyledDocuments.lines(lines, "", " plain text to make the line longer, " + LONG);
+    }
+
+    private static File save(PieceTableDocument document) throws Exception
+    {
+        File file = File.createTempFile("native", "." + NativeFormat.EXTENSION);
+        file.deleteOnExit();
+        DocumentSnapshot snapshot = document.snapshot(true);
+        DocumentSaver.saveNative(snapshot, file);
+        snapshot.release();
+        return file;
+    }
+
+    private static PieceTableDocument read(File file) throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        NativeFormat.read(file, document);
+        return document;
+    }
+
+    private static void assertSameRuns(PieceTableDocument expected, PieceTableDocument actual)
+    {
+        for (int offset = 0; offset < expected.getLength(); offset += 3)
+        {
+            AttributeSet a = expected.getCharacterElement(offset).getAttributes();
+            AttributeSet b = actual.getCharacterElement(offset).getAttributes();
+            assertEquals(StyleConstants.isBold(a), StyleConstants.isBold(b));
+            assertEquals(StyleConstants.isItalic(a), StyleConstants.isItalic(b));
+            assertEquals(a.getAttribute(StyleConstants.FontFamily), b.getAttribute(StyleConstants.FontFamily));
+            assertEquals(a.getAttribute(StyleConstants.FontSize), b.getAttribute(StyleConstants.FontSize));
+            assertEquals(a.getAttribute(StyleConstants.Foreground), b.getAttribute(StyleConstants.Foreground));
+            assertEquals(a.getAttribute(StyleConstants.Background), b.getAttribute(StyleConstants.Background));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
+import java.io.StringReader;
+import javax.swing.JTextPane;
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+/**
+ * Chunked paste inserts the whole text with newlines for line ends, also where chunks meet,
+ * And a paste that is finished at once doesn't stop the next one.
+ */
+public class PasteTaskTest
+{
+    @Test
+    public void chunksGiveTheWholeText() throws Exception
+    {
+        StringBuilder pasted = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        while (pasted.length() < 3 * PasteTask.CHUNK)
+        {
+            // A carriage return ends the first chunk, its line feed starts the second one
+            // 回车符结束第一个块，其换行符开始第二个块
+            if (pasted.length() == PasteTask.CHUNK - 1)
+            {
+                pasted.append("\r\n");
+                expected.append('\n');
+                continue;
+            }
+            pasted.append("line\r\nold mac\rend");
+            expected.append("line\nold mac\nend");
+        }
+
+        PieceTableDocument document = new PieceTableDocument();
+        document.insertString(0, "[]", null);
+        PasteTask task = new PasteTask(document, 1, null, new StringReader(pasted.toString()));
+        int chunks = 0;
+        while (task.pasteChunk())
+        {
+            chunks++;
+        }
+        assertEquals(4, chunks);
+        assertEquals("[" + expected + "]", document.getText(0, document.getLength()));
+        assertEquals(expected.length() + 1, task.getEnd());
+    }
+
+    @Test
+    public void smallPastesFollowEachOther() throws Exception
+    {
+        SwingUtilities.invokeAndWait(() ->
+        {
+            JTextPane textArea = new JTextPane(new PieceTableDocument());
+            Clipboard clipboard = new Clipboard("test");
+            clipboard.setContents(new StringSelection("word "), null);
+            EditFunction edit = new EditFunction(null);
+
+            edit.paste(textArea, clipboard);
+            edit.paste(textArea, clipboard);
+            assertEquals("word word ", textArea.getText());
+            assertEquals(10, textArea.getCaretPosition());
+            assertEquals(true, textArea.isEditable());
+        });
+    }
+
+    @Test
+    public void plainTextIsChosenOverMarkup() throws Exception
+    {
+        DataFlavor html = new DataFlavor("text/html;charset=UTF-8;class=java.io.InputStream");
+        DataFlavor rtf = new DataFlavor("text/rtf;class=java.io.InputStream");
+        DataFlavor plain = new DataFlavor("text/plain;charset=UTF-8;class=java.io.InputStream");
+
+        assertEquals(plain, PasteTask.selectFlavor(new DataFlavor[] { html, rtf, DataFlavor.stringFlavor, plain }));
+        assertEquals(DataFlavor.stringFlavor, PasteTask.selectFlavor(new DataFlavor[] { html, rtf, DataFlavor.stringFlavor }));
+        assertEquals(html, PasteTask.selectFlavor(new DataFlavor[] { html }));
+    }
+}
@@ -0,0 +1,226 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import javax.swing.undo.UndoManager;
+
+import org.junit.Test;
+
+/**
+ * Piece table document must behave exactly like DefaultStyledDocument.
+ */
+public class PieceTableDocumentTest
+{
+    @Test
+    public void randomEditsMatchDefaultDocument() throws Exception
+    {
+        Random random = new Random(42);
+        PieceTableDocument pieces = new PieceTableDocument();
+        DefaultStyledDocument expected = new DefaultStyledDocument();
+        UndoManager piecesUndo = new UndoManager();
+        UndoManager expectedUndo = new UndoManager();
+        pieces.addUndoableEditListener(e -> piecesUndo.addEdit(e.getEdit()));
+        expected.addUndoableEditListener(e -> expectedUndo.addEdit(e.getEdit()));
+
+        Position[] piecesPositions = new Position[20];
+        Position[] expectedPositions = new Position[20];
+
+        for (int step = 0; step < 3000; step++)
+        {
+            int operation = random.nextInt(10);
+            int length = expected.getLength();
+
+            if (operation < 5 || length == 0)
+            {
+                int offset = random.nextInt(length + 1);
+                String text = randomText(random);
+                pieces.insertString(offset, text, null);
+                expected.insertString(offset, text, null);
+            }
+            else if (operation < 8)
+            {
+                int offset = random.nextInt(length);
+                int count = random.nextInt(Math.min(20, length - offset) + 1);
+                pieces.remove(offset, count);
+                expected.remove(offset, count);
+            }
+            else if (operation == 8 && piecesUndo.canUndo())
+            {
+                piecesUndo.undo();
+                expectedUndo.undo();
+                forget(piecesPositions, expectedPositions);
+            }
+            else if (piecesUndo.canRedo())
+            {
+                piecesUndo.redo();
+                expectedUndo.redo();
+                forget(piecesPositions, expectedPositions);
+            }
+
+            // Positions are created at random places and checked after every step,
+            // Positions that share a collapsed mark are restored differently by undo, so undo starts a new set
+            // (element positions are still checked through the element structure)
+            int slot = random.nextInt(piecesPositions.length);
+            int offset = random.nextInt(expected.getLength() + 1);
+            piecesPositions[slot] = pieces.createPosition(offset);
+            expectedPositions[slot] = expected.createPosition(offset);
+
+            assertSameDocument(expected, pieces);
+            for (int i = 0; i < piecesPositions.length; i++)
+            {
+                if (expectedPositions[i] != null && piecesPositions[i] != null)
+                {
+                    assertEquals(expectedPositions[i].getOffset(), piecesPositions[i].getOffset());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void originalTextStaysInSpool() throws Exception
+    {
+        CharSpool spool = new CharSpool();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300000; i++)
+        {
+            text.append("line ").append(i).append('\n');
+        }
+        char[] chars = text.toString().toCharArray();
+
+        // A trimmed tail grows again when more text comes
+        spool.append(chars, 0, 1000);
+        spool.trim();
+        spool.append(chars, 1000, chars.length - 1000);
+
+        PieceTableDocument document = new PieceTableDocument(spool);
+        document.appendOriginal(0, spool.length());
+        assertEquals(text.toString(), document.getText(0, document.getLength()));
+        assertEquals(300001, document.getDefaultRootElement().getElementCount());
+
+        // Partial segments walk through the document piece by piece
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        StringBuilder read = new StringBuilder();
+        int offset = 0;
+        while (offset < document.getLength())
+        {
+            document.getText(offset, document.getLength() - offset, segment);
+            read.append(segment.array, segment.offset, segment.count);
+            offset += segment.count;
+        }
+        assertEquals(text.toString(), read.toString());
+
+        document.insertString(6, "typed", null);
+        document.remove(0, 5);
+        assertEquals(text.substring(5, 6) + "typed" + text.substring(6, 100), document.getText(0, 100));
+        document.dispose();
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterEdits() throws Exception
+    {
+        CharSpool spool = new CharSpool();
+        char[] chars = "loaded text\nsecond line\n".toCharArray();
+        spool.append(chars, 0, chars.length);
+        PieceTableDocument document = new PieceTableDocument(spool);
+        document.appendOriginal(0, spool.length());
+        document.insertString(0, "typed ", null);
+
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        document.setCharacterAttributes(0, 5, bold, false);
+
+        DocumentSnapshot snapshot = document.snapshot(true);
+        String expected = document.getText(0, document.getLength());
+        document.remove(0, 10);
+        document.insertString(3, "more", null);
+        assertEquals(true, snapshot.isOutdated());
+
+        // Spool is kept until the snapshot is released
+        document.dispose();
+        assertEquals(expected, snapshot.getText(0, snapshot.getLength()));
+
+        assertEquals(true, StyleConstants.isBold(runAttributesAt(snapshot, 2)));
+        assertEquals(false, StyleConstants.isBold(runAttributesAt(snapshot, 7)));
+        snapshot.release();
+    }
+
+    @Test
+    public void replaceAllIsOneUndoableEdit() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        UndoManager undo = new UndoManager();
+        document.addUndoableEditListener(undo);
+        String text = "cat dog cat\ncat bird";
+        document.insertString(0, text, null);
+        undo.discardAllEdits();
+
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        document.setCharacterAttributes(8, 3, bold, false);
+        undo.discardAllEdits();
+
+        document.replaceAll(new int[] { 0, 8, 12 }, new int[] { 3, 11, 15 }, new String[] { "lion", "ox", "" }, 3);
+        assertEquals("lion dog ox\n bird", document.getText(0, document.getLength()));
+        assertEquals(true, StyleConstants.isBold(document.getCharacterElement(9).getAttributes()));
+        assertEquals(false, StyleConstants.isBold(document.getCharacterElement(3).getAttributes()));
+
+        undo.undo();
+        assertEquals(false, undo.canUndo());
+        assertEquals(text, document.getText(0, document.getLength()));
+        assertEquals(true, StyleConstants.isBold(document.getCharacterElement(9).getAttributes()));
+        undo.redo();
+        assertEquals("lion dog ox\n bird", document.getText(0, document.getLength()));
+    }
+
+    private static void forget(Position[] a, Position[] b)
+    {
+        Arrays.fill(a, null);
+        Arrays.fill(b, null);
+    }
+
+    private static String randomText(Random random)
+    {
+        String alphabet = "abc \n";
+        StringBuilder builder = new StringBuilder();
+        int length = 1 + random.nextInt(random.nextInt(10) == 0 ? 200 : 8);
+        for (int i = 0; i < length; i++)
+        {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    private static AttributeSet runAttributesAt(DocumentSnapshot snapshot, int offset)
+    {
+        int run = 0;
+        while (snapshot.getRunEnd(run) <= offset) run++;
+        return snapshot.getRunAttributes(run);
+    }
+
+    private static void assertSameDocument(StyledDocument expected, StyledDocument actual) throws BadLocationException
+    {
+        assertEquals(expected.getLength(), actual.getLength());
+        assertEquals(expected.getText(0, expected.getLength()), actual.getText(0, actual.getLength()));
+
+        Element expectedRoot = expected.getDefaultRootElement();
+        Element actualRoot = actual.getDefaultRootElement();
+        assertEquals(expectedRoot.getElementCount(), actualRoot.getElementCount());
+        for (int i = 0; i < expectedRoot.getElementCount(); i++)
+        {
+            assertEquals(expectedRoot.getElement(i).getStartOffset(), actualRoot.getElement(i).getStartOffset());
+            assertEquals(expectedRoot.getElement(i).getEndOffset(), actualRoot.getElement(i).getEndOffset());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Regular expressions over a document snapshot: same matches as over a String, timeout and group references.
+ */
+public class RegexSearchTest
+{
+    @Test
+    public void matchesAcrossPiecesLikeAString() throws Exception
+    {
+        Random random = new Random(3);
+        PieceTableDocument document = new PieceTableDocument();
+        String[] words = { "cat ", "Cat7 ", "dog\n", "a1b2 ", "  ", "文本 " };
+        for (int i = 0; i < 3000; i++)
+        {
+            document.insertString(random.nextInt(document.getLength() + 1), words[random.nextInt(words.length)], null);
+        }
+        String text = document.getText(0, document.getLength());
+
+        for (String regex : new String[] { "cat\\d?", "\\w+\\s+dog", "^dog$", "(?<=a)1b", "文.", "" })
+        {
+            for (Pattern pattern : new Pattern[] { RegexSearch.compile(regex, true, false),
+                RegexSearch.compile(regex, false, true) })
+            {
+                List<Integer> expected = new ArrayList<>();
+                Matcher matcher = pattern.matcher(text);
+                while (matcher.find())
+                {
+                    expected.add(matcher.start());
+                    expected.add(matcher.end());
+                }
+
+                List<Integer> found = new ArrayList<>();
+                DocumentSnapshot snapshot = document.snapshot(false);
+                RegexSearch.findAll(new DocumentCharSequence(snapshot), pattern, 0, (start, end) ->
+                {
+                    found.add(start);
+                    found.add(end);
+                });
+                snapshot.release();
+                assertEquals(pattern.pattern(), expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void runawayPatternTimesOut() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        document.insertString(0, "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!", null);
+        DocumentSnapshot snapshot = document.snapshot(false);
+
+        long start = System.nanoTime();
+        try
+        {
+            RegexSearch.findAll(new DocumentCharSequence(snapshot), Pattern.compile("(a*)*\\1b"), 200, (s, e) -> { });
+            fail("Search should have timed out");
+        }
+        catch (CancellationException e)
+        {
+            assertTrue((System.nanoTime() - start) / 1000000 < 5000);
+        }
+        snapshot.release();
+    }
+
+    @Test
+    public void replacementRefersToGroups()
+    {
+        Matcher matcher = Pattern.compile("(?<key>\\w+)=(\\w+)").matcher("size=12");
+        assertTrue(matcher.find());
+        assertEquals("12:size", RegexSearch.expand(matcher, "$2:${key}"));
+        assertEquals("size0 $1", RegexSearch.expand(matcher, "$10 \\$1"));
+        assertEquals(matcher.replaceFirst("[$0|$2$1]"), "[" + RegexSearch.expand(matcher, "$0|$2$1") + "]");
+    }
+}
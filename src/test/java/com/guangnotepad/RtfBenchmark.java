@@ -0,0 +1,85 @@
+package com.guangnotepad;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import javax.swing.text.rtf.RTFEditorKit;
+
+/**
+ * Load and save times of RtfReader and RtfWriter compared with RTFEditorKit.
+ * Run with: java -cp target/classes:target/test-classes com.guangnotepad.RtfBenchmark [megabytes]
+ */
+public class RtfBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        byte[] rtf = generate(megabytes << 20);
+        System.out.println("rtf size: " + rtf.length + " bytes");
+
+        for (int round = 0; round < 2; round++)
+        {
+            long start = System.nanoTime();
+            PieceTableDocument document = new PieceTableDocument();
+            new RtfReader(document).read(new ByteArrayInputStream(rtf));
+            long readerTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PieceTableDocument kitDocument = new PieceTableDocument();
+            new RTFEditorKit().read(new InputStreamReader(new ByteArrayInputStream(rtf), "ISO-8859-1"), kitDocument, 0);
+            long kitReadTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            DocumentSnapshot snapshot = document.snapshot(true);
+            RtfWriter.write(snapshot, new NullStream());
+            snapshot.release();
+            long writerTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            new RTFEditorKit().write(new NullStream(), document, 0, document.getLength());
+            long kitWriteTime = System.nanoTime() - start;
+
+            System.out.printf("round %d: read %d ms (RTFEditorKit %d ms), write %d ms (RTFEditorKit %d ms)%n", round,
+                readerTime / 1000000, kitReadTime / 1000000, writerTime / 1000000, kitWriteTime / 1000000);
+        }
+    }
+
+    // Styled text like FormatFunction produces: fonts, sizes, bold and italic, colors
+    static byte[] generate(int size) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 4096);
+        out.write(("{\\rtf1\\ansi\\ansicpg1252\\deff0\\uc1\n{\\fonttbl{\\f0\\fnil Serif;}{\\f1\\fnil Monospaced;}}\n"
+            + "{\\colortbl;\\red255\\green0\\blue0;\\red0\\green0\\blue255;\\red255\\green255\\blue0;}\n").getBytes("US-ASCII"));
+        String[] formats = {
+            "\\plain\\f0\\fs24 ", "\\plain\\f0\\fs24\\b ", "\\plain\\f1\\fs20\\i\\cf1 ", "\\plain\\f0\\fs28\\cf2\\cb3 "
+        };
+        int line = 0;
+        while (out.size() < size)
+        {
+            for (int i = 0; i < formats.length; i++)
+            {
+                out.write(formats[(line + i) % formats.length].getBytes("US-ASCII"));
+                out.write(("Line " + line + " run " + i + " with some text \\{braces\\} and \\u1058?\\u1077?\\u1082?\\u1089?\\u1090? ")
+                    .getBytes("US-ASCII"));
+            }
+            out.write("\\par\n".getBytes("US-ASCII"));
+            line++;
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private static class NullStream extends OutputStream
+    {
+        @Override
+        public void write(int b)
+        {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+        }
+    }
+}
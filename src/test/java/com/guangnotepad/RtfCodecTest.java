@@ -0,0 +1,129 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.Element;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+import javax.swing.text.StyledDocument;
+import javax.swing.text.rtf.RTFEditorKit;
+
+import org.junit.Test;
+
+/**
+ * The rtf reader and writer keep text, character attributes and alignment, and agree with RTFEditorKit.
+ */
+public class RtfCodecTest
+{
+    @Test
+    public void styledDocumentRoundTrip() throws Exception
+    {
+        PieceTableDocument document = styled(3);
+        PieceTableDocument read = read(write(document));
+
+        assertEquals(document.getText(0, document.getLength()), read.getText(0, read.getLength()));
+        assertEquals(structure(document), structure(read));
+    }
+
+    @Test
+    public void batchesGiveTheSameElementsAsInsertString() throws Exception
+    {
+        PieceTableDocument document = styled(2000);
+        PieceTableDocument read = read(write(document));
+
+        assertTrue(read.getLength() > 64 << 10);
+        assertEquals(document.getText(0, document.getLength()), read.getText(0, read.getLength()));
+        assertEquals(structure(document), structure(read));
+    }
+
+    @Test
+    public void readsWhatRtfEditorKitReads() throws Exception
+    {
+        PieceTableDocument document = styled(20);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new RTFEditorKit().write(out, document, 0, document.getLength());
+
+        PieceTableDocument kit = new PieceTableDocument();
+        new RTFEditorKit().read(new InputStreamReader(new ByteArrayInputStream(out.toByteArray()), "ISO-8859-1"), kit, 0);
+        PieceTableDocument read = read(out.toByteArray());
+
+        assertEquals(kit.getText(0, kit.getLength()), read.getText(0, read.getLength()));
+        for (int offset = 0; offset < read.getLength(); offset += 7)
+        {
+            AttributeSet expected = kit.getCharacterElement(offset).getAttributes();
+            AttributeSet actual = read.getCharacterElement(offset).getAttributes();
+            assertEquals(StyleConstants.isBold(expected), StyleConstants.isBold(actual));
+            assertEquals(StyleConstants.getFontSize(expected), StyleConstants.getFontSize(actual));
+            assertEquals(StyleConstants.getForeground(expected), StyleConstants.getForeground(actual));
+        }
+    }
+
+    @Test
+    public void bytesAreDecodedWithTheCharsetOfTheFont() throws Exception
+    {
+        String rtf = "{\\rtf1\\ansi\\ansicpg1252{\\fonttbl{\\f0\\fnil\\fcharset134 \\'cb\\'ce\\'cc\\'e5;}}"
+            + "{\\*\\generator Riched20}\\f0\\fs24 \\'d6\\'d0\\'ce\\'c4\\u8364?\\par}";
+        PieceTableDocument read = read(rtf.getBytes("US-ASCII"));
+
+        assertEquals("中文€\n", read.getText(0, read.getLength()));
+        assertEquals("宋体", StyleConstants.getFontFamily(read.getCharacterElement(0).getAttributes()));
+    }
+
+    // Paragraphs of plain and styled lines with characters that must be escaped
+    private static PieceTableDocument styled(int lines) throws Exception
+    {
+        PieceTableDocument document = StyledDocuments.lines(lines, "{braces} \\ and\ttab ", " plain");
+
+        SimpleAttributeSet centered = new SimpleAttributeSet();
+        StyleConstants.setAlignment(centered, StyleConstants.ALIGN_CENTER);
+        document.setParagraphAttributes(0, 1, centered, false);
+        return document;
+    }
+
+    private static byte[] write(PieceTableDocument document) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DocumentSnapshot snapshot = document.snapshot(true);
+        RtfWriter.write(snapshot, out);
+        snapshot.release();
+        return out.toByteArray();
+    }
+
+    private static PieceTableDocument read(byte[] rtf) throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        new RtfReader(document).read(new ByteArrayInputStream(rtf));
+        return document;
+    }
+
+    // Bounds, alignment and character attributes of all paragraphs and runs
+    private static String structure(StyledDocument document)
+    {
+        StringBuilder result = new StringBuilder();
+        Element root = document.getDefaultRootElement();
+        for (int i = 0; i < root.getElementCount(); i++)
+        {
+            Element paragraph = root.getElement(i);
+            result.append(StyleConstants.getAlignment(paragraph.getAttributes())).append('[');
+            for (int j = 0; j < paragraph.getElementCount(); j++)
+            {
+                Element run = paragraph.getElement(j);
+                AttributeSet attributes = run.getAttributes();
+                result.append(run.getStartOffset()).append('-').append(run.getEndOffset())
+                    .append(StyleConstants.isBold(attributes) ? "b" : "")
+                    .append(StyleConstants.isItalic(attributes) ? "i" : "")
+                    .append(attributes.getAttribute(StyleConstants.FontFamily))
+                    .append(attributes.getAttribute(StyleConstants.FontSize))
+                    .append(attributes.getAttribute(StyleConstants.Foreground))
+                    .append(attributes.getAttribute(StyleConstants.Background)).append(' ');
+            }
+            result.append("]\n");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.guangnotepad;
+
+import java.util.Random;
+
+/**
+ * Finding all occurrences in a big document: getText and indexOf against the search index.
+ * Run with: java -Xmx4g -cp target/classes:target/test-classes com.guangnotepad.SearchIndexBenchmark [megabytes]
+ */
+public class SearchIndexBenchmark
+{
+    private static final String[] WORDS = { "the", "quick", "brown", "fox", "jumps", "over", "lazy", "dog",
+        "lorem", "ipsum", "dolor", "sit", "amet", "notepad", "search", "index" };
+
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        PieceTableDocument document = generate(megabytes << 20);
+        System.out.println("document: " + document.getLength() + " chars");
+
+        String[] queries = { "needle in a haystack", "jumps over", "zebra" };
+        for (String query : queries)
+        {
+            long start = System.nanoTime();
+            String text = document.getText(0, document.getLength());
+            int found = 0;
+            for (int i = text.indexOf(query); i >= 0; i = text.indexOf(query, i + 1)) found++;
+            text = null;
+            System.out.printf("indexOf \"%s\": %d found, %d ms%n", query, found, (System.nanoTime() - start) / 1000000);
+        }
+
+        SearchIndex index = document.getSearchIndex();
+        for (int round = 0; round < 3; round++)
+        {
+            for (String query : queries)
+            {
+                long start = System.nanoTime();
+                int found = index.findAll(query).size();
+                System.out.printf("round %d index \"%s\": %d found, %.2f ms%n", round, query, found,
+                    (System.nanoTime() - start) / 1e6);
+            }
+
+            // One edit makes one block change
+            // 一次编辑只更改一个块
+            document.insertString(document.getLength() / 2, "needle in a haystack ", null);
+        }
+        System.out.println("index: " + index.getBlockCount() + " blocks, " + index.getMemoryBytes() / 1024 + " KB");
+        document.dispose();
+    }
+
+    // Random words with a rare needle, kept in the spool like a loaded file
+    // 带有稀有目标的随机单词，像加载的文件一样保存在缓冲文件中
+    private static PieceTableDocument generate(int size) throws Exception
+    {
+        Random random = new Random(1);
+        CharSpool spool = new CharSpool();
+        StringBuilder line = new StringBuilder();
+        int length = 0;
+        while (length < size)
+        {
+            line.setLength(0);
+            for (int i = 0; i < 12; i++)
+            {
+                line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            if (random.nextInt(100000) == 0) line.append("needle in a haystack");
+            line.append('\n');
+            char[] chars = line.toString().toCharArray();
+            spool.append(chars, 0, chars.length);
+            length += chars.length;
+        }
+
+        PieceTableDocument document = new PieceTableDocument(spool);
+        document.appendOriginal(0, spool.length());
+        return document;
+    }
+}
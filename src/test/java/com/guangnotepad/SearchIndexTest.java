@@ -0,0 +1,73 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Search index finds the same matches as indexOf while the document is edited.
+ */
+public class SearchIndexTest
+{
+    private static final String[] WORDS = { "alpha", "beta", "gamma", "Alpha", "delta", "a", "ab", "文本", "\n" };
+
+    @Test
+    public void occurrencesFollowRandomEdits() throws Exception
+    {
+        Random random = new Random(7);
+        PieceTableDocument document = new PieceTableDocument();
+        SearchIndex index = new SearchIndex(document, 64, 1 << 20);
+
+        for (int step = 0; step < 2000; step++)
+        {
+            int length = document.getLength();
+            if (length > 0 && random.nextInt(4) == 0)
+            {
+                int offset = random.nextInt(length);
+                document.remove(offset, Math.min(length - offset, 1 + random.nextInt(300)));
+            }
+            else
+            {
+                StringBuilder text = new StringBuilder();
+                int words = 1 + random.nextInt(random.nextInt(10) == 0 ? 200 : 5);
+                for (int i = 0; i < words; i++)
+                {
+                    text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                document.insertString(random.nextInt(length + 1), text.toString(), null);
+            }
+
+            if (step % 50 == 0)
+            {
+                String text = document.getText(0, document.getLength());
+                for (String word : new String[] { "alpha", "pha be", "ta ga", "a", "文本 \n", "missing" })
+                {
+                    assertEquals(word, TextMatcherTest.indexOf(text, word), index.findAll(word));
+                }
+                assertEquals(TextMatcherTest.indexOf(text.toLowerCase(), "alpha"),
+                    index.findAll(TextMatcher.of("ALPHA", false, false)));
+            }
+        }
+    }
+
+    @Test
+    public void memoryStaysWithinTheLimit() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        SearchIndex index = new SearchIndex(document, 64, 64 << 10);
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+        {
+            text.append("line ").append(i).append('\n');
+        }
+        document.insertString(0, text.toString(), null);
+
+        assertEquals(1, index.findAll("line 12345\n").size());
+        assertTrue(index.getMemoryBytes() <= 64 << 10);
+        assertEquals(TextMatcherTest.indexOf(text.toString(), "line 1"), index.findAll("line 1"));
+    }
+}
@@ -0,0 +1,65 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * A session keeps the files, encodings and carets of the tabs and the selected tab.
+ * An encoding is used again only for the file it was known for.
+ */
+public class SessionTest
+{
+    @Test
+    public void tabsAreWrittenAndReadBack() throws Exception
+    {
+        File directory = Files.createTempDirectory("session").toFile();
+        File file = new File(directory, "session");
+
+        Session session = new Session();
+        session.tabs.add(new Session.Tab(new File(directory, "first.txt"), "UTF-8", 100, 1234567, 12));
+        session.tabs.add(new Session.Tab(new File(directory, "второй\tфайл.rtf"), "windows-1251", -1, 0, 0));
+        session.active = 1;
+        session.write(file);
+
+        Session read = Session.read(file);
+        assertEquals(2, read.tabs.size());
+        assertEquals(1, read.active);
+        assertEquals(new File(directory, "first.txt").getAbsoluteFile(), read.tabs.get(0).file);
+        assertEquals("UTF-8", read.tabs.get(0).encoding);
+        assertEquals(12, read.tabs.get(0).caret);
+        assertEquals(100, read.tabs.get(0).size);
+        assertEquals(1234567, read.tabs.get(0).modified);
+        assertEquals(new File(directory, "второй\tфайл.rtf").getAbsoluteFile(), read.tabs.get(1).file);
+        assertEquals("windows-1251", read.tabs.get(1).encoding);
+        assertEquals(-1, read.tabs.get(1).size);
+    }
+
+    @Test
+    public void oldSessionIsReadWithoutFileTimes() throws Exception
+    {
+        File directory = Files.createTempDirectory("session").toFile();
+        File file = new File(directory, "session");
+        Files.write(file.toPath(), "GuangNotepad session 1\nactive\t0\ntab\t5\tUTF-8\t/a.txt\n".getBytes("UTF-8"));
+
+        Session read = Session.read(file);
+        assertEquals(1, read.tabs.size());
+        assertEquals("UTF-8", read.tabs.get(0).encoding);
+        assertEquals(5, read.tabs.get(0).caret);
+        assertEquals(-1, read.tabs.get(0).size);
+    }
+
+    @Test
+    public void missingOrBrokenSessionIsEmpty() throws Exception
+    {
+        File directory = Files.createTempDirectory("session").toFile();
+        File file = new File(directory, "session");
+        assertEquals(0, Session.read(file).tabs.size());
+
+        Files.write(file.toPath(), "something else\ntab\t1\tUTF-8\t/a.txt\n".getBytes("UTF-8"));
+        assertEquals(0, Session.read(file).tabs.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.guangnotepad;
+
+import java.awt.Color;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/**
+ * Styled documents shared by the tests of the file formats.
+ */
+class StyledDocuments
+{
+    // Lines with plain, bold and colored runs, the plain text of a line is given by the test
+    static PieceTableDocument lines(int lines, String head, String tail) throws BadLocationException
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        StyleConstants.setFontFamily(bold, "Serif");
+        StyleConstants.setFontSize(bold, 18);
+        SimpleAttributeSet colored = new SimpleAttributeSet();
+        StyleConstants.setForeground(colored, Color.RED);
+        StyleConstants.setBackground(colored, Color.YELLOW);
+        StyleConstants.setItalic(colored, true);
+
+        for (int i = 0; i < lines; i++)
+        {
+            document.insertString(document.getLength(), "line " + i + " " + head, null);
+            document.insertString(document.getLength(), "bold 线", bold);
+            document.insertString(document.getLength(), " colored 😀", colored);
+            document.insertString(document.getLength(), tail + "\n", null);
+        }
+        document.insertString(document.getLength(), "last line without newline", bold);
+        return document;
+    }
+}
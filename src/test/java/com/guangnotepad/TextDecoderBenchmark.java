@@ -0,0 +1,119 @@
+package com.guangnotepad;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Reading a big text file: the old BufferedReader.readLine loop against TextDecoder into a string and into the spool,
+ * With the heap that holds the read text.
+ * Run with: java -Xmx4g -cp target/classes:target/test-classes com.guangnotepad.TextDecoderBenchmark [megabytes]
+ */
+public class TextDecoderBenchmark
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BLOCK = 256 << 10;
+
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        File file = generate(megabytes << 20);
+        System.out.println("file size: " + file.length() + " bytes");
+
+        for (int round = 0; round < 3; round++)
+        {
+            long start = System.nanoTime();
+            String lines = readLines(file);
+            long readLineTime = System.nanoTime() - start;
+            long readLineHeap = usedHeap();
+            int readLine = lines.length();
+            lines = null;
+
+            start = System.nanoTime();
+            StringBuilder decoded = new StringBuilder();
+            try (InputStream in = new FileInputStream(file))
+            {
+                new TextDecoder(UTF8, BLOCK).decodeAll(in, decoded::append);
+            }
+            long decoderTime = System.nanoTime() - start;
+            long decoderHeap = usedHeap();
+            int decoder = decoded.length();
+            decoded = null;
+
+            start = System.nanoTime();
+            CharSpool spool = new CharSpool();
+            try (InputStream in = new FileInputStream(file))
+            {
+                new TextDecoder(UTF8, BLOCK).decodeAll(in, spool::append);
+            }
+            long spoolTime = System.nanoTime() - start;
+            long spoolHeap = usedHeap();
+            int spooled = spool.length();
+            spool.close();
+
+            System.out.printf("round %d: readLine %d ms %d MB (%d chars), decoder %d ms %d MB (%d chars), " +
+                "decoder to spool %d ms %d MB (%d chars)%n", round, readLineTime / 1000000, readLineHeap >> 20, readLine,
+                decoderTime / 1000000, decoderHeap >> 20, decoder, spoolTime / 1000000, spoolHeap >> 20, spooled);
+        }
+        file.delete();
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Loop of the editor before TextDecoder, the line separators are lost
+    // TextDecoder之前编辑器的循环，行分隔符丢失
+    private static String readLines(File file) throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8)))
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                content.append(line).append("\n");
+            }
+        }
+        return content.toString();
+    }
+
+    // Lines of Latin, Cyrillic and Chinese words with \r\n and some \n separators
+    // 由拉丁文、西里尔文和中文单词组成的行，使用\r\n和一些\n分隔符
+    private static File generate(int size) throws Exception
+    {
+        String[] words = { "the", "quick", "brown", "fox", "строка", "текст", "记事本", "文本", "notepad", "lorem" };
+        Random random = new Random(1);
+        File file = File.createTempFile("guangnotepad", ".txt");
+        file.deleteOnExit();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20))
+        {
+            StringBuilder line = new StringBuilder();
+            long written = 0;
+            while (written < size)
+            {
+                line.setLength(0);
+                int count = 3 + random.nextInt(12);
+                for (int i = 0; i < count; i++)
+                {
+                    line.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                line.append(random.nextInt(50) == 0 ? "\n" : "\r\n");
+                byte[] bytes = line.toString().getBytes(UTF8);
+                out.write(bytes);
+                written += bytes.length;
+            }
+        }
+        return file;
+    }
+}
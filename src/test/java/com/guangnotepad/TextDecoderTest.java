@@ -0,0 +1,148 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Decoded text uses \n only and is saved back with the original separators.
+ */
+public class TextDecoderTest
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void mixedSeparatorsRoundTrip() throws Exception
+    {
+        String original = "first\r\nsecond\nthird\r\r\nпятая строка\rlast\r";
+        PieceTableDocument document = decode(original, 3);
+
+        assertEquals("first\nsecond\nthird\n\nпятая строка\nlast\n", document.getText(0, document.getLength()));
+        assertEquals(original, write(document));
+    }
+
+    @Test
+    public void editsKeepSeparatorsOfTheirLines() throws Exception
+    {
+        PieceTableDocument document = decode("a\r\nb\nc\r\nd", 4);
+        document.insertString(1, "xx", null);
+        document.insertString(0, "new\n", null);
+        document.remove(document.getLength() - 1, 1);
+
+        assertEquals("new\r\naxx\r\nb\nc\r\n", write(document));
+    }
+
+    @Test
+    public void blocksSplitMultiByteCharacters() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+        {
+            text.append("строка ").append(i).append(" 线 \uD83D\uDE00\r\n");
+        }
+        PieceTableDocument document = decode(text.toString(), 7);
+        assertEquals(text.toString().replace("\r\n", "\n"), document.getText(0, document.getLength()));
+        assertEquals(text.toString(), write(document));
+    }
+
+    @Test
+    public void compressedTextRoundTrip() throws Exception
+    {
+        String original = "первая\r\nsecond\n第三\r\n";
+        PieceTableDocument document = decode(original, 5);
+
+        File file = File.createTempFile("guangnotepad", ".txt.gz");
+        file.deleteOnExit();
+        DocumentSnapshot snapshot = document.snapshot(false);
+        DocumentSaver.saveCompressedText(snapshot, file, "UTF-8", endings.snapshot());
+        snapshot.release();
+
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new FileInputStream(file)))
+        {
+            byte[] buffer = new byte[256];
+            for (int n; (n = in.read(buffer)) > 0; ) decompressed.write(buffer, 0, n);
+        }
+        assertEquals(original, new String(decompressed.toByteArray(), UTF8));
+    }
+
+    @Test
+    public void growingTextKeepsCharactersSplitBetweenReads() throws Exception
+    {
+        byte[] bytes = "line 线\r\nnext\n".getBytes(UTF8);
+        LineEndings lineEndings = new LineEndings();
+        TextDecoder decoder = new TextDecoder(UTF8, 4, lineEndings);
+        StringBuilder decoded = new StringBuilder();
+
+        // First read ends inside the Chinese character and between \r and \n
+        decoder.decodeAvailable(new ByteArrayInputStream(bytes, 0, 6), (chars, offset, count) -> decoded.append(chars, offset, count));
+        assertEquals("line ", decoded.toString());
+        decoder.decodeAvailable(new ByteArrayInputStream(bytes, 6, 3), (chars, offset, count) -> decoded.append(chars, offset, count));
+        decoder.decodeAvailable(new ByteArrayInputStream(bytes, 9, bytes.length - 9), (chars, offset, count) -> decoded.append(chars, offset, count));
+
+        assertEquals("line 线\nnext\n", decoded.toString());
+        assertEquals(LineEndings.CRLF, lineEndings.getDominant());
+        assertEquals(1, lineEndings.getMixedCount());
+    }
+
+    @Test
+    public void followedLineFeedCompletesLoadedCR() throws Exception
+    {
+        assertEquals("a\r\nb\r\nc\r\n", follow("a\r\nb\r", "\nc\r\n", "a\nb\nc\n"));
+        assertEquals("a\rb\r\nc\r", follow("a\rb\r", "\nc\r", "a\nb\nc\n"));
+        assertEquals("a\rb\r\n", follow("a\rb\r", "\n", "a\nb\n"));
+    }
+
+    // Loaded text and text appended to the file later, as the follower decodes it
+    private String follow(String loaded, String appended, String expectedText) throws Exception
+    {
+        PieceTableDocument document = decode(loaded, 3);
+        LineEndings tailEndings = endings.continuation();
+        TextDecoder decoder = new TextDecoder(UTF8, 3, tailEndings);
+        if (endings.endsWithCR(document)) decoder.continueAfterCR();
+
+        StringBuilder decoded = new StringBuilder();
+        decoder.decodeAvailable(new ByteArrayInputStream(appended.getBytes(UTF8)),
+            (chars, offset, count) -> decoded.append(chars, offset, count));
+        int start = document.getLength();
+        document.insertString(start, decoded.toString(), null);
+        endings.append(document, tailEndings.take(0), start);
+
+        assertEquals(expectedText, document.getText(0, document.getLength()));
+        return write(document);
+    }
+
+    private LineEndings endings;
+
+    private PieceTableDocument decode(String text, int blockSize) throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        TextDecoder decoder = new TextDecoder(UTF8, blockSize);
+        StringBuilder decoded = new StringBuilder();
+        decoder.decodeAll(new ByteArrayInputStream(text.getBytes(UTF8)),
+            (chars, offset, count) -> decoded.append(chars, offset, count));
+        document.insertString(0, decoded.toString(), null);
+
+        endings = decoder.getLineEndings();
+        endings.bind(document);
+        return document;
+    }
+
+    private String write(PieceTableDocument document) throws Exception
+    {
+        File file = File.createTempFile("guangnotepad", ".txt");
+        file.deleteOnExit();
+        DocumentSnapshot snapshot = document.snapshot(false);
+        DocumentSaver.saveText(snapshot, file, "UTF-8", endings.snapshot());
+        snapshot.release();
+        return new String(Files.readAllBytes(file.toPath()), UTF8);
+    }
+}
@@ -0,0 +1,103 @@
+package com.guangnotepad;
+
+import java.util.Locale;
+import java.util.Random;
+import javax.swing.text.Segment;
+
+/**
+ * Counting matches in a big document: getText with indexOf against matchers on segments of the document.
+ * Run with: java -Xmx4g -cp target/classes:target/test-classes com.guangnotepad.TextMatcherBenchmark [megabytes]
+ */
+public class TextMatcherBenchmark
+{
+    private static final int CHUNK = 1 << 20;
+
+    public static void main(String[] args) throws Exception
+    {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        PieceTableDocument document = new PieceTableDocument();
+        document.insertString(0, generate(megabytes << 20), null);
+
+        String[] words = { "Notepad", "searching for a longer phrase", "qu" };
+        for (int round = 0; round < 3; round++)
+        {
+            for (String word : words)
+            {
+                long start = System.nanoTime();
+                int indexOf = countIndexOf(document, word, true);
+                long indexOfTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int lowerCase = countIndexOf(document, word, false);
+                long lowerCaseTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int horspool = countMatcher(document, TextMatcher.of(word, true, false));
+                long horspoolTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                int folded = countMatcher(document, TextMatcher.of(word, false, false));
+                long foldedTime = System.nanoTime() - start;
+
+                System.out.printf("round %d \"%s\": indexOf %d in %d ms, horspool %d in %d ms, " +
+                    "toLowerCase+indexOf %d in %d ms, horspool without case %d in %d ms%n", round, word,
+                    indexOf, indexOfTime / 1000000, horspool, horspoolTime / 1000000,
+                    lowerCase, lowerCaseTime / 1000000, folded, foldedTime / 1000000);
+            }
+        }
+    }
+
+    // The old way: a copy of the whole text (and a lowercased one without case)
+    // 旧方法：整个文本的副本（忽略大小写时还有一个小写副本）
+    private static int countIndexOf(PieceTableDocument document, String word, boolean matchCase) throws Exception
+    {
+        String text = document.getText(0, document.getLength());
+        if (!matchCase)
+        {
+            text = text.toLowerCase(Locale.ROOT);
+            word = word.toLowerCase(Locale.ROOT);
+        }
+        int count = 0;
+        for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + word.length())) count++;
+        return count;
+    }
+
+    // Matching chunks of the document, chunks overlap by the length of the word
+    // 匹配文档的块，块重叠单词的长度
+    private static int countMatcher(PieceTableDocument document, TextMatcher matcher) throws Exception
+    {
+        Segment segment = new Segment();
+        int length = document.getLength();
+        int wordLength = matcher.getText().length();
+        int count = 0;
+        int next = 0;
+        for (int start = 0; start < length; start += CHUNK)
+        {
+            int end = Math.min(length, start + CHUNK + wordLength);
+            document.getText(start, end - start, segment);
+            int base = segment.offset - start;
+            int limit = base + Math.min(length, start + CHUNK);
+            int i = base + Math.max(start, next);
+            while ((i = matcher.find(segment.array, segment.offset, segment.offset + segment.count, i, limit)) >= 0)
+            {
+                count++;
+                i += wordLength;
+                next = i - base;
+            }
+        }
+        return count;
+    }
+
+    private static String generate(int size)
+    {
+        String[] words = { "the", "quick", "brown", "fox", "Notepad", "notepad", "searching", "for", "a", "longer",
+            "phrase", "Lorem", "ipsum", "dolor", "文本", "текст" };
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder(size + 64);
+        while (text.length() < size)
+        {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(20) == 0 ? '\n' : ' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Matchers find the same matches as a plain comparison, with and without case, and whole words only.
+ */
+public class TextMatcherTest
+{
+    @Test
+    public void horspoolMatchesLikeIndexOf()
+    {
+        Random random = new Random(3);
+        for (int round = 0; round < 500; round++)
+        {
+            String text = randomText(random, 1 + random.nextInt(300));
+            String word = randomText(random, 1 + random.nextInt(4));
+            assertEquals(word + " in " + text, indexOf(text, word), findAll(TextMatcher.of(word, true, false), text));
+        }
+    }
+
+    @Test
+    public void caseIsIgnoredWithoutCopyingTheText()
+    {
+        Random random = new Random(5);
+        for (int round = 0; round < 500; round++)
+        {
+            String text = randomText(random, 1 + random.nextInt(300));
+            String word = randomText(random, 1 + random.nextInt(4));
+            assertEquals(word + " in " + text, ignoringCase(text, word), findAll(TextMatcher.of(word, false, false), text));
+        }
+        assertEquals(list(0, 9), findAll(TextMatcher.of("ıstanbul", false, false), "ISTANBUL istanbul"));
+    }
+
+    @Test
+    public void supplementaryCharactersAreFoldedAsCodePoints()
+    {
+        // Deseret capital and small letter long I
+        // 德塞雷特字母的大写和小写长I
+        String upper = "𐐀";
+        String lower = "𐐨";
+        String text = "a" + upper + "b " + lower + "b";
+        assertEquals(list(1, 5), findAll(TextMatcher.of(lower + "b", false, false), text));
+        assertEquals(list(5), findAll(TextMatcher.of(lower + "b", true, false), text));
+
+        // Supplementary letters are parts of words
+        // 增补字母是单词的一部分
+        assertEquals(list(), findAll(TextMatcher.of("b", true, true), text));
+        assertEquals(list(0), findAll(TextMatcher.of("a" + upper + "b", true, true), text));
+    }
+
+    @Test
+    public void wholeWords()
+    {
+        String text = "cat concat cat_ cat, (cat) Cat";
+        assertEquals(list(0, 16, 22, 27), findAll(TextMatcher.of("cat", false, true), text));
+        assertEquals(list(0, 16, 22), findAll(TextMatcher.of("cat", true, true), text));
+        assertEquals(list(0, 7, 11, 16, 22), findAll(TextMatcher.of("cat", true, false), text));
+    }
+
+    private static String randomText(Random random, int length)
+    {
+        String letters = "abAB éÉıI";
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            text.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        return text.toString();
+    }
+
+    private static List<Integer> findAll(TextMatcher matcher, String text)
+    {
+        char[] chars = text.toCharArray();
+        List<Integer> found = new ArrayList<>();
+        int i = 0;
+        while ((i = matcher.find(chars, 0, chars.length, i, chars.length)) >= 0)
+        {
+            found.add(i);
+            i += matcher.getText().length();
+        }
+        return found;
+    }
+
+    private static List<Integer> ignoringCase(String text, String word)
+    {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i + word.length() <= text.length(); i++)
+        {
+            if (text.regionMatches(true, i, word, 0, word.length()))
+            {
+                found.add(i);
+                i += word.length() - 1;
+            }
+        }
+        return found;
+    }
+
+    static List<Integer> indexOf(String text, String word)
+    {
+        List<Integer> found = new ArrayList<>();
+        for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + word.length()))
+        {
+            found.add(i);
+        }
+        return found;
+    }
+
+    private static List<Integer> list(Integer... values)
+    {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values) list.add(value);
+        return list;
+    }
+}
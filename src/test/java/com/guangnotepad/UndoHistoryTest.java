@@ -0,0 +1,95 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Typing is undone a word at a time and the history stays within its memory budget.
+ */
+public class UndoHistoryTest
+{
+    private long now;
+
+    @Test
+    public void typingIsUndoneByWords() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        UndoHistory history = listen(document, new UndoHistory());
+
+        type(document, "hello world", 100);
+        assertEquals(2, history.getEntryCount());
+        history.undo();
+        assertEquals("hello ", document.getText(0, document.getLength()));
+        history.undo();
+        assertEquals("", document.getText(0, document.getLength()));
+        history.redo();
+        history.redo();
+        assertEquals("hello world", document.getText(0, document.getLength()));
+
+        // A pause ends the entry, backspaces go into one entry
+        // 暂停结束条目，退格进入一个条目
+        type(document, "!", UndoHistory.TYPING_PAUSE_MILLIS + 1);
+        for (int i = 0; i < 5; i++)
+        {
+            now += 100;
+            document.remove(document.getLength() - 1, 1);
+        }
+        assertEquals(4, history.getEntryCount());
+        history.undo();
+        assertEquals("hello world!", document.getText(0, document.getLength()));
+        history.undo();
+        assertEquals("hello world", document.getText(0, document.getLength()));
+    }
+
+    @Test
+    public void oldEditsAreDroppedOverTheBudget() throws Exception
+    {
+        PieceTableDocument document = new PieceTableDocument();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        document.insertString(0, text.toString(), null);
+        UndoHistory history = listen(document, new UndoHistory(64 << 10));
+
+        // Every remove keeps 2000 chars, only the newest ones fit in the budget
+        // 每次删除保留2000个字符，只有最新的删除适合预算
+        for (int i = 0; i < 40; i++)
+        {
+            now += 10000;
+            document.remove(0, 1000);
+        }
+        assertTrue(history.getMemoryBytes() <= 64 << 10);
+        assertTrue(history.getEntryCount() < 40);
+        assertTrue(history.getEntryCount() > 10);
+
+        int steps = history.getEntryCount();
+        for (int i = 0; i < steps; i++)
+        {
+            history.undo();
+        }
+        assertEquals(100000 - (40 - steps) * 1000, document.getLength());
+        assertEquals(text.substring((40 - steps) * 1000), document.getText(0, document.getLength()));
+
+        history.discardAllEdits();
+        assertEquals(0, history.getMemoryBytes());
+    }
+
+    private UndoHistory listen(PieceTableDocument document, UndoHistory history)
+    {
+        document.addUndoableEditListener(e -> history.undoableEditHappened(e.getEdit(), now));
+        return history;
+    }
+
+    private void type(PieceTableDocument document, String text, long delay) throws Exception
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            now += i == 0 ? delay : 100;
+            document.insertString(document.getLength(), text.substring(i, i + 1), null);
+        }
+    }
+}
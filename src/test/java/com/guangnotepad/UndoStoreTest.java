@@ -0,0 +1,203 @@
+package com.guangnotepad;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.text.StyleConstants;
+
+import org.junit.Test;
+
+/**
+ * Undo goes on from disk after the entries in memory and the history is found again for the same text,
+ * Also under the name the file was saved as. Old histories are deleted.
+ */
+public class UndoStoreTest
+{
+    private long now;
+
+    @Test
+    public void undoGoesOnFromDisk() throws Exception
+    {
+        File directory = Files.createTempDirectory("history").toFile();
+        File path = new File(directory, "text.txt");
+        PieceTableDocument document = new PieceTableDocument();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++)
+        {
+            text.append((char) ('a' + i % 26));
+        }
+        document.insertString(0, text.toString(), null);
+
+        UndoHistory history = listen(document, new UndoHistory(16 << 10, directory));
+        history.saved(path, document, hash(document));
+        SimpleAttributeSet bold = new SimpleAttributeSet();
+        StyleConstants.setBold(bold, true);
+        document.setCharacterAttributes(0, 10, bold, false);
+        for (int i = 0; i < 40; i++)
+        {
+            now += 10000;
+            document.remove(100, 1000);
+        }
+        now += 10000;
+        document.insertString(5, "typed", null);
+        String edited = document.getText(0, document.getLength());
+        assertTrue(history.getEntryCount() < 42);
+        assertTrue(history.getDiskBytes() > 80000);
+
+        // All 42 edits are undone, the old ones with steps read from disk
+        // 所有42个编辑都被撤销，旧的编辑使用从磁盘读取的步骤
+        for (int i = 0; i < 42; i++)
+        {
+            history.undo();
+        }
+        assertFalse(history.canUndo());
+        assertEquals(text.toString(), document.getText(0, document.getLength()));
+        assertFalse(StyleConstants.isBold(document.getCharacterElement(3).getAttributes()));
+
+        for (int i = 0; i < 42; i++)
+        {
+            history.redo();
+        }
+        assertFalse(history.canRedo());
+        assertEquals(edited, document.getText(0, document.getLength()));
+        assertTrue(StyleConstants.isBold(document.getCharacterElement(3).getAttributes()));
+        history.discardAllEdits();
+    }
+
+    @Test
+    public void historyIsFoundForTheSavedText() throws Exception
+    {
+        File directory = Files.createTempDirectory("history").toFile();
+        File path = new File(directory, "notes.txt");
+        PieceTableDocument document = new PieceTableDocument();
+        UndoHistory history = listen(document, new UndoHistory(UndoHistory.DEFAULT_BUDGET, directory));
+        history.saved(path, document, hash(document));
+        type(document, "first words", 100);
+        history.undo();
+        type(document, "second", 100);
+        history.saved(path, document, hash(document));
+        history.discardAllEdits();
+
+        // Opened again with the same text, undo goes back to the start
+        // 以相同的文本再次打开，撤销回到开始
+        PieceTableDocument opened = new PieceTableDocument();
+        opened.insertString(0, "first second", null);
+        UndoHistory reopened = listen(opened, new UndoHistory(UndoHistory.DEFAULT_BUDGET, directory));
+        reopened.attach(path, opened, hash(opened));
+        assertEquals(0, reopened.getEntryCount());
+        reopened.undo();
+        assertEquals("first ", opened.getText(0, opened.getLength()));
+        reopened.undo();
+        assertEquals("", opened.getText(0, opened.getLength()));
+        assertFalse(reopened.canUndo());
+        reopened.redo();
+        reopened.redo();
+        assertEquals("first second", opened.getText(0, opened.getLength()));
+
+        // A new edit goes on with the history
+        // 新的编辑继续该历史
+        type(opened, "!", UndoHistory.TYPING_PAUSE_MILLIS + 1);
+        reopened.undo();
+        reopened.undo();
+        assertEquals("first ", opened.getText(0, opened.getLength()));
+        reopened.discardAllEdits();
+
+        // Text changed by another program has no history
+        // 被其他程序更改的文本没有历史
+        PieceTableDocument changed = new PieceTableDocument();
+        changed.insertString(0, "first second", null);
+        changed.insertString(0, "x", null);
+        UndoHistory other = listen(changed, new UndoHistory(UndoHistory.DEFAULT_BUDGET, directory));
+        other.attach(path, changed, hash(changed));
+        assertFalse(other.canUndo());
+        other.discardAllEdits();
+    }
+
+    @Test
+    public void historyGoesWithSaveAs() throws Exception
+    {
+        File directory = Files.createTempDirectory("history").toFile();
+        PieceTableDocument document = new PieceTableDocument();
+        UndoHistory history = listen(document, new UndoHistory(UndoHistory.DEFAULT_BUDGET, directory));
+        history.saved(new File(directory, "old.txt"), document, hash(document));
+        type(document, "kept words", 100);
+        File renamed = new File(directory, "new.txt");
+        history.saved(renamed, document, hash(document));
+        history.discardAllEdits();
+
+        // The writer thread wrote the steps under the new name
+        // 写入线程以新名称写入了步骤
+        PieceTableDocument opened = new PieceTableDocument();
+        opened.insertString(0, "kept words", null);
+        UndoHistory reopened = listen(opened, new UndoHistory(UndoHistory.DEFAULT_BUDGET, directory));
+        reopened.attach(renamed, opened, hash(opened));
+        assertTrue(UndoStore.fileOf(directory, renamed).isFile());
+        reopened.undo();
+        reopened.undo();
+        assertEquals("", opened.getText(0, opened.getLength()));
+        reopened.discardAllEdits();
+    }
+
+    @Test
+    public void oldHistoriesAreDeleted() throws Exception
+    {
+        File directory = Files.createTempDirectory("history").toFile();
+        long now = System.currentTimeMillis();
+        File stale = history(directory, "stale", 100, now - UndoStore.MAX_AGE_MILLIS - 1000);
+        File older = history(directory, "older", 600, now - 3000);
+        File newer = history(directory, "newer", 600, now - 2000);
+        File newest = history(directory, "newest", 300, now - 1000);
+        File other = new File(directory, "notes.txt");
+        Files.write(other.toPath(), new byte[10]);
+        other.setLastModified(now - UndoStore.MAX_AGE_MILLIS - 1000);
+
+        // Newest ones are kept while they fit in 1000 bytes
+        // 最新的历史在1000字节内时被保留
+        UndoStore.cleanUp(directory, now, 1000);
+        assertFalse(stale.exists());
+        assertFalse(older.exists());
+        assertTrue(newer.exists());
+        assertTrue(newest.exists());
+        assertTrue(other.exists());
+    }
+
+    private static File history(File directory, String name, int length, long modified) throws Exception
+    {
+        File file = new File(directory, name + ".undo");
+        Files.write(file.toPath(), new byte[length]);
+        file.setLastModified(modified);
+        return file;
+    }
+
+    private static long hash(PieceTableDocument document) throws Exception
+    {
+        DocumentSnapshot snapshot = document.snapshot(false);
+        try
+        {
+            return UndoStore.hash(snapshot);
+        }
+        finally
+        {
+            snapshot.release();
+        }
+    }
+
+    private UndoHistory listen(PieceTableDocument document, UndoHistory history)
+    {
+        document.addUndoableEditListener(e -> history.undoableEditHappened(e.getEdit(), now));
+        return history;
+    }
+
+    private void type(PieceTableDocument document, String text, long delay) throws Exception
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            now += i == 0 ? delay : 100;
+            document.insertString(document.getLength(), text.substring(i, i + 1), null);
+        }
+    }
+}